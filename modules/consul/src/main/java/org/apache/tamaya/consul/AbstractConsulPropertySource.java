@@ -22,12 +22,18 @@ import com.google.common.net.HostAndPort;
 import com.orbitz.consul.Consul;
 import com.orbitz.consul.KeyValueClient;
 import com.orbitz.consul.model.kv.Value;
+import org.apache.tamaya.events.ConfigEventManager;
+import org.apache.tamaya.events.ConfigMetrics;
+import org.apache.tamaya.events.PropertySourceChangeBuilder;
+import org.apache.tamaya.functions.BackgroundRefresher;
+import org.apache.tamaya.functions.NegativeCache;
 import org.apache.tamaya.mutableconfig.ConfigChangeRequest;
 import org.apache.tamaya.mutableconfig.spi.MutablePropertySource;
 import org.apache.tamaya.spi.ChangeSupport;
 import org.apache.tamaya.spi.PropertyValue;
 import org.apache.tamaya.spisupport.propertysource.BasePropertySource;
 
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
@@ -37,23 +43,54 @@ import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 /**
- * Propertysource base class that is reading configuration from a configured consul endpoint.
+ * Propertysource base class that is reading configuration from a configured consul endpoint. Values are looked up
+ * on first access and cached. By default the cache is cleared after the cache timeout. In asynchronous refresh mode
+ * the cached values are instead reloaded in the background shortly before the cache timeout, while accesses
+ * continue to return the current values, see {@link BackgroundRefresher}.
+ * <p>In bulk load mode the whole subtree below the prefix is loaded with a single recursive request into an
+ * immutable snapshot, which is replaced on each reload. Lookups are then answered from the snapshot only and
+ * {@link #getProperties()} returns all values of the subtree.</p>
+ * <p>In watch mode the subtree below the prefix is held the same way, but kept up to date by blocking queries
+ * instead of reloads. Changed keys are detected by their modify index and published as {@code PropertySourceChange}
+ * events, if {@code tamaya-events} is available.</p>
+ * <p>Keys not found are remembered for a while (see {@link #setNegativeCacheTtl(long)}), so repeated lookups of
+ * non-existing keys do not access consul again. The misses are forgotten on each reload and for keys changed.</p>
+ * <p>One client is created per consul endpoint and shared by all property sources.</p>
+ * <p>While refreshes fail, the values returned carry the {@code staleness} and {@code refreshFailures} meta
+ * entries.</p>
  */
 public abstract class AbstractConsulPropertySource extends BasePropertySource
 implements MutablePropertySource{
     private static final Logger LOG = Logger.getLogger(AbstractConsulPropertySource.class.getName());
 
-    private String prefix = "";
+    private static final boolean EVENTS_AVAILABLE = checkForEvents();
 
-    private List<HostAndPort> consulBackends = new ArrayList<>();
+    /** The clients, shared by all instances, one per endpoint. */
+    private static final Map<HostAndPort, Consul> CLIENTS = new ConcurrentHashMap<>();
+
+    private volatile String prefix = "";
+
+    private volatile List<HostAndPort> consulBackends = new ArrayList<>();
 
     /** The config cache used. */
-    private Map<String, PropertyValue> configMap = new ConcurrentHashMap<>();
+    private volatile Map<String, PropertyValue> configMap = new ConcurrentHashMap<>();
+
+    private final BackgroundRefresher refresher = new BackgroundRefresher(getName(),
+            TimeUnit.MILLISECONDS.convert(5, TimeUnit.MINUTES), this::reload);
+
+    private final NegativeCache negativeCache = new NegativeCache(
+            TimeUnit.MILLISECONDS.convert(1, TimeUnit.MINUTES), 10000);
+
+    private volatile boolean refreshAsync;
 
-    private AtomicLong timeoutDuration = new AtomicLong(TimeUnit.MILLISECONDS.convert(5, TimeUnit.MINUTES));
+    private volatile boolean bulkLoad;
 
-    private AtomicLong timeout = new AtomicLong();
+    private volatile long watchTimeout = TimeUnit.MILLISECONDS.convert(60, TimeUnit.SECONDS);
 
+    private volatile ConsulWatcher watcher;
+
+    /** The consul index the data reflects in watch mode, or 0. */
+    private final AtomicLong consulIndex = new AtomicLong();
 
     public AbstractConsulPropertySource(){
         this("consul");
@@ -63,12 +100,36 @@ implements MutablePropertySource{
         super(name);
     }
 
+    private static boolean checkForEvents() {
+        try{
+            Class.forName("org.apache.tamaya.events.ConfigMetrics", false,
+                    AbstractConsulPropertySource.class.getClassLoader());
+            return true;
+        } catch(Exception | LinkageError e){
+            LOG.fine("tamaya-events not installed, will not record consul metrics or publish changes.");
+            return false;
+        }
+    }
+
+    /**
+     * Get the shared client for the given endpoint.
+     * @param hostAndPort the endpoint, not null.
+     * @return the client, never null.
+     */
+    static Consul getClient(HostAndPort hostAndPort){
+        return CLIENTS.computeIfAbsent(hostAndPort, hp -> Consul.builder()
+                .withHostAndPort(hp)
+                // accessibility is checked on each request, so a backend being down does not break the build
+                .withPing(false)
+                .build());
+    }
+
     /**
      * Get the current timeout, when a reload will be triggered on access.
      * @return the current timeout, or 0 if no data has been loaded at all.
      */
     public long getValidUntil(){
-        return timeout.get();
+        return refresher.getValidUntil();
     }
 
     /**
@@ -76,7 +137,7 @@ implements MutablePropertySource{
      * @return the timeout duration after which data will be reloaded.
      */
     public long getCachePeriod(){
-        return timeoutDuration.get();
+        return refresher.getRefreshPeriod();
     }
 
     /**
@@ -84,7 +145,155 @@ implements MutablePropertySource{
      * @param millis the millis
      */
     public void setCacheTimeout(long millis){
-        this.timeoutDuration.set(millis);
+        this.refresher.setRefreshPeriod(millis);
+    }
+
+    /**
+     * Checks if the cached values are reloaded in the background instead of being cleared after the cache timeout.
+     * @return true, if asynchronous refresh mode is enabled.
+     */
+    public boolean isRefreshAsync(){
+        return refreshAsync;
+    }
+
+    /**
+     * Enables or disables asynchronous refresh mode. In asynchronous refresh mode the cached values are returned
+     * immediately and reloaded in the background shortly before the cache timeout.
+     * @param refreshAsync true, to enable asynchronous refresh mode.
+     */
+    public void setRefreshAsync(boolean refreshAsync){
+        this.refreshAsync = refreshAsync;
+    }
+
+    /**
+     * Get the time a key not found is remembered, before it is looked up again.
+     * @return the time in ms, 0 if misses are not cached.
+     */
+    public long getNegativeCacheTtl(){
+        return negativeCache.getTimeToLive();
+    }
+
+    /**
+     * Set the time a key not found is remembered, before it is looked up again. Misses are also forgotten on each
+     * reload and when the key is changed through this property source or a watch.
+     * @param millis the time in ms, 0 disables caching of misses.
+     */
+    public void setNegativeCacheTtl(long millis){
+        this.negativeCache.setTimeToLive(millis);
+    }
+
+    /**
+     * Checks if the whole subtree below the prefix is loaded at once, instead of reading keys on first access.
+     * @return true, if bulk load mode is enabled.
+     */
+    public boolean isBulkLoad(){
+        return bulkLoad;
+    }
+
+    /**
+     * Enables or disables bulk load mode. In bulk load mode the whole subtree below the prefix is loaded with one
+     * request on each reload, and keys not contained are not looked up separately.
+     * @param bulkLoad true, to enable bulk load mode.
+     */
+    public void setBulkLoad(boolean bulkLoad){
+        if(this.bulkLoad!=bulkLoad) {
+            this.bulkLoad = bulkLoad;
+            refresh();
+        }
+    }
+
+    /**
+     * Checks if changes are watched using blocking queries.
+     * @return true, if watch mode is enabled.
+     */
+    public boolean isWatchEnabled(){
+        return watcher!=null;
+    }
+
+    /**
+     * Enables or disables watch mode. In watch mode a background thread issues blocking queries on the prefix and
+     * applies the changes to the cached data, so the data is not reloaded after the cache timeout.
+     * @param enabled true, to enable watch mode.
+     */
+    public synchronized void setWatchEnabled(boolean enabled){
+        if(enabled && watcher==null){
+            consulIndex.set(0L);
+            watcher = new ConsulWatcher(this);
+            watcher.start();
+        } else if(!enabled && watcher!=null){
+            watcher.stop();
+            watcher = null;
+            consulIndex.set(0L);
+            if(!bulkLoad){
+                // allow values to be added on access again
+                this.configMap = new ConcurrentHashMap<>(this.configMap);
+            }
+        }
+    }
+
+    /**
+     * Get the time a single blocking query waits for a change, before it is reissued.
+     * @return the watch timeout in ms.
+     */
+    public long getWatchTimeout(){
+        return watchTimeout;
+    }
+
+    /**
+     * Set the time a single blocking query waits for a change, before it is reissued. Consul uses a resolution of
+     * seconds and a maximum of 10 minutes.
+     * @param millis the millis
+     */
+    public void setWatchTimeout(long millis){
+        this.watchTimeout = millis;
+    }
+
+    /**
+     * Get the consul index the data reflects in watch mode.
+     * @return the index, or 0 if no data has been watched yet.
+     */
+    public long getConsulIndex(){
+        return consulIndex.get();
+    }
+
+    /**
+     * Get the maximal time an access waits for the first load in asynchronous refresh mode.
+     * @return the time in ms, 0 waits until the load has completed.
+     */
+    public long getInitialWait(){
+        return refresher.getInitialWait();
+    }
+
+    /**
+     * Set the maximal time an access waits for the first load in asynchronous refresh mode.
+     * @param millis the time in ms, 0 waits until the load has completed.
+     */
+    public void setInitialWait(long millis){
+        this.refresher.setInitialWait(millis);
+    }
+
+    /**
+     * Get the age of the cached values, i.e. the time since the cache has been cleared or reloaded the last time.
+     * @return the age in ms, or -1 if the cache has not been initialized yet.
+     */
+    public long getStaleness(){
+        return refresher.getStaleness();
+    }
+
+    /**
+     * Get the exception of the last failed reload.
+     * @return the exception, or null if no reload has failed yet.
+     */
+    public Exception getLastRefreshFailure(){
+        return refresher.getLastFailure();
+    }
+
+    /**
+     * Get the number of failed reloads.
+     * @return the number of failed reloads.
+     */
+    public long getRefreshFailureCount(){
+        return refresher.getFailureCount();
     }
 
     /**
@@ -102,7 +311,12 @@ implements MutablePropertySource{
      * @param prefix the prefix, not null.
      */
     public void setPrefix(String prefix) {
-        this.prefix = Objects.requireNonNull(prefix);
+        if(!this.prefix.equals(Objects.requireNonNull(prefix))) {
+            this.prefix = prefix;
+            if (bulkLoad) {
+                refresh();
+            }
+        }
     }
 
     /**
@@ -133,16 +347,202 @@ implements MutablePropertySource{
      * Checks for a cache timeout and optionally reloads the data.
      */
     public void checkRefresh(){
-        if(this.timeout.get() < System.currentTimeMillis()){
+        if(isWatchEnabled()){
+            return;
+        }
+        if(refreshAsync){
+            refresher.access();
+        } else if(refresher.getValidUntil() < System.currentTimeMillis()){
             refresh();
         }
     }
 
     /**
-     * Clears the cached entries.
+     * Clears the cached entries, or reloads them in asynchronous refresh mode or bulk load mode. In asynchronous
+     * refresh mode the entries are reloaded in the background.
      */
     public void refresh(){
-        this.configMap.clear();
+        if(consulBackends.isEmpty()){
+            return;
+        }
+        if(refreshAsync){
+            refresher.trigger();
+        }else{
+            refresher.refreshNow();
+        }
+    }
+
+    private Object reload() {
+        negativeCache.invalidateAll();
+        if(isWatchEnabled()){
+            Map<String, PropertyValue> values = readValues();
+            synchronized (this) {
+                this.configMap = values;
+                // let the watcher compare the current state against the values loaded
+                this.consulIndex.set(0L);
+            }
+            return null;
+        }
+        if(!refreshAsync && !bulkLoad){
+            this.configMap = new ConcurrentHashMap<>();
+            return null;
+        }
+        long start = EVENTS_AVAILABLE?ConfigMetrics.start():0L;
+        boolean loaded = false;
+        try{
+            if(bulkLoad){
+                this.configMap = readValues();
+            }else {
+                Map<String, PropertyValue> values = new ConcurrentHashMap<>();
+                for (String key : this.configMap.keySet()) {
+                    PropertyValue val = readValue(key);
+                    if (val != null) {
+                        values.put(key, val);
+                    }
+                }
+                this.configMap = values;
+            }
+            loaded = true;
+            return null;
+        } finally {
+            if(EVENTS_AVAILABLE){
+                ConfigMetrics.refreshed(getName(), start, loaded);
+            }
+        }
+    }
+
+    /**
+     * Reads a value from the first consul server accessible.
+     * @param key the key, without prefix, not null.
+     * @return the value, or null if it is not present.
+     * @throws IllegalStateException if no consul server is accessible.
+     */
+    private PropertyValue readValue(String key) {
+        boolean accessed = false;
+        for(HostAndPort hostAndPort: this.consulBackends){
+            try{
+                KeyValueClient kvClient = getClient(hostAndPort).keyValueClient();
+                Optional<Value> valueOpt = kvClient.getValue(prefix + key);
+                accessed = true;
+                if(!valueOpt.isPresent()) {
+                    LOG.log(Level.FINE, "key not found in consul: " + prefix + key);
+                }else{
+                    // No prefix mapping necessary here, since we only access/return the createValue...
+                    return toPropertyValue(key, valueOpt.get());
+                }
+            } catch(Exception e){
+                LOG.log(Level.FINE, "consul access failed on " + hostAndPort + ", trying next...", e);
+            }
+        }
+        if(!accessed && !this.consulBackends.isEmpty()){
+            throw new IllegalStateException("No consul server accessible: " + getServer());
+        }
+        return null;
+    }
+
+    /**
+     * Reads all values below the prefix from the first consul server accessible.
+     * @return an immutable map of the values, keyed by their key without prefix, never null.
+     * @throws IllegalStateException if no consul server is accessible.
+     */
+    private Map<String, PropertyValue> readValues() {
+        List<HostAndPort> backends = this.consulBackends;
+        for(HostAndPort hostAndPort: backends){
+            try{
+                List<Value> values = getClient(hostAndPort).keyValueClient().getValues(prefix);
+                Map<String, PropertyValue> result = new HashMap<>();
+                for(Value value:values){
+                    String key = value.getKey();
+                    if(key.startsWith(prefix) && key.length()>prefix.length()) {
+                        key = key.substring(prefix.length());
+                        result.put(key, toPropertyValue(key, value));
+                    }
+                }
+                return Collections.unmodifiableMap(result);
+            } catch(Exception e){
+                LOG.log(Level.FINE, "consul access failed on " + hostAndPort + ", trying next...", e);
+            }
+        }
+        if(!backends.isEmpty()){
+            throw new IllegalStateException("No consul server accessible: " + getServer());
+        }
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Applies the result of a blocking query and publishes the changed keys as a single change, unless the data
+     * has been reloaded meanwhile.
+     * @param watchedIndex the consul index the query has been issued with.
+     * @param values all values below the prefix, not null.
+     * @param index the consul index to issue the next query with.
+     */
+    synchronized void applyWatchResult(long watchedIndex, List<Value> values, long index) {
+        if(consulIndex.get()!=watchedIndex || !isWatchEnabled()){
+            return;
+        }
+        Map<String, PropertyValue> previous = this.configMap;
+        Map<String, PropertyValue> current = new HashMap<>();
+        Map<String, String> oldValues = new HashMap<>();
+        Map<String, String> newValues = new HashMap<>();
+        for(Value value:values){
+            String key = value.getKey();
+            if(!key.startsWith(prefix) || key.length()==prefix.length()){
+                continue;
+            }
+            key = key.substring(prefix.length());
+            PropertyValue old = previous.get(key);
+            if(old!=null && String.valueOf(value.getModifyIndex()).equals(old.getMeta("modifyIndex"))){
+                current.put(key, old);
+            } else {
+                PropertyValue val = toPropertyValue(key, value);
+                current.put(key, val);
+                if(old!=null){
+                    oldValues.put(key, old.getValue());
+                }
+                newValues.put(key, val.getValue());
+            }
+        }
+        for(Map.Entry<String, PropertyValue> en:previous.entrySet()){
+            if(!current.containsKey(en.getKey())){
+                oldValues.put(en.getKey(), en.getValue().getValue());
+            }
+        }
+        this.configMap = Collections.unmodifiableMap(current);
+        this.consulIndex.set(index);
+        for(String key:newValues.keySet()){
+            negativeCache.invalidate(key);
+        }
+        if(EVENTS_AVAILABLE && !(oldValues.isEmpty() && newValues.isEmpty())){
+            try{
+                PropertySourceChangeBuilder builder = PropertySourceChangeBuilder.of(this).setVersion(getVersion())
+                        .addChanges(oldValues, newValues);
+                if(!builder.isEmpty()){
+                    ConfigEventManager.getInstance().fireEvent(builder.build());
+                }
+            } catch(Exception | ServiceConfigurationError e){
+                LOG.log(Level.WARNING, "Failed to publish consul changes of " + getName(), e);
+            }
+        }
+    }
+
+    /**
+     * Get the consul servers configured.
+     * @return the servers, not null.
+     */
+    List<HostAndPort> getBackends() {
+        return this.consulBackends;
+    }
+
+    private PropertyValue toPropertyValue(String key, Value value) {
+        Map<String,String> props = new HashMap<>();
+        props.put("createIndex", String.valueOf(value.getCreateIndex()));
+        props.put("modifyIndex", String.valueOf(value.getModifyIndex()));
+        props.put("lockIndex", String.valueOf(value.getLockIndex()));
+        props.put("flags", String.valueOf(value.getFlags()));
+        props.put("source", getName());
+        // the value is transferred base64 encoded
+        return PropertyValue.createValue(key, value.getValueAsString(StandardCharsets.UTF_8).orElse(null))
+                .setMeta(props);
     }
 
     @Override
@@ -164,37 +564,23 @@ implements MutablePropertySource{
             }
         }
         PropertyValue val = this.configMap.get(reqKey);
-        if(val!=null){
-            return val;
+        if(val!=null || bulkLoad || isWatchEnabled()){
+            return refresher.decorate(val);
         }
-        // check prefix, if key does not start with it, it is not part of our name space
-        // if so, the prefix part must be removedProperties, so etcd can resolve without it
-        for(HostAndPort hostAndPort: this.consulBackends){
-            try{
-                Consul consul = Consul.builder().withHostAndPort(hostAndPort).build();
-                KeyValueClient kvClient = consul.keyValueClient();
-                Optional<Value> valueOpt = kvClient.getValue(prefix + reqKey);
-                if(!valueOpt.isPresent()) {
-                    LOG.log(Level.FINE, "key not found in consul: " + prefix + reqKey);
-                }else{
-                    // No prefix mapping necessary here, since we only access/return the createValue...
-                    Value value = valueOpt.get();
-                    Map<String,String> props = new HashMap<>();
-                    props.put("createIndex", String.valueOf(value.getCreateIndex()));
-                    props.put("modifyIndex", String.valueOf(value.getModifyIndex()));
-                    props.put("lockIndex", String.valueOf(value.getLockIndex()));
-                    props.put("flags", String.valueOf(value.getFlags()));
-                    props.put("source", getName());
-                    val = PropertyValue.createValue(reqKey, value.getValue().orElse(null))
-                        .setMeta(props);
-                    break;
-                }
-            } catch(Exception e){
-                LOG.log(Level.FINE, "etcd access failed on " + hostAndPort + ", trying next...", e);
-            }
+        if(negativeCache.isMissing(reqKey)){
+            return null;
+        }
+        long stamp = negativeCache.getStamp();
+        try{
+            val = readValue(reqKey);
+        } catch(IllegalStateException e){
+            LOG.log(Level.FINE, "Failed to read key from consul: " + reqKey, e);
+            return null;
         }
         if(val!=null){
             this.configMap.put(reqKey, val);
+        } else {
+            negativeCache.markMissing(reqKey, stamp);
         }
         return val;
     }
@@ -202,30 +588,36 @@ implements MutablePropertySource{
     @Override
     public Map<String, PropertyValue> getProperties() {
         checkRefresh();
-        return Collections.unmodifiableMap(configMap);
+        return Collections.unmodifiableMap(refresher.decorate(configMap));
+    }
+
+    @Override
+    public String getVersion() {
+        long index = consulIndex.get();
+        return index>0?String.valueOf(index):super.getVersion();
     }
 
     @Override
     public ChangeSupport getChangeSupport(){
-        return ChangeSupport.UNSUPPORTED;
+        return isWatchEnabled()?ChangeSupport.SUPPORTED:ChangeSupport.UNSUPPORTED;
     }
 
     @Override
     public void applyChange(ConfigChangeRequest configChange) {
         for(HostAndPort hostAndPort: this.consulBackends){
             try{
-                Consul consul = Consul.builder().withHostAndPort(hostAndPort).build();
-                KeyValueClient kvClient = consul.keyValueClient();
+                KeyValueClient kvClient = getClient(hostAndPort).keyValueClient();
 
                 for(String k: configChange.getRemovedProperties()){
                     try{
-                        kvClient.deleteKey(k);
+                        kvClient.deleteKey(prefix + k);
                     } catch(Exception e){
                         LOG.info("Failed to remove key from consul: " + k);
                     }
                 }
                 for(Map.Entry<String,String> en:configChange.getAddedProperties().entrySet()){
                     String key = en.getKey();
+                    negativeCache.invalidate(key);
                     try{
                         kvClient.putValue(prefix + key,en.getValue());
                     }catch(Exception e) {
@@ -233,6 +625,9 @@ implements MutablePropertySource{
                     }
                 }
                 // success: stop here
+                if(bulkLoad && !isWatchEnabled()){
+                    refresh();
+                }
                 break;
             } catch(Exception e){
                 LOG.log(Level.FINE, "consul access failed on " + hostAndPort + ", trying next...", e);
@@ -244,7 +639,14 @@ implements MutablePropertySource{
     protected String toStringValues() {
         return  super.toStringValues() +
                 "  prefix=" + prefix + '\n' +
-                "  cacheTimeout=" + timeout + '\n' +
+                "  cacheTimeout=" + refresher.getRefreshPeriod() + '\n' +
+                "  refreshAsync=" + refreshAsync + '\n' +
+                "  bulkLoad=" + bulkLoad + '\n' +
+                "  watch=" + isWatchEnabled() + '\n' +
+                "  consulIndex=" + consulIndex + '\n' +
+                "  staleness=" + refresher.getStaleness() + '\n' +
+                "  refreshFailures=" + refresher.getFailureCount() + '\n' +
+                "  negativeCache=" + negativeCache + '\n' +
                 "  backends=" + this.consulBackends + '\n';
     }
 
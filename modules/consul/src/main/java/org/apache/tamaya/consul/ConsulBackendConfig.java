@@ -20,6 +20,7 @@ package org.apache.tamaya.consul;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -32,6 +33,12 @@ final class ConsulBackendConfig {
     private static final String TAMAYA_CONSUL_SERVER_URLS = "tamaya.consul.server.urls";
     private static final String TAMAYA_CONSUL_DIRECTORY = "tamaya.consul.directory";
     private static final String TAMAYA_CONSUL_PREFIX = "tamaya.consul.prefix";
+    private static final String TAMAYA_CONSUL_REFRESH_ASYNC = "tamaya.consul.refresh-async";
+    private static final String TAMAYA_CONSUL_INITIAL_WAIT = "tamaya.consul.initial-wait";
+    private static final String TAMAYA_CONSUL_BULK_LOAD = "tamaya.consul.bulk-load";
+    private static final String TAMAYA_CONSUL_WATCH = "tamaya.consul.watch";
+    private static final String TAMAYA_CONSUL_WATCH_TIMEOUT = "tamaya.consul.watch-timeout";
+    private static final String TAMAYA_CONSUL_NEGATIVE_CACHE_TTL = "tamaya.consul.negative-cache-ttl";
 
 
     private ConsulBackendConfig(){}
@@ -78,4 +85,92 @@ final class ConsulBackendConfig {
         return "";
     }
 
+    /**
+     * Checks if cached values are reloaded in the background, from system/environment property
+     * {@code tamaya.consul.refresh-async} (default false).
+     * @return true, if asynchronous refresh mode is enabled.
+     */
+    public static boolean isRefreshAsync() {
+        String val = System.getProperty(TAMAYA_CONSUL_REFRESH_ASYNC);
+        if(val == null){
+            val = System.getenv(TAMAYA_CONSUL_REFRESH_ASYNC);
+        }
+        return val!=null && Boolean.parseBoolean(val.trim());
+    }
+
+    /**
+     * Get the maximal time an access waits for the first load in asynchronous refresh mode, from
+     * system/environment property {@code tamaya.consul.initial-wait} in milliseconds (default 0, waiting until the
+     * load has completed).
+     * @return the initial wait in ms.
+     */
+    public static long getInitialWait() {
+        String val = System.getProperty(TAMAYA_CONSUL_INITIAL_WAIT);
+        if(val == null){
+            val = System.getenv(TAMAYA_CONSUL_INITIAL_WAIT);
+        }
+        if(val!=null){
+            return Long.parseLong(val.trim());
+        }
+        return 0L;
+    }
+
+    /**
+     * Checks if the whole subtree below the prefix is loaded at once, from system/environment property
+     * {@code tamaya.consul.bulk-load} (default false).
+     * @return true, if bulk load mode is enabled.
+     */
+    public static boolean isBulkLoad() {
+        String val = System.getProperty(TAMAYA_CONSUL_BULK_LOAD);
+        if(val == null){
+            val = System.getenv(TAMAYA_CONSUL_BULK_LOAD);
+        }
+        return val!=null && Boolean.parseBoolean(val.trim());
+    }
+
+    /**
+     * Checks if changes are watched using blocking queries, from system/environment property
+     * {@code tamaya.consul.watch} (default false).
+     * @return true, if watch mode is enabled.
+     */
+    public static boolean isWatchEnabled() {
+        String val = System.getProperty(TAMAYA_CONSUL_WATCH);
+        if(val == null){
+            val = System.getenv(TAMAYA_CONSUL_WATCH);
+        }
+        return val!=null && Boolean.parseBoolean(val.trim());
+    }
+
+    /**
+     * Get the time a single blocking query waits for a change, before it is reissued, from system/environment
+     * property {@code tamaya.consul.watch-timeout} in seconds (default 60).
+     * @return the watch timeout in ms.
+     */
+    public static long getWatchTimeout() {
+        String val = System.getProperty(TAMAYA_CONSUL_WATCH_TIMEOUT);
+        if(val == null){
+            val = System.getenv(TAMAYA_CONSUL_WATCH_TIMEOUT);
+        }
+        if(val!=null){
+            return TimeUnit.MILLISECONDS.convert(Integer.parseInt(val.trim()), TimeUnit.SECONDS);
+        }
+        return 60000L;
+    }
+
+    /**
+     * Get the time a key not found is remembered, from system/environment property
+     * {@code tamaya.consul.negative-cache-ttl} in milliseconds (default 60000, 0 disables caching of misses).
+     * @return the time in ms.
+     */
+    public static long getNegativeCacheTtl() {
+        String val = System.getProperty(TAMAYA_CONSUL_NEGATIVE_CACHE_TTL);
+        if(val == null){
+            val = System.getenv(TAMAYA_CONSUL_NEGATIVE_CACHE_TTL);
+        }
+        if(val!=null){
+            return Long.parseLong(val.trim());
+        }
+        return 60000L;
+    }
+
 }
@@ -31,26 +31,37 @@ public class ConsulPropertySource extends AbstractConsulPropertySource{
 
 
     public ConsulPropertySource(String prefix, List<String> backends){
-        this();
-        setPrefix(prefix);
-        setServer(backends);
+        init(prefix, backends);
     }
 
     public ConsulPropertySource(List<String> backends){
-        this();
-        setServer(backends);
+        init(System.getProperty("tamaya.consul.prefix", ""), backends);
     }
 
     public ConsulPropertySource(){
-        super();
-        setDefaultOrdinal(1000);
-        setPrefix(System.getProperty("tamaya.consul.prefix", ""));
+        init(System.getProperty("tamaya.consul.prefix", ""), Collections.emptyList());
     }
 
     public ConsulPropertySource(String... backends){
-        this();
-        setServer(Arrays.asList(backends));
+        init(System.getProperty("tamaya.consul.prefix", ""), Arrays.asList(backends));
     }
 
+    /**
+     * Applies the configured settings. The servers are set after all other settings but the watch mode, so the
+     * data is loaded only once and with the settings configured.
+     * @param prefix the prefix, not null.
+     * @param backends the servers, not null.
+     */
+    private void init(String prefix, List<String> backends){
+        setDefaultOrdinal(1000);
+        setInitialWait(ConsulBackendConfig.getInitialWait());
+        setNegativeCacheTtl(ConsulBackendConfig.getNegativeCacheTtl());
+        setRefreshAsync(ConsulBackendConfig.isRefreshAsync());
+        setWatchTimeout(ConsulBackendConfig.getWatchTimeout());
+        setPrefix(prefix);
+        setBulkLoad(ConsulBackendConfig.isBulkLoad());
+        setServer(backends);
+        setWatchEnabled(ConsulBackendConfig.isWatchEnabled());
+    }
 
 }
@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.consul;
+
+import com.google.common.net.HostAndPort;
+import com.orbitz.consul.Consul;
+import com.orbitz.consul.model.ConsulResponse;
+import com.orbitz.consul.model.kv.Value;
+import com.orbitz.consul.option.QueryOptions;
+
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Streams the changes below the prefix of a consul property source into the property source. The watcher issues
+ * blocking queries on the prefix, which return as soon as the consul index has moved past the last index seen, and
+ * applies the keys whose modify index has changed. The first query, and the first query after the consul index went
+ * backwards (e.g. after a snapshot restore), returns immediately with the current values.
+ */
+final class ConsulWatcher implements Runnable {
+
+    private static final Logger LOG = Logger.getLogger(ConsulWatcher.class.getName());
+
+    /** Maximal delay in ms between two attempts, if no consul server is reachable. */
+    private static final long MAX_BACKOFF = 30000L;
+
+    /** Maximal wait time of a blocking query in seconds, as enforced by consul. */
+    private static final int MAX_WAIT = 600;
+
+    private final AbstractConsulPropertySource propertySource;
+
+    private final Thread thread;
+
+    /** The clients used for blocking queries, only accessed by the watcher thread. */
+    private final Map<HostAndPort, Consul> clients = new HashMap<>();
+
+    /** The wait time in seconds, the read timeout of the current clients is set up for. */
+    private int clientWait;
+
+    private volatile boolean running = true;
+
+    /**
+     * Creates a new watcher.
+     *
+     * @param propertySource the property source to be updated, not null.
+     */
+    ConsulWatcher(AbstractConsulPropertySource propertySource) {
+        this.propertySource = propertySource;
+        this.thread = new Thread(this, "tamaya-consul-watch-" + propertySource.getName());
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Starts watching.
+     */
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Stops watching. A blocking query currently pending is not aborted, but its result is discarded.
+     */
+    void stop() {
+        running = false;
+        thread.interrupt();
+    }
+
+    /**
+     * Checks if the watcher is still active.
+     *
+     * @return true, if not stopped.
+     */
+    boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void run() {
+        int failures = 0;
+        try {
+            while (running) {
+                boolean accessed;
+                try {
+                    accessed = watchOnce();
+                } catch (RuntimeException e) {
+                    LOG.log(Level.WARNING, "consul watch of " + propertySource.getName() + " failed.", e);
+                    accessed = false;
+                }
+                if (accessed) {
+                    failures = 0;
+                } else {
+                    failures++;
+                    try {
+                        Thread.sleep(Math.min(MAX_BACKOFF, 500L << Math.min(failures, 6)));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        } finally {
+            closeClients();
+        }
+    }
+
+    /**
+     * Waits for and applies the next changes, trying all consul servers in order.
+     *
+     * @return true, if a consul server could be accessed.
+     */
+    private boolean watchOnce() {
+        long index = propertySource.getConsulIndex();
+        int wait = getWaitSeconds();
+        for (HostAndPort hostAndPort : propertySource.getBackends()) {
+            ConsulResponse<List<Value>> response;
+            try {
+                response = getClient(hostAndPort, wait).keyValueClient().getConsulResponseWithValues(
+                        propertySource.getPrefix(), QueryOptions.blockSeconds(wait, BigInteger.valueOf(index)).build());
+            } catch (Exception e) {
+                LOG.log(Level.FINE, "consul watch failed on " + hostAndPort + ", trying next...", e);
+                continue;
+            }
+            if (!running) {
+                return true;
+            }
+            long newIndex = response.getIndex() != null ? response.getIndex().longValue() : 0L;
+            if (newIndex == index) {
+                // wait time elapsed without changes
+                return true;
+            }
+            if (newIndex < index) {
+                LOG.info("consul index of " + propertySource.getName() + " went backwards from " + index + " to "
+                        + newIndex + ", reloading prefix: " + propertySource.getPrefix());
+                // values are applied, but the next query starts over without blocking
+                newIndex = 0L;
+            } else if (newIndex <= 0L) {
+                // an index of 0 would not block, so make sure the next query does
+                newIndex = 1L;
+            }
+            List<Value> values = response.getResponse();
+            propertySource.applyWatchResult(index, values != null ? values : Collections.<Value>emptyList(),
+                    newIndex);
+            return true;
+        }
+        return false;
+    }
+
+    private int getWaitSeconds() {
+        long seconds = (propertySource.getWatchTimeout() + 999L) / 1000L;
+        return (int) Math.max(1L, Math.min(MAX_WAIT, seconds));
+    }
+
+    /**
+     * Get the client for blocking queries on the given endpoint, with a read timeout exceeding the wait time plus
+     * the jitter of up to 1/16 of the wait time consul adds.
+     */
+    private Consul getClient(HostAndPort hostAndPort, int wait) {
+        if (wait != clientWait) {
+            closeClients();
+            clientWait = wait;
+        }
+        return clients.computeIfAbsent(hostAndPort, hp -> Consul.builder()
+                .withHostAndPort(hp)
+                .withPing(false)
+                .withReadTimeoutMillis(wait * 1000L + wait * 1000L / 16 + 5000L)
+                .build());
+    }
+
+    private void closeClients() {
+        for (Consul consul : clients.values()) {
+            try {
+                consul.destroy();
+            } catch (RuntimeException e) {
+                LOG.log(Level.FINE, "Failed to close consul client.", e);
+            }
+        }
+        clients.clear();
+    }
+}
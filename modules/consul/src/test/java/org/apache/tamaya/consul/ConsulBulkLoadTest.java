@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.consul;
+
+import com.google.common.net.HostAndPort;
+import org.apache.tamaya.spi.PropertyValue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the bulk load mode of {@link AbstractConsulPropertySource} against an emulated consul server.
+ */
+public class ConsulBulkLoadTest {
+
+    private ConsulStubServer consul;
+    private ConsulPropertySource propertySource;
+
+    @Before
+    public void setUp() throws Exception {
+        consul = new ConsulStubServer();
+        consul.put("config/", null);
+        consul.put("config/a", "1");
+        consul.put("config/sub/b", "2");
+        consul.put("other/x", "y");
+        propertySource = new ConsulPropertySource("config/", Collections.singletonList(consul.getHostAndPort()));
+        propertySource.setBulkLoad(true);
+    }
+
+    @After
+    public void tearDown() {
+        consul.close();
+    }
+
+    @Test
+    public void testBulkLoadReadsSubtreeOnce() {
+        assertThat(consul.getReadCount()).isEqualTo(1);
+        assertThat(propertySource.get("a").getValue()).isEqualTo("1");
+        assertThat(propertySource.get("sub/b").getValue()).isEqualTo("2");
+        assertThat(propertySource.get("missing")).isNull();
+        assertThat(propertySource.get("missing")).isNull();
+        assertThat(consul.getReadCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testPrefixIsStripped() {
+        PropertyValue value = propertySource.get("a");
+        assertThat(value.getKey()).isEqualTo("a");
+        assertThat(value.getMeta("modifyIndex")).isEqualTo("2");
+        assertThat(value.getMeta("source")).isEqualTo(propertySource.getName());
+        assertThat(propertySource.get("config/a")).isNull();
+        assertThat(propertySource.get("other/x")).isNull();
+    }
+
+    @Test
+    public void testGetPropertiesReturnsSubtree() {
+        Map<String, PropertyValue> props = propertySource.getProperties();
+        assertThat(props).containsOnlyKeys("a", "sub/b");
+        assertThat(props.get("a").getValue()).isEqualTo("1");
+        assertThat(props.get("sub/b").getValue()).isEqualTo("2");
+        assertThat(consul.getReadCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testReloadReplacesSnapshot() {
+        Map<String, PropertyValue> before = propertySource.getProperties();
+        consul.put("config/c", "3");
+        consul.delete("config/a");
+        assertThat(propertySource.get("c")).isNull();
+        propertySource.refresh();
+        assertThat(consul.getReadCount()).isEqualTo(2);
+        assertThat(propertySource.get("c").getValue()).isEqualTo("3");
+        assertThat(propertySource.get("a")).isNull();
+        assertThat(propertySource.getProperties()).containsOnlyKeys("c", "sub/b");
+        assertThat(before).containsOnlyKeys("a", "sub/b");
+    }
+
+    @Test
+    public void testPrefixChangeReloads() {
+        propertySource.setPrefix("other/");
+        assertThat(consul.getReadCount()).isEqualTo(2);
+        assertThat(propertySource.getProperties()).containsOnlyKeys("x");
+    }
+
+    @Test
+    public void testClientSharedPerEndpoint() {
+        HostAndPort endpoint = HostAndPort.fromString(consul.getHostAndPort());
+        assertThat(AbstractConsulPropertySource.getClient(endpoint))
+                .isSameAs(AbstractConsulPropertySource.getClient(HostAndPort.fromParts("127.0.0.1", consul.getPort())));
+        ConsulPropertySource other = new ConsulPropertySource("other/",
+                Collections.singletonList(consul.getHostAndPort()));
+        assertThat(other.getBackends()).containsExactly(endpoint);
+        assertThat(AbstractConsulPropertySource.getClient(other.getBackends().get(0)))
+                .isSameAs(AbstractConsulPropertySource.getClient(endpoint));
+        assertThat(AbstractConsulPropertySource.getClient(HostAndPort.fromParts("127.0.0.1", 1)))
+                .isNotSameAs(AbstractConsulPropertySource.getClient(endpoint));
+    }
+}
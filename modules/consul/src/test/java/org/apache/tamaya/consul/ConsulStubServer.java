@@ -0,0 +1,289 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.consul;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal in-process emulation of the consul KV API, supporting single and recursive reads and blocking queries.
+ * Like consul, the index of a subtree is the highest modify index of its keys, including keys deleted.
+ */
+final class ConsulStubServer implements Closeable {
+
+    private final HttpServer server;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "consul-stub");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final TreeMap<String, Node> nodes = new TreeMap<>();
+
+    /** The index of the deletion, by key deleted. */
+    private final Map<String, Long> tombstones = new HashMap<>();
+
+    private final AtomicInteger reads = new AtomicInteger();
+
+    private final AtomicInteger watches = new AtomicInteger();
+
+    private long index;
+
+    private volatile boolean failing;
+
+    ConsulStubServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Get the address of the server, as configured for consul property sources.
+     */
+    String getHostAndPort() {
+        return "127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    int getReadCount() {
+        return reads.get();
+    }
+
+    int getWatchCount() {
+        return watches.get();
+    }
+
+    /**
+     * Lets all subsequent requests fail with status 500.
+     */
+    void setFailing(boolean failing) {
+        this.failing = failing;
+    }
+
+    synchronized long put(String key, String value) {
+        index++;
+        Node prev = nodes.get(key);
+        nodes.put(key, new Node(key, value, prev != null ? prev.createIndex : index, index));
+        tombstones.remove(key);
+        notifyAll();
+        return index;
+    }
+
+    synchronized long delete(String key) {
+        if (nodes.remove(key) == null) {
+            return index;
+        }
+        index++;
+        tombstones.put(key, index);
+        notifyAll();
+        return index;
+    }
+
+    /**
+     * Replaces all keys, starting over with index 1, like a restore of an older snapshot.
+     */
+    synchronized void restore(Map<String, String> values) {
+        nodes.clear();
+        tombstones.clear();
+        index = 0;
+        for (Map.Entry<String, String> en : new TreeMap<>(values).entrySet()) {
+            index++;
+            nodes.put(en.getKey(), new Node(en.getKey(), en.getValue(), index, index));
+        }
+        notifyAll();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            URI uri = exchange.getRequestURI();
+            String path = uri.getPath();
+            Map<String, String> query = parseQuery(uri.getRawQuery());
+            if (!path.startsWith("/v1/kv/") || !"GET".equals(exchange.getRequestMethod())) {
+                respond(exchange, 404, "", -1);
+                return;
+            }
+            String key = path.substring("/v1/kv/".length());
+            if (query.containsKey("wait")) {
+                watches.incrementAndGet();
+            } else {
+                reads.incrementAndGet();
+            }
+            if (failing) {
+                respond(exchange, 500, "rpc error: No cluster leader", -1);
+                return;
+            }
+            boolean recurse = query.containsKey("recurse");
+            long waitIndex = query.containsKey("index") ? Long.parseLong(query.get("index")) : 0L;
+            read(exchange, key, recurse, waitIndex, parseWait(query.get("wait")));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void read(HttpExchange exchange, String key, boolean recurse, long waitIndex, long wait)
+            throws IOException, InterruptedException {
+        StringBuilder b = new StringBuilder("[");
+        long current;
+        synchronized (this) {
+            long until = System.currentTimeMillis() + wait;
+            // like consul, block until the index has changed, also if it went backwards
+            while (waitIndex > 0 && indexOf(key, recurse) == waitIndex) {
+                long remaining = until - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    break;
+                }
+                wait(remaining);
+            }
+            current = indexOf(key, recurse);
+            for (Node node : nodes.values()) {
+                if (recurse ? node.key.startsWith(key) : node.key.equals(key)) {
+                    if (b.length() > 1) {
+                        b.append(',');
+                    }
+                    node.write(b);
+                }
+            }
+        }
+        if (b.length() == 1) {
+            respond(exchange, 404, "", current);
+        } else {
+            respond(exchange, 200, b.append(']').toString(), current);
+        }
+    }
+
+    private long indexOf(String key, boolean recurse) {
+        long result = 0L;
+        for (Node node : nodes.values()) {
+            if (recurse ? node.key.startsWith(key) : node.key.equals(key)) {
+                result = Math.max(result, node.modifyIndex);
+            }
+        }
+        for (Map.Entry<String, Long> en : tombstones.entrySet()) {
+            if (recurse ? en.getKey().startsWith(key) : en.getKey().equals(key)) {
+                result = Math.max(result, en.getValue());
+            }
+        }
+        return result > 0 ? result : Math.max(index, 1L);
+    }
+
+    private static long parseWait(String wait) {
+        if (wait == null || wait.isEmpty()) {
+            return 0L;
+        }
+        long amount = Long.parseLong(wait.substring(0, wait.length() - 1));
+        switch (wait.charAt(wait.length() - 1)) {
+            case 'm':
+                return TimeUnit.MINUTES.toMillis(amount);
+            case 's':
+                return TimeUnit.SECONDS.toMillis(amount);
+            default:
+                return Long.parseLong(wait);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body, long consulIndex)
+            throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        if (consulIndex >= 0) {
+            exchange.getResponseHeaders().add("X-Consul-Index", String.valueOf(consulIndex));
+            exchange.getResponseHeaders().add("X-Consul-Knownleader", "true");
+            exchange.getResponseHeaders().add("X-Consul-Lastcontact", "0");
+        }
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> result = new HashMap<>();
+        if (query != null) {
+            for (String param : query.split("&")) {
+                int idx = param.indexOf('=');
+                if (idx > 0) {
+                    result.put(param.substring(0, idx), param.substring(idx + 1));
+                } else if (!param.isEmpty()) {
+                    result.put(param, "");
+                }
+            }
+        }
+        return result;
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private static final class Node {
+        final String key;
+        final String value;
+        final long createIndex;
+        final long modifyIndex;
+
+        Node(String key, String value, long createIndex, long modifyIndex) {
+            this.key = key;
+            this.value = value;
+            this.createIndex = createIndex;
+            this.modifyIndex = modifyIndex;
+        }
+
+        void write(StringBuilder b) {
+            b.append("{\"LockIndex\":0,\"Key\":\"").append(escape(key)).append("\",\"Flags\":0,\"Value\":");
+            if (value != null) {
+                b.append('"').append(Base64.getEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8)))
+                        .append('"');
+            } else {
+                b.append("null");
+            }
+            b.append(",\"CreateIndex\":").append(createIndex).append(",\"ModifyIndex\":").append(modifyIndex)
+                    .append('}');
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.consul;
+
+import org.apache.tamaya.events.ConfigEvent;
+import org.apache.tamaya.events.ConfigEventListener;
+import org.apache.tamaya.events.ConfigEventManager;
+import org.apache.tamaya.events.PropertySourceChange;
+import org.apache.tamaya.spi.ChangeSupport;
+import org.apache.tamaya.spi.PropertyValue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the watch mode of {@link AbstractConsulPropertySource} against an emulated consul server.
+ */
+public class ConsulWatchTest {
+
+    private ConsulStubServer consul;
+    private ConsulPropertySource propertySource;
+
+    @Before
+    public void setUp() throws Exception {
+        consul = new ConsulStubServer();
+        consul.put("other/x", "y");
+        consul.put("config/a", "1");
+        propertySource = new ConsulPropertySource("config/", Collections.singletonList(consul.getHostAndPort()));
+        propertySource.setWatchTimeout(5000);
+    }
+
+    @After
+    public void tearDown() {
+        propertySource.setWatchEnabled(false);
+        consul.close();
+    }
+
+    @Test
+    public void testChangeSupportFollowsWatchMode() {
+        assertThat(propertySource.getChangeSupport()).isEqualTo(ChangeSupport.UNSUPPORTED);
+        propertySource.setWatchEnabled(true);
+        assertThat(propertySource.getChangeSupport()).isEqualTo(ChangeSupport.SUPPORTED);
+        propertySource.setWatchEnabled(false);
+        assertThat(propertySource.getChangeSupport()).isEqualTo(ChangeSupport.UNSUPPORTED);
+    }
+
+    @Test
+    public void testWatchAppliesChangedKeysByModifyIndex() throws Exception {
+        propertySource.setWatchEnabled(true);
+        await(() -> propertySource.get("a") != null);
+        assertThat(propertySource.getConsulIndex()).isEqualTo(2L);
+        assertThat(propertySource.getVersion()).isEqualTo("2");
+        PropertyValue a = propertySource.get("a");
+        long index = consul.put("config/b", "2");
+        await(() -> propertySource.get("b") != null);
+        assertThat(propertySource.getConsulIndex()).isEqualTo(index);
+        assertThat(propertySource.get("b").getMeta("modifyIndex")).isEqualTo(String.valueOf(index));
+        assertThat(propertySource.get("a")).isSameAs(a);
+        consul.put("config/a", "3");
+        await(() -> "3".equals(propertySource.get("a").getValue()));
+        consul.put("other/x", "z");
+        assertThat(propertySource.getProperties()).containsOnlyKeys("a", "b");
+        assertThat(consul.getReadCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testWatchDetectsDeletes() throws Exception {
+        final List<PropertySourceChange> changes = new CopyOnWriteArrayList<>();
+        ConfigEventListener listener = new ConfigEventListener() {
+            @Override
+            public void onConfigEvent(ConfigEvent<?> event) {
+                if (((PropertySourceChange) event).getResource().getName().equals(propertySource.getName())) {
+                    changes.add((PropertySourceChange) event);
+                }
+            }
+        };
+        propertySource.setWatchEnabled(true);
+        await(() -> propertySource.get("a") != null);
+        ConfigEventManager.getInstance().addListener(listener, PropertySourceChange.class);
+        try {
+            consul.put("config/b", "2");
+            await(() -> !changes.isEmpty());
+            assertThat(changes.get(0).isAdded("b")).isTrue();
+            assertThat(changes.get(0).getChanges()).hasSize(1);
+            long index = consul.delete("config/a");
+            await(() -> changes.size() == 2);
+            assertThat(changes.get(1).isRemoved("a")).isTrue();
+            assertThat(changes.get(1).getChanges()).hasSize(1);
+            assertThat(changes.get(1).getVersion()).isEqualTo(String.valueOf(index));
+            assertThat(propertySource.get("a")).isNull();
+            assertThat(propertySource.getProperties()).containsOnlyKeys("b");
+        } finally {
+            ConfigEventManager.getInstance().removeListener(listener, PropertySourceChange.class);
+        }
+    }
+
+    @Test
+    public void testWatchStartsOverWhenIndexGoesBackwards() throws Exception {
+        propertySource.setWatchEnabled(true);
+        consul.put("config/b", "2");
+        await(() -> propertySource.get("b") != null);
+        assertThat(propertySource.getConsulIndex()).isEqualTo(3L);
+        consul.restore(Collections.singletonMap("config/a", "5"));
+        await(() -> propertySource.get("b") == null);
+        assertThat(propertySource.get("a").getValue()).isEqualTo("5");
+        await(() -> propertySource.getConsulIndex() == 1L);
+        consul.put("config/c", "3");
+        await(() -> propertySource.get("c") != null);
+        assertThat(propertySource.getConsulIndex()).isEqualTo(2L);
+    }
+
+    @Test
+    public void testWatchBacksOffWhileUnavailable() throws Exception {
+        propertySource.setWatchEnabled(true);
+        await(() -> propertySource.get("a") != null);
+        consul.setFailing(true);
+        int watches = consul.getWatchCount();
+        // the pending query still succeeds, the following ones fail
+        consul.put("config/b", "2");
+        await(() -> propertySource.get("b") != null);
+        Thread.sleep(1500L);
+        // 1s after the first failure, 2s after the second one,...
+        assertThat(consul.getWatchCount() - watches).isLessThanOrEqualTo(3);
+        consul.setFailing(false);
+        consul.put("config/c", "3");
+        await(() -> propertySource.get("c") != null, 10000L);
+        consul.put("config/d", "4");
+        await(() -> propertySource.get("d") != null, 1000L);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        await(condition, 5000L);
+    }
+
+    private static void await(BooleanSupplier condition, long timeout) throws InterruptedException {
+        long until = System.currentTimeMillis() + timeout;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("condition not met in time").isLessThan(until);
+            Thread.sleep(10L);
+        }
+    }
+}
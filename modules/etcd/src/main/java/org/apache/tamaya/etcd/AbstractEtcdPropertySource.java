@@ -18,6 +18,10 @@
  */
 package org.apache.tamaya.etcd;
 
+import org.apache.tamaya.events.ConfigEventManager;
+import org.apache.tamaya.events.ConfigMetrics;
+import org.apache.tamaya.events.PropertySourceChangeBuilder;
+import org.apache.tamaya.functions.BackgroundRefresher;
 import org.apache.tamaya.mutableconfig.ConfigChangeRequest;
 import org.apache.tamaya.mutableconfig.spi.MutablePropertySource;
 import org.apache.tamaya.spi.ChangeSupport;
@@ -25,8 +29,10 @@ import org.apache.tamaya.spi.PropertyValue;
 import org.apache.tamaya.spisupport.propertysource.BasePropertySource;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -35,26 +41,57 @@ import java.util.logging.Logger;
  * {@code etcd.prefix} as system property maps the etcd based configuration
  * to this prefix namespace. Etcd servers are configured as {@code etcd.server.urls} system or environment property.
  * Etcd can be disabled by setting {@code tamaya.etcdprops.disable} either as environment or system property.
+ * By default the data is reloaded completely after the cache timeout, blocking the access triggering the reload. In
+ * asynchronous refresh mode the current data is always returned immediately and reloaded in the background shortly
+ * before the cache timeout, see {@link BackgroundRefresher}. In watch mode changes are instead streamed from
+ * etcd, applied key by key and published as {@code PropertySourceChange} events, if {@code tamaya-events} is
+ * available.
+ * By default the etcd v2 keys API is used. With API version 3 the keys starting with {@code <directory>/} are read
+ * from the JSON gateway of the etcd v3 API instead, in pages pinned to a single revision, and watched starting from
+ * that revision. Reloads then first check with a single request without values, if any key has changed, and keep
+ * the current data otherwise.
+ * While refreshes fail, the values returned carry the {@code staleness} and {@code refreshFailures} meta
+ * entries.
  */
 public abstract class AbstractEtcdPropertySource extends BasePropertySource
         implements MutablePropertySource{
 
     private static final Logger LOG = Logger.getLogger(AbstractEtcdPropertySource.class.getName());
 
-    private String directory ="";
+    private static final boolean EVENTS_AVAILABLE = checkForEvents();
 
-    private List<String> servers = new ArrayList<>();
+    private volatile String directory ="";
 
-    private List<EtcdAccessor> etcdBackends = new ArrayList<>();
+    private volatile List<String> servers = new ArrayList<>();
+
+    private volatile EtcdCluster cluster = new EtcdCluster(Collections.emptyList());
 
     private Map<String,String> metaData = new HashMap<>();
 
-    private AtomicLong timeoutDuration = new AtomicLong(TimeUnit.MILLISECONDS.convert(5, TimeUnit.MINUTES));
+    private final BackgroundRefresher refresher = new BackgroundRefresher(getName(),
+            TimeUnit.MILLISECONDS.convert(5, TimeUnit.MINUTES), this::reloadOrFail);
+
+    private volatile boolean refreshAsync;
+
+    private volatile int apiVersion = 2;
+
+    private volatile int pageSize = 1000;
+
+    /** The last etcd index the data reflects, or 0. */
+    private AtomicLong etcdIndex = new AtomicLong();
+
+    private AtomicLong watchTimeout = new AtomicLong(TimeUnit.MILLISECONDS.convert(60, TimeUnit.SECONDS));
 
-    private AtomicLong timeout = new AtomicLong();
+    private volatile EtcdWatcher watcher;
 
-    /** The Hazelcast config map used. */
-    private Map<String, PropertyValue> configMap = new HashMap<>();
+    /** Guards starting and stopping the watcher, separate from the data lock held while loading. */
+    private final Object watcherLock = new Object();
+
+    /** The etcd config map used. */
+    private volatile Map<String, PropertyValue> configMap = new ConcurrentHashMap<>();
+
+    /** The key prefix the data has been read for with the v3 API, or null. */
+    private volatile String snapshotPrefix;
 
     public AbstractEtcdPropertySource(){
         this("etcd");
@@ -65,12 +102,23 @@ public abstract class AbstractEtcdPropertySource extends BasePropertySource
         metaData.put("source", "etcd");
     }
 
+    private static boolean checkForEvents() {
+        try{
+            Class.forName("org.apache.tamaya.events.PropertySourceChange", false,
+                    AbstractEtcdPropertySource.class.getClassLoader());
+            return true;
+        } catch(Exception | LinkageError e){
+            LOG.fine("tamaya-events not installed, will not publish etcd changes.");
+            return false;
+        }
+    }
+
     /**
      * Get the current timeout, when a reload will be triggered on access.
      * @return the current timeout, or 0 if no data has been loaded at all.
      */
     public long getValidUntil(){
-        return timeout.get();
+        return refresher.getValidUntil();
     }
 
     /**
@@ -78,7 +126,7 @@ public abstract class AbstractEtcdPropertySource extends BasePropertySource
      * @return the timeout duration after which data will be reloaded.
      */
     public long getCachePeriod(){
-        return timeoutDuration.get();
+        return refresher.getRefreshPeriod();
     }
 
     /**
@@ -86,7 +134,179 @@ public abstract class AbstractEtcdPropertySource extends BasePropertySource
      * @param millis the millis
      */
     public void setCacheTimeout(long millis){
-        this.timeoutDuration.set(millis);
+        this.refresher.setRefreshPeriod(millis);
+    }
+
+    /**
+     * Checks if the data is reloaded in the background, so accesses never wait for a reload, except for the
+     * first load.
+     * @return true, if asynchronous refresh mode is enabled.
+     */
+    public boolean isRefreshAsync(){
+        return refreshAsync;
+    }
+
+    /**
+     * Enables or disables asynchronous refresh mode. In asynchronous refresh mode the current data is returned
+     * immediately and reloaded in the background shortly before the cache timeout.
+     * @param refreshAsync true, to enable asynchronous refresh mode.
+     */
+    public void setRefreshAsync(boolean refreshAsync){
+        this.refreshAsync = refreshAsync;
+    }
+
+    /**
+     * Get the maximal time an access waits for the first load in asynchronous refresh mode.
+     * @return the time in ms, 0 waits until the load has completed.
+     */
+    public long getInitialWait(){
+        return refresher.getInitialWait();
+    }
+
+    /**
+     * Set the maximal time an access waits for the first load in asynchronous refresh mode.
+     * @param millis the time in ms, 0 waits until the load has completed.
+     */
+    public void setInitialWait(long millis){
+        this.refresher.setInitialWait(millis);
+    }
+
+    /**
+     * Get the age of the data, i.e. the time since it has been loaded completely the last time.
+     * @return the age in ms, or -1 if no data has been loaded yet.
+     */
+    public long getStaleness(){
+        return refresher.getStaleness();
+    }
+
+    /**
+     * Get the exception of the last failed reload.
+     * @return the exception, or null if no reload has failed yet.
+     */
+    public Exception getLastRefreshFailure(){
+        return refresher.getLastFailure();
+    }
+
+    /**
+     * Get the number of failed reloads.
+     * @return the number of failed reloads.
+     */
+    public long getRefreshFailureCount(){
+        return refresher.getFailureCount();
+    }
+
+    /**
+     * Checks if changes are streamed from etcd using watches.
+     * @return true, if watch mode is enabled.
+     */
+    public boolean isWatchEnabled(){
+        return watcher!=null;
+    }
+
+    /**
+     * Enables or disables watch mode. In watch mode a background thread long polls etcd for changes of the
+     * directory and applies them to the cached data, so the data is not reloaded after the cache timeout.
+     * @param enabled true, to enable watch mode.
+     */
+    public void setWatchEnabled(boolean enabled){
+        synchronized (watcherLock) {
+            if(enabled && watcher==null){
+                watcher = new EtcdWatcher(this);
+                watcher.start();
+            } else if(!enabled && watcher!=null){
+                watcher.stop();
+                watcher = null;
+            }
+        }
+    }
+
+    /**
+     * Get the time a single watch request waits for a change, before it is reissued.
+     * @return the watch timeout in ms.
+     */
+    public long getWatchTimeout(){
+        return watchTimeout.get();
+    }
+
+    /**
+     * Set the time a single watch request waits for a change, before it is reissued.
+     * @param millis the millis
+     */
+    public void setWatchTimeout(long millis){
+        this.watchTimeout.set(millis);
+    }
+
+    /**
+     * Get the latency percentile of an etcd server, after which a read is additionally sent to the next server.
+     * @return the percentile, or 0 if reads are not hedged.
+     */
+    public int getHedgePercentile(){
+        return cluster.getHedgePercentile();
+    }
+
+    /**
+     * Set the latency percentile of an etcd server, after which a read is additionally sent to the next server.
+     * The first response is used, the other request is aborted.
+     * @param percentile the percentile 1 to 100, or 0 to disable hedging.
+     */
+    public void setHedgePercentile(int percentile){
+        this.cluster.setHedgePercentile(percentile);
+    }
+
+    /**
+     * Get the etcd API version used.
+     * @return 2 for the v2 keys API, 3 for the v3 JSON gateway.
+     */
+    public int getApiVersion(){
+        return apiVersion;
+    }
+
+    /**
+     * Sets the etcd API version to use. Data stored with the v2 API is not visible with the v3 API and vice versa.
+     * @param apiVersion 2 for the v2 keys API, 3 for the v3 JSON gateway.
+     */
+    public void setApiVersion(int apiVersion){
+        if(apiVersion!=2 && apiVersion!=3){
+            throw new IllegalArgumentException("Unsupported etcd API version: " + apiVersion);
+        }
+        if(this.apiVersion!=apiVersion) {
+            this.apiVersion = apiVersion;
+            this.etcdIndex.set(0L);
+            refresh();
+        }
+    }
+
+    /**
+     * Get the maximal number of keys read per request with the v3 API.
+     * @return the page size, 0 reads all keys with a single request.
+     */
+    public int getPageSize(){
+        return pageSize;
+    }
+
+    /**
+     * Set the maximal number of keys read per request with the v3 API.
+     * @param pageSize the page size, 0 reads all keys with a single request.
+     */
+    public void setPageSize(int pageSize){
+        this.pageSize = Math.max(0, pageSize);
+    }
+
+    /**
+     * Get the key prefix read with the v3 API, derived from the directory.
+     * @return the prefix, {@code ""} for all keys.
+     */
+    String getKeyPrefix(){
+        String dir = this.directory;
+        return dir.isEmpty() || dir.endsWith("/")?dir:dir + '/';
+    }
+
+    /**
+     * Get the last etcd index the data reflects.
+     * @return the etcd index, or 0 if unknown.
+     */
+    public long getEtcdIndex(){
+        return etcdIndex.get();
     }
 
     /**
@@ -110,12 +330,10 @@ public abstract class AbstractEtcdPropertySource extends BasePropertySource
 
     public void setServer(List<String> servers) {
         if(!Objects.equals(this.servers, servers)) {
-            List<EtcdAccessor> etcdBackends = new ArrayList<>();
-            for (String s : servers) {
-                etcdBackends.add(new EtcdAccessor(s));
-            }
+            EtcdCluster cluster = new EtcdCluster(servers);
+            cluster.setHedgePercentile(this.cluster.getHedgePercentile());
             this.servers = Collections.unmodifiableList(servers);
-            this.etcdBackends = etcdBackends;
+            this.cluster = cluster;
             metaData.put("backends", servers.toString());
             refresh();
         }
@@ -133,30 +351,199 @@ public abstract class AbstractEtcdPropertySource extends BasePropertySource
      * Checks for a cache timeout and optionally reloads the data.
      */
     public void checkRefresh(){
-        if(this.timeout.get() < System.currentTimeMillis()){
+        if(isWatchEnabled()){
+            return;
+        }
+        if(refreshAsync){
+            refresher.access();
+        } else if(refresher.getValidUntil() < System.currentTimeMillis()){
             refresh();
         }
     }
 
     /**
-     * Reloads the data and updated the cache timeouts.
+     * Reloads the data and updated the cache timeouts. In asynchronous refresh mode the data is reloaded in the
+     * background.
      */
     public void refresh() {
-        for(EtcdAccessor accessor: this.etcdBackends){
+        if(servers.isEmpty()){
+            return;
+        }
+        if(refreshAsync){
+            refresher.trigger();
+        }else{
+            refresher.refreshNow();
+        }
+    }
+
+    private Object reloadOrFail() {
+        if(!reload()){
+            throw new IllegalStateException("No etcd server accessible: " + servers);
+        }
+        return null;
+    }
+
+    /**
+     * Reloads the data from the first etcd server accessible.
+     * @return true, if the data could be loaded.
+     */
+    private synchronized boolean reload() {
+        long start = EVENTS_AVAILABLE?ConfigMetrics.start():0L;
+        boolean loaded = loadFromBackends();
+        if(EVENTS_AVAILABLE){
+            ConfigMetrics.refreshed(getName(), start, loaded);
+        }
+        return loaded;
+    }
+
+    private boolean loadFromBackends() {
+        String dir = this.directory;
+        String prefix = getKeyPrefix();
+        boolean v3 = apiVersion==3;
+        int pages = pageSize;
+        Map<String, PropertyValue> current = this.configMap;
+        long currentIndex = this.etcdIndex.get();
+        boolean checkUnchanged = v3 && currentIndex>0 && prefix.equals(this.snapshotPrefix);
+        try{
+            Snapshot snapshot = cluster.read((accessor, abortHook) -> {
+                if(checkUnchanged){
+                    // avoid reading all values again, if nothing has changed
+                    long revision = accessor.getV3().checkUnchanged(prefix, currentIndex, current.size());
+                    if(revision>0){
+                        return new Snapshot(current, revision);
+                    }
+                }
+                Map<String, PropertyValue> values = new ConcurrentHashMap<>();
+                Consumer<EtcdNode> consumer = node -> {
+                    if(node.getValue()!=null){
+                        values.put(node.getKey(), toPropertyValue(node));
+                    }
+                };
+                long index = v3?accessor.getV3().readPrefix(prefix, pages, consumer, abortHook)
+                        :accessor.readNodes(dir, consumer, abortHook);
+                return new Snapshot(values, index);
+            });
+            this.configMap = snapshot.values;
+            this.etcdIndex.set(Math.max(0L, snapshot.index));
+            this.snapshotPrefix = v3?prefix:null;
+            return true;
+        } catch(Exception e){
+            LOG.log(Level.FINE, "etcd access failed for " + getName() + " on " + servers, e);
+            return false;
+        }
+    }
+
+    /**
+     * Reloads the data completely and publishes the differences to the previous data.
+     * @return true, if the data could be loaded.
+     */
+    synchronized boolean resync() {
+        Map<String, PropertyValue> previous = this.configMap;
+        if(!reload()){
+            return false;
+        }
+        publishChanges(values(previous), values(this.configMap));
+        return true;
+    }
+
+    /**
+     * Applies a change read by a watch request, unless the data has been reloaded meanwhile.
+     * @param watchedIndex the etcd index, after which the change has been watched.
+     * @param event the change as returned by {@link EtcdAccessor#watch(String, long, int)}, not null.
+     */
+    void applyWatchEvent(long watchedIndex, EtcdResponse event) {
+        applyWatchEvents(watchedIndex, Collections.singletonList(event));
+    }
+
+    /**
+     * Applies the changes read by a watch request in order and publishes them as a single change, unless the data
+     * has been reloaded meanwhile.
+     * @param watchedIndex the etcd index, after which the changes have been watched.
+     * @param events the changes, not null.
+     */
+    synchronized void applyWatchEvents(long watchedIndex, List<EtcdResponse> events) {
+        if(etcdIndex.get()!=watchedIndex){
+            return;
+        }
+        Map<String, String> oldValues = new HashMap<>();
+        Map<String, String> newValues = new HashMap<>();
+        long index = watchedIndex;
+        for(EtcdResponse event:events){
+            EtcdNode node = event.getNode();
+            if(event.isRemoval()){
+                if(node.isDir()){
+                    String prefix = node.getKey() + '/';
+                    for(Iterator<Map.Entry<String, PropertyValue>> it = configMap.entrySet().iterator(); it.hasNext();){
+                        Map.Entry<String, PropertyValue> en = it.next();
+                        if(en.getKey().startsWith(prefix)){
+                            recordOldValue(oldValues, en.getKey(), en.getValue());
+                            newValues.remove(en.getKey());
+                            it.remove();
+                        }
+                    }
+                } else {
+                    recordOldValue(oldValues, node.getKey(), configMap.remove(node.getKey()));
+                    newValues.remove(node.getKey());
+                }
+            } else if(!node.isDir() && node.getValue()!=null){
+                recordOldValue(oldValues, node.getKey(), configMap.put(node.getKey(), toPropertyValue(node)));
+                newValues.put(node.getKey(), node.getValue());
+            }
+            index = Math.max(index, node.getModifiedIndex());
+        }
+        etcdIndex.set(index);
+        publishChanges(oldValues, newValues);
+    }
+
+    /**
+     * Records the value of a key before the changes applied, the first time the key is touched. Keys not present
+     * before are recorded with a null value, so later changes of the same batch do not replace it.
+     * @param oldValues the values before the changes, not null.
+     * @param key the key touched, not null.
+     * @param previous the value replaced by the current change, or null.
+     */
+    private static void recordOldValue(Map<String, String> oldValues, String key, PropertyValue previous){
+        if(!oldValues.containsKey(key)){
+            oldValues.put(key, previous==null?null:previous.getValue());
+        }
+    }
+
+    private void publishChanges(Map<String, String> oldValues, Map<String, String> newValues) {
+        if(EVENTS_AVAILABLE){
             try{
-                Map<String, String> props = accessor.getProperties(directory);
-                if(!props.containsKey("_ERROR")) {
-                    this.configMap = mapPrefix(props);
-                    this.timeout.set(System.currentTimeMillis() + timeoutDuration.get());
-                } else{
-                    LOG.log(Level.FINE, "etcd error on " + accessor.getUrl() + ": " + props.get("_ERROR"));
+                PropertySourceChangeBuilder builder = PropertySourceChangeBuilder.of(this).setVersion(getVersion())
+                        .addChanges(oldValues, newValues);
+                if(!builder.isEmpty()){
+                    ConfigEventManager.getInstance().fireEvent(builder.build());
                 }
-            } catch(Exception e){
-                LOG.log(Level.FINE, "etcd access failed on " + accessor.getUrl() + ", trying next...", e);
+            } catch(Exception | ServiceConfigurationError e){
+                LOG.log(Level.WARNING, "Failed to publish etcd changes of " + getName(), e);
             }
         }
     }
 
+    private static Map<String, String> values(Map<String, PropertyValue> properties) {
+        Map<String, String> values = new HashMap<>();
+        for(Map.Entry<String, PropertyValue> en:properties.entrySet()){
+            values.put(en.getKey(), en.getValue().getValue());
+        }
+        return values;
+    }
+
+    /**
+     * Get the accessors of the etcd servers configured.
+     * @return the accessors, not null.
+     */
+    List<EtcdAccessor> getBackends() {
+        return cluster.getPreferred();
+    }
+
+    @Override
+    public String getVersion() {
+        long index = etcdIndex.get();
+        return index>0?String.valueOf(index):super.getVersion();
+    }
+
     @Override
     public int getOrdinal() {
         PropertyValue configuredOrdinal = get(TAMAYA_ORDINAL);
@@ -174,13 +561,13 @@ public abstract class AbstractEtcdPropertySource extends BasePropertySource
     @Override
     public PropertyValue get(String key) {
         checkRefresh();
-        return configMap.get(key);
+        return refresher.decorate(configMap.get(key));
     }
 
     @Override
     public Map<String, PropertyValue> getProperties() {
         checkRefresh();
-        return configMap;
+        return refresher.decorate(configMap);
     }
 
     @Override
@@ -188,46 +575,27 @@ public abstract class AbstractEtcdPropertySource extends BasePropertySource
         return ChangeSupport.SUPPORTED;
     }
 
-    private Map<String, PropertyValue> mapPrefix(Map<String, String> props) {
-
-        Map<String, PropertyValue> values = new HashMap<>();
-        // Evaluate keys
-        for(Map.Entry<String,String> entry:props.entrySet()) {
-            if (!entry.getKey().startsWith("_")) {
-                PropertyValue val = values.get(entry.getKey());
-                if (val == null) {
-                    val = PropertyValue.createValue(entry.getKey(), "").setMeta("source", getName()).setMeta(metaData);
-                    values.put(entry.getKey(), val);
-                }
-            }
+    private PropertyValue toPropertyValue(EtcdNode node) {
+        PropertyValue val = PropertyValue.createValue(node.getKey(), node.getValue())
+                .setMeta("source", getName()).setMeta(metaData);
+        if(node.getCreatedIndex()>=0){
+            val.setMeta("createdIndex", String.valueOf(node.getCreatedIndex()));
         }
-        // add getMeta entries
-        for(Map.Entry<String,String> entry:props.entrySet()) {
-            if (entry.getKey().startsWith("_")) {
-                String key = entry.getKey().substring(1);
-                for(String field:new String[]{".createdIndex", ".modifiedIndex", ".ttl",
-                        ".expiration", ".source"}) {
-                    if (key.endsWith(field)) {
-                        key = key.substring(0, key.length() - field.length());
-                        PropertyValue val = values.get(key);
-                        if (val != null) {
-                            val.setMeta(field, entry.getValue());
-                        }
-                    }
-                }
-            }
+        if(node.getModifiedIndex()>=0){
+            val.setMeta("modifiedIndex", String.valueOf(node.getModifiedIndex()));
         }
-        // Map to createValue map.
-//        Map<String, PropertyValue> values = new HashMap<>();
-        for(Map.Entry<String,PropertyValue> en:values.entrySet()) {
-            values.put(en.getKey(), en.getValue());
+        if(node.getTtl()>=0){
+            val.setMeta("ttl", String.valueOf(node.getTtl()));
         }
-        return values;
+        if(node.getExpiration()!=null){
+            val.setMeta("expiration", node.getExpiration());
+        }
+        return val;
     }
 
     @Override
     public void applyChange(ConfigChangeRequest configChange) {
-        for(EtcdAccessor accessor: etcdBackends){
+        for(EtcdAccessor accessor: cluster.getMembers()){
             try{
                 for(String k: configChange.getRemovedProperties()){
                     Map<String,String> res = accessor.delete(k);
@@ -268,6 +636,23 @@ public abstract class AbstractEtcdPropertySource extends BasePropertySource
     protected String toStringValues() {
         return  super.toStringValues() +
                 "  directory=" + directory + '\n' +
-                "  servers=" + this.servers + '\n';
+                "  servers=" + this.servers + '\n' +
+                "  cluster=" + this.cluster + '\n' +
+                "  refreshAsync=" + refreshAsync + '\n' +
+                "  staleness=" + refresher.getStaleness() + '\n' +
+                "  refreshFailures=" + refresher.getFailureCount() + '\n';
+    }
+
+    /**
+     * The data read from etcd, along with the etcd index it reflects.
+     */
+    private static final class Snapshot {
+        private final Map<String, PropertyValue> values;
+        private final long index;
+
+        Snapshot(Map<String, PropertyValue> values, long index) {
+            this.values = values;
+            this.index = index;
+        }
     }
 }
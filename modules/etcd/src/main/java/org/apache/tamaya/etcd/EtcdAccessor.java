@@ -18,20 +18,24 @@
  */
 package org.apache.tamaya.etcd;
 
-import java.io.StringReader;
+import java.io.IOException;
+import java.io.PushbackInputStream;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.json.Json;
-import javax.json.JsonArray;
-import javax.json.JsonObject;
-import javax.json.JsonReader;
-import javax.json.JsonReaderFactory;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParserFactory;
 
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpStatus;
 import org.apache.http.NameValuePair;
@@ -41,18 +45,31 @@ import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.util.EntityUtils;
 
 /**
- * Accessor for reading to or writing from an etcd endpoint.
+ * Accessor for reading to or writing from an etcd endpoint. All accessors share a pool of keep-alive connections,
+ * each accessor tracks the health and read latencies of its endpoint.
  */
 class EtcdAccessor {
 
     private static final Logger LOG = Logger.getLogger(EtcdAccessor.class.getName());
 
+    /**
+     * The maximal number of pooled connections per etcd endpoint.
+     */
+    private static final int MAX_CONNECTIONS_PER_ENDPOINT = 20;
+
+    /**
+     * The http client shared by all accessors, reusing connections.
+     */
+    private static final CloseableHttpClient HTTP_CLIENT = createHttpClient();
+
     /**
      * Timeout in seconds.
      */
@@ -71,17 +88,17 @@ class EtcdAccessor {
      */
     public static final String JOHNZON_SUPPORTS_COMMENTS_PROP = "org.apache.johnzon.supports-comments";
     /**
-     * The JSON reader factory used.
+     * The JSON parser factory used.
      */
-    private final JsonReaderFactory readerFactory = initReaderFactory();
+    private final JsonParserFactory parserFactory = initParserFactory();
 
     /**
-     * Initializes the factory to be used for creating readers.
+     * Initializes the factory to be used for creating parsers.
      */
-    private JsonReaderFactory initReaderFactory() {
+    private JsonParserFactory initParserFactory() {
         final Map<String, Object> config = new HashMap<>();
         config.put(JOHNZON_SUPPORTS_COMMENTS_PROP, true);
-        return Json.createReaderFactory(config);
+        return Json.createParserFactory(config);
     }
 
     /**
@@ -89,9 +106,22 @@ class EtcdAccessor {
      */
     private final String serverURL;
     /**
-     * The http client.
+     * The health of the endpoint.
      */
-    private final CloseableHttpClient httpclient = HttpClients.createDefault();
+    private final EtcdEndpointHealth health = new EtcdEndpointHealth();
+    /**
+     * The accessor of the v3 API of the endpoint.
+     */
+    private final EtcdV3Accessor v3;
+
+    private static CloseableHttpClient createHttpClient() {
+        final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ENDPOINT);
+        connectionManager.setMaxTotal(10 * MAX_CONNECTIONS_PER_ENDPOINT);
+        connectionManager.setValidateAfterInactivity(2000);
+        return HttpClients.custom().setConnectionManager(connectionManager)
+                .evictExpiredConnections().evictIdleConnections(30, TimeUnit.SECONDS).build();
+    }
 
     /**
      * Creates a new instance with the basic access url.
@@ -109,6 +139,16 @@ class EtcdAccessor {
         } else {
             serverURL = server;
         }
+        this.v3 = new EtcdV3Accessor(serverURL, health, parserFactory);
+    }
+
+    /**
+     * Get the http client shared by all accessors.
+     *
+     * @return the http client, not null.
+     */
+    static CloseableHttpClient getHttpClient() {
+        return HTTP_CLIENT;
     }
 
     /**
@@ -119,11 +159,10 @@ class EtcdAccessor {
     public String getVersion() {
         String version = "<ERROR>";
         try {
-            final CloseableHttpClient httpclient = HttpClients.createDefault();
             final HttpGet httpGet = new HttpGet(serverURL + "/version");
             httpGet.setConfig(RequestConfig.copy(RequestConfig.DEFAULT).setSocketTimeout(socketTimeout)
-                    .setConnectTimeout(timeout).build());
-            try (CloseableHttpResponse response = httpclient.execute(httpGet)) {
+                    .setConnectionRequestTimeout(getTimeoutMillis()).setConnectTimeout(connectTimeout).build());
+            try (CloseableHttpResponse response = HTTP_CLIENT.execute(httpGet)) {
                 if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
                     final HttpEntity entity = response.getEntity();
                     // and ensure it is fully consumed
@@ -171,36 +210,11 @@ class EtcdAccessor {
     public Map<String, String> get(String key) {
         final Map<String, String> result = new HashMap<>();
         try {
-            final HttpGet httpGet = new HttpGet(serverURL + "/v2/keys/" + key);
-            httpGet.setConfig(RequestConfig.copy(RequestConfig.DEFAULT).setSocketTimeout(socketTimeout)
-                    .setConnectionRequestTimeout(timeout).setConnectTimeout(connectTimeout).build());
-            try (CloseableHttpResponse response = httpclient.execute(httpGet)) {
-                if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
-                    final HttpEntity entity = response.getEntity();
-                    final JsonReader reader = readerFactory
-                            .createReader(new StringReader(EntityUtils.toString(entity)));
-                    final JsonObject o = reader.readObject();
-                    final JsonObject node = o.getJsonObject("value");
-                    if (node.containsKey("key")) {
-                        result.put(key, node.getString("key"));
-                        result.put("_" + key + ".source", "[etcd]" + serverURL);
-                    }
-                    if (node.containsKey("createdIndex")) {
-                        result.put("_" + key + ".createdIndex", String.valueOf(node.getInt("createdIndex")));
-                    }
-                    if (node.containsKey("modifiedIndex")) {
-                        result.put("_" + key + ".modifiedIndex", String.valueOf(node.getInt("modifiedIndex")));
-                    }
-                    if (node.containsKey("expiration")) {
-                        result.put("_" + key + ".expiration", String.valueOf(node.getString("expiration")));
-                    }
-                    if (node.containsKey("ttl")) {
-                        result.put("_" + key + ".ttl", String.valueOf(node.getInt("ttl")));
-                    }
-                    EntityUtils.consume(entity);
-                } else {
-                    result.put("_" + key + ".NOT_FOUND.target", "[etcd]" + serverURL);
-                }
+            final EtcdResponse response = execute(new HttpGet(serverURL + "/v2/keys/" + key), socketTimeout, null);
+            if (response.getErrorCode() == 0 && response.getNode() != null) {
+                addNode(result, key, response.getNode());
+            } else {
+                result.put("_" + key + ".NOT_FOUND.target", "[etcd]" + serverURL);
             }
         } catch (final Exception e) {
             LOG.log(Level.INFO, "Error reading key '" + key + "' from etcd: " + serverURL, e);
@@ -267,39 +281,19 @@ class EtcdAccessor {
         final Map<String, String> result = new HashMap<>();
         try {
             final HttpPut put = new HttpPut(serverURL + "/v2/keys/" + key);
-            put.setConfig(RequestConfig.copy(RequestConfig.DEFAULT).setSocketTimeout(socketTimeout)
-                    .setConnectionRequestTimeout(timeout).setConnectTimeout(connectTimeout).build());
             final List<NameValuePair> nvps = new ArrayList<>();
             nvps.add(new BasicNameValuePair("value", value));
             if (ttlSeconds != null) {
                 nvps.add(new BasicNameValuePair("ttl", ttlSeconds.toString()));
             }
             put.setEntity(new UrlEncodedFormEntity(nvps));
-            try (CloseableHttpResponse response = httpclient.execute(put)) {
-                if (response.getStatusLine().getStatusCode() == HttpStatus.SC_CREATED
-                        || response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
-                    final HttpEntity entity = response.getEntity();
-                    final JsonReader reader = readerFactory
-                            .createReader(new StringReader(EntityUtils.toString(entity)));
-                    final JsonObject o = reader.readObject();
-                    final JsonObject node = o.getJsonObject("value");
-                    if (node.containsKey("createdIndex")) {
-                        result.put("_" + key + ".createdIndex", String.valueOf(node.getInt("createdIndex")));
-                    }
-                    if (node.containsKey("modifiedIndex")) {
-                        result.put("_" + key + ".modifiedIndex", String.valueOf(node.getInt("modifiedIndex")));
-                    }
-                    if (node.containsKey("expiration")) {
-                        result.put("_" + key + ".expiration", String.valueOf(node.getString("expiration")));
-                    }
-                    if (node.containsKey("ttl")) {
-                        result.put("_" + key + ".ttl", String.valueOf(node.getInt("ttl")));
-                    }
-                    result.put(key, node.getString("key"));
-                    result.put("_" + key + ".source", "[etcd]" + serverURL);
-                    parsePrevNode(key, result, node);
-                    EntityUtils.consume(entity);
-                }
+            final EtcdResponse response = execute(put, socketTimeout, null);
+            if (response.getErrorCode() == 0 && response.getNode() != null) {
+                addNode(result, key, response.getNode());
+                addPrevNode(result, key, response.getPrevNode());
+            } else if (response.getErrorCode() != 0) {
+                result.put("_ERROR", "Error writing '" + key + "' to etcd: " + serverURL + ": "
+                        + response.getMessage());
             }
         } catch (final Exception e) {
             LOG.log(Level.INFO, "Error writing to etcd: " + serverURL, e);
@@ -331,31 +325,10 @@ class EtcdAccessor {
     public Map<String, String> delete(String key) {
         final Map<String, String> result = new HashMap<>();
         try {
-            final HttpDelete delete = new HttpDelete(serverURL + "/v2/keys/" + key);
-            delete.setConfig(RequestConfig.copy(RequestConfig.DEFAULT).setSocketTimeout(socketTimeout)
-                    .setConnectionRequestTimeout(timeout).setConnectTimeout(connectTimeout).build());
-            try (CloseableHttpResponse response = httpclient.execute(delete)) {
-                if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
-                    final HttpEntity entity = response.getEntity();
-                    final JsonReader reader = readerFactory
-                            .createReader(new StringReader(EntityUtils.toString(entity)));
-                    final JsonObject o = reader.readObject();
-                    final JsonObject node = o.getJsonObject("value");
-                    if (node.containsKey("createdIndex")) {
-                        result.put("_" + key + ".createdIndex", String.valueOf(node.getInt("createdIndex")));
-                    }
-                    if (node.containsKey("modifiedIndex")) {
-                        result.put("_" + key + ".modifiedIndex", String.valueOf(node.getInt("modifiedIndex")));
-                    }
-                    if (node.containsKey("expiration")) {
-                        result.put("_" + key + ".expiration", String.valueOf(node.getString("expiration")));
-                    }
-                    if (node.containsKey("ttl")) {
-                        result.put("_" + key + ".ttl", String.valueOf(node.getInt("ttl")));
-                    }
-                    parsePrevNode(key, result, o);
-                    EntityUtils.consume(entity);
-                }
+            final EtcdResponse response = execute(new HttpDelete(serverURL + "/v2/keys/" + key), socketTimeout, null);
+            if (response.getErrorCode() == 0 && response.getNode() != null) {
+                addNode(result, key, response.getNode());
+                addPrevNode(result, key, response.getPrevNode());
             }
         } catch (final Exception e) {
             LOG.log(Level.INFO, "Error deleting key '" + key + "' from etcd: " + serverURL, e);
@@ -364,25 +337,42 @@ class EtcdAccessor {
         return result;
     }
 
-    private static void parsePrevNode(String key, Map<String, String> result, JsonObject o) {
-        if (o.containsKey("prevNode")) {
-            final JsonObject prevNode = o.getJsonObject("prevNode");
-            if (prevNode.containsKey("createdIndex")) {
-                result.put("_" + key + ".prevNode.createdIndex",
-                        String.valueOf(prevNode.getInt("createdIndex")));
+    private void addNode(Map<String, String> result, String key, EtcdNode node) {
+        if (node.getValue() != null) {
+            result.put(key, node.getValue());
+        }
+        if (node.getCreatedIndex() >= 0) {
+            result.put("_" + key + ".createdIndex", String.valueOf(node.getCreatedIndex()));
+        }
+        if (node.getModifiedIndex() >= 0) {
+            result.put("_" + key + ".modifiedIndex", String.valueOf(node.getModifiedIndex()));
+        }
+        if (node.getExpiration() != null) {
+            result.put("_" + key + ".expiration", node.getExpiration());
+        }
+        if (node.getTtl() >= 0) {
+            result.put("_" + key + ".ttl", String.valueOf(node.getTtl()));
+        }
+        result.put("_" + key + ".source", "[etcd]" + serverURL);
+    }
+
+    private static void addPrevNode(Map<String, String> result, String key, EtcdNode prevNode) {
+        if (prevNode != null) {
+            if (prevNode.getCreatedIndex() >= 0) {
+                result.put("_" + key + ".prevNode.createdIndex", String.valueOf(prevNode.getCreatedIndex()));
             }
-            if (prevNode.containsKey("modifiedIndex")) {
-                result.put("_" + key + ".prevNode.modifiedIndex",
-                        String.valueOf(prevNode.getInt("modifiedIndex")));
+            if (prevNode.getModifiedIndex() >= 0) {
+                result.put("_" + key + ".prevNode.modifiedIndex", String.valueOf(prevNode.getModifiedIndex()));
             }
-            if (prevNode.containsKey("expiration")) {
-                result.put("_" + key + ".prevNode.expiration",
-                        String.valueOf(prevNode.getString("expiration")));
+            if (prevNode.getExpiration() != null) {
+                result.put("_" + key + ".prevNode.expiration", prevNode.getExpiration());
             }
-            if (prevNode.containsKey("ttl")) {
-                result.put("_" + key + ".prevNode.ttl", String.valueOf(prevNode.getInt("ttl")));
+            if (prevNode.getTtl() >= 0) {
+                result.put("_" + key + ".prevNode.ttl", String.valueOf(prevNode.getTtl()));
+            }
+            if (prevNode.getValue() != null) {
+                result.put("_" + key + ".prevNode.value", prevNode.getValue());
             }
-            result.put("_" + key + ".prevNode.value", prevNode.getString("value"));
         }
     }
 
@@ -451,22 +441,8 @@ class EtcdAccessor {
     public Map<String, String> getProperties(String directory, boolean recursive) {
         final Map<String, String> result = new HashMap<>();
         try {
-            final HttpGet get = new HttpGet(serverURL + "/v2/keys/" + directory + "?recursive=" + recursive);
-            get.setConfig(RequestConfig.copy(RequestConfig.DEFAULT).setSocketTimeout(socketTimeout)
-                    .setConnectionRequestTimeout(timeout).setConnectTimeout(connectTimeout).build());
-            try (CloseableHttpResponse response = httpclient.execute(get)) {
-
-                if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
-                    final HttpEntity entity = response.getEntity();
-                    final JsonReader reader = readerFactory.createReader(new StringReader(EntityUtils.toString(entity)));
-                    final JsonObject o = reader.readObject();
-                    final JsonObject node = o.getJsonObject("value");
-                    if (node != null) {
-                        addNodes(result, node);
-                    }
-                    EntityUtils.consume(entity);
-                }
-            }
+            execute(new HttpGet(serverURL + "/v2/keys/" + directory + "?recursive=" + recursive), socketTimeout,
+                    node -> addNode(result, node.getKey(), node));
         } catch (final Exception e) {
             LOG.log(Level.INFO, "Error reading properties for '" + directory + "' from etcd: " + serverURL, e);
             result.put("_ERROR",
@@ -476,38 +452,152 @@ class EtcdAccessor {
     }
 
     /**
-     * Recursively read out all key/values from this etcd JSON array.
+     * Reads all nodes of the given directory recursively and passes them to the consumer while the response is
+     * parsed, without buffering the response. Directory nodes are not passed. A directory not existing is
+     * treated as empty.
      *
-     * @param result map with key, values and metadata.
-     * @param node   the getValue to parse.
+     * @param directory remote directory to query.
+     * @param consumer  the consumer receiving the nodes, not null.
+     * @return the etcd index the nodes reflect, or -1 if unknown.
+     * @throws IOException if the server could not be accessed or returned an error.
      */
-    private void addNodes(Map<String, String> result, JsonObject node) {
-        if (!node.containsKey("dir") || "false".equals(node.get("dir").toString())) {
-            final String key = node.getString("key").substring(1);
-            result.put(key, node.getString("value"));
-            if (node.containsKey("createdIndex")) {
-                result.put("_" + key + ".createdIndex", String.valueOf(node.getInt("createdIndex")));
+    public long readNodes(String directory, Consumer<EtcdNode> consumer) throws IOException {
+        return readNodes(directory, consumer, null);
+    }
+
+    /**
+     * Reads all nodes of the given directory recursively, see {@link #readNodes(String, Consumer)}. The request
+     * can be aborted from another thread, using the action passed to {@code abortHook} before it is sent.
+     *
+     * @param directory remote directory to query.
+     * @param consumer  the consumer receiving the nodes, not null.
+     * @param abortHook the consumer receiving the action aborting the request, or null.
+     * @return the etcd index the nodes reflect, or -1 if unknown.
+     * @throws IOException if the server could not be accessed, returned an error or the request was aborted.
+     */
+    long readNodes(String directory, Consumer<EtcdNode> consumer, Consumer<Runnable> abortHook) throws IOException {
+        final HttpGet request = new HttpGet(serverURL + "/v2/keys/" + directory + "?recursive=true");
+        if (abortHook != null) {
+            abortHook.accept(request::abort);
+        }
+        final EtcdResponse response = execute(request, socketTimeout, consumer, true);
+        // error code 100: key not found
+        if (response.getErrorCode() != 0 && response.getErrorCode() != 100) {
+            throw new IOException("Error reading '" + directory + "' from etcd: " + serverURL + ": "
+                    + response.getMessage());
+        }
+        return response.getEtcdIndex();
+    }
+
+    /**
+     * Waits for the next change within the given directory, using an etcd long polling watch request. If no
+     * change happens within the timeout, an empty response is returned. If the requested index has already been
+     * cleared from the etcd event history, the response has the error code
+     * {@link EtcdResponse#EVENT_INDEX_CLEARED} and the directory must be reloaded.
+     *
+     * @param directory the directory to be watched recursively.
+     * @param waitIndex the first etcd index of interest, typically the last index seen plus one.
+     * @param timeoutMillis the maximal time in ms to wait for a change.
+     * @return the change read from the remote server, never null.
+     * @throws IOException if the server could not be accessed.
+     */
+    public EtcdResponse watch(String directory, long waitIndex, int timeoutMillis) throws IOException {
+        try {
+            return execute(new HttpGet(serverURL + "/v2/keys/" + directory
+                    + "?wait=true&recursive=true&waitIndex=" + waitIndex), timeoutMillis, null, false);
+        } catch (final SocketTimeoutException e) {
+            LOG.finest("No change of '" + directory + "' on etcd: " + serverURL + " within " + timeoutMillis + "ms");
+            return EtcdResponse.empty(-1);
+        }
+    }
+
+    private EtcdResponse execute(HttpRequestBase request, int socketTimeout, Consumer<EtcdNode> leafs)
+            throws IOException {
+        return execute(request, socketTimeout, leafs, true);
+    }
+
+    /**
+     * Executes a request, parses the response while it is read and records the outcome in the endpoint health.
+     * Aborted requests are not recorded.
+     *
+     * @param request       the request, not null.
+     * @param socketTimeout the socket timeout in ms.
+     * @param leafs         the consumer receiving the leaf nodes, or null.
+     * @param timed         true, to record the latency; false for watches, whose socket timeouts are no failures.
+     * @return the response, never null.
+     * @throws IOException if the server could not be accessed or did not return an etcd response.
+     */
+    private EtcdResponse execute(HttpRequestBase request, int socketTimeout, Consumer<EtcdNode> leafs,
+                                 boolean timed) throws IOException {
+        final long start = System.nanoTime();
+        try {
+            final EtcdResponse response = doExecute(request, socketTimeout, leafs);
+            if (timed) {
+                health.success(System.nanoTime() - start);
             }
-            if (node.containsKey("modifiedIndex")) {
-                result.put("_" + key + ".modifiedIndex", String.valueOf(node.getInt("modifiedIndex")));
+            return response;
+        } catch (final IOException e) {
+            if (!request.isAborted() && (timed || !(e instanceof SocketTimeoutException))) {
+                health.failure();
             }
-            if (node.containsKey("expiration")) {
-                result.put("_" + key + ".expiration", String.valueOf(node.getString("expiration")));
+            throw e;
+        }
+    }
+
+    private EtcdResponse doExecute(HttpRequestBase request, int socketTimeout, Consumer<EtcdNode> leafs)
+            throws IOException {
+        request.setConfig(RequestConfig.copy(RequestConfig.DEFAULT).setSocketTimeout(socketTimeout)
+                .setConnectionRequestTimeout(getTimeoutMillis()).setConnectTimeout(connectTimeout).build());
+        try (CloseableHttpResponse response = HTTP_CLIENT.execute(request)) {
+            final int status = response.getStatusLine().getStatusCode();
+            if (status >= HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+                EntityUtils.consume(response.getEntity());
+                throw new IOException("HTTP " + status + " from etcd: " + serverURL);
             }
-            if (node.containsKey("ttl")) {
-                result.put("_" + key + ".ttl", String.valueOf(node.getInt("ttl")));
+            final Header indexHeader = response.getFirstHeader("X-Etcd-Index");
+            final long index = indexHeader != null ? Long.parseLong(indexHeader.getValue().trim()) : -1L;
+            final HttpEntity entity = response.getEntity();
+            if (entity == null) {
+                return EtcdResponse.empty(index);
             }
-            result.put("_" + key + ".source", "[etcd]" + serverURL);
-        } else {
-            final JsonArray nodes = node.getJsonArray("values");
-            if (nodes != null) {
-                for (int i = 0; i < nodes.size(); i++) {
-                    addNodes(result, nodes.getJsonObject(i));
+            try (PushbackInputStream in = new PushbackInputStream(entity.getContent())) {
+                final int first = in.read();
+                if (first < 0) {
+                    // etcd closes idle watches with an empty response
+                    return EtcdResponse.empty(index);
+                }
+                in.unread(first);
+                try (JsonParser parser = parserFactory.createParser(in, StandardCharsets.UTF_8)) {
+                    return EtcdResponse.read(parser, index, leafs);
                 }
+            } catch (final RuntimeException e) {
+                throw new IOException("Invalid response from etcd: " + serverURL, e);
             }
         }
     }
 
+    private int getTimeoutMillis() {
+        return (int) TimeUnit.MILLISECONDS.convert(timeout, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Get the accessor of the etcd v3 API of the same endpoint, sharing its health.
+     *
+     * @return the v3 accessor, never null.
+     */
+    EtcdV3Accessor getV3() {
+        return v3;
+    }
+
+    /**
+     * Get the health of the endpoint accessed.
+     *
+     * @return the health, never null.
+     */
+    EtcdEndpointHealth getHealth() {
+        return health;
+    }
+
     /**
      * Access the server root URL used by this accessor.
      *
@@ -33,6 +33,13 @@ final class EtcdBackendConfig {
     private static final String TAMAYA_ETCD_SERVER_URLS = "tamaya.etcd.server";
     private static final String TAMAYA_ETCD_TIMEOUT = "tamaya.etcd.timeout";
     private static final String TAMAYA_ETCD_DIRECTORY = "tamaya.etcd.directory";
+    private static final String TAMAYA_ETCD_WATCH = "tamaya.etcd.watch";
+    private static final String TAMAYA_ETCD_WATCH_TIMEOUT = "tamaya.etcd.watch-timeout";
+    private static final String TAMAYA_ETCD_REFRESH_ASYNC = "tamaya.etcd.refresh-async";
+    private static final String TAMAYA_ETCD_INITIAL_WAIT = "tamaya.etcd.initial-wait";
+    private static final String TAMAYA_ETCD_HEDGE_PERCENTILE = "tamaya.etcd.hedge-percentile";
+    private static final String TAMAYA_ETCD_API_VERSION = "tamaya.etcd.api-version";
+    private static final String TAMAYA_ETCD_PAGE_SIZE = "tamaya.etcd.page-size";
 
 
     private EtcdBackendConfig() {
@@ -71,6 +78,120 @@ final class EtcdBackendConfig {
         return 2000L;
     }
 
+    /**
+     * Checks if changes are streamed from etcd using watches instead of reloading the directory periodically, from
+     * system/environment property {@code tamaya.etcd.watch} (default false).
+     *
+     * @return true, if watch mode is enabled.
+     */
+    public static boolean isWatchEnabled() {
+        String val = System.getProperty(TAMAYA_ETCD_WATCH);
+        if (val == null) {
+            val = System.getenv(TAMAYA_ETCD_WATCH);
+        }
+        return val != null && Boolean.parseBoolean(val.trim());
+    }
+
+    /**
+     * Get the time a single watch request waits for a change, before it is reissued, from system/environment
+     * property {@code tamaya.etcd.watch-timeout} in seconds (default 60).
+     *
+     * @return the watch timeout in ms.
+     */
+    public static long getWatchTimeout() {
+        String val = System.getProperty(TAMAYA_ETCD_WATCH_TIMEOUT);
+        if (val == null) {
+            val = System.getenv(TAMAYA_ETCD_WATCH_TIMEOUT);
+        }
+        if (val != null) {
+            return TimeUnit.MILLISECONDS.convert(Integer.parseInt(val.trim()), TimeUnit.SECONDS);
+        }
+        return 60000L;
+    }
+
+    /**
+     * Checks if the data is reloaded in the background instead of blocking the access triggering the reload, from
+     * system/environment property {@code tamaya.etcd.refresh-async} (default false).
+     *
+     * @return true, if asynchronous refresh mode is enabled.
+     */
+    public static boolean isRefreshAsync() {
+        String val = System.getProperty(TAMAYA_ETCD_REFRESH_ASYNC);
+        if (val == null) {
+            val = System.getenv(TAMAYA_ETCD_REFRESH_ASYNC);
+        }
+        return val != null && Boolean.parseBoolean(val.trim());
+    }
+
+    /**
+     * Get the maximal time an access waits for the first load in asynchronous refresh mode, from
+     * system/environment property {@code tamaya.etcd.initial-wait} in milliseconds (default 0, waiting until the
+     * load has completed).
+     *
+     * @return the initial wait in ms.
+     */
+    public static long getInitialWait() {
+        String val = System.getProperty(TAMAYA_ETCD_INITIAL_WAIT);
+        if (val == null) {
+            val = System.getenv(TAMAYA_ETCD_INITIAL_WAIT);
+        }
+        if (val != null) {
+            return Long.parseLong(val.trim());
+        }
+        return 0L;
+    }
+
+    /**
+     * Get the latency percentile of an etcd server, after which a read is additionally sent to the next server, from
+     * system/environment property {@code tamaya.etcd.hedge-percentile} (default 95, 0 disables hedging).
+     *
+     * @return the hedge percentile.
+     */
+    public static int getHedgePercentile() {
+        String val = System.getProperty(TAMAYA_ETCD_HEDGE_PERCENTILE);
+        if (val == null) {
+            val = System.getenv(TAMAYA_ETCD_HEDGE_PERCENTILE);
+        }
+        if (val != null) {
+            return Integer.parseInt(val.trim());
+        }
+        return 95;
+    }
+
+    /**
+     * Get the etcd API version to use, from system/environment property {@code tamaya.etcd.api-version}: 2 for the
+     * v2 keys API (default), 3 for the JSON gateway of the v3 API.
+     *
+     * @return the API version.
+     */
+    public static int getApiVersion() {
+        String val = System.getProperty(TAMAYA_ETCD_API_VERSION);
+        if (val == null) {
+            val = System.getenv(TAMAYA_ETCD_API_VERSION);
+        }
+        if (val != null) {
+            return Integer.parseInt(val.trim());
+        }
+        return 2;
+    }
+
+    /**
+     * Get the maximal number of keys read per request with the v3 API, from system/environment property
+     * {@code tamaya.etcd.page-size} (default 1000).
+     *
+     * @return the page size.
+     */
+    public static int getPageSize() {
+        String val = System.getProperty(TAMAYA_ETCD_PAGE_SIZE);
+        if (val == null) {
+            val = System.getenv(TAMAYA_ETCD_PAGE_SIZE);
+        }
+        if (val != null) {
+            return Integer.parseInt(val.trim());
+        }
+        return 1000;
+    }
+
     /**
      * Evaluate the etcd target servers fomr system/environment property {@code tamaya.etcd.server}.
      *
@@ -0,0 +1,273 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.etcd;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * The etcd endpoints configured for a property source. Reads go to the fastest healthy endpoint, measured by the
+ * median latency of its last reads. If a read takes longer than the configured latency percentile of that endpoint,
+ * it is hedged: the read is additionally sent to the next endpoint, the first response wins and the other request
+ * is aborted. Failed reads fail over to the next endpoint.
+ */
+final class EtcdCluster {
+
+    private static final Logger LOG = Logger.getLogger(EtcdCluster.class.getName());
+
+    /** The hedge delay in ms used, as long as no latencies are known for an endpoint. */
+    static final long DEFAULT_HEDGE_DELAY = 100L;
+
+    /** The minimal hedge delay in ms. */
+    private static final long MIN_HEDGE_DELAY = 5L;
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "tamaya-etcd-read-" + THREAD_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final Comparator<EtcdAccessor> PREFERENCE = Comparator
+            .comparing((EtcdAccessor a) -> !a.getHealth().isHealthy())
+            .thenComparingLong(a -> Math.max(0L, a.getHealth().getLatency(50)));
+
+    private final List<EtcdAccessor> members;
+
+    private volatile int hedgePercentile = 95;
+
+    /**
+     * A read executed on a single endpoint.
+     *
+     * @param <T> the result type.
+     */
+    @FunctionalInterface
+    interface Read<T> {
+        /**
+         * Reads from the given endpoint.
+         *
+         * @param accessor  the accessor of the endpoint, not null.
+         * @param abortHook the consumer to pass the action aborting the request to, not null.
+         * @return the result.
+         * @throws IOException if the read failed.
+         */
+        T read(EtcdAccessor accessor, Consumer<Runnable> abortHook) throws IOException;
+    }
+
+    /**
+     * Creates a new cluster.
+     *
+     * @param servers the server URLs, not null.
+     */
+    EtcdCluster(List<String> servers) {
+        List<EtcdAccessor> accessors = new ArrayList<>();
+        for (String server : servers) {
+            accessors.add(new EtcdAccessor(server));
+        }
+        this.members = Collections.unmodifiableList(accessors);
+    }
+
+    /**
+     * Get the accessors in configuration order.
+     *
+     * @return the accessors, not null.
+     */
+    List<EtcdAccessor> getMembers() {
+        return members;
+    }
+
+    /**
+     * Get the accessors ordered by preference: healthy endpoints first, faster endpoints first.
+     *
+     * @return the accessors, not null.
+     */
+    List<EtcdAccessor> getPreferred() {
+        List<EtcdAccessor> preferred = new ArrayList<>(members);
+        preferred.sort(PREFERENCE);
+        return preferred;
+    }
+
+    /**
+     * Get the latency percentile of an endpoint, after which a read is hedged.
+     *
+     * @return the percentile, or 0 if reads are not hedged.
+     */
+    int getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+    /**
+     * Set the latency percentile of an endpoint, after which a read is hedged.
+     *
+     * @param percentile the percentile 1 to 100, or 0 to disable hedging.
+     */
+    void setHedgePercentile(int percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Hedge percentile must be between 0 and 100: " + percentile);
+        }
+        this.hedgePercentile = percentile;
+    }
+
+    /**
+     * Reads from the preferred endpoint, hedging and failing over to further endpoints as needed.
+     *
+     * @param read the read, not null.
+     * @param <T>  the result type.
+     * @return the result of the first successful read.
+     * @throws IOException if no endpoint could be read.
+     */
+    <T> T read(Read<T> read) throws IOException {
+        List<EtcdAccessor> candidates = getPreferred();
+        if (candidates.isEmpty()) {
+            throw new IOException("No etcd server configured.");
+        }
+        if (candidates.size() == 1) {
+            return read.read(candidates.get(0), action -> { });
+        }
+        CompletionService<T> completion = new ExecutorCompletionService<>(EXECUTOR);
+        List<Attempt<T>> attempts = new ArrayList<>();
+        IOException failure = null;
+        int percentile = hedgePercentile;
+        boolean hedged = percentile == 0;
+        int pending = 0;
+        try {
+            attempts.add(start(completion, read, candidates.get(0)));
+            pending++;
+            while (pending > 0) {
+                Future<T> done;
+                if (!hedged && attempts.size() < candidates.size()) {
+                    done = completion.poll(getHedgeDelay(candidates.get(0), percentile), TimeUnit.MILLISECONDS);
+                    if (done == null) {
+                        hedged = true;
+                        EtcdAccessor next = candidates.get(attempts.size());
+                        LOG.finest(() -> "Hedging etcd read to " + next.getUrl());
+                        attempts.add(start(completion, read, next));
+                        pending++;
+                        continue;
+                    }
+                } else {
+                    done = completion.take();
+                }
+                pending--;
+                try {
+                    return done.get();
+                } catch (ExecutionException e) {
+                    failure = toIOException(e.getCause());
+                    LOG.log(Level.FINE, "etcd read failed, trying next...", failure);
+                    if (attempts.size() < candidates.size()) {
+                        attempts.add(start(completion, read, candidates.get(attempts.size())));
+                        pending++;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading from etcd.");
+        } finally {
+            for (Attempt<T> attempt : attempts) {
+                attempt.cancel();
+            }
+        }
+        throw failure;
+    }
+
+    private static long getHedgeDelay(EtcdAccessor accessor, int percentile) {
+        long latency = accessor.getHealth().getLatency(percentile);
+        if (latency < 0) {
+            return DEFAULT_HEDGE_DELAY;
+        }
+        return Math.max(MIN_HEDGE_DELAY, TimeUnit.MILLISECONDS.convert(latency, TimeUnit.NANOSECONDS));
+    }
+
+    private static <T> Attempt<T> start(CompletionService<T> completion, Read<T> read, EtcdAccessor accessor) {
+        Attempt<T> attempt = new Attempt<>(read, accessor);
+        attempt.future = completion.submit(attempt::call);
+        return attempt;
+    }
+
+    private static IOException toIOException(Throwable t) {
+        if (t instanceof IOException) {
+            return (IOException) t;
+        }
+        return new IOException("etcd read failed.", t);
+    }
+
+    @Override
+    public String toString() {
+        return "EtcdCluster{" +
+                "members=" + members.stream().map(EtcdAccessor::getUrl).collect(Collectors.toList()) +
+                ", hedgePercentile=" + hedgePercentile +
+                '}';
+    }
+
+    /**
+     * A read running on a single endpoint, which can be aborted.
+     */
+    private static final class Attempt<T> {
+
+        private final Read<T> read;
+        private final EtcdAccessor accessor;
+        private volatile Future<T> future;
+        private volatile Runnable abort;
+        private volatile boolean cancelled;
+
+        Attempt(Read<T> read, EtcdAccessor accessor) {
+            this.read = read;
+            this.accessor = accessor;
+        }
+
+        T call() throws IOException {
+            return read.read(accessor, action -> {
+                abort = action;
+                if (cancelled) {
+                    action.run();
+                }
+            });
+        }
+
+        void cancel() {
+            cancelled = true;
+            Future<T> f = future;
+            if (f != null && !f.isDone()) {
+                Runnable action = abort;
+                if (action != null) {
+                    action.run();
+                }
+                f.cancel(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.etcd;
+
+import java.util.Arrays;
+
+/**
+ * Tracks the health and the read latencies of a single etcd endpoint. An endpoint is unhealthy after a failed
+ * request, until a retry delay growing with the number of consecutive failures has passed. Latencies are kept for
+ * the last {@value #SAMPLES} successful reads.
+ */
+final class EtcdEndpointHealth {
+
+    /** The number of latencies kept. */
+    static final int SAMPLES = 64;
+
+    /** Maximal delay in ms, before an unhealthy endpoint is tried again. */
+    private static final long MAX_RETRY_DELAY = 30000L;
+
+    private final long[] latencies = new long[SAMPLES];
+
+    private int sampleCount;
+
+    private int nextSample;
+
+    private volatile int consecutiveFailures;
+
+    private volatile long lastFailure;
+
+    /**
+     * Records a successful request.
+     *
+     * @param nanos the duration of the request in nanoseconds.
+     */
+    synchronized void success(long nanos) {
+        latencies[nextSample] = nanos;
+        nextSample = (nextSample + 1) % SAMPLES;
+        sampleCount = Math.min(SAMPLES, sampleCount + 1);
+        consecutiveFailures = 0;
+    }
+
+    /**
+     * Records a failed request.
+     */
+    synchronized void failure() {
+        consecutiveFailures++;
+        lastFailure = System.currentTimeMillis();
+    }
+
+    /**
+     * Checks if the endpoint should be used. An endpoint that failed is used again after a retry delay.
+     *
+     * @return true, if the last request succeeded or the retry delay has passed.
+     */
+    boolean isHealthy() {
+        int failures = consecutiveFailures;
+        return failures == 0
+                || System.currentTimeMillis() - lastFailure >= Math.min(MAX_RETRY_DELAY, 500L << Math.min(failures, 6));
+    }
+
+    /**
+     * Get the number of requests failed since the last successful one.
+     *
+     * @return the number of consecutive failures.
+     */
+    int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * Get a percentile of the latencies recorded.
+     *
+     * @param percentile the percentile, 1 to 100.
+     * @return the latency in nanoseconds, or -1 if no latency has been recorded yet.
+     */
+    long getLatency(int percentile) {
+        long[] samples;
+        synchronized (this) {
+            if (sampleCount == 0) {
+                return -1L;
+            }
+            samples = Arrays.copyOf(latencies, sampleCount);
+        }
+        Arrays.sort(samples);
+        int index = (int) Math.ceil(percentile / 100.0 * samples.length) - 1;
+        return samples[Math.max(0, Math.min(samples.length - 1, index))];
+    }
+
+    @Override
+    public String toString() {
+        return "EtcdEndpointHealth{" +
+                "healthy=" + isHealthy() +
+                ", consecutiveFailures=" + consecutiveFailures +
+                ", medianLatency=" + getLatency(50) +
+                '}';
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.etcd;
+
+/**
+ * A node read from etcd, holding the key, the value and the etcd metadata in typed form.
+ */
+final class EtcdNode {
+
+    private final String key;
+    private final String value;
+    private final boolean dir;
+    private final long createdIndex;
+    private final long modifiedIndex;
+    private final long ttl;
+    private final String expiration;
+
+    /**
+     * Creates a new node.
+     *
+     * @param key           the key without leading slash, not null.
+     * @param value         the value, or null for directories and deleted nodes.
+     * @param dir           true, if the node is a directory.
+     * @param createdIndex  the index the node was created at, or -1.
+     * @param modifiedIndex the index the node was last modified at, or -1.
+     * @param ttl           the remaining time to live in seconds, or -1.
+     * @param expiration    the expiration timestamp, or null.
+     */
+    EtcdNode(String key, String value, boolean dir, long createdIndex, long modifiedIndex, long ttl,
+             String expiration) {
+        this.key = key;
+        this.value = value;
+        this.dir = dir;
+        this.createdIndex = createdIndex;
+        this.modifiedIndex = modifiedIndex;
+        this.ttl = ttl;
+        this.expiration = expiration;
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    String getValue() {
+        return value;
+    }
+
+    boolean isDir() {
+        return dir;
+    }
+
+    long getCreatedIndex() {
+        return createdIndex;
+    }
+
+    long getModifiedIndex() {
+        return modifiedIndex;
+    }
+
+    long getTtl() {
+        return ttl;
+    }
+
+    String getExpiration() {
+        return expiration;
+    }
+
+    @Override
+    public String toString() {
+        return "EtcdNode{" +
+                "key='" + key + '\'' +
+                ", dir=" + dir +
+                ", modifiedIndex=" + modifiedIndex +
+                '}';
+    }
+}
@@ -32,19 +32,33 @@ public class EtcdPropertySource extends AbstractEtcdPropertySource{
     private static final Logger LOG = Logger.getLogger(EtcdPropertySource.class.getName());
 
     public EtcdPropertySource(List<String> server){
-        this();
-        setServer(server);
+        init(server);
     }
 
     public EtcdPropertySource(String... server){
-        this();
-        setServer(Arrays.asList(server));
+        init(Arrays.asList(server));
     }
 
     public EtcdPropertySource(){
+        init(EtcdBackendConfig.getServers());
+    }
+
+    /**
+     * Applies the configured settings. The servers are set after all other settings but the watch mode, so the
+     * data is loaded only once and with the settings configured.
+     * @param servers the servers, not null.
+     */
+    private void init(List<String> servers){
         setDefaultOrdinal(1000);
+        setHedgePercentile(EtcdBackendConfig.getHedgePercentile());
+        setPageSize(EtcdBackendConfig.getPageSize());
+        setApiVersion(EtcdBackendConfig.getApiVersion());
         setDirectory(EtcdBackendConfig.getEtcdDirectory());
-        setServer(EtcdBackendConfig.getServers());
+        setWatchTimeout(EtcdBackendConfig.getWatchTimeout());
+        setInitialWait(EtcdBackendConfig.getInitialWait());
+        setRefreshAsync(EtcdBackendConfig.isRefreshAsync());
+        setServer(servers);
+        setWatchEnabled(EtcdBackendConfig.isWatchEnabled());
     }
 
 }
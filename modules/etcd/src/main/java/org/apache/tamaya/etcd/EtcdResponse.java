@@ -0,0 +1,262 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.etcd;
+
+import java.util.function.Consumer;
+
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+
+/**
+ * A response of the etcd v2 keys API, read in a single pass from a {@link JsonParser}. The leaf nodes of the
+ * response tree can be streamed to a consumer while parsing, so the nodes of large directories are never held in
+ * memory at the same time.
+ */
+final class EtcdResponse {
+
+    /**
+     * The etcd error code returned, if a watched index has already been cleared from the event history.
+     */
+    static final int EVENT_INDEX_CLEARED = 401;
+
+    private final long etcdIndex;
+    private String action;
+    private EtcdNode node;
+    private EtcdNode prevNode;
+    private int errorCode;
+    private String message;
+
+    private EtcdResponse(long etcdIndex) {
+        this.etcdIndex = etcdIndex;
+    }
+
+    /**
+     * Creates a response without body, e.g. when etcd closes an idle watch.
+     *
+     * @param etcdIndex the etcd index of the response, or -1.
+     * @return the empty response, never null.
+     */
+    static EtcdResponse empty(long etcdIndex) {
+        return new EtcdResponse(etcdIndex);
+    }
+
+    /**
+     * Creates a change response, e.g. for a change read from the etcd v3 API.
+     *
+     * @param action    the action, e.g. {@code set} or {@code delete}, not null.
+     * @param node      the node changed, not null.
+     * @param prevNode  the node before the change, or null.
+     * @param etcdIndex the etcd index of the response, or -1.
+     * @return the response, never null.
+     */
+    static EtcdResponse of(String action, EtcdNode node, EtcdNode prevNode, long etcdIndex) {
+        EtcdResponse response = new EtcdResponse(etcdIndex);
+        response.action = action;
+        response.node = node;
+        response.prevNode = prevNode;
+        return response;
+    }
+
+    /**
+     * Creates an error response.
+     *
+     * @param errorCode the etcd error code.
+     * @param message   the error message, or null.
+     * @param etcdIndex the etcd index of the response, or -1.
+     * @return the response, never null.
+     */
+    static EtcdResponse error(int errorCode, String message, long etcdIndex) {
+        EtcdResponse response = new EtcdResponse(etcdIndex);
+        response.errorCode = errorCode;
+        response.message = message;
+        return response;
+    }
+
+    /**
+     * Reads a response. Nodes are read from the {@code node} field, or the {@code value} field used by older etcd
+     * versions, children from {@code nodes} or {@code values}.
+     *
+     * @param parser    the parser, positioned before the response object, not null.
+     * @param etcdIndex the etcd index of the response, or -1.
+     * @param leafs     the consumer receiving all non directory nodes of the {@code node} tree, or null.
+     * @return the response, never null.
+     */
+    static EtcdResponse read(JsonParser parser, long etcdIndex, Consumer<EtcdNode> leafs) {
+        EtcdResponse response = new EtcdResponse(etcdIndex);
+        expect(parser, Event.START_OBJECT);
+        Event event;
+        while ((event = parser.next()) != Event.END_OBJECT) {
+            String field = parser.getString();
+            event = parser.next();
+            switch (field) {
+                case "action":
+                    response.action = parser.getString();
+                    break;
+                case "node":
+                case "value":
+                    response.node = readNode(parser, event, leafs);
+                    break;
+                case "prevNode":
+                    response.prevNode = readNode(parser, event, null);
+                    break;
+                case "errorCode":
+                    response.errorCode = parser.getInt();
+                    break;
+                case "message":
+                    response.message = parser.getString();
+                    break;
+                default:
+                    skip(parser, event);
+            }
+        }
+        return response;
+    }
+
+    private static EtcdNode readNode(JsonParser parser, Event start, Consumer<EtcdNode> leafs) {
+        if (start != Event.START_OBJECT) {
+            skip(parser, start);
+            return null;
+        }
+        String key = null;
+        String value = null;
+        boolean dir = false;
+        long createdIndex = -1;
+        long modifiedIndex = -1;
+        long ttl = -1;
+        String expiration = null;
+        Event event;
+        while ((event = parser.next()) != Event.END_OBJECT) {
+            String field = parser.getString();
+            event = parser.next();
+            switch (field) {
+                case "key":
+                    key = parser.getString();
+                    if (key.startsWith("/")) {
+                        key = key.substring(1);
+                    }
+                    break;
+                case "value":
+                    value = event == Event.VALUE_NULL ? null : parser.getString();
+                    break;
+                case "dir":
+                    dir = event == Event.VALUE_TRUE;
+                    break;
+                case "createdIndex":
+                    createdIndex = parser.getLong();
+                    break;
+                case "modifiedIndex":
+                    modifiedIndex = parser.getLong();
+                    break;
+                case "ttl":
+                    ttl = parser.getLong();
+                    break;
+                case "expiration":
+                    expiration = parser.getString();
+                    break;
+                case "nodes":
+                case "values":
+                    dir = true;
+                    if (event == Event.START_ARRAY) {
+                        while ((event = parser.next()) != Event.END_ARRAY) {
+                            readNode(parser, event, leafs);
+                        }
+                    } else {
+                        skip(parser, event);
+                    }
+                    break;
+                default:
+                    skip(parser, event);
+            }
+        }
+        EtcdNode node = new EtcdNode(key, value, dir, createdIndex, modifiedIndex, ttl, expiration);
+        if (!dir && key != null && leafs != null) {
+            leafs.accept(node);
+        }
+        return node;
+    }
+
+    static void expect(JsonParser parser, Event expected) {
+        Event event = parser.next();
+        if (event != expected) {
+            throw new IllegalStateException("Invalid etcd response, expected " + expected + " but was " + event);
+        }
+    }
+
+    static void skip(JsonParser parser, Event event) {
+        if (event != Event.START_OBJECT && event != Event.START_ARRAY) {
+            return;
+        }
+        int depth = 1;
+        while (depth > 0) {
+            event = parser.next();
+            if (event == Event.START_OBJECT || event == Event.START_ARRAY) {
+                depth++;
+            } else if (event == Event.END_OBJECT || event == Event.END_ARRAY) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Get the etcd index of the response, taken from the {@code X-Etcd-Index} header.
+     *
+     * @return the etcd index, or -1 if unknown.
+     */
+    long getEtcdIndex() {
+        return etcdIndex;
+    }
+
+    /**
+     * Checks if the response contains no data, e.g. because a watch has been closed without change.
+     *
+     * @return true, if neither node nor error is present.
+     */
+    boolean isEmpty() {
+        return node == null && errorCode == 0;
+    }
+
+    String getAction() {
+        return action;
+    }
+
+    /**
+     * Checks if the action removed the node, i.e. it has been deleted or has expired.
+     *
+     * @return true, for removing actions.
+     */
+    boolean isRemoval() {
+        return "delete".equals(action) || "expire".equals(action) || "compareAndDelete".equals(action);
+    }
+
+    EtcdNode getNode() {
+        return node;
+    }
+
+    EtcdNode getPrevNode() {
+        return prevNode;
+    }
+
+    int getErrorCode() {
+        return errorCode;
+    }
+
+    String getMessage() {
+        return message;
+    }
+}
@@ -0,0 +1,597 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.etcd;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
+import java.io.StringReader;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+import javax.json.stream.JsonParserFactory;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+
+/**
+ * Accessor for reading from an etcd endpoint using the JSON gateway of the etcd v3 API. Prefixes are read with
+ * {@code /v3/kv/range} in pages of limited size, all pages pinned to the revision of the first page, so the nodes read
+ * form a consistent snapshot. Keys and values are passed to the consumer while the responses are parsed, so large
+ * prefixes are never held in memory at the same time. Changes after the revision read can be watched using
+ * {@code /v3/watch}.
+ */
+final class EtcdV3Accessor {
+
+    private static final Logger LOG = Logger.getLogger(EtcdV3Accessor.class.getName());
+
+    /**
+     * The gRPC status code returned, if a requested revision has already been compacted.
+     */
+    static final int OUT_OF_RANGE = 11;
+
+    private static final byte[] ALL_KEYS = {0};
+
+    private final String serverURL;
+
+    private final EtcdEndpointHealth health;
+
+    private final JsonParserFactory parserFactory;
+
+    /**
+     * Socket timeout of range requests in ms.
+     */
+    private final int socketTimeout = 5000;
+
+    /**
+     * Connect timeout in ms.
+     */
+    private final int connectTimeout = 1000;
+
+    /**
+     * Creates a new accessor.
+     *
+     * @param serverURL     the server URL, without trailing slash, not null.
+     * @param health        the health of the endpoint to record the requests in, not null.
+     * @param parserFactory the JSON parser factory, not null.
+     */
+    EtcdV3Accessor(String serverURL, EtcdEndpointHealth health, JsonParserFactory parserFactory) {
+        this.serverURL = serverURL;
+        this.health = health;
+        this.parserFactory = parserFactory;
+    }
+
+    /**
+     * Reads all keys starting with the given prefix, in pages pinned to a single revision.
+     *
+     * @param prefix    the key prefix, {@code ""} for all keys, not null.
+     * @param pageSize  the maximal number of keys per request, or 0 for a single request.
+     * @param consumer  the consumer receiving the nodes, not null.
+     * @param abortHook the consumer receiving the action aborting the read, or null.
+     * @return the revision of the snapshot read.
+     * @throws IOException if the server could not be accessed, returned an error, the revision has been compacted
+     *                     while reading or the read was aborted.
+     */
+    long readPrefix(String prefix, int pageSize, Consumer<EtcdNode> consumer, Consumer<Runnable> abortHook)
+            throws IOException {
+        return range(prefix, pageSize, consumer, abortHook);
+    }
+
+    /**
+     * Checks if the keys starting with the given prefix are unchanged since they have been read, with a single
+     * request returning the number of keys and the most recently modified key only, without values. Every put
+     * raises the modification revision above the revision read, every delete without put lowers the number of
+     * keys.
+     *
+     * @param prefix   the key prefix, {@code ""} for all keys, not null.
+     * @param revision the revision the keys have been read at.
+     * @param count    the number of keys read.
+     * @return the current revision, if the keys are unchanged, or -1.
+     * @throws IOException if the server could not be accessed or returned an error.
+     */
+    long checkUnchanged(String prefix, long revision, long count) throws IOException {
+        byte[] start = bytes(prefix);
+        AtomicLong modRevision = new AtomicLong();
+        RangePage page = post(rangeRequest(start.length == 0 ? ALL_KEYS : start, prefixEnd(start), 1, 0L, true,
+                true), node -> modRevision.set(node.getModifiedIndex()), null);
+        if (page.count != count || modRevision.get() > revision) {
+            return -1L;
+        }
+        return page.revision;
+    }
+
+    private long range(String prefix, int pageSize, Consumer<EtcdNode> consumer,
+                       Consumer<Runnable> abortHook) throws IOException {
+        byte[] start = bytes(prefix);
+        byte[] end = prefixEnd(start);
+        byte[] key = start.length == 0 ? ALL_KEYS : start;
+        AtomicReference<HttpPost> current = new AtomicReference<>();
+        AtomicBoolean aborted = new AtomicBoolean();
+        if (abortHook != null) {
+            abortHook.accept(() -> {
+                aborted.set(true);
+                HttpPost request = current.get();
+                if (request != null) {
+                    request.abort();
+                }
+            });
+        }
+        long revision = 0L;
+        while (true) {
+            HttpPost request = new HttpPost(serverURL + "/v3/kv/range");
+            request.setEntity(new StringEntity(rangeRequest(key, end, pageSize, revision, false, false),
+                    ContentType.APPLICATION_JSON));
+            current.set(request);
+            if (aborted.get()) {
+                throw new IOException("etcd read aborted: " + serverURL);
+            }
+            RangePage page = post(request, socketTimeout, node -> {
+                // empty values are omitted in v3 responses
+                consumer.accept(node.getValue() != null ? node : new EtcdNode(node.getKey(), "", false,
+                        node.getCreatedIndex(), node.getModifiedIndex(), -1, null));
+            });
+            if (revision == 0L) {
+                revision = page.revision;
+            }
+            if (!page.more || page.lastKey == null) {
+                return revision;
+            }
+            key = Arrays.copyOf(page.lastKey, page.lastKey.length + 1);
+        }
+    }
+
+    private RangePage post(String body, Consumer<EtcdNode> consumer, Consumer<Runnable> abortHook)
+            throws IOException {
+        HttpPost request = new HttpPost(serverURL + "/v3/kv/range");
+        request.setEntity(new StringEntity(body, ContentType.APPLICATION_JSON));
+        if (abortHook != null) {
+            abortHook.accept(request::abort);
+        }
+        return post(request, socketTimeout, consumer);
+    }
+
+    private RangePage post(HttpPost request, int timeout, Consumer<EtcdNode> consumer) throws IOException {
+        request.setConfig(RequestConfig.copy(RequestConfig.DEFAULT).setSocketTimeout(timeout)
+                .setConnectionRequestTimeout(connectTimeout).setConnectTimeout(connectTimeout).build());
+        final long start = System.nanoTime();
+        try {
+            RangePage page;
+            try (CloseableHttpResponse response = EtcdAccessor.getHttpClient().execute(request)) {
+                final int status = response.getStatusLine().getStatusCode();
+                final HttpEntity entity = response.getEntity();
+                if (status >= HttpStatus.SC_INTERNAL_SERVER_ERROR || entity == null) {
+                    throw new IOException("HTTP " + status + " from etcd: " + serverURL);
+                }
+                try (PushbackInputStream in = new PushbackInputStream(entity.getContent());
+                     JsonParser parser = createParser(in)) {
+                    page = RangePage.read(parser, consumer);
+                } catch (final RuntimeException e) {
+                    throw new IOException("Invalid response from etcd: " + serverURL, e);
+                }
+            }
+            if (page.code != 0) {
+                throw new IOException("Error reading from etcd: " + serverURL + ": " + page.message
+                        + " (code " + page.code + ")");
+            }
+            health.success(System.nanoTime() - start);
+            return page;
+        } catch (final IOException e) {
+            if (!request.isAborted()) {
+                health.failure();
+            }
+            throw e;
+        }
+    }
+
+    private JsonParser createParser(PushbackInputStream in) throws IOException {
+        final int first = in.read();
+        if (first < 0) {
+            throw new IOException("Empty response from etcd: " + serverURL);
+        }
+        in.unread(first);
+        return parserFactory.createParser(in, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Waits for the next changes of keys starting with the given prefix, using a v3 watch. The watch is closed,
+     * after the first changes have been read or no change happened within the timeout. If the start revision has
+     * already been compacted, a single response with the error code {@link EtcdResponse#EVENT_INDEX_CLEARED} is
+     * returned, so the prefix must be reloaded.
+     *
+     * @param prefix        the key prefix, {@code ""} for all keys, not null.
+     * @param startRevision the first revision of interest, typically the revision read plus one.
+     * @param timeoutMillis the maximal time in ms to wait for a change.
+     * @return the changes read, with the revision of the change as etcd index, empty on timeout, never null.
+     * @throws IOException if the server could not be accessed.
+     */
+    List<EtcdResponse> watch(String prefix, long startRevision, int timeoutMillis) throws IOException {
+        byte[] start = bytes(prefix);
+        HttpPost request = new HttpPost(serverURL + "/v3/watch");
+        request.setEntity(new StringEntity("{\"create_request\":{\"key\":\"" + base64(start.length == 0 ? ALL_KEYS : start)
+                + "\",\"range_end\":\"" + base64(prefixEnd(start)) + "\",\"start_revision\":" + startRevision
+                + ",\"prev_kv\":true}}", ContentType.APPLICATION_JSON));
+        request.setConfig(RequestConfig.copy(RequestConfig.DEFAULT).setSocketTimeout(timeoutMillis)
+                .setConnectionRequestTimeout(connectTimeout).setConnectTimeout(connectTimeout).build());
+        CloseableHttpResponse response = null;
+        try {
+            response = EtcdAccessor.getHttpClient().execute(request);
+            final int status = response.getStatusLine().getStatusCode();
+            final HttpEntity entity = response.getEntity();
+            if (status >= HttpStatus.SC_INTERNAL_SERVER_ERROR || entity == null) {
+                throw new IOException("HTTP " + status + " from etcd: " + serverURL);
+            }
+            // the watch streams one JSON message per line until it is closed
+            BufferedReader reader = new BufferedReader(new InputStreamReader(entity.getContent(),
+                    StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                List<EtcdResponse> changes;
+                try (JsonParser parser = parserFactory.createParser(new StringReader(line))) {
+                    changes = readWatchMessage(parser);
+                } catch (final RuntimeException e) {
+                    throw new IOException("Invalid watch response from etcd: " + serverURL, e);
+                }
+                if (!changes.isEmpty()) {
+                    return changes;
+                }
+            }
+            return Collections.emptyList();
+        } catch (final SocketTimeoutException e) {
+            LOG.finest("No change of '" + prefix + "' on etcd: " + serverURL + " within " + timeoutMillis + "ms");
+            return Collections.emptyList();
+        } catch (final IOException e) {
+            health.failure();
+            throw e;
+        } finally {
+            // the stream does not end by itself, so the connection is discarded instead of consuming it
+            request.abort();
+            if (response != null) {
+                response.close();
+            }
+        }
+    }
+
+    private List<EtcdResponse> readWatchMessage(JsonParser parser) throws IOException {
+        EtcdResponse.expect(parser, Event.START_OBJECT);
+        List<EtcdResponse> changes = Collections.emptyList();
+        Event event;
+        while ((event = parser.next()) != Event.END_OBJECT) {
+            String field = parser.getString();
+            event = parser.next();
+            if ("result".equals(field) && event == Event.START_OBJECT) {
+                changes = readWatchResult(parser);
+            } else if ("error".equals(field)) {
+                String message = event == Event.START_OBJECT ? readErrorMessage(parser) : parser.getString();
+                throw new IOException("etcd watch failed on " + serverURL + ": " + message);
+            } else {
+                EtcdResponse.skip(parser, event);
+            }
+        }
+        return changes;
+    }
+
+    private static String readErrorMessage(JsonParser parser) {
+        String message = null;
+        Event event;
+        while ((event = parser.next()) != Event.END_OBJECT) {
+            String field = parser.getString();
+            event = parser.next();
+            if ("message".equals(field) && event == Event.VALUE_STRING) {
+                message = parser.getString();
+            } else {
+                EtcdResponse.skip(parser, event);
+            }
+        }
+        return message;
+    }
+
+    private static List<EtcdResponse> readWatchResult(JsonParser parser) {
+        List<EtcdResponse> changes = new ArrayList<>();
+        long revision = -1L;
+        long compactRevision = 0L;
+        boolean canceled = false;
+        String reason = null;
+        Event event;
+        while ((event = parser.next()) != Event.END_OBJECT) {
+            String field = parser.getString();
+            event = parser.next();
+            switch (field) {
+                case "header":
+                    revision = readRevision(parser, event);
+                    break;
+                case "compact_revision":
+                    compactRevision = readLong(parser, event);
+                    break;
+                case "canceled":
+                    canceled = event == Event.VALUE_TRUE;
+                    break;
+                case "cancel_reason":
+                    reason = parser.getString();
+                    break;
+                case "events":
+                    if (event == Event.START_ARRAY) {
+                        while ((event = parser.next()) != Event.END_ARRAY) {
+                            changes.add(readWatchEvent(parser));
+                        }
+                    } else {
+                        EtcdResponse.skip(parser, event);
+                    }
+                    break;
+                default:
+                    EtcdResponse.skip(parser, event);
+            }
+        }
+        if (compactRevision > 0 || canceled) {
+            return Collections.singletonList(EtcdResponse.error(EtcdResponse.EVENT_INDEX_CLEARED,
+                    reason != null ? reason : "revision compacted: " + compactRevision, revision));
+        }
+        return changes;
+    }
+
+    private static EtcdResponse readWatchEvent(JsonParser parser) {
+        String type = "PUT";
+        EtcdNode node = null;
+        EtcdNode prevNode = null;
+        Event event;
+        while ((event = parser.next()) != Event.END_OBJECT) {
+            String field = parser.getString();
+            event = parser.next();
+            switch (field) {
+                case "type":
+                    type = parser.getString();
+                    break;
+                case "kv":
+                    node = readKeyValue(parser, event, null);
+                    break;
+                case "prev_kv":
+                    prevNode = readKeyValue(parser, event, null);
+                    break;
+                default:
+                    EtcdResponse.skip(parser, event);
+            }
+        }
+        if (node == null) {
+            throw new IllegalStateException("Invalid etcd watch event without kv.");
+        }
+        if ("DELETE".equals(type)) {
+            return EtcdResponse.of("delete", new EtcdNode(node.getKey(), null, false, node.getCreatedIndex(),
+                    node.getModifiedIndex(), -1, null), prevNode, node.getModifiedIndex());
+        }
+        if (node.getValue() == null) {
+            node = new EtcdNode(node.getKey(), "", false, node.getCreatedIndex(), node.getModifiedIndex(), -1, null);
+        }
+        return EtcdResponse.of("set", node, prevNode, node.getModifiedIndex());
+    }
+
+    private static EtcdNode readKeyValue(JsonParser parser, Event start, Consumer<byte[]> rawKey) {
+        if (start != Event.START_OBJECT) {
+            EtcdResponse.skip(parser, start);
+            return null;
+        }
+        String key = null;
+        String value = null;
+        long createRevision = -1L;
+        long modRevision = -1L;
+        Event event;
+        while ((event = parser.next()) != Event.END_OBJECT) {
+            String field = parser.getString();
+            event = parser.next();
+            switch (field) {
+                case "key":
+                    byte[] raw = Base64.getDecoder().decode(parser.getString());
+                    if (rawKey != null) {
+                        rawKey.accept(raw);
+                    }
+                    key = new String(raw, StandardCharsets.UTF_8);
+                    if (key.startsWith("/")) {
+                        key = key.substring(1);
+                    }
+                    break;
+                case "value":
+                    value = decode(parser.getString());
+                    break;
+                case "create_revision":
+                    createRevision = readLong(parser, event);
+                    break;
+                case "mod_revision":
+                    modRevision = readLong(parser, event);
+                    break;
+                default:
+                    EtcdResponse.skip(parser, event);
+            }
+        }
+        return new EtcdNode(key, value, false, createRevision, modRevision, -1, null);
+    }
+
+    private static long readRevision(JsonParser parser, Event start) {
+        long revision = -1L;
+        if (start != Event.START_OBJECT) {
+            EtcdResponse.skip(parser, start);
+            return revision;
+        }
+        Event event;
+        while ((event = parser.next()) != Event.END_OBJECT) {
+            String field = parser.getString();
+            event = parser.next();
+            if ("revision".equals(field)) {
+                revision = readLong(parser, event);
+            } else {
+                EtcdResponse.skip(parser, event);
+            }
+        }
+        return revision;
+    }
+
+    /**
+     * Reads a 64 bit number, which the JSON gateway encodes as string.
+     */
+    private static long readLong(JsonParser parser, Event event) {
+        if (event == Event.VALUE_STRING) {
+            return Long.parseLong(parser.getString());
+        }
+        if (event == Event.VALUE_NUMBER) {
+            return parser.getLong();
+        }
+        EtcdResponse.skip(parser, event);
+        return -1L;
+    }
+
+    private static String rangeRequest(byte[] key, byte[] rangeEnd, int limit, long revision, boolean keysOnly,
+                                       boolean latestFirst) {
+        StringBuilder b = new StringBuilder("{\"key\":\"").append(base64(key)).append('"');
+        if (rangeEnd != null) {
+            b.append(",\"range_end\":\"").append(base64(rangeEnd)).append('"');
+        }
+        if (limit > 0) {
+            b.append(",\"limit\":").append(limit);
+        }
+        if (revision > 0) {
+            b.append(",\"revision\":").append(revision);
+        }
+        if (keysOnly) {
+            b.append(",\"keys_only\":true");
+        }
+        if (latestFirst) {
+            b.append(",\"sort_order\":\"DESCEND\",\"sort_target\":\"MOD\"");
+        }
+        return b.append('}').toString();
+    }
+
+    /**
+     * Evaluates the end of the key range covering all keys with the given prefix.
+     *
+     * @param prefix the prefix, not null.
+     * @return the exclusive range end, {@code \0} for all keys.
+     */
+    static byte[] prefixEnd(byte[] prefix) {
+        byte[] end = Arrays.copyOf(prefix, prefix.length);
+        for (int i = end.length - 1; i >= 0; i--) {
+            if (end[i] != (byte) 0xff) {
+                end[i]++;
+                return Arrays.copyOf(end, i + 1);
+            }
+        }
+        return ALL_KEYS;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String base64(byte[] value) {
+        return Base64.getEncoder().encodeToString(value);
+    }
+
+    private static String decode(String base64) {
+        return new String(Base64.getDecoder().decode(base64), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Access the server root URL used by this accessor.
+     *
+     * @return the server root URL.
+     */
+    String getUrl() {
+        return serverURL;
+    }
+
+    /**
+     * A page of a range response. The key-values are passed to a consumer while parsing.
+     */
+    private static final class RangePage {
+        private long revision = -1L;
+        private boolean more;
+        private long count;
+        private byte[] lastKey;
+        private int code;
+        private String message;
+
+        static RangePage read(JsonParser parser, Consumer<EtcdNode> consumer) {
+            RangePage page = new RangePage();
+            EtcdResponse.expect(parser, Event.START_OBJECT);
+            Event event;
+            while ((event = parser.next()) != Event.END_OBJECT) {
+                String field = parser.getString();
+                event = parser.next();
+                switch (field) {
+                    case "header":
+                        page.revision = readRevision(parser, event);
+                        break;
+                    case "kvs":
+                        if (event == Event.START_ARRAY) {
+                            while ((event = parser.next()) != Event.END_ARRAY) {
+                                page.readKeyValue(parser, event, consumer);
+                            }
+                        } else {
+                            EtcdResponse.skip(parser, event);
+                        }
+                        break;
+                    case "more":
+                        page.more = event == Event.VALUE_TRUE;
+                        break;
+                    case "count":
+                        page.count = readLong(parser, event);
+                        break;
+                    case "code":
+                        page.code = (int) readLong(parser, event);
+                        break;
+                    case "message":
+                    case "error":
+                        if (event == Event.VALUE_STRING && page.message == null) {
+                            page.message = parser.getString();
+                        } else {
+                            EtcdResponse.skip(parser, event);
+                        }
+                        break;
+                    default:
+                        EtcdResponse.skip(parser, event);
+                }
+            }
+            return page;
+        }
+
+        private void readKeyValue(JsonParser parser, Event start, Consumer<EtcdNode> consumer) {
+            EtcdNode node = EtcdV3Accessor.readKeyValue(parser, start, raw -> lastKey = raw);
+            if (node != null && node.getKey() != null && consumer != null) {
+                consumer.accept(node);
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.etcd;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Streams the changes of an etcd directory into a property source. The watcher long polls etcd for the next change
+ * after the last index seen and applies it to the property source. The directory is reloaded completely only if no
+ * index is known yet or the requested index has already been cleared from the etcd event history.
+ */
+final class EtcdWatcher implements Runnable {
+
+    private static final Logger LOG = Logger.getLogger(EtcdWatcher.class.getName());
+
+    /** Maximal delay in ms between two attempts, if no etcd server is reachable. */
+    private static final long MAX_BACKOFF = 30000L;
+
+    private final AbstractEtcdPropertySource propertySource;
+
+    private final Thread thread;
+
+    private volatile boolean running = true;
+
+    /**
+     * Creates a new watcher.
+     *
+     * @param propertySource the property source to be updated, not null.
+     */
+    EtcdWatcher(AbstractEtcdPropertySource propertySource) {
+        this.propertySource = propertySource;
+        this.thread = new Thread(this, "tamaya-etcd-watch-" + propertySource.getName());
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Starts watching.
+     */
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Stops watching. A watch request currently pending is not aborted, but its result is discarded.
+     */
+    void stop() {
+        running = false;
+        thread.interrupt();
+    }
+
+    /**
+     * Checks if the watcher is still active.
+     *
+     * @return true, if not stopped.
+     */
+    boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void run() {
+        int failures = 0;
+        while (running) {
+            boolean accessed;
+            try {
+                accessed = watchOnce();
+            } catch (RuntimeException e) {
+                LOG.log(Level.WARNING, "etcd watch of " + propertySource.getName() + " failed.", e);
+                accessed = false;
+            }
+            if (accessed) {
+                failures = 0;
+            } else {
+                failures++;
+                try {
+                    Thread.sleep(Math.min(MAX_BACKOFF, 500L << Math.min(failures, 6)));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for and applies the next change, trying all etcd servers in order.
+     *
+     * @return true, if an etcd server could be accessed.
+     */
+    private boolean watchOnce() {
+        long index = propertySource.getEtcdIndex();
+        if (index <= 0) {
+            return propertySource.resync();
+        }
+        for (EtcdAccessor accessor : propertySource.getBackends()) {
+            List<EtcdResponse> responses;
+            try {
+                responses = watch(accessor, index);
+            } catch (Exception e) {
+                LOG.log(Level.FINE, "etcd watch failed on " + accessor.getUrl() + ", trying next...", e);
+                continue;
+            }
+            if (!running) {
+                return true;
+            }
+            EtcdResponse first = responses.isEmpty() ? null : responses.get(0);
+            if (first == null) {
+                return true;
+            }
+            if (first.getErrorCode() == EtcdResponse.EVENT_INDEX_CLEARED) {
+                LOG.info("etcd index " + index + " of " + propertySource.getName()
+                        + " has been cleared, reloading directory: " + propertySource.getDirectory());
+                propertySource.resync();
+            } else if (first.getErrorCode() != 0) {
+                LOG.log(Level.FINE, "etcd watch failed on " + accessor.getUrl() + ": " + first.getMessage());
+                continue;
+            } else if (!first.isEmpty()) {
+                propertySource.applyWatchEvents(index, responses);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Waits for the next changes after the given index, using the API version of the property source.
+     *
+     * @param accessor the accessor to use, not null.
+     * @param index    the last index seen.
+     * @return the changes, empty if no change happened within the watch timeout, never null.
+     * @throws IOException if the server could not be accessed.
+     */
+    private List<EtcdResponse> watch(EtcdAccessor accessor, long index) throws IOException {
+        int timeout = (int) propertySource.getWatchTimeout();
+        if (propertySource.getApiVersion() == 3) {
+            return accessor.getV3().watch(propertySource.getKeyPrefix(), index + 1, timeout);
+        }
+        return Collections.singletonList(accessor.watch(propertySource.getDirectory(), index + 1, timeout));
+    }
+}
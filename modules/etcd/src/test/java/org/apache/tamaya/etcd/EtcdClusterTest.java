@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.etcd;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the health tracking, failover and hedging of {@link EtcdCluster} against emulated etcd servers.
+ */
+public class EtcdClusterTest {
+
+    private EtcdStubServer first;
+    private EtcdStubServer second;
+    private EtcdCluster cluster;
+
+    @Before
+    public void setUp() throws Exception {
+        first = new EtcdStubServer();
+        second = new EtcdStubServer();
+        first.put("config/a", "first");
+        second.put("config/a", "second");
+        cluster = new EtcdCluster(Arrays.asList(first.getUrl(), second.getUrl()));
+    }
+
+    @After
+    public void tearDown() {
+        first.close();
+        second.close();
+    }
+
+    private String readA() throws IOException {
+        return cluster.read((accessor, abortHook) -> {
+            Map<String, String> values = new HashMap<>();
+            accessor.readNodes("config", node -> values.put(node.getKey(), node.getValue()), abortHook);
+            return values.get("config/a");
+        });
+    }
+
+    private EtcdAccessor member(EtcdStubServer server) {
+        for (EtcdAccessor accessor : cluster.getMembers()) {
+            if (accessor.getUrl().equals(server.getUrl())) {
+                return accessor;
+            }
+        }
+        throw new IllegalArgumentException(server.getUrl());
+    }
+
+    @Test
+    public void testReadsPreferFastestMember() throws Exception {
+        cluster.setHedgePercentile(0);
+        first.setReadDelay(50L);
+        for (int i = 0; i < 4; i++) {
+            readA();
+        }
+        assertThat(cluster.getPreferred().get(0).getUrl()).isEqualTo(second.getUrl());
+        int reads = first.getReadCount();
+        for (int i = 0; i < 5; i++) {
+            assertThat(readA()).isEqualTo("second");
+        }
+        assertThat(first.getReadCount()).isEqualTo(reads);
+    }
+
+    @Test
+    public void testFailedReadFailsOver() throws Exception {
+        first.setFailing(true);
+        second.setReadDelay(20L);
+        member(second).getHealth().success(1000000000L);
+        assertThat(readA()).isEqualTo("second");
+        assertThat(member(first).getHealth().isHealthy()).isFalse();
+        assertThat(member(first).getHealth().getConsecutiveFailures()).isEqualTo(1);
+        assertThat(cluster.getPreferred().get(0).getUrl()).isEqualTo(second.getUrl());
+    }
+
+    @Test
+    public void testSlowReadIsHedged() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            readA();
+        }
+        boolean firstPreferred = cluster.getPreferred().get(0).getUrl().equals(first.getUrl());
+        EtcdStubServer slow = firstPreferred ? first : second;
+        EtcdStubServer hedge = firstPreferred ? second : first;
+        int hedgeReads = hedge.getReadCount();
+        slow.setReadDelay(3000L);
+        long start = System.currentTimeMillis();
+        assertThat(readA()).isEqualTo(firstPreferred ? "second" : "first");
+        assertThat(System.currentTimeMillis() - start).isLessThan(2000L);
+        assertThat(hedge.getReadCount()).isEqualTo(hedgeReads + 1);
+        assertThat(member(slow).getHealth().getConsecutiveFailures()).isEqualTo(0);
+    }
+
+    @Test
+    public void testAllMembersFailing() throws Exception {
+        first.setFailing(true);
+        second.setFailing(true);
+        try {
+            readA();
+            throw new AssertionError("IOException expected");
+        } catch (IOException e) {
+            assertThat(e.getMessage()).contains("HTTP 500");
+        }
+    }
+
+    @Test
+    public void testVersionUsesPooledClient() {
+        EtcdAccessor accessor = member(first);
+        for (int i = 0; i < 3; i++) {
+            assertThat(accessor.getVersion()).contains("etcdserver");
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.etcd;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the asynchronous refresh mode of {@link AbstractEtcdPropertySource} against an emulated etcd server.
+ */
+public class EtcdRefreshTest {
+
+    private EtcdStubServer etcd;
+    private EtcdPropertySource propertySource;
+
+    @Before
+    public void setUp() throws Exception {
+        etcd = new EtcdStubServer();
+        etcd.put("config/a", "1");
+        propertySource = new EtcdPropertySource(etcd.getUrl());
+        propertySource.setDirectory("config");
+        propertySource.setCacheTimeout(200L);
+        propertySource.refresh();
+        propertySource.setRefreshAsync(true);
+    }
+
+    @After
+    public void tearDown() {
+        etcd.close();
+    }
+
+    @Test
+    public void testExpiredDataIsServedWhileReloading() throws Exception {
+        etcd.put("config/b", "2");
+        etcd.setReadDelay(500L);
+        Thread.sleep(250L);
+        int reads = etcd.getReadCount();
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            assertThat(propertySource.get("config/a").getValue()).isEqualTo("1");
+            assertThat(propertySource.get("config/b")).isNull();
+        }
+        assertThat(System.currentTimeMillis() - start).isLessThan(400L);
+        await(() -> propertySource.get("config/b") != null);
+        assertThat(etcd.getReadCount()).isEqualTo(reads + 1);
+        assertThat(propertySource.getStaleness()).isLessThan(200L);
+    }
+
+    @Test
+    public void testReloadStartsBeforeExpiry() throws Exception {
+        propertySource.setCacheTimeout(1000L);
+        long initialValidUntil = propertySource.getValidUntil();
+        // reloads in the background in asynchronous refresh mode
+        propertySource.refresh();
+        await(() -> propertySource.getValidUntil() != initialValidUntil);
+        int reads = etcd.getReadCount();
+        long validUntil = propertySource.getValidUntil();
+        Thread.sleep(850L);
+        propertySource.get("config/a");
+        await(() -> propertySource.getValidUntil() > validUntil);
+        assertThat(etcd.getReadCount()).isEqualTo(reads + 1);
+        assertThat(propertySource.getValidUntil()).isGreaterThan(validUntil + 500L);
+    }
+
+    @Test
+    public void testFailedReloadKeepsData() throws Exception {
+        etcd.setFailing(true);
+        Thread.sleep(250L);
+        assertThat(propertySource.get("config/a").getValue()).isEqualTo("1");
+        await(() -> propertySource.getRefreshFailureCount() == 1L);
+        assertThat(propertySource.getLastRefreshFailure()).isNotNull();
+        assertThat(propertySource.get("config/a").getValue()).isEqualTo("1");
+        assertThat(propertySource.getStaleness()).isGreaterThanOrEqualTo(250L);
+        assertThat(Integer.parseInt(propertySource.get("config/a").getMeta("refreshFailures"))).isGreaterThanOrEqualTo(1);
+        assertThat(Long.parseLong(propertySource.get("config/a").getMeta("staleness"))).isGreaterThanOrEqualTo(250L);
+        assertThat(propertySource.getProperties().get("config/a").getMeta("refreshFailures")).isNotNull();
+        etcd.setFailing(false);
+        etcd.put("config/a", "2");
+        await(() -> "2".equals(propertySource.get("config/a").getValue()));
+        assertThat(propertySource.get("config/a").getMeta("refreshFailures")).isNull();
+    }
+
+    @Test
+    public void testConstructorLoadsOnce() throws Exception {
+        int reads = etcd.getReadCount();
+        EtcdPropertySource source = new EtcdPropertySource(etcd.getUrl());
+        assertThat(etcd.getReadCount()).isEqualTo(reads + 1);
+        assertThat(source.getProperties()).isNotEmpty();
+    }
+
+    @Test
+    public void testAsyncConstructorLoadsInBackground() throws Exception {
+        etcd.setReadDelay(500L);
+        System.setProperty("tamaya.etcd.refresh-async", "true");
+        try {
+            long start = System.currentTimeMillis();
+            EtcdPropertySource source = new EtcdPropertySource(etcd.getUrl());
+            assertThat(System.currentTimeMillis() - start).isLessThan(400L);
+            assertThat(source.isRefreshAsync()).isTrue();
+            // the first access waits for the initial load
+            assertThat(source.getProperties()).isNotEmpty();
+        } finally {
+            System.clearProperty("tamaya.etcd.refresh-async");
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long until = System.currentTimeMillis() + 5000L;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("condition not met in time").isLessThan(until);
+            Thread.sleep(10L);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.etcd;
+
+import org.junit.Test;
+
+import javax.json.Json;
+import javax.json.stream.JsonParser;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link EtcdResponse}.
+ */
+public class EtcdResponseTest {
+
+    private static EtcdResponse read(String json, List<EtcdNode> leafs) {
+        JsonParser parser = Json.createParser(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+        return EtcdResponse.read(parser, 42L, leafs == null ? null : leafs::add);
+    }
+
+    @Test
+    public void testReadDirectoryStreamsLeafs() {
+        List<EtcdNode> leafs = new ArrayList<>();
+        EtcdResponse response = read("{\"action\":\"get\",\"node\":{\"key\":\"/dir\",\"dir\":true,\"nodes\":["
+                + "{\"key\":\"/dir/a\",\"value\":\"1\",\"modifiedIndex\":3,\"createdIndex\":2},"
+                + "{\"key\":\"/dir/sub\",\"dir\":true,\"modifiedIndex\":4,\"createdIndex\":4,\"nodes\":["
+                + "{\"key\":\"/dir/sub/b\",\"value\":\"x\\\"y\",\"expiration\":\"2026-01-01T00:00:00Z\","
+                + "\"ttl\":30,\"modifiedIndex\":5,\"createdIndex\":5}]}]}}", leafs);
+        assertThat(response.getAction()).isEqualTo("get");
+        assertThat(response.getEtcdIndex()).isEqualTo(42L);
+        assertThat(response.getNode().isDir()).isTrue();
+        assertThat(response.getNode().getKey()).isEqualTo("dir");
+        assertThat(leafs).hasSize(2);
+        assertThat(leafs.get(0).getKey()).isEqualTo("dir/a");
+        assertThat(leafs.get(0).getValue()).isEqualTo("1");
+        assertThat(leafs.get(0).getCreatedIndex()).isEqualTo(2L);
+        assertThat(leafs.get(0).getModifiedIndex()).isEqualTo(3L);
+        assertThat(leafs.get(0).getTtl()).isEqualTo(-1L);
+        assertThat(leafs.get(1).getKey()).isEqualTo("dir/sub/b");
+        assertThat(leafs.get(1).getValue()).isEqualTo("x\"y");
+        assertThat(leafs.get(1).getTtl()).isEqualTo(30L);
+        assertThat(leafs.get(1).getExpiration()).isEqualTo("2026-01-01T00:00:00Z");
+    }
+
+    @Test
+    public void testReadChangeWithPrevNode() {
+        EtcdResponse response = read("{\"action\":\"delete\",\"node\":{\"key\":\"/a\",\"modifiedIndex\":9,"
+                + "\"createdIndex\":7},\"prevNode\":{\"key\":\"/a\",\"value\":\"old\",\"modifiedIndex\":8,"
+                + "\"createdIndex\":7},\"extra\":{\"ignored\":[1,{\"x\":null}]}}", null);
+        assertThat(response.isRemoval()).isTrue();
+        assertThat(response.isEmpty()).isFalse();
+        assertThat(response.getNode().getKey()).isEqualTo("a");
+        assertThat(response.getNode().getValue()).isNull();
+        assertThat(response.getNode().getModifiedIndex()).isEqualTo(9L);
+        assertThat(response.getPrevNode().getValue()).isEqualTo("old");
+        assertThat(response.getPrevNode().getModifiedIndex()).isEqualTo(8L);
+    }
+
+    @Test
+    public void testReadLegacyFieldNames() {
+        List<EtcdNode> leafs = new ArrayList<>();
+        EtcdResponse response = read("{\"action\":\"get\",\"value\":{\"key\":\"/\",\"dir\":true,\"values\":["
+                + "{\"key\":\"/foo\",\"value\":\"two\",\"modifiedIndex\":1,\"createdIndex\":1}]}}", leafs);
+        assertThat(response.getNode().isDir()).isTrue();
+        assertThat(leafs).hasSize(1);
+        assertThat(leafs.get(0).getKey()).isEqualTo("foo");
+        assertThat(leafs.get(0).getValue()).isEqualTo("two");
+    }
+
+    @Test
+    public void testReadError() {
+        EtcdResponse response = read("{\"errorCode\":401,\"message\":\"The event in requested index is outdated "
+                + "and cleared\",\"cause\":\"the requested history has been cleared [8/3]\",\"index\":1007}", null);
+        assertThat(response.getErrorCode()).isEqualTo(EtcdResponse.EVENT_INDEX_CLEARED);
+        assertThat(response.getMessage()).startsWith("The event in requested index");
+        assertThat(response.getNode()).isNull();
+        assertThat(response.isEmpty()).isFalse();
+    }
+
+    @Test
+    public void testEmpty() {
+        EtcdResponse response = EtcdResponse.empty(-1L);
+        assertThat(response.isEmpty()).isTrue();
+        assertThat(response.getEtcdIndex()).isEqualTo(-1L);
+    }
+}
@@ -0,0 +1,512 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.etcd;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Scanner;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal in-process emulation of the etcd v2 keys API, supporting recursive reads and long polling watches, and of
+ * the range (including sorting by modification) and watch requests of the etcd v3 JSON gateway, sharing the same
+ * keys.
+ */
+final class EtcdStubServer implements Closeable {
+
+    private final HttpServer server;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "etcd-stub");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final TreeMap<String, Node> nodes = new TreeMap<>();
+
+    private final List<Event> history = new ArrayList<>();
+
+    private final AtomicInteger reads = new AtomicInteger();
+
+    private final AtomicInteger watches = new AtomicInteger();
+
+    private final AtomicInteger ranges = new AtomicInteger();
+
+    /** The keys as they were, when the history has been cleared the last time. */
+    private TreeMap<String, Node> compacted = new TreeMap<>();
+
+    private long index;
+
+    private long historyStart = 1;
+
+    private long watchWait = 1000L;
+
+    private volatile long readDelay;
+
+    private volatile boolean failing;
+
+    EtcdStubServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    int getReadCount() {
+        return reads.get();
+    }
+
+    int getWatchCount() {
+        return watches.get();
+    }
+
+    int getRangeCount() {
+        return ranges.get();
+    }
+
+    synchronized void setWatchWait(long millis) {
+        this.watchWait = millis;
+    }
+
+    /**
+     * Delays all subsequent reads, emulating a slow server.
+     */
+    void setReadDelay(long millis) {
+        this.readDelay = millis;
+    }
+
+    /**
+     * Lets all subsequent reads fail with status 500.
+     */
+    void setFailing(boolean failing) {
+        this.failing = failing;
+    }
+
+    synchronized long put(String key, String value) {
+        index++;
+        Node prev = nodes.get(key);
+        Node node = new Node(key, value, prev != null ? prev.createdIndex : index, index);
+        nodes.put(key, node);
+        history.add(new Event("set", node, prev));
+        notifyAll();
+        return index;
+    }
+
+    synchronized long delete(String key) {
+        Node prev = nodes.remove(key);
+        if (prev == null) {
+            return index;
+        }
+        index++;
+        history.add(new Event("delete", new Node(key, null, prev.createdIndex, index), prev));
+        notifyAll();
+        return index;
+    }
+
+    /**
+     * Drops the event history, so watches for earlier indexes fail with error code 401.
+     */
+    synchronized void clearHistory() {
+        compacted = new TreeMap<>(nodes);
+        history.clear();
+        historyStart = index + 1;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            URI uri = exchange.getRequestURI();
+            String path = uri.getPath();
+            Map<String, String> query = parseQuery(uri.getRawQuery());
+            if ("/version".equals(path)) {
+                respond(exchange, 200, "{\"etcdserver\":\"2.3.8\",\"etcdcluster\":\"2.3.0\"}", -1);
+            } else if ("/v3/kv/range".equals(path)) {
+                ranges.incrementAndGet();
+                if (readDelay > 0) {
+                    Thread.sleep(readDelay);
+                }
+                range(exchange, readBody(exchange));
+            } else if ("/v3/watch".equals(path)) {
+                watches.incrementAndGet();
+                watchV3(exchange, readBody(exchange));
+            } else if (path.startsWith("/v2/keys")) {
+                String key = path.substring("/v2/keys".length());
+                while (key.startsWith("/")) {
+                    key = key.substring(1);
+                }
+                if ("true".equals(query.get("wait"))) {
+                    watches.incrementAndGet();
+                    watch(exchange, key, Long.parseLong(query.get("waitIndex")));
+                } else {
+                    reads.incrementAndGet();
+                    if (readDelay > 0) {
+                        Thread.sleep(readDelay);
+                    }
+                    if (failing) {
+                        respond(exchange, 500, "", -1);
+                    } else {
+                        read(exchange, key);
+                    }
+                }
+            } else {
+                respond(exchange, 404, "", -1);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void read(HttpExchange exchange, String dir) throws IOException {
+        StringBuilder b = new StringBuilder();
+        long current;
+        synchronized (this) {
+            current = index;
+            b.append("{\"action\":\"get\",\"node\":{\"key\":\"/").append(dir).append("\",\"dir\":true,\"nodes\":[");
+            boolean first = true;
+            for (Node node : nodes.values()) {
+                if (dir.isEmpty() || node.key.startsWith(dir + "/")) {
+                    if (!first) {
+                        b.append(',');
+                    }
+                    node.write(b);
+                    first = false;
+                }
+            }
+            b.append("]}}");
+        }
+        respond(exchange, 200, b.toString(), current);
+    }
+
+    private void watch(HttpExchange exchange, String dir, long waitIndex) throws IOException, InterruptedException {
+        String body;
+        int status = 200;
+        synchronized (this) {
+            long until = System.currentTimeMillis() + watchWait;
+            Event event;
+            while ((event = findEvent(dir, waitIndex)) == null && waitIndex >= historyStart) {
+                long wait = until - System.currentTimeMillis();
+                if (wait <= 0) {
+                    break;
+                }
+                wait(wait);
+            }
+            if (waitIndex < historyStart) {
+                status = 400;
+                body = "{\"errorCode\":401,\"message\":\"The event in requested index is outdated and cleared\","
+                        + "\"cause\":\"the requested history has been cleared [" + historyStart + "/" + waitIndex
+                        + "]\",\"index\":" + index + "}";
+            } else if (event == null) {
+                body = "";
+            } else {
+                StringBuilder b = new StringBuilder("{\"action\":\"").append(event.action).append("\",\"node\":");
+                event.node.write(b);
+                if (event.prevNode != null) {
+                    b.append(",\"prevNode\":");
+                    event.prevNode.write(b);
+                }
+                body = b.append('}').toString();
+            }
+        }
+        respond(exchange, status, body, -1);
+    }
+
+    private void range(HttpExchange exchange, String body) throws IOException {
+        String key = decode(stringField(body, "key"));
+        String end = decode(stringField(body, "range_end"));
+        long limit = longField(body, "limit");
+        long revision = longField(body, "revision");
+        boolean keysOnly = body.contains("\"keys_only\":true");
+        boolean countOnly = body.contains("\"count_only\":true");
+        boolean latestFirst = body.contains("\"sort_order\":\"DESCEND\"") && body.contains("\"sort_target\":\"MOD\"");
+        StringBuilder b = new StringBuilder();
+        synchronized (this) {
+            if (revision <= 0) {
+                revision = index;
+            }
+            if (revision < historyStart - 1) {
+                respond(exchange, 400, "{\"error\":\"etcdserver: mvcc: required revision has been compacted\","
+                        + "\"code\":11,\"message\":\"etcdserver: mvcc: required revision has been compacted\"}", -1);
+                return;
+            }
+            List<Node> matches = new ArrayList<>();
+            for (Node node : stateAt(revision).values()) {
+                if (inRange(node.key, key, end)) {
+                    matches.add(node);
+                }
+            }
+            if (latestFirst) {
+                matches.sort((n1, n2) -> Long.compare(n2.modifiedIndex, n1.modifiedIndex));
+            }
+            b.append("{\"header\":{\"cluster_id\":\"1\",\"revision\":\"").append(revision).append("\"}");
+            if (!countOnly && !matches.isEmpty()) {
+                b.append(",\"kvs\":[");
+                int count = 0;
+                for (Node node : matches) {
+                    if (limit > 0 && count == limit) {
+                        break;
+                    }
+                    if (count++ > 0) {
+                        b.append(',');
+                    }
+                    node.writeV3(b, !keysOnly);
+                }
+                b.append(']');
+                if (limit > 0 && matches.size() > limit) {
+                    b.append(",\"more\":true");
+                }
+            }
+            if (!matches.isEmpty()) {
+                b.append(",\"count\":\"").append(matches.size()).append('"');
+            }
+            b.append('}');
+        }
+        respond(exchange, 200, b.toString(), -1);
+    }
+
+    private TreeMap<String, Node> stateAt(long revision) {
+        if (revision >= index) {
+            return nodes;
+        }
+        TreeMap<String, Node> state = new TreeMap<>(compacted);
+        for (Event event : history) {
+            if (event.node.modifiedIndex > revision) {
+                break;
+            }
+            if ("delete".equals(event.action)) {
+                state.remove(event.node.key);
+            } else {
+                state.put(event.node.key, event.node);
+            }
+        }
+        return state;
+    }
+
+    private static boolean inRange(String key, String start, String end) {
+        if (end == null) {
+            return key.equals(start);
+        }
+        return key.compareTo(start) >= 0 && ("\0".equals(end) || key.compareTo(end) < 0);
+    }
+
+    private void watchV3(HttpExchange exchange, String body) throws IOException, InterruptedException {
+        String key = decode(stringField(body, "key"));
+        String end = decode(stringField(body, "range_end"));
+        long startRevision = longField(body, "start_revision");
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        writeLine(out, "{\"result\":{\"header\":{\"revision\":\"" + index + "\"},\"created\":true}}");
+        String message;
+        synchronized (this) {
+            long until = System.currentTimeMillis() + watchWait;
+            List<Event> events;
+            while ((events = findEvents(key, end, startRevision)).isEmpty() && startRevision >= historyStart) {
+                long wait = until - System.currentTimeMillis();
+                if (wait <= 0) {
+                    break;
+                }
+                wait(wait);
+            }
+            if (startRevision < historyStart) {
+                message = "{\"result\":{\"header\":{\"revision\":\"" + index + "\"},\"canceled\":true,"
+                        + "\"compact_revision\":\"" + (historyStart - 1) + "\"}}";
+            } else if (events.isEmpty()) {
+                message = null;
+            } else {
+                StringBuilder b = new StringBuilder("{\"result\":{\"header\":{\"revision\":\"").append(index)
+                        .append("\"},\"events\":[");
+                for (int i = 0; i < events.size(); i++) {
+                    Event event = events.get(i);
+                    if (i > 0) {
+                        b.append(',');
+                    }
+                    b.append('{');
+                    if ("delete".equals(event.action)) {
+                        b.append("\"type\":\"DELETE\",");
+                    }
+                    b.append("\"kv\":");
+                    event.node.writeV3(b, true);
+                    if (event.prevNode != null) {
+                        b.append(",\"prev_kv\":");
+                        event.prevNode.writeV3(b, true);
+                    }
+                    b.append('}');
+                }
+                message = b.append("]}}").toString();
+            }
+        }
+        if (message != null) {
+            writeLine(out, message);
+        }
+        // like etcd, the stream stays open until the client closes it
+        Thread.sleep(watchWait);
+        out.close();
+    }
+
+    private List<Event> findEvents(String key, String end, long startRevision) {
+        List<Event> events = new ArrayList<>();
+        for (Event event : history) {
+            if (event.node.modifiedIndex >= startRevision && inRange(event.node.key, key, end)) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    private static void writeLine(OutputStream out, String line) throws IOException {
+        out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static String readBody(HttpExchange exchange) {
+        Scanner scanner = new Scanner(exchange.getRequestBody(), "UTF-8").useDelimiter("\\A");
+        return scanner.hasNext() ? scanner.next() : "";
+    }
+
+    private static String stringField(String body, String field) {
+        Matcher matcher = Pattern.compile("\"" + field + "\":\"([^\"]*)\"").matcher(body);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    private static long longField(String body, String field) {
+        Matcher matcher = Pattern.compile("\"" + field + "\":\"?(\\d+)").matcher(body);
+        return matcher.find() ? Long.parseLong(matcher.group(1)) : 0L;
+    }
+
+    private static String decode(String base64) {
+        return base64 == null ? null : new String(Base64.getDecoder().decode(base64), StandardCharsets.UTF_8);
+    }
+
+    private static String encode(String value) {
+        return Base64.getEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Event findEvent(String dir, long waitIndex) {
+        for (Event event : history) {
+            if (event.node.modifiedIndex >= waitIndex
+                    && (dir.isEmpty() || event.node.key.startsWith(dir + "/"))) {
+                return event;
+            }
+        }
+        return null;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body, long etcdIndex) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        if (etcdIndex >= 0) {
+            exchange.getResponseHeaders().add("X-Etcd-Index", String.valueOf(etcdIndex));
+        }
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> result = new HashMap<>();
+        if (query != null) {
+            for (String param : query.split("&")) {
+                int idx = param.indexOf('=');
+                if (idx > 0) {
+                    result.put(param.substring(0, idx), param.substring(idx + 1));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private static final class Node {
+        final String key;
+        final String value;
+        final long createdIndex;
+        final long modifiedIndex;
+
+        Node(String key, String value, long createdIndex, long modifiedIndex) {
+            this.key = key;
+            this.value = value;
+            this.createdIndex = createdIndex;
+            this.modifiedIndex = modifiedIndex;
+        }
+
+        void write(StringBuilder b) {
+            b.append("{\"key\":\"/").append(escape(key)).append('"');
+            if (value != null) {
+                b.append(",\"value\":\"").append(escape(value)).append('"');
+            }
+            b.append(",\"modifiedIndex\":").append(modifiedIndex)
+                    .append(",\"createdIndex\":").append(createdIndex).append('}');
+        }
+
+        void writeV3(StringBuilder b, boolean withValue) {
+            b.append("{\"key\":\"").append(encode(key)).append("\",\"create_revision\":\"").append(createdIndex)
+                    .append("\",\"mod_revision\":\"").append(modifiedIndex).append("\",\"version\":\"1\"");
+            if (withValue && value != null && !value.isEmpty()) {
+                b.append(",\"value\":\"").append(encode(value)).append('"');
+            }
+            b.append('}');
+        }
+    }
+
+    private static final class Event {
+        final String action;
+        final Node node;
+        final Node prevNode;
+
+        Event(String action, Node node, Node prevNode) {
+            this.action = action;
+            this.node = node;
+            this.prevNode = prevNode;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.etcd;
+
+import org.apache.tamaya.spi.PropertyValue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests {@link EtcdV3Accessor} and the v3 mode of {@link AbstractEtcdPropertySource} against an emulated etcd server.
+ */
+public class EtcdV3AccessorTest {
+
+    private EtcdStubServer etcd;
+    private EtcdAccessor accessor;
+
+    @Before
+    public void setUp() throws Exception {
+        etcd = new EtcdStubServer();
+        etcd.put("config/a", "1");
+        etcd.put("config/b", "2");
+        etcd.put("other/x", "y");
+        accessor = new EtcdAccessor(etcd.getUrl());
+    }
+
+    @After
+    public void tearDown() {
+        etcd.close();
+    }
+
+    @Test
+    public void testReadPrefixPagesAtOneRevision() throws Exception {
+        List<String> keys = new ArrayList<>();
+        long revision = accessor.getV3().readPrefix("config/", 1, node -> {
+            if (keys.isEmpty()) {
+                etcd.put("config/aa", "later");
+            }
+            keys.add(node.getKey() + "=" + node.getValue());
+        }, null);
+        assertThat(revision).isEqualTo(3L);
+        assertThat(keys).containsExactly("config/a=1", "config/b=2");
+        assertThat(etcd.getRangeCount()).isEqualTo(2);
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadPrefixFailsOnCompactedRevision() throws Exception {
+        accessor.getV3().readPrefix("config/", 1, node -> {
+            etcd.put("config/c", "3");
+            etcd.clearHistory();
+        }, null);
+    }
+
+    @Test
+    public void testCheckUnchanged() throws Exception {
+        assertThat(accessor.getV3().checkUnchanged("config/", 2L, 2L)).isEqualTo(3L);
+        assertThat(accessor.getV3().checkUnchanged("none/", 2L, 0L)).isEqualTo(3L);
+        assertThat(accessor.getV3().checkUnchanged("config/", 2L, 1L)).isEqualTo(-1L);
+        etcd.put("config/a", "3");
+        assertThat(accessor.getV3().checkUnchanged("config/", 3L, 2L)).isEqualTo(-1L);
+        assertThat(accessor.getV3().checkUnchanged("config/", 4L, 2L)).isEqualTo(4L);
+        etcd.delete("config/b");
+        assertThat(accessor.getV3().checkUnchanged("config/", 4L, 2L)).isEqualTo(-1L);
+        assertThat(etcd.getRangeCount()).isEqualTo(6);
+    }
+
+    @Test
+    public void testPrefixEnd() {
+        assertThat(EtcdV3Accessor.prefixEnd("a/".getBytes(StandardCharsets.UTF_8)))
+                .isEqualTo("a0".getBytes(StandardCharsets.UTF_8));
+        assertThat(EtcdV3Accessor.prefixEnd(new byte[]{'a', (byte) 0xff})).isEqualTo(new byte[]{'b'});
+        assertThat(EtcdV3Accessor.prefixEnd(new byte[]{(byte) 0xff})).isEqualTo(new byte[]{0});
+    }
+
+    @Test
+    public void testPropertySourceWatchesRevisions() throws Exception {
+        EtcdPropertySource propertySource = new EtcdPropertySource(etcd.getUrl());
+        try {
+            propertySource.setDirectory("config");
+            propertySource.setApiVersion(3);
+            propertySource.setWatchTimeout(5000);
+            assertThat(propertySource.getEtcdIndex()).isEqualTo(3L);
+            assertThat(propertySource.get("config/a").getValue()).isEqualTo("1");
+            assertThat(propertySource.get("other/x")).isNull();
+            propertySource.setWatchEnabled(true);
+            int ranges = etcd.getRangeCount();
+            etcd.put("config/c", "3");
+            await(() -> propertySource.get("config/c") != null);
+            etcd.put("other/x", "z");
+            etcd.delete("config/a");
+            await(() -> propertySource.get("config/a") == null);
+            assertThat(propertySource.getEtcdIndex()).isEqualTo(6L);
+            assertThat(propertySource.getProperties()).containsOnlyKeys("config/b", "config/c");
+            assertThat(etcd.getRangeCount()).isEqualTo(ranges);
+        } finally {
+            propertySource.setWatchEnabled(false);
+        }
+    }
+
+    @Test
+    public void testPropertySourceReloadsOnCompaction() throws Exception {
+        EtcdPropertySource propertySource = new EtcdPropertySource(etcd.getUrl());
+        try {
+            propertySource.setDirectory("config");
+            propertySource.setApiVersion(3);
+            propertySource.setWatchTimeout(5000);
+            etcd.put("config/c", "3");
+            etcd.clearHistory();
+            int ranges = etcd.getRangeCount();
+            propertySource.setWatchEnabled(true);
+            await(() -> propertySource.get("config/c") != null);
+            // the check for changes and the reload
+            assertThat(etcd.getRangeCount()).isEqualTo(ranges + 2);
+            assertThat(propertySource.getEtcdIndex()).isEqualTo(4L);
+        } finally {
+            propertySource.setWatchEnabled(false);
+        }
+    }
+
+    @Test
+    public void testPropertySourceKeepsUnchangedDataOnReload() throws Exception {
+        EtcdPropertySource propertySource = new EtcdPropertySource(etcd.getUrl());
+        propertySource.setDirectory("config");
+        propertySource.setApiVersion(3);
+        PropertyValue a = propertySource.get("config/a");
+        int ranges = etcd.getRangeCount();
+        etcd.put("other/x", "z");
+        propertySource.refresh();
+        assertThat(etcd.getRangeCount()).isEqualTo(ranges + 1);
+        assertThat(propertySource.get("config/a")).isSameAs(a);
+        assertThat(propertySource.getEtcdIndex()).isEqualTo(4L);
+        etcd.put("config/c", "3");
+        propertySource.refresh();
+        assertThat(etcd.getRangeCount()).isEqualTo(ranges + 3);
+        assertThat(propertySource.get("config/c").getValue()).isEqualTo("3");
+        etcd.delete("config/a");
+        propertySource.refresh();
+        assertThat(etcd.getRangeCount()).isEqualTo(ranges + 5);
+        assertThat(propertySource.get("config/a")).isNull();
+        assertThat(propertySource.getProperties()).containsOnlyKeys("config/b", "config/c");
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long until = System.currentTimeMillis() + 5000L;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("condition not met in time").isLessThan(until);
+            Thread.sleep(10L);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.etcd;
+
+import org.apache.tamaya.events.ConfigEvent;
+import org.apache.tamaya.events.ConfigEventListener;
+import org.apache.tamaya.events.ConfigEventManager;
+import org.apache.tamaya.events.PropertySourceChange;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the watch mode of {@link AbstractEtcdPropertySource} against an emulated etcd server.
+ */
+public class EtcdWatchTest {
+
+    private EtcdStubServer etcd;
+    private EtcdPropertySource propertySource;
+
+    @Before
+    public void setUp() throws Exception {
+        etcd = new EtcdStubServer();
+        etcd.put("config/a", "1");
+        etcd.put("other/x", "y");
+        propertySource = new EtcdPropertySource(etcd.getUrl());
+        propertySource.setDirectory("config");
+        propertySource.setWatchTimeout(5000);
+    }
+
+    @After
+    public void tearDown() {
+        propertySource.setWatchEnabled(false);
+        etcd.close();
+    }
+
+    @Test
+    public void testLoadTracksEtcdIndex() {
+        assertThat(propertySource.getEtcdIndex()).isEqualTo(2L);
+        assertThat(propertySource.getVersion()).isEqualTo("2");
+        assertThat(propertySource.get("config/a").getValue()).isEqualTo("1");
+        assertThat(propertySource.get("other/x")).isNull();
+    }
+
+    @Test
+    public void testWatchAppliesChangesWithoutReload() throws Exception {
+        propertySource.setWatchEnabled(true);
+        assertThat(propertySource.isWatchEnabled()).isTrue();
+        int reads = etcd.getReadCount();
+        etcd.put("config/b", "2");
+        await(() -> propertySource.get("config/b") != null);
+        assertThat(propertySource.get("config/b").getValue()).isEqualTo("2");
+        etcd.put("config/a", "3");
+        await(() -> "3".equals(propertySource.get("config/a").getValue()));
+        etcd.put("other/x", "z");
+        etcd.delete("config/a");
+        await(() -> propertySource.get("config/a") == null);
+        assertThat(propertySource.getEtcdIndex()).isEqualTo(6L);
+        assertThat(propertySource.getProperties()).containsOnlyKeys("config/b");
+        assertThat(etcd.getReadCount()).isEqualTo(reads);
+    }
+
+    @Test
+    public void testWatchReloadsOnClearedIndex() throws Exception {
+        etcd.put("config/b", "2");
+        etcd.clearHistory();
+        int reads = etcd.getReadCount();
+        propertySource.setWatchEnabled(true);
+        await(() -> propertySource.get("config/b") != null);
+        assertThat(etcd.getReadCount()).isEqualTo(reads + 1);
+        assertThat(propertySource.getEtcdIndex()).isEqualTo(3L);
+        etcd.put("config/c", "3");
+        await(() -> propertySource.get("config/c") != null);
+        assertThat(etcd.getReadCount()).isEqualTo(reads + 1);
+    }
+
+    @Test
+    public void testWatchPublishesPropertySourceChanges() throws Exception {
+        final List<PropertySourceChange> changes = new CopyOnWriteArrayList<>();
+        ConfigEventListener listener = new ConfigEventListener() {
+            @Override
+            public void onConfigEvent(ConfigEvent<?> event) {
+                if (((PropertySourceChange) event).getResource().getName().equals(propertySource.getName())) {
+                    changes.add((PropertySourceChange) event);
+                }
+            }
+        };
+        ConfigEventManager.getInstance().addListener(listener, PropertySourceChange.class);
+        try {
+            propertySource.setWatchEnabled(true);
+            etcd.put("config/b", "2");
+            await(() -> !changes.isEmpty());
+            assertThat(changes.get(0).isAdded("config/b")).isTrue();
+            assertThat(changes.get(0).getChanges()).hasSize(1);
+            assertThat(changes.get(0).getVersion()).isEqualTo("3");
+            etcd.delete("config/a");
+            await(() -> changes.size() == 2);
+            assertThat(changes.get(1).isRemoved("config/a")).isTrue();
+        } finally {
+            ConfigEventManager.getInstance().removeListener(listener, PropertySourceChange.class);
+        }
+    }
+
+    @Test
+    public void testBatchedWatchEventsPublishNetChanges() throws Exception {
+        final List<PropertySourceChange> changes = new CopyOnWriteArrayList<>();
+        ConfigEventListener listener = new ConfigEventListener() {
+            @Override
+            public void onConfigEvent(ConfigEvent<?> event) {
+                if (((PropertySourceChange) event).getResource().getName().equals(propertySource.getName())) {
+                    changes.add((PropertySourceChange) event);
+                }
+            }
+        };
+        ConfigEventManager.getInstance().addListener(listener, PropertySourceChange.class);
+        try {
+            propertySource.applyWatchEvents(2L, Arrays.asList(
+                    change("set", "config/n", "1", 3L),
+                    change("delete", "config/n", null, 4L),
+                    change("set", "config/m", "1", 5L),
+                    change("set", "config/m", "2", 6L),
+                    change("set", "config/a", "5", 7L)));
+            await(() -> !changes.isEmpty());
+            assertThat(propertySource.getEtcdIndex()).isEqualTo(7L);
+            assertThat(propertySource.get("config/n")).isNull();
+            PropertySourceChange change = changes.get(0);
+            assertThat(change.getChanges()).hasSize(2);
+            assertThat(change.isAdded("config/m")).isTrue();
+            assertThat(change.isUpdated("config/a")).isTrue();
+            assertThat(change.isRemoved("config/n")).isFalse();
+        } finally {
+            ConfigEventManager.getInstance().removeListener(listener, PropertySourceChange.class);
+        }
+    }
+
+    private static EtcdResponse change(String action, String key, String value, long index) {
+        return EtcdResponse.of(action, new EtcdNode(key, value, false, index, index, -1L, null), null, index);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long until = System.currentTimeMillis() + 5000L;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("condition not met in time").isLessThan(until);
+            Thread.sleep(10L);
+        }
+    }
+}
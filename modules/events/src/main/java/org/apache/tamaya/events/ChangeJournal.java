@@ -0,0 +1,576 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.events;
+
+import org.apache.tamaya.spi.PropertyValue;
+
+import java.beans.PropertyChangeEvent;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of {@link ConfigurationChange} and {@link PropertySourceChange} events, which allows to
+ * rebuild the last known configuration after a restart, e.g. before remote backends are available. The journal
+ * can be registered as {@link ConfigEventListener}.
+ * <p>Changes are stored in a compact binary encoding in segment files ({@code journal-<n>.log}), which are
+ * memory mapped. Appending a change copies its record into the mapped segment, the segment is forced to disk
+ * at most every sync interval, so bursts of changes are written in batches. Every segment starts with a
+ * checkpoint containing all values known at that time, further checkpoints are written every checkpoint interval
+ * configuration changes. {@link #replay()} therefore only reads the latest checkpoint and the records
+ * following it. When the segments exceed the maximal size, the oldest segments are deleted; the remaining ones
+ * keep their full history, since each of them starts with a checkpoint.</p>
+ * <p>The journal only knows the values contained in the changes recorded, use
+ * {@link #checkpoint(org.apache.tamaya.Configuration)} to record the complete initial state.</p>
+ * <p>Each record consists of its length, type, timestamp, payload and a CRC32 checksum. Records torn by a crash
+ * are detected by their checksum and ignored on replay.</p>
+ */
+public final class ChangeJournal implements ConfigEventListener, Closeable {
+
+    private static final Logger LOG = Logger.getLogger(ChangeJournal.class.getName());
+
+    /** Default size of a segment file. */
+    public static final long DEFAULT_SEGMENT_SIZE = 4L * 1024 * 1024;
+
+    /** Default maximal size of all segment files. */
+    public static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
+
+    /** Default number of configuration changes between two checkpoints. */
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 1000;
+
+    /** Default maximal time in ms until appended changes are forced to disk. */
+    public static final long DEFAULT_SYNC_INTERVAL = 100L;
+
+    private static final byte TYPE_CONFIGURATION_CHANGE = 1;
+    private static final byte TYPE_PROPERTY_SOURCE_CHANGE = 2;
+    private static final byte TYPE_CHECKPOINT = 3;
+
+    /** Length, type, timestamp and checksum. */
+    private static final int RECORD_OVERHEAD = 4 + 1 + 8 + 4;
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final ScheduledExecutorService SYNC_SCHEDULER = createScheduler();
+
+    private final Path directory;
+    private final long segmentSize;
+    private final long maxSize;
+    private final int checkpointInterval;
+    private final long syncInterval;
+
+    private final List<Path> segments = new ArrayList<>();
+    private long currentSequence;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+
+    private PersistentMap<String, String> state = PersistentMap.empty();
+    private int changesSinceCheckpoint;
+    private boolean dirty;
+    private boolean syncScheduled;
+    private boolean closed;
+
+    private ChangeJournal(Path directory, long segmentSize, long maxSize, int checkpointInterval,
+                          long syncInterval) {
+        this.directory = Objects.requireNonNull(directory);
+        this.segmentSize = segmentSize;
+        this.maxSize = Math.max(segmentSize, maxSize);
+        this.checkpointInterval = checkpointInterval;
+        this.syncInterval = syncInterval;
+    }
+
+    /**
+     * Opens (or creates) the journal in the given directory using the default settings.
+     *
+     * @param directory the directory, not null.
+     * @return the journal, never null.
+     * @throws IOException if the journal cannot be read or created.
+     */
+    public static ChangeJournal open(Path directory) throws IOException {
+        return open(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_SIZE, DEFAULT_CHECKPOINT_INTERVAL,
+                DEFAULT_SYNC_INTERVAL);
+    }
+
+    /**
+     * Opens (or creates) the journal in the given directory. The state recorded is replayed, so subsequent
+     * checkpoints contain all values known.
+     *
+     * @param directory the directory, not null.
+     * @param segmentSize the size of a segment file in bytes.
+     * @param maxSize the maximal size of all segment files in bytes.
+     * @param checkpointInterval the number of configuration changes between two checkpoints, 0 to only write
+     *                           checkpoints at the start of a segment.
+     * @param syncInterval the maximal time in ms until appended changes are forced to disk, 0 to force on
+     *                     every append.
+     * @return the journal, never null.
+     * @throws IOException if the journal cannot be read or created.
+     */
+    public static ChangeJournal open(Path directory, long segmentSize, long maxSize, int checkpointInterval,
+                                     long syncInterval) throws IOException {
+        if (segmentSize < 1024) {
+            throw new IllegalArgumentException("Segment size must be at least 1024 bytes: " + segmentSize);
+        }
+        ChangeJournal journal = new ChangeJournal(directory, segmentSize, maxSize, checkpointInterval,
+                syncInterval);
+        journal.init();
+        return journal;
+    }
+
+    /**
+     * Rebuilds the last configuration recorded in the given directory without opening the journal for writing.
+     *
+     * @param directory the directory, not null.
+     * @return the configuration, empty if no journal exists.
+     * @throws IOException if the journal cannot be read.
+     */
+    public static FrozenConfiguration replay(Path directory) throws IOException {
+        List<Path> segments = listSegments(directory);
+        if (segments.isEmpty()) {
+            return FrozenConfiguration.of(PersistentMap.<String, String>empty());
+        }
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(segments.get(segments.size() - 1)));
+        return FrozenConfiguration.of(scan(data, PersistentMap.<String, String>empty()));
+    }
+
+    private static ScheduledExecutorService createScheduler() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "tamaya-events-journal");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    private void init() throws IOException {
+        Files.createDirectories(directory);
+        segments.addAll(listSegments(directory));
+        if (segments.isEmpty()) {
+            startSegment(1L);
+            return;
+        }
+        Path last = segments.get(segments.size() - 1);
+        currentSequence = sequenceOf(last);
+        channel = FileChannel.open(last, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        state = scan(buffer, PersistentMap.<String, String>empty());
+    }
+
+    /**
+     * Records the given event, if it is a {@link ConfigurationChange} or {@link PropertySourceChange}.
+     * @param event the event, not null.
+     */
+    @Override
+    public void onConfigEvent(ConfigEvent<?> event) {
+        try {
+            if (event instanceof ConfigurationChange) {
+                append((ConfigurationChange) event);
+            } else if (event instanceof PropertySourceChange) {
+                append((PropertySourceChange) event);
+            }
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Failed to record configuration event in journal: " + directory, e);
+        }
+    }
+
+    /**
+     * Appends a configuration change.
+     * @param change the change, not null.
+     * @throws IOException if the change cannot be written.
+     */
+    public synchronized void append(ConfigurationChange change) throws IOException {
+        Encoder encoder = new Encoder();
+        encoder.writeString(change.getVersion());
+        encodeChanges(encoder, change.getChanges());
+        PersistentMap<String, String> newState = state;
+        for (PropertyChangeEvent ev : change.getChanges()) {
+            String newValue = valueOf(ev.getNewValue());
+            newState = newValue == null ? newState.minus(ev.getPropertyName())
+                    : newState.plus(ev.getPropertyName(), newValue);
+        }
+        write(TYPE_CONFIGURATION_CHANGE, change.getTimestamp(), encoder);
+        state = newState;
+        if (checkpointInterval > 0 && ++changesSinceCheckpoint >= checkpointInterval) {
+            write(TYPE_CHECKPOINT, System.currentTimeMillis(), encodeCheckpoint(state));
+        }
+    }
+
+    /**
+     * Appends a property source change. Property source changes are recorded for auditing only, they do not
+     * change the configuration replayed.
+     * @param change the change, not null.
+     * @throws IOException if the change cannot be written.
+     */
+    public synchronized void append(PropertySourceChange change) throws IOException {
+        Encoder encoder = new Encoder();
+        encoder.writeString(change.getResource() == null ? null : change.getResource().getName());
+        encoder.writeString(change.getVersion());
+        encodeChanges(encoder, change.getChanges());
+        write(TYPE_PROPERTY_SOURCE_CHANGE, change.getTimestamp(), encoder);
+    }
+
+    /**
+     * Records a checkpoint with all values of the given configuration, which replaces the state known.
+     * @param config the configuration, not null.
+     * @throws IOException if the checkpoint cannot be written.
+     */
+    public synchronized void checkpoint(org.apache.tamaya.Configuration config) throws IOException {
+        PersistentMap<String, String> newState = state.update(config.getProperties());
+        write(TYPE_CHECKPOINT, System.currentTimeMillis(), encodeCheckpoint(newState));
+        state = newState;
+    }
+
+    /**
+     * Get the last configuration recorded.
+     * @return the configuration, never null.
+     */
+    public synchronized FrozenConfiguration replay() {
+        return FrozenConfiguration.of(state);
+    }
+
+    /**
+     * Forces all appended changes to disk.
+     */
+    public synchronized void flush() {
+        if (dirty && buffer != null) {
+            buffer.force();
+            dirty = false;
+        }
+    }
+
+    /**
+     * Get the segment files currently used.
+     * @return the segment files, oldest first.
+     */
+    public synchronized List<Path> getSegments() {
+        return Collections.unmodifiableList(new ArrayList<>(segments));
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        flush();
+        closed = true;
+        buffer = null;
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void write(byte type, long timestamp, Encoder payload) throws IOException {
+        if (closed) {
+            throw new IOException("Journal is closed: " + directory);
+        }
+        int recordSize = RECORD_OVERHEAD + payload.size();
+        // keep space for the terminating zero length
+        if (buffer.remaining() < recordSize + 4) {
+            roll(recordSize);
+        }
+        writeRecord(type, timestamp, payload);
+        dirty = true;
+        if (syncInterval <= 0) {
+            flush();
+        } else if (!syncScheduled) {
+            syncScheduled = true;
+            SYNC_SCHEDULER.schedule(this::scheduledSync, syncInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void writeRecord(byte type, long timestamp, Encoder payload) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(longBytes(timestamp));
+        crc.update(payload.bytes(), 0, payload.size());
+        buffer.putInt(1 + 8 + payload.size() + 4);
+        buffer.put(type);
+        buffer.putLong(timestamp);
+        buffer.put(payload.bytes(), 0, payload.size());
+        buffer.putInt((int) crc.getValue());
+    }
+
+    private synchronized void scheduledSync() {
+        syncScheduled = false;
+        flush();
+    }
+
+    /**
+     * Starts a new segment beginning with a checkpoint of the current state and deletes the oldest segments
+     * exceeding the maximal size.
+     * @param recordSize the size of the record to be written after the checkpoint.
+     */
+    private void roll(int recordSize) throws IOException {
+        flush();
+        buffer = null;
+        channel.close();
+        channel = null;
+        startSegment(currentSequence + 1, recordSize);
+        compact();
+    }
+
+    private void startSegment(long sequence) throws IOException {
+        startSegment(sequence, 0);
+    }
+
+    private void startSegment(long sequence, int additionalSize) throws IOException {
+        Encoder checkpoint = encodeCheckpoint(state);
+        long size = Math.max(segmentSize, RECORD_OVERHEAD + checkpoint.size() + additionalSize + 4L);
+        Path file = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        currentSequence = sequence;
+        segments.add(file);
+        writeRecord(TYPE_CHECKPOINT, System.currentTimeMillis(), checkpoint);
+        changesSinceCheckpoint = 0;
+        dirty = true;
+    }
+
+    private void compact() {
+        long total = 0L;
+        for (Path segment : segments) {
+            total += sizeOf(segment);
+        }
+        while (total > maxSize && segments.size() > 1) {
+            Path oldest = segments.remove(0);
+            total -= sizeOf(oldest);
+            try {
+                Files.deleteIfExists(oldest);
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Failed to delete journal segment: " + oldest, e);
+            }
+        }
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+    /**
+     * Reads all valid records of a segment, hereby positioning the buffer after the last valid record.
+     * @param data the segment data, not null.
+     * @param initial the state before the segment.
+     * @return the state after the last valid record.
+     */
+    private static PersistentMap<String, String> scan(ByteBuffer data, PersistentMap<String, String> initial) {
+        PersistentMap<String, String> result = initial;
+        data.position(0);
+        while (data.remaining() >= 4) {
+            int start = data.position();
+            int length = data.getInt();
+            if (length < 1 + 8 + 4 || length > data.remaining()) {
+                data.position(start);
+                break;
+            }
+            byte type = data.get();
+            long timestamp = data.getLong();
+            byte[] payload = new byte[length - 1 - 8 - 4];
+            data.get(payload);
+            int checksum = data.getInt();
+            CRC32 crc = new CRC32();
+            crc.update(type);
+            crc.update(longBytes(timestamp));
+            crc.update(payload);
+            if ((int) crc.getValue() != checksum) {
+                LOG.warning("Ignoring corrupt journal record at position " + start + ".");
+                data.position(start);
+                break;
+            }
+            result = apply(result, type, new Decoder(payload));
+        }
+        return result;
+    }
+
+    private static PersistentMap<String, String> apply(PersistentMap<String, String> state, byte type,
+                                                       Decoder decoder) {
+        switch (type) {
+            case TYPE_CHECKPOINT:
+                PersistentMap<String, String> checkpoint = PersistentMap.empty();
+                int size = decoder.readInt();
+                for (int i = 0; i < size; i++) {
+                    checkpoint = checkpoint.plus(decoder.readString(), decoder.readString());
+                }
+                return checkpoint;
+            case TYPE_CONFIGURATION_CHANGE:
+                decoder.readString();
+                int count = decoder.readInt();
+                PersistentMap<String, String> result = state;
+                for (int i = 0; i < count; i++) {
+                    String key = decoder.readString();
+                    decoder.readString();
+                    String newValue = decoder.readString();
+                    result = newValue == null ? result.minus(key) : result.plus(key, newValue);
+                }
+                return result;
+            default:
+                return state;
+        }
+    }
+
+    private static void encodeChanges(Encoder encoder, Collection<PropertyChangeEvent> changes) {
+        encoder.writeInt(changes.size());
+        for (PropertyChangeEvent ev : changes) {
+            encoder.writeString(ev.getPropertyName());
+            encoder.writeString(valueOf(ev.getOldValue()));
+            encoder.writeString(valueOf(ev.getNewValue()));
+        }
+    }
+
+    private static Encoder encodeCheckpoint(Map<String, String> values) {
+        Encoder encoder = new Encoder();
+        encoder.writeInt(values.size());
+        values.forEach((key, value) -> {
+            encoder.writeString(key);
+            encoder.writeString(value);
+        });
+        return encoder;
+    }
+
+    private static String valueOf(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof PropertyValue) {
+            return ((PropertyValue) value).getValue();
+        }
+        return value.toString();
+    }
+
+    private static byte[] longBytes(long value) {
+        return ByteBuffer.allocate(8).putLong(value).array();
+    }
+
+    private static List<Path> listSegments(Path directory) throws IOException {
+        List<Path> result = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return result;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                if (sequenceOf(path) > 0) {
+                    result.add(path);
+                }
+            }
+        }
+        result.sort((a, b) -> Long.compare(sequenceOf(a), sequenceOf(b)));
+        return result;
+    }
+
+    private static long sequenceOf(Path segment) {
+        String name = segment.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (RuntimeException e) {
+            return -1L;
+        }
+    }
+
+    /**
+     * Encodes variable length integers and nullable UTF-8 strings.
+     */
+    private static final class Encoder extends ByteArrayOutputStream {
+
+        Encoder() {
+            super(256);
+        }
+
+        void writeInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeInt(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length + 1);
+            write(bytes, 0, bytes.length);
+        }
+
+        byte[] bytes() {
+            return buf;
+        }
+    }
+
+    /**
+     * Decodes the values written by an {@link Encoder}.
+     */
+    private static final class Decoder {
+        private final byte[] data;
+        private int pos;
+
+        Decoder(byte[] data) {
+            this.data = data;
+        }
+
+        int readInt() {
+            int result = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[pos++];
+                result |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return result;
+        }
+
+        String readString() {
+            int length = readInt();
+            if (length == 0) {
+                return null;
+            }
+            String result = new String(data, pos, length - 1, StandardCharsets.UTF_8);
+            pos += length - 1;
+            return result;
+        }
+    }
+}
@@ -90,6 +90,42 @@ public final class ConfigEventManager {
         spi(classLoader).addListener(l);
     }
 
+    /**
+     * Adds a listener that receives only the part of each {@link ConfigurationChange} affecting keys matching the
+     * given pattern, e.g. {@code addListener(l, "db.*")}. Patterns are plain keys or globs using {@code *} and
+     * {@code ?}.
+     *
+     * @param l the listener, not null.
+     * @param keyPattern the key pattern, not null.
+     */
+    public void addListener(ConfigEventListener l, String keyPattern) {
+        spi(classLoader).addListener(l, keyPattern);
+    }
+
+    /**
+     * Removes a key pattern subscription.
+     *
+     * @param l the listener, not null.
+     * @param keyPattern the key pattern, or null, to remove all key pattern subscriptions of the listener.
+     */
+    public void removeListener(ConfigEventListener l, String keyPattern) {
+        spi(classLoader).removeListener(l, keyPattern);
+    }
+
+    /**
+     * Defines if a listener receives events of the given type coalesced or immediately. If coalescing is enabled
+     * by {@code tamaya.events.coalesce.quiet-period}, bursts of {@link ConfigurationChange} events are merged
+     * into a single change.
+     *
+     * @param <T> the type of the event.
+     * @param l the listener, not null.
+     * @param eventType the event type, not null.
+     * @param coalesce true, to receive coalesced events.
+     */
+    public <T extends ConfigEvent> void setCoalescing(ConfigEventListener l, Class<T> eventType, boolean coalesce) {
+        spi(classLoader).setCoalescing(l, eventType, coalesce);
+    }
+
     /**
      * Removes a listener registered globally.
      *
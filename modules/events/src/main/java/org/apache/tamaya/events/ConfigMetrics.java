@@ -0,0 +1,356 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.events;
+
+import org.apache.tamaya.events.internal.JmxConfigMetrics;
+import org.apache.tamaya.events.spi.ConfigMetricsSpi;
+import org.apache.tamaya.spi.ChangeSupport;
+import org.apache.tamaya.spi.ConversionContext;
+import org.apache.tamaya.spi.FilterContext;
+import org.apache.tamaya.spi.PropertyConverter;
+import org.apache.tamaya.spi.PropertyFilter;
+import org.apache.tamaya.spi.PropertySource;
+import org.apache.tamaya.spi.PropertyValue;
+import org.apache.tamaya.spi.ServiceContextManager;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Entry point for recording timings of configuration access, filtering, conversion and event dispatch. The
+ * instrumentation is enabled by the system/environment property {@code tamaya.metrics.enabled} (default false),
+ * which is read once. When disabled, all methods return immediately and the {@code instrument...} methods return
+ * their argument unchanged, so the instrumentation has no cost.
+ * <p>Timings are passed to the {@link ConfigMetricsSpi} registered with the
+ * {@link org.apache.tamaya.spi.ServiceContext}, by default they are exposed by the JMX MBean
+ * {@code org.apache.tamaya:type=ConfigMetrics}. The filters of the resolver and filter modules, the change observer
+ * and the event dispatch are instrumented, property sources, filters and converters of other modules can be wrapped
+ * using {@link #instrument(PropertySource)}, {@link #instrumentFilter(PropertyFilter)} and
+ * {@link #instrumentConverter(PropertyConverter)} when building the configuration.</p>
+ * <p>Usage:</p>
+ * <pre>
+ * long start = ConfigMetrics.start();
+ * // ...
+ * ConfigMetrics.filtered("myFilter", start);
+ * </pre>
+ */
+public final class ConfigMetrics {
+
+    private static final Logger LOG = Logger.getLogger(ConfigMetrics.class.getName());
+
+    private static final boolean ENABLED = isEnabledByConfig();
+
+    private static final ConfigMetricsSpi SPI = ENABLED ? loadSpi() : null;
+
+    private ConfigMetrics() {
+    }
+
+    private static boolean isEnabledByConfig() {
+        String val = System.getProperty("tamaya.metrics.enabled");
+        if (val == null) {
+            val = System.getenv("tamaya.metrics.enabled");
+        }
+        return val != null && Boolean.parseBoolean(val.trim());
+    }
+
+    private static ConfigMetricsSpi loadSpi() {
+        try {
+            ConfigMetricsSpi spi = ServiceContextManager.getServiceContext().getService(ConfigMetricsSpi.class);
+            if (spi != null) {
+                return spi;
+            }
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "Failed to load metrics SPI, using JMX.", e);
+        }
+        return new JmxConfigMetrics();
+    }
+
+    /**
+     * Checks if metrics are recorded.
+     * @return true, if enabled by {@code tamaya.metrics.enabled}.
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Get the start time of an operation to be timed.
+     * @return the current {@link System#nanoTime()}, or 0, if metrics are disabled.
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Records a property source access started at the given time.
+     * @param sourceName the property source name, not null.
+     * @param start the start time as returned by {@link #start()}.
+     */
+    public static void sourceAccessed(String sourceName, long start) {
+        if (ENABLED) {
+            SPI.recordSourceAccess(sourceName, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records a filter call started at the given time.
+     * @param filterName the filter name, not null.
+     * @param start the start time as returned by {@link #start()}.
+     */
+    public static void filtered(String filterName, long start) {
+        if (ENABLED) {
+            SPI.recordFilter(filterName, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records a conversion started at the given time.
+     * @param converterName the converter name, not null.
+     * @param start the start time as returned by {@link #start()}.
+     */
+    public static void converted(String converterName, long start) {
+        if (ENABLED) {
+            SPI.recordConversion(converterName, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records a configuration change check started at the given time.
+     * @param start the start time as returned by {@link #start()}.
+     */
+    public static void observerChecked(long start) {
+        if (ENABLED) {
+            SPI.recordObserverCheck(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records an event delivery started at the given time.
+     * @param listenerName the listener name, not null.
+     * @param start the start time as returned by {@link #start()}.
+     */
+    public static void dispatched(String listenerName, long start) {
+        if (ENABLED) {
+            SPI.recordDispatch(listenerName, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records the current depth of the asynchronous event queue of a listener.
+     * @param listenerName the listener name, not null.
+     * @param depth the number of queued events.
+     */
+    public static void queueDepth(String listenerName, int depth) {
+        if (ENABLED) {
+            SPI.recordQueueDepth(listenerName, depth);
+        }
+    }
+
+    /**
+     * Records the release of the asynchronous event queue of a listener.
+     * @param listenerName the listener name, not null.
+     */
+    public static void queueReleased(String listenerName) {
+        if (ENABLED) {
+            SPI.removeQueueDepth(listenerName);
+        }
+    }
+
+    /**
+     * Records the reload of the data of a remote property source started at the given time.
+     * @param sourceName the property source name, not null.
+     * @param start the start time as returned by {@link #start()}.
+     * @param success true, if the data could be reloaded.
+     */
+    public static void refreshed(String sourceName, long start, boolean success) {
+        if (ENABLED) {
+            SPI.recordRefresh(sourceName, System.nanoTime() - start, success);
+        }
+    }
+
+    /**
+     * Wraps a property source, so the duration of its {@code get} calls is recorded.
+     * @param propertySource the property source, not null.
+     * @return the instrumented property source, or the given instance, if metrics are disabled.
+     */
+    public static PropertySource instrument(PropertySource propertySource) {
+        Objects.requireNonNull(propertySource);
+        if (!ENABLED || propertySource instanceof InstrumentedPropertySource) {
+            return propertySource;
+        }
+        return new InstrumentedPropertySource(propertySource);
+    }
+
+    /**
+     * Wraps a property filter, so the duration of its calls is recorded.
+     * @param filter the filter, not null.
+     * @return the instrumented filter, or the given instance, if metrics are disabled.
+     */
+    public static PropertyFilter instrumentFilter(PropertyFilter filter) {
+        Objects.requireNonNull(filter);
+        if (!ENABLED || filter instanceof InstrumentedPropertyFilter) {
+            return filter;
+        }
+        return new InstrumentedPropertyFilter(filter);
+    }
+
+    /**
+     * Wraps a property converter, so the duration of its calls is recorded.
+     * @param converter the converter, not null.
+     * @param <T> the target type.
+     * @return the instrumented converter, or the given instance, if metrics are disabled.
+     */
+    public static <T> PropertyConverter<T> instrumentConverter(PropertyConverter<T> converter) {
+        Objects.requireNonNull(converter);
+        if (!ENABLED || converter instanceof InstrumentedPropertyConverter) {
+            return converter;
+        }
+        return new InstrumentedPropertyConverter<>(converter);
+    }
+
+    private static final class InstrumentedPropertySource implements PropertySource {
+        private final PropertySource delegate;
+        private final String name;
+
+        InstrumentedPropertySource(PropertySource delegate) {
+            this.delegate = delegate;
+            this.name = delegate.getName();
+        }
+
+        @Override
+        public int getOrdinal() {
+            return delegate.getOrdinal();
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public PropertyValue get(String key) {
+            long start = System.nanoTime();
+            try {
+                return delegate.get(key);
+            } finally {
+                SPI.recordSourceAccess(name, System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public Map<String, PropertyValue> getProperties() {
+            return delegate.getProperties();
+        }
+
+        @Override
+        public boolean isScannable() {
+            return delegate.isScannable();
+        }
+
+        @Override
+        public ChangeSupport getChangeSupport() {
+            return delegate.getChangeSupport();
+        }
+
+        @Override
+        public String getVersion() {
+            return delegate.getVersion();
+        }
+
+        @Override
+        public void addChangeListener(BiConsumer<Set<String>, PropertySource> l) {
+            delegate.addChangeListener(l);
+        }
+
+        @Override
+        public void removeChangeListener(BiConsumer<Set<String>, PropertySource> l) {
+            delegate.removeChangeListener(l);
+        }
+
+        @Override
+        public String toString() {
+            return "InstrumentedPropertySource{" + delegate + '}';
+        }
+    }
+
+    private static final class InstrumentedPropertyFilter implements PropertyFilter {
+        private final PropertyFilter delegate;
+        private final String name;
+
+        InstrumentedPropertyFilter(PropertyFilter delegate) {
+            this.delegate = delegate;
+            this.name = delegate.getClass().getName();
+        }
+
+        @Override
+        public PropertyValue filterProperty(PropertyValue value, FilterContext context) {
+            long start = System.nanoTime();
+            try {
+                return delegate.filterProperty(value, context);
+            } finally {
+                SPI.recordFilter(name, System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "InstrumentedPropertyFilter{" + delegate + '}';
+        }
+    }
+
+    private static final class InstrumentedPropertyConverter<T> implements PropertyConverter<T> {
+        private final PropertyConverter<T> delegate;
+        private final String name;
+
+        InstrumentedPropertyConverter(PropertyConverter<T> delegate) {
+            this.delegate = delegate;
+            this.name = delegate.getClass().getName();
+        }
+
+        @Override
+        public T convert(String value, ConversionContext context) {
+            long start = System.nanoTime();
+            try {
+                return delegate.convert(value, context);
+            } finally {
+                SPI.recordConversion(name, System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof InstrumentedPropertyConverter
+                    && delegate.equals(((InstrumentedPropertyConverter<?>) o).delegate);
+        }
+
+        @Override
+        public int hashCode() {
+            return delegate.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "InstrumentedPropertyConverter{" + delegate + '}';
+        }
+    }
+}
@@ -62,7 +62,9 @@ public final class ConfigurationChange implements ConfigEvent<Configuration>, Se
      * @param builder The builder used, not null.
      */
     ConfigurationChange(ConfigurationChangeBuilder builder) {
-        this.snapshot = builder.source.getSnapshot();
+        // snapshots are immutable, so they can be shared
+        this.snapshot = builder.source instanceof ConfigurationSnapshot ?
+                (ConfigurationSnapshot) builder.source : builder.source.getSnapshot();
         for(PropertyChangeEvent ev:builder.delta.values()){
             this.changes.put(ev.getPropertyName(), ev);
         }
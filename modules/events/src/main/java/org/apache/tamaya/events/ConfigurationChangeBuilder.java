@@ -94,6 +94,9 @@ public final class ConfigurationChangeBuilder {
      * @return a collection current change events, never {@code null}.
      */
     public static Collection<PropertyChangeEvent> compare(Configuration previous, Configuration current) {
+        if (previous instanceof FrozenConfiguration && current instanceof FrozenConfiguration) {
+            return FrozenConfiguration.compare((FrozenConfiguration) previous, (FrozenConfiguration) current);
+        }
         TreeMap<String, PropertyChangeEvent> events = new TreeMap<>();
 
         for (Map.Entry<String, String> en : previous.getProperties().entrySet()) {
@@ -125,6 +128,35 @@ public final class ConfigurationChangeBuilder {
         return events.values();
     }
 
+    /**
+     * Merges two subsequent change sets into one. For each key the oldest previous value and the newest value are
+     * kept, keys whose value has been changed back to the previous value are omitted. Version and timestamp are
+     * taken from {@code second}.
+     *
+     * @param first the older change set, not null.
+     * @param second the newer change set, not null.
+     * @return the merged change set, never null.
+     */
+    public static ConfigurationChange merge(ConfigurationChange first, ConfigurationChange second) {
+        ConfigurationChangeBuilder builder = of(second.getResource())
+                .setVersion(second.getVersion())
+                .setTimestamp(second.getTimestamp());
+        Map<String, PropertyChangeEvent> older = new TreeMap<>();
+        for (PropertyChangeEvent ev : first.getChanges()) {
+            older.put(ev.getPropertyName(), ev);
+        }
+        for (PropertyChangeEvent ev : second.getChanges()) {
+            PropertyChangeEvent previous = older.remove(ev.getPropertyName());
+            Object oldValue = previous != null ? previous.getOldValue() : ev.getOldValue();
+            if (!Objects.equals(oldValue, ev.getNewValue())) {
+                builder.delta.put(ev.getPropertyName(), new PropertyChangeEvent(builder.source, ev.getPropertyName(),
+                        oldValue, ev.getNewValue()));
+            }
+        }
+        builder.delta.putAll(older);
+        return builder.build();
+    }
+
     /*
      * Apply a version/UUID to the setCurrent being built.
      * @param version the version to apply, or null, to let the system generate a version for you.
@@ -171,6 +203,19 @@ public final class ConfigurationChangeBuilder {
         return this;
     }
 
+    /**
+     * Applies a single key/createValue change with a known previous value.
+     *
+     * @param key   the changed key
+     * @param oldValue the previous value, or null, if the key was added.
+     * @param newValue the new value, or null, if the key was removed.
+     * @return this instance for chaining.
+     */
+    public ConfigurationChangeBuilder addChange(String key, String oldValue, String newValue) {
+        this.delta.put(key, new PropertyChangeEvent(this.source, key, oldValue, newValue));
+        return this;
+    }
+
     /**
      * Get the current values, also considering any changes recorded within this change setCurrent.
      *
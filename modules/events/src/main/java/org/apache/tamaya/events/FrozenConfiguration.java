@@ -22,7 +22,9 @@ import org.apache.tamaya.Configuration;
 import org.apache.tamaya.ConfigurationSnapshot;
 import org.apache.tamaya.TypeLiteral;
 import org.apache.tamaya.spi.ConfigurationContext;
+import org.apache.tamaya.spisupport.DefaultConfigurationSnapshot;
 
+import java.beans.PropertyChangeEvent;
 import java.io.Serializable;
 import java.util.*;
 
@@ -30,6 +32,12 @@ import java.util.*;
  * /**
  * Configuration implementation that stores all current values of a given (possibly dynamic, contextual and non server
  * capable instance) and is fully serializable. Note that hereby only the scannable key/createValue pairs are considered.
+ * <p>Frozen configurations derived from a previous one using {@link #of(FrozenConfiguration, Configuration)} or
+ * {@link #with(ConfigurationChange)} store their values in a persistent map, which shares all unchanged entries with
+ * the previous instance. Keeping a window of such instances costs memory proportional to the changes only.</p>
+ * <p>Each instance maintains a hierarchical hash over its dotted key sections, which is exposed as
+ * {@link #getVersionId()}. {@link #compare(FrozenConfiguration, FrozenConfiguration)} only descends into sections
+ * with different hashes, so comparing identical configurations is O(1).</p>
  * @deprecated Use {@link org.apache.tamaya.spisupport.DefaultConfigurationSnapshot}
  */
 @Deprecated
@@ -37,10 +45,27 @@ public final class FrozenConfiguration implements Configuration, Serializable {
     private static final long serialVersionUID = -6373137316556444172L;
 
     /**
-     * The properties frozen.
+     * The properties frozen, null for instances derived from a previous frozen configuration.
      */
     private ConfigurationSnapshot snapshot;
 
+    /**
+     * The values as persistent map, created lazily for instances based on a snapshot.
+     */
+    private volatile PersistentMap<String, String> values;
+
+    /**
+     * The context used for type conversion of derived instances.
+     */
+    private transient ConfigurationContext context;
+
+    /**
+     * The section hashes, created lazily and maintained incrementally for derived instances.
+     */
+    private transient volatile SectionFingerprint fingerprint;
+
+    private long frozenAt;
+
     private UUID id = UUID.randomUUID();
 
     /**
@@ -52,6 +77,21 @@ public final class FrozenConfiguration implements Configuration, Serializable {
         this.snapshot = snapshot;
     }
 
+    /**
+     * Constructor for derived instances.
+     *
+     * @param values the values, not null.
+     * @param context the context used for type conversion, not null.
+     * @param fingerprint the section hashes, or null.
+     */
+    private FrozenConfiguration(PersistentMap<String, String> values, ConfigurationContext context,
+                                SectionFingerprint fingerprint) {
+        this.values = values;
+        this.context = context;
+        this.fingerprint = fingerprint;
+        this.frozenAt = System.currentTimeMillis();
+    }
+
 
     /**
      * Creates a new FrozenConfiguration instance based on the current Configuration.
@@ -86,57 +126,206 @@ public final class FrozenConfiguration implements Configuration, Serializable {
         return new FrozenConfiguration(config.getSnapshot(keys));
     }
 
+    /**
+     * Creates a new FrozenConfiguration instance with the current values of the given configuration, sharing all
+     * unchanged values with the previous frozen configuration.
+     *
+     * @param previous the previous frozen configuration, not null.
+     * @param config the configuration to be frozen, not null.
+     * @return the frozen Configuration.
+     */
+    public static FrozenConfiguration of(FrozenConfiguration previous, Configuration config) {
+        PersistentMap<String, String> oldValues = previous.values();
+        PersistentMap<String, String> newValues = oldValues.update(config.getProperties());
+        SectionFingerprint newFingerprint = previous.fingerprint;
+        if (newFingerprint != null) {
+            SectionFingerprint[] holder = {newFingerprint};
+            oldValues.diff(newValues, (key, oldValue, newValue) -> holder[0] = holder[0].with(key, newValue));
+            newFingerprint = holder[0];
+        }
+        return new FrozenConfiguration(newValues, config.getContext(), newFingerprint);
+    }
+
+    /**
+     * Creates a new FrozenConfiguration instance containing the given values. Typed access uses the context of the
+     * current configuration.
+     *
+     * @param values the values, not null.
+     * @return the frozen Configuration.
+     */
+    static FrozenConfiguration of(PersistentMap<String, String> values) {
+        return new FrozenConfiguration(values, null, null);
+    }
+
+    /**
+     * Creates a new FrozenConfiguration instance with the given changes applied, sharing all unchanged values
+     * with this instance.
+     *
+     * @param change the change to apply, not null.
+     * @return the frozen Configuration.
+     */
+    public FrozenConfiguration with(ConfigurationChange change) {
+        PersistentMap<String, String> newValues = values();
+        SectionFingerprint newFingerprint = fingerprint;
+        for (PropertyChangeEvent ev : change.getChanges()) {
+            String newValue = ev.getNewValue() == null ? null : String.valueOf(ev.getNewValue());
+            if (newValue == null) {
+                newValues = newValues.minus(ev.getPropertyName());
+            } else {
+                newValues = newValues.plus(ev.getPropertyName(), newValue);
+            }
+            if (newFingerprint != null) {
+                newFingerprint = newFingerprint.with(ev.getPropertyName(), newValue);
+            }
+        }
+        return new FrozenConfiguration(newValues, getContext(), newFingerprint);
+    }
+
+    /**
+     * Compares two frozen configurations. Only sections with different hashes are visited.
+     *
+     * @param previous the previous configuration, not null.
+     * @param current the current configuration, not null.
+     * @return the changes to be applied to render {@code previous} into {@code current}, never null.
+     */
+    public static Collection<PropertyChangeEvent> compare(FrozenConfiguration previous, FrozenConfiguration current) {
+        TreeMap<String, PropertyChangeEvent> events = new TreeMap<>();
+        previous.fingerprint().diff(current.fingerprint(), (key, oldValue, newValue) ->
+                events.put(key, new PropertyChangeEvent(oldValue == null ? current : previous, key, oldValue,
+                        newValue)));
+        return events.values();
+    }
+
+    /**
+     * Get the version id of this configuration. Configurations with the same entries have the same version id,
+     * also when created in different VMs, so it can be used to cheaply check if two nodes hold the same
+     * configuration.
+     * @return the version id, never null.
+     */
+    public String getVersionId() {
+        return fingerprint().getVersionId();
+    }
+
+    /**
+     * Access the section hashes.
+     * @return the fingerprint, never null.
+     */
+    private SectionFingerprint fingerprint() {
+        SectionFingerprint result = fingerprint;
+        if (result == null) {
+            result = SectionFingerprint.of(getProperties());
+            fingerprint = result;
+        }
+        return result;
+    }
+
+    /**
+     * Access the values as persistent map.
+     * @return the values, never null.
+     */
+    private PersistentMap<String, String> values() {
+        PersistentMap<String, String> result = values;
+        if (result == null) {
+            result = PersistentMap.of(snapshot.getProperties());
+            values = result;
+        }
+        return result;
+    }
+
+    /**
+     * Creates a snapshot containing the given key, used for typed access on derived instances.
+     * @param key the key, not null.
+     * @return the snapshot, never null.
+     */
+    private ConfigurationSnapshot typedAccess(String key) {
+        return getSnapshot(Collections.singleton(key));
+    }
+
     /**
      * Get the evaluated keys of this frozen coinfiguration.
      * @return the keys, not null.
      */
     public Set<String> getKeys() {
+        if (snapshot == null) {
+            return values.keySet();
+        }
         return snapshot.getKeys();
     }
 
     @Override
     public String get(String key) {
+        if (snapshot == null) {
+            return values.get(key);
+        }
         return this.snapshot.get(key);
     }
 
     @Override
     public String getOrDefault(String key, String defaultValue) {
+        if (snapshot == null) {
+            return values.getOrDefault(key, defaultValue);
+        }
         return this.snapshot.getOrDefault(key, defaultValue);
     }
 
     @Override
     public <T> T getOrDefault(String key, Class<T> type, T defaultValue) {
+        if (snapshot == null) {
+            return typedAccess(key).getOrDefault(key, type, defaultValue);
+        }
         return this.snapshot.getOrDefault(key, type, defaultValue);
     }
 
     @SuppressWarnings("unchecked")
     @Override
     public <T> T get(String key, Class<T> type) {
+        if (snapshot == null) {
+            return typedAccess(key).get(key, type);
+        }
         return snapshot.get(key, type);
     }
 
     @Override
     public <T> T get(String key, TypeLiteral<T> type) {
+        if (snapshot == null) {
+            return typedAccess(key).get(key, type);
+        }
         return snapshot.get(key, type);
     }
 
     @Override
     public <T> T getOrDefault(String key, TypeLiteral<T> type, T defaultValue) {
+        if (snapshot == null) {
+            return typedAccess(key).getOrDefault(key, type, defaultValue);
+        }
         return snapshot.getOrDefault(key, type, defaultValue);
     }
 
     @Override
     public Map<String, String> getProperties() {
+        if (snapshot == null) {
+            return values;
+        }
         return snapshot.getProperties();
     }
 
     @Override
     public ConfigurationContext getContext() {
+        if (snapshot == null) {
+            if (context == null) {
+                // not serialized
+                context = Configuration.current().getContext();
+            }
+            return context;
+        }
         return snapshot.getContext();
     }
 
     @Override
     public ConfigurationSnapshot getSnapshot(Iterable<String> keys) {
+        if (snapshot == null) {
+            return new DefaultConfigurationSnapshot(this, keys);
+        }
         return this.snapshot.getSnapshot(keys);
     }
 
@@ -149,6 +338,9 @@ public final class FrozenConfiguration implements Configuration, Serializable {
      * @return the moment in time when this configuration has been created
      */
     public long getFrozenAt() {
+        if (snapshot == null) {
+            return frozenAt;
+        }
         return snapshot.getTimestamp();
     }
 
@@ -177,13 +369,16 @@ public final class FrozenConfiguration implements Configuration, Serializable {
 
     @Override
     public int hashCode() {
+        if (snapshot == null) {
+            return id.hashCode();
+        }
         return Objects.hash(snapshot);
     }
 
     @Override
     public String toString() {
         return "FrozenConfiguration{" +
-                "snapshot=" + snapshot + "," +
+                (snapshot == null ? "values=" + values : "snapshot=" + snapshot) + "," +
                 '}';
     }
 }
@@ -22,12 +22,16 @@ import org.apache.tamaya.spi.PropertySource;
 import org.apache.tamaya.spi.PropertyValue;
 import org.apache.tamaya.spisupport.DefaultPropertySourceSnapshot;
 
+import java.beans.PropertyChangeEvent;
 import java.io.Serializable;
 import java.util.*;
 
 /**
  * PropertySource implementation that stores all current values of a given (possibly dynamic, contextual and non server
  * capable instance) and is fully serializable. Note that hereby only the scannable key/createValue pairs are considered.
+ * <p>Instances created using {@link #of(FrozenPropertySource, PropertySource)} share all unchanged values with the
+ * previous instance. The version of a frozen property source is a hash over its dotted key sections, which is
+ * identical for identical values.</p>
  * @deprecated
  */
 @Deprecated
@@ -36,6 +40,22 @@ public final class FrozenPropertySource implements PropertySource, Serializable
 
     private DefaultPropertySourceSnapshot snapshot;
 
+    /**
+     * The values as persistent map, created lazily for instances based on a snapshot.
+     */
+    private volatile PersistentMap<String, PropertyValue> values;
+
+    /**
+     * The section hashes over the values, created lazily and maintained incrementally for derived instances.
+     */
+    private transient volatile SectionFingerprint fingerprint;
+
+    private String name;
+
+    private int ordinal;
+
+    private long frozenAt;
+
     /**
      * Constructor.
      *
@@ -45,6 +65,23 @@ public final class FrozenPropertySource implements PropertySource, Serializable
         this.snapshot = snapshot;
     }
 
+    /**
+     * Constructor for derived instances.
+     *
+     * @param name the name, not null.
+     * @param ordinal the ordinal.
+     * @param values the values, not null.
+     * @param fingerprint the section hashes, or null.
+     */
+    private FrozenPropertySource(String name, int ordinal, PersistentMap<String, PropertyValue> values,
+                                 SectionFingerprint fingerprint) {
+        this.name = name;
+        this.ordinal = ordinal;
+        this.values = values;
+        this.fingerprint = fingerprint;
+        this.frozenAt = System.currentTimeMillis();
+    }
+
     /**
      * Creates a new FrozenPropertySource instance based on a PropertySource and the target key set given. This method
      * uses all keys available in the property map.
@@ -68,34 +105,140 @@ public final class FrozenPropertySource implements PropertySource, Serializable
         return new FrozenPropertySource(DefaultPropertySourceSnapshot.of(propertySource, keys));
     }
 
+    /**
+     * Creates a new FrozenPropertySource instance with the current values of the given property source, sharing all
+     * unchanged values with the previous instance.
+     *
+     * @param previous the previous frozen property source, not null.
+     * @param propertySource the property source to be frozen, not null.
+     * @return the frozen property source.
+     */
+    public static FrozenPropertySource of(FrozenPropertySource previous, PropertySource propertySource) {
+        PersistentMap<String, PropertyValue> oldValues = previous.values();
+        PersistentMap<String, PropertyValue> newValues = oldValues.update(propertySource.getProperties());
+        SectionFingerprint newFingerprint = previous.fingerprint;
+        if (newFingerprint != null) {
+            SectionFingerprint[] holder = {newFingerprint};
+            oldValues.diff(newValues, (key, oldValue, newValue) ->
+                    holder[0] = holder[0].with(key, newValue == null ? null : newValue.getValue()));
+            newFingerprint = holder[0];
+        }
+        return new FrozenPropertySource(propertySource.getName(), propertySource.getOrdinal(), newValues,
+                newFingerprint);
+    }
+
+    /**
+     * Compares two frozen property sources. Only sections with different hashes are visited.
+     *
+     * @param previous the previous property source, not null.
+     * @param current the current property source, not null.
+     * @return the changes to be applied to render {@code previous} into {@code current}, never null.
+     */
+    public static Collection<PropertyChangeEvent> compare(FrozenPropertySource previous, FrozenPropertySource current) {
+        List<PropertyChangeEvent> changes = new ArrayList<>();
+        previous.diff(current, (key, oldValue, newValue) ->
+                changes.add(new PropertyChangeEvent(current, key, oldValue, newValue)));
+        return changes;
+    }
+
+    /**
+     * Reports all values differing from the given property source, hereby only descending into sections with
+     * different hashes.
+     * @param other the other property source, not null.
+     * @param consumer the consumer called with key, value in this and value in the other property source.
+     */
+    void diff(FrozenPropertySource other, PersistentMap.DiffConsumer<String, String> consumer) {
+        fingerprint().diff(other.fingerprint(), consumer);
+    }
+
+    /**
+     * Access the section hashes.
+     * @return the fingerprint, never null.
+     */
+    private SectionFingerprint fingerprint() {
+        SectionFingerprint result = fingerprint;
+        if (result == null) {
+            Map<String, String> plainValues = new HashMap<>();
+            for (Map.Entry<String, PropertyValue> en : getProperties().entrySet()) {
+                if (en.getValue() != null) {
+                    plainValues.put(en.getKey(), en.getValue().getValue());
+                }
+            }
+            result = SectionFingerprint.of(plainValues);
+            fingerprint = result;
+        }
+        return result;
+    }
+
+    /**
+     * Access the values as persistent map.
+     * @return the values, never null.
+     */
+    private PersistentMap<String, PropertyValue> values() {
+        PersistentMap<String, PropertyValue> result = values;
+        if (result == null) {
+            result = PersistentMap.of(snapshot.getProperties());
+            values = result;
+        }
+        return result;
+    }
+
     public Set<String> getKeys() {
+        if (snapshot == null) {
+            return values.keySet();
+        }
         return snapshot.getKeys();
     }
 
     @Override
     public String getName() {
+        if (snapshot == null) {
+            return name;
+        }
         return this.snapshot.getName();
     }
 
     public int getOrdinal() {
+        if (snapshot == null) {
+            return ordinal;
+        }
         return this.snapshot.getOrdinal();
     }
 
+    /**
+     * Get the version of this property source, a hash over all keys and values. Property sources with the same
+     * values have the same version, also when created in different VMs.
+     * @return the version, never null.
+     */
+    @Override
+    public String getVersion() {
+        return fingerprint().getVersionId();
+    }
+
     /**
      * Get the creation timestamp of this instance.
      * @return the creation timestamp
      */
     public long getFrozenAt(){
+        if (snapshot == null) {
+            return frozenAt;
+        }
         return snapshot.getFrozenAt();
     }
 
     @Override
     public PropertyValue get(String key) {
+        if (snapshot == null) {
+            return values.get(key);
+        }
         return snapshot.get(key);
     }
 
     @Override
     public Map<String, PropertyValue> getProperties() {
+        if (snapshot == null) {
+            return values;
+        }
         return snapshot.getProperties();
     }
 
@@ -108,16 +251,30 @@ public final class FrozenPropertySource implements PropertySource, Serializable
             return false;
         }
         FrozenPropertySource that = (FrozenPropertySource) o;
+        if (snapshot == null || that.snapshot == null) {
+            return snapshot == that.snapshot && ordinal == that.ordinal && frozenAt == that.frozenAt
+                    && Objects.equals(name, that.name) && values.equals(that.values);
+        }
         return Objects.equals(snapshot, that.snapshot);
     }
 
     @Override
     public int hashCode() {
+        if (snapshot == null) {
+            return Objects.hash(name, ordinal, frozenAt);
+        }
         return snapshot.hashCode();
     }
 
     @Override
     public String toString() {
+        if (snapshot == null) {
+            return "FrozenPropertySource{" +
+                    "name=" + name +
+                    ", ordinal=" + ordinal +
+                    ", frozenAt=" + frozenAt +
+                    '}';
+        }
         return "FrozenPropertySource{" +
                 "snapshot=" + snapshot +
                 '}';
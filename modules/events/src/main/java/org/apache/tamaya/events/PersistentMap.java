@@ -0,0 +1,531 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.events;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Immutable map implemented as hash array mapped trie (HAMT). Adding or removing an entry creates a new map
+ * sharing all unchanged nodes with the original map, so keeping many versions of a large map costs memory
+ * proportional to the changes only. Comparing two maps derived from each other skips all shared subtrees.
+ *
+ * @param <K> the key type.
+ * @param <V> the value type.
+ */
+final class PersistentMap<K, V> extends AbstractMap<K, V> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int BITS = 5;
+
+    private static final int MASK = (1 << BITS) - 1;
+
+    @SuppressWarnings("rawtypes")
+    private static final PersistentMap EMPTY = new PersistentMap<>(null, 0);
+
+    private final transient Node root;
+
+    private final transient int size;
+
+    private transient volatile List<Entry<K, V>> entries;
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Get the empty map.
+     * @param <K> the key type.
+     * @param <V> the value type.
+     * @return the empty map.
+     */
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentMap<K, V> empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Creates a map with the entries given.
+     * @param map the entries, not null.
+     * @param <K> the key type.
+     * @param <V> the value type.
+     * @return the new map.
+     */
+    static <K, V> PersistentMap<K, V> of(Map<? extends K, ? extends V> map) {
+        PersistentMap<K, V> result = empty();
+        for (Entry<? extends K, ? extends V> en : map.entrySet()) {
+            result = result.plus(en.getKey(), en.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Creates a map with the given entry added or replaced.
+     * @param key the key, not null.
+     * @param value the value.
+     * @return the new map, or this instance, if the entry is already present.
+     */
+    PersistentMap<K, V> plus(K key, V value) {
+        Objects.requireNonNull(key);
+        boolean[] added = new boolean[1];
+        Node newRoot = root == null ? new BitmapNode(0, new Object[0]).assoc(0, hash(key), key, value, added)
+                : root.assoc(0, hash(key), key, value, added);
+        if (newRoot == root) {
+            return this;
+        }
+        return new PersistentMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * Creates a map with the given key removed.
+     * @param key the key, not null.
+     * @return the new map, or this instance, if the key is not present.
+     */
+    PersistentMap<K, V> minus(K key) {
+        if (root == null) {
+            return this;
+        }
+        Node newRoot = root.without(0, hash(key), key);
+        if (newRoot == root) {
+            return this;
+        }
+        return newRoot == null ? empty() : new PersistentMap<>(newRoot, size - 1);
+    }
+
+    /**
+     * Creates a map containing exactly the entries given, hereby sharing all nodes not affected with this map.
+     * @param map the target entries, not null.
+     * @return the new map.
+     */
+    PersistentMap<K, V> update(Map<? extends K, ? extends V> map) {
+        PersistentMap<K, V> result = this;
+        for (Entry<? extends K, ? extends V> en : map.entrySet()) {
+            result = result.plus(en.getKey(), en.getValue());
+        }
+        if (result.size() != map.size()) {
+            for (K key : keySet()) {
+                if (!map.containsKey(key)) {
+                    result = result.minus(key);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reports all differences between this map and the given map. Subtrees shared by both maps are skipped.
+     * @param other the other map, not null.
+     * @param consumer the consumer called with key, value in this map and value in the other map for each
+     *                 difference, not null.
+     */
+    void diff(PersistentMap<K, V> other, DiffConsumer<K, V> consumer) {
+        diff(root, other.root, 0, consumer);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public V get(Object key) {
+        if (root == null || key == null) {
+            return null;
+        }
+        return (V) root.find(0, hash(key), key, null);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return root != null && key != null && root.find(0, hash(key), key, NOT_FOUND) != NOT_FOUND;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (root != null) {
+            root.forEach((BiConsumer<Object, Object>) action);
+        }
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<Entry<K, V>>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return entries().iterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private List<Entry<K, V>> entries() {
+        List<Entry<K, V>> list = entries;
+        if (list == null) {
+            List<Entry<K, V>> result = new ArrayList<>(size);
+            forEach((k, v) -> result.add(new SimpleImmutableEntry<>(k, v)));
+            list = Collections.unmodifiableList(result);
+            entries = list;
+        }
+        return list;
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        return new SerializedForm(new HashMap<>(this));
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /** Marker for keys not found. */
+    private static final Object NOT_FOUND = new Object();
+
+    /**
+     * Consumer for differences between two maps.
+     * @param <K> the key type.
+     * @param <V> the value type.
+     */
+    @FunctionalInterface
+    interface DiffConsumer<K, V> {
+        /**
+         * Called for a key with different values.
+         * @param key the key.
+         * @param oldValue the value in the first map, or null, if not present.
+         * @param newValue the value in the second map, or null, if not present.
+         */
+        void accept(K key, V oldValue, V newValue);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> void diff(Node a, Node b, int shift, DiffConsumer<K, V> consumer) {
+        if (a == b) {
+            return;
+        }
+        if (a == null) {
+            b.forEach((k, v) -> consumer.accept((K) k, null, (V) v));
+        } else if (b == null) {
+            a.forEach((k, v) -> consumer.accept((K) k, (V) v, null));
+        } else if (a instanceof BitmapNode && b instanceof BitmapNode) {
+            BitmapNode na = (BitmapNode) a;
+            BitmapNode nb = (BitmapNode) b;
+            int bits = na.bitmap | nb.bitmap;
+            while (bits != 0) {
+                int bit = Integer.lowestOneBit(bits);
+                bits &= ~bit;
+                Object ka = null, va = null, kb = null, vb = null;
+                boolean inA = (na.bitmap & bit) != 0;
+                boolean inB = (nb.bitmap & bit) != 0;
+                if (inA) {
+                    int idx = na.index(bit);
+                    ka = na.array[2 * idx];
+                    va = na.array[2 * idx + 1];
+                }
+                if (inB) {
+                    int idx = nb.index(bit);
+                    kb = nb.array[2 * idx];
+                    vb = nb.array[2 * idx + 1];
+                }
+                if (inA && inB && ka == null && kb == null) {
+                    diff((Node) va, (Node) vb, shift + BITS, consumer);
+                } else if (inA && inB && ka != null && kb != null && ka.equals(kb)) {
+                    if (!Objects.equals(va, vb)) {
+                        consumer.accept((K) ka, (V) va, (V) vb);
+                    }
+                } else {
+                    diffSlow(slot(inA, ka, va), slot(inB, kb, vb), consumer);
+                }
+            }
+        } else {
+            diffSlow(a, b, consumer);
+        }
+    }
+
+    private static Node slot(boolean present, Object key, Object valueOrNode) {
+        if (!present) {
+            return null;
+        }
+        if (key == null) {
+            return (Node) valueOrNode;
+        }
+        return new CollisionNode(hash(key), new Object[]{key, valueOrNode});
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> void diffSlow(Node a, Node b, DiffConsumer<K, V> consumer) {
+        Map<Object, Object> ma = new HashMap<>();
+        Map<Object, Object> mb = new HashMap<>();
+        if (a != null) {
+            a.forEach(ma::put);
+        }
+        if (b != null) {
+            b.forEach(mb::put);
+        }
+        for (Map.Entry<Object, Object> en : ma.entrySet()) {
+            Object other = mb.get(en.getKey());
+            if (!mb.containsKey(en.getKey()) || !Objects.equals(en.getValue(), other)) {
+                consumer.accept((K) en.getKey(), (V) en.getValue(), (V) other);
+            }
+        }
+        for (Map.Entry<Object, Object> en : mb.entrySet()) {
+            if (!ma.containsKey(en.getKey())) {
+                consumer.accept((K) en.getKey(), null, (V) en.getValue());
+            }
+        }
+    }
+
+    private abstract static class Node {
+        abstract Node assoc(int shift, int hash, Object key, Object value, boolean[] added);
+
+        abstract Node without(int shift, int hash, Object key);
+
+        abstract Object find(int shift, int hash, Object key, Object notFound);
+
+        abstract void forEach(BiConsumer<Object, Object> action);
+    }
+
+    /**
+     * Node with up to 32 slots, each holding either a key/value pair or (with a null key) a child node.
+     */
+    private static final class BitmapNode extends Node {
+        final int bitmap;
+        final Object[] array;
+
+        BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Node assoc(int shift, int hash, Object key, Object value, boolean[] added) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            int idx = index(bit);
+            if ((bitmap & bit) == 0) {
+                Object[] newArray = new Object[array.length + 2];
+                System.arraycopy(array, 0, newArray, 0, 2 * idx);
+                newArray[2 * idx] = key;
+                newArray[2 * idx + 1] = value;
+                System.arraycopy(array, 2 * idx, newArray, 2 * idx + 2, array.length - 2 * idx);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, newArray);
+            }
+            Object keyOrNull = array[2 * idx];
+            Object valOrNode = array[2 * idx + 1];
+            if (keyOrNull == null) {
+                Node n = ((Node) valOrNode).assoc(shift + BITS, hash, key, value, added);
+                if (n == valOrNode) {
+                    return this;
+                }
+                return new BitmapNode(bitmap, cloneAndSet(array, 2 * idx + 1, n));
+            }
+            if (key.equals(keyOrNull)) {
+                if (Objects.equals(value, valOrNode)) {
+                    return this;
+                }
+                return new BitmapNode(bitmap, cloneAndSet(array, 2 * idx + 1, value));
+            }
+            added[0] = true;
+            Object[] newArray = cloneAndSet(array, 2 * idx, null);
+            newArray[2 * idx + 1] = createNode(shift + BITS, keyOrNull, valOrNode, hash, key, value);
+            return new BitmapNode(bitmap, newArray);
+        }
+
+        @Override
+        Node without(int shift, int hash, Object key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int idx = index(bit);
+            Object keyOrNull = array[2 * idx];
+            Object valOrNode = array[2 * idx + 1];
+            if (keyOrNull == null) {
+                Node n = ((Node) valOrNode).without(shift + BITS, hash, key);
+                if (n == valOrNode) {
+                    return this;
+                }
+                if (n != null) {
+                    return new BitmapNode(bitmap, cloneAndSet(array, 2 * idx + 1, n));
+                }
+            } else if (!key.equals(keyOrNull)) {
+                return this;
+            }
+            if (bitmap == bit) {
+                return null;
+            }
+            Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, 2 * idx);
+            System.arraycopy(array, 2 * idx + 2, newArray, 2 * idx, array.length - 2 * idx - 2);
+            return new BitmapNode(bitmap & ~bit, newArray);
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key, Object notFound) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return notFound;
+            }
+            int idx = index(bit);
+            Object keyOrNull = array[2 * idx];
+            Object valOrNode = array[2 * idx + 1];
+            if (keyOrNull == null) {
+                return ((Node) valOrNode).find(shift + BITS, hash, key, notFound);
+            }
+            return key.equals(keyOrNull) ? valOrNode : notFound;
+        }
+
+        @Override
+        void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (array[i] == null) {
+                    ((Node) array[i + 1]).forEach(action);
+                } else {
+                    action.accept(array[i], array[i + 1]);
+                }
+            }
+        }
+
+        private static Node createNode(int shift, Object key1, Object val1, int hash2, Object key2, Object val2) {
+            int hash1 = hash(key1);
+            if (hash1 == hash2) {
+                return new CollisionNode(hash1, new Object[]{key1, val1, key2, val2});
+            }
+            boolean[] added = new boolean[1];
+            return new BitmapNode(0, new Object[0])
+                    .assoc(shift, hash1, key1, val1, added)
+                    .assoc(shift, hash2, key2, val2, added);
+        }
+    }
+
+    /**
+     * Node holding all entries whose keys have the same hash.
+     */
+    private static final class CollisionNode extends Node {
+        final int hash;
+        final Object[] array;
+
+        CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        Node assoc(int shift, int hash, Object key, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                int bit = 1 << ((this.hash >>> shift) & MASK);
+                return new BitmapNode(bit, new Object[]{null, this}).assoc(shift, hash, key, value, added);
+            }
+            int idx = indexOf(key);
+            if (idx >= 0) {
+                if (Objects.equals(array[idx + 1], value)) {
+                    return this;
+                }
+                return new CollisionNode(hash, cloneAndSet(array, idx + 1, value));
+            }
+            Object[] newArray = new Object[array.length + 2];
+            System.arraycopy(array, 0, newArray, 0, array.length);
+            newArray[array.length] = key;
+            newArray[array.length + 1] = value;
+            added[0] = true;
+            return new CollisionNode(hash, newArray);
+        }
+
+        @Override
+        Node without(int shift, int hash, Object key) {
+            int idx = indexOf(key);
+            if (idx < 0) {
+                return this;
+            }
+            if (array.length == 2) {
+                return null;
+            }
+            Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, idx);
+            System.arraycopy(array, idx + 2, newArray, idx, array.length - idx - 2);
+            return new CollisionNode(hash, newArray);
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key, Object notFound) {
+            int idx = indexOf(key);
+            return idx < 0 ? notFound : array[idx + 1];
+        }
+
+        @Override
+        void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                action.accept(array[i], array[i + 1]);
+            }
+        }
+    }
+
+    private static Object[] cloneAndSet(Object[] array, int idx, Object value) {
+        Object[] clone = array.clone();
+        clone[idx] = value;
+        return clone;
+    }
+
+    /**
+     * Serialized form, containing the entries only.
+     */
+    private static final class SerializedForm implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final HashMap<Object, Object> entries;
+
+        SerializedForm(HashMap<Object, Object> entries) {
+            this.entries = entries;
+        }
+
+        private Object readResolve() throws ObjectStreamException {
+            return PersistentMap.of(entries);
+        }
+    }
+}
@@ -89,6 +89,12 @@ public final class PropertySourceChangeBuilder {
      */
     public static Collection<PropertyChangeEvent> compare(PropertySource map1, PropertySource map2) {
         List<PropertyChangeEvent> changes = new ArrayList<>();
+        if (map1 instanceof FrozenPropertySource && map2 instanceof FrozenPropertySource) {
+            // only descends into sections with different hashes
+            ((FrozenPropertySource) map2).diff((FrozenPropertySource) map1, (key, oldValue, newValue) ->
+                    changes.add(new PropertyChangeEvent(map1, key, oldValue, newValue)));
+            return changes;
+        }
         for (Map.Entry<String, PropertyValue> en : map1.getProperties().entrySet()) {
             PropertyValue val = map2.get(en.getKey());
             if (val == null) {
@@ -98,12 +104,10 @@ public final class PropertySourceChangeBuilder {
             }
         }
         for (Map.Entry<String, PropertyValue> en : map2.getProperties().entrySet()) {
-            PropertyValue val = map1.get(en.getKey());
-            if (val == null) {
+            if (map1.get(en.getKey()) == null) {
                 changes.add(new PropertyChangeEvent(map1, en.getKey(), en.getValue().getValue(), null));
-            } else if (!val.equals(en.getValue())) {
-                changes.add(new PropertyChangeEvent(map1, en.getKey(), en.getValue().getValue(), val.getValue()));
             }
+            // changed entries were already covered by the previous loop.
         }
         return changes;
     }
@@ -143,6 +147,42 @@ public final class PropertySourceChangeBuilder {
         return this;
     }
 
+    /**
+     * Records the differences of the given values of the keys affected by a change. Keys with equal values are
+     * ignored, keys missing or null in one of the maps are recorded as added or removed.
+     *
+     * @param oldValues the previous values of the affected keys, not null.
+     * @param newValues the new values of the affected keys, not null.
+     * @return the builder for chaining.
+     */
+    public PropertySourceChangeBuilder addChanges(Map<String, String> oldValues, Map<String, String> newValues) {
+        for (Map.Entry<String, String> en : oldValues.entrySet()) {
+            String newValue = newValues.get(en.getKey());
+            if (!Objects.equals(en.getValue(), newValue)) {
+                addChange(en.getKey(), en.getValue(), newValue);
+            }
+        }
+        for (Map.Entry<String, String> en : newValues.entrySet()) {
+            if (en.getValue() != null && !oldValues.containsKey(en.getKey())) {
+                addChange(en.getKey(), null, en.getValue());
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Applies a single key/value change with a known previous value.
+     *
+     * @param key      the changed key
+     * @param oldValue the previous value, or null, if the key was added.
+     * @param newValue the new value, or null, if the key was removed.
+     * @return the builder for chaining.
+     */
+    public PropertySourceChangeBuilder addChange(String key, String oldValue, String newValue) {
+        this.delta.put(key, new PropertyChangeEvent(this.source, key, oldValue, newValue));
+        return this;
+    }
+
     /**
      * Get the current values, also considering any changes recorded within this change setCurrent.
      *
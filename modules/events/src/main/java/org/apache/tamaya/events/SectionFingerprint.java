@@ -0,0 +1,237 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.events;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable hierarchical hash (Merkle tree) over the dotted sections of a set of configuration entries. Each
+ * section, e.g. {@code a.b} for the key {@code a.b.c}, carries a hash over its own entries and the hashes of its
+ * sub sections. Two fingerprints with the same root hash are considered to describe the same entries, so
+ * identical configurations compare in O(1) and {@link #diff(SectionFingerprint, PersistentMap.DiffConsumer)} only
+ * descends into sections, whose hashes differ. The hashes only depend on the keys and values, so they can
+ * be compared across VMs. The entries and sub sections of a section are kept in {@link PersistentMap}s, so a
+ * changed fingerprint shares the unchanged parts of the sections affected as well.
+ */
+final class SectionFingerprint {
+
+    /** The fingerprint of an empty configuration. */
+    static final SectionFingerprint EMPTY = new SectionFingerprint(Node.EMPTY);
+
+    private final Node root;
+
+    private SectionFingerprint(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Creates the fingerprint of the given entries.
+     * @param values the entries, not null.
+     * @return the fingerprint, never null.
+     */
+    static SectionFingerprint of(Map<String, String> values) {
+        Builder root = new Builder();
+        for (Map.Entry<String, String> en : values.entrySet()) {
+            if (en.getValue() == null) {
+                continue;
+            }
+            Builder builder = root;
+            String key = en.getKey();
+            int start = 0;
+            int dot;
+            while ((dot = key.indexOf('.', start)) >= 0) {
+                builder = builder.children.computeIfAbsent(key.substring(start, dot), k -> new Builder());
+                start = dot + 1;
+            }
+            builder.entries.put(key, en.getValue());
+        }
+        return new SectionFingerprint(root.build());
+    }
+
+    /**
+     * Creates a fingerprint with the given entry changed, sharing all sections not affected.
+     * @param key the key, not null.
+     * @param value the new value, or null, if the entry was removed.
+     * @return the new fingerprint, or this instance, if nothing changed.
+     */
+    SectionFingerprint with(String key, String value) {
+        Node newRoot = root.with(key, 0, value);
+        return newRoot == root ? this : new SectionFingerprint(newRoot);
+    }
+
+    /**
+     * Get the root hash.
+     * @return the hash.
+     */
+    long getHash() {
+        return root.hash;
+    }
+
+    /**
+     * Get the number of entries.
+     * @return the number of entries.
+     */
+    int size() {
+        return root.size;
+    }
+
+    /**
+     * Get a version id, which is identical for identical entries.
+     * @return the version id, never null.
+     */
+    String getVersionId() {
+        return String.format("%016x", root.hash);
+    }
+
+    /**
+     * Reports all entries differing from the given fingerprint. Sections with equal hashes are skipped.
+     * @param other the other fingerprint, not null.
+     * @param consumer the consumer called with key, value in this fingerprint and value in the other fingerprint,
+     *                 not null.
+     */
+    void diff(SectionFingerprint other, PersistentMap.DiffConsumer<String, String> consumer) {
+        diff(root, other.root, consumer);
+    }
+
+    private static void diff(Node a, Node b, PersistentMap.DiffConsumer<String, String> consumer) {
+        if (a == b || (a.hash == b.hash && a.size == b.size)) {
+            return;
+        }
+        a.entries.diff(b.entries, consumer);
+        a.children.diff(b.children, (name, childA, childB) ->
+                diff(childA == null ? Node.EMPTY : childA, childB == null ? Node.EMPTY : childB, consumer));
+    }
+
+    private static long hash(String s) {
+        // FNV-1a, stable across VMs
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private static long mix(long h) {
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+
+    private static long entryHash(String key, String value) {
+        return mix(hash(key) + 0x9e3779b97f4a7c15L * hash(value));
+    }
+
+    private static long childHash(String name, Node child) {
+        return mix(hash(name) ^ child.hash);
+    }
+
+    /**
+     * Immutable section, the hash is the sum of the hashes of its entries and sub sections.
+     */
+    private static final class Node {
+
+        static final Node EMPTY = new Node(0L, 0, PersistentMap.empty(), PersistentMap.empty());
+
+        final long hash;
+        final int size;
+        /** The entries directly contained in this section, keyed by their full key. */
+        final PersistentMap<String, String> entries;
+        /** The sub sections, keyed by their name segment. */
+        final PersistentMap<String, Node> children;
+
+        Node(long hash, int size, PersistentMap<String, String> entries, PersistentMap<String, Node> children) {
+            this.hash = hash;
+            this.size = size;
+            this.entries = entries;
+            this.children = children;
+        }
+
+        Node with(String key, int start, String value) {
+            int dot = key.indexOf('.', start);
+            if (dot < 0) {
+                String oldValue = entries.get(key);
+                if (value == null ? oldValue == null : value.equals(oldValue)) {
+                    return this;
+                }
+                PersistentMap<String, String> newEntries = entries;
+                long newHash = hash;
+                int newSize = size;
+                if (oldValue != null) {
+                    newHash -= entryHash(key, oldValue);
+                    newSize--;
+                }
+                if (value == null) {
+                    newEntries = newEntries.minus(key);
+                } else {
+                    newEntries = newEntries.plus(key, value);
+                    newHash += entryHash(key, value);
+                    newSize++;
+                }
+                return new Node(newHash, newSize, newEntries, children);
+            }
+            String name = key.substring(start, dot);
+            Node child = children.getOrDefault(name, EMPTY);
+            Node newChild = child.with(key, dot + 1, value);
+            if (newChild == child) {
+                return this;
+            }
+            PersistentMap<String, Node> newChildren;
+            long newHash = hash;
+            if (child != EMPTY) {
+                newHash -= childHash(name, child);
+            }
+            if (newChild.size == 0) {
+                newChildren = children.minus(name);
+            } else {
+                newChildren = children.plus(name, newChild);
+                newHash += childHash(name, newChild);
+            }
+            return new Node(newHash, size - child.size + newChild.size, entries, newChildren);
+        }
+    }
+
+    /**
+     * Mutable section used for the initial creation of a fingerprint.
+     */
+    private static final class Builder {
+        final Map<String, String> entries = new HashMap<>();
+        final Map<String, Builder> children = new HashMap<>();
+
+        Node build() {
+            long hash = 0L;
+            int size = entries.size();
+            for (Map.Entry<String, String> en : entries.entrySet()) {
+                hash += entryHash(en.getKey(), en.getValue());
+            }
+            PersistentMap<String, Node> nodes = PersistentMap.empty();
+            for (Map.Entry<String, Builder> en : children.entrySet()) {
+                Node child = en.getValue().build();
+                if (child.size > 0) {
+                    nodes = nodes.plus(en.getKey(), child);
+                    hash += childHash(en.getKey(), child);
+                    size += child.size;
+                }
+            }
+            return new Node(hash, size, PersistentMap.of(entries), nodes);
+        }
+    }
+
+}
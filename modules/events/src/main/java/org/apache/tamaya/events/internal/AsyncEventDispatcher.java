@@ -0,0 +1,270 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.events.internal;
+
+import org.apache.tamaya.events.ConfigEvent;
+import org.apache.tamaya.events.ConfigEventListener;
+import org.apache.tamaya.events.ConfigMetrics;
+import org.apache.tamaya.events.ConfigurationChange;
+import org.apache.tamaya.events.ConfigurationChangeBuilder;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Dispatches events asynchronously on a bounded thread pool. Each listener has its own bounded queue, which is
+ * drained by at most one thread at a time, so every listener receives its events in publication order. When a
+ * queue is full the listener's {@link OverflowPolicy} is applied.
+ */
+final class AsyncEventDispatcher {
+
+    private static final Logger LOG = Logger.getLogger(AsyncEventDispatcher.class.getName());
+
+    /** Maximal number of events delivered by one task, before the queue is rescheduled. */
+    private static final int BATCH_SIZE = 64;
+
+    private static final ThreadLocal<ListenerQueue> DRAINING = new ThreadLocal<>();
+
+    private final ThreadPoolExecutor executor;
+
+    private final int capacity;
+
+    private final OverflowPolicy defaultPolicy;
+
+    private final Map<ConfigEventListener, ListenerQueue> queues = new ConcurrentHashMap<>();
+
+    private final Map<ConfigEventListener, OverflowPolicy> policies = new ConcurrentHashMap<>();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Creates a new dispatcher.
+     * @param poolSize the number of delivering threads.
+     * @param capacity the queue capacity per listener.
+     * @param defaultPolicy the overflow policy for listeners without explicit policy, not null.
+     */
+    AsyncEventDispatcher(int poolSize, int capacity, OverflowPolicy defaultPolicy) {
+        this.capacity = Math.max(1, capacity);
+        this.defaultPolicy = Objects.requireNonNull(defaultPolicy);
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "tamaya-events-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues the event for delivery to the given listener.
+     * @param listener the listener, not null.
+     * @param event the event, not null.
+     */
+    void dispatch(ConfigEventListener listener, ConfigEvent<?> event) {
+        ListenerQueue queue = queues.computeIfAbsent(listener, ListenerQueue::new);
+        if (queue.offer(event)) {
+            queue.schedule();
+        }
+    }
+
+    /**
+     * Sets the overflow policy for a listener.
+     * @param listener the listener, not null.
+     * @param policy the policy, or null, to use the default policy.
+     */
+    void setOverflowPolicy(ConfigEventListener listener, OverflowPolicy policy) {
+        if (policy == null) {
+            policies.remove(listener);
+        } else {
+            policies.put(listener, policy);
+        }
+    }
+
+    /**
+     * Releases the queue of a listener that has been removed. Events already queued are still delivered.
+     * @param listener the listener, not null.
+     */
+    void release(ConfigEventListener listener) {
+        ListenerQueue queue = queues.remove(listener);
+        policies.remove(listener);
+        if (queue != null) {
+            ConfigMetrics.queueReleased(queue.name);
+        }
+    }
+
+    /**
+     * Get the number of events currently queued over all listeners.
+     * @return the queue depth.
+     */
+    int getQueueDepth() {
+        int depth = 0;
+        for (ListenerQueue queue : queues.values()) {
+            depth += queue.size();
+        }
+        return depth;
+    }
+
+    /**
+     * Get the number of events dropped because a listener queue was full.
+     * @return the number of rejected events.
+     */
+    long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Get the number of events merged into an already queued event because a listener queue was full.
+     * @return the number of coalesced events.
+     */
+    long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    /**
+     * The queue of a single listener, also acting as the task draining it.
+     */
+    private final class ListenerQueue implements Runnable {
+        private final ConfigEventListener listener;
+        /** The name the queue depth is recorded with, distinguishing listener instances of the same class. */
+        private final String name;
+        private final ArrayDeque<ConfigEvent<?>> events = new ArrayDeque<>();
+        private boolean scheduled;
+
+        ListenerQueue(ConfigEventListener listener) {
+            this.listener = listener;
+            this.name = listener.getClass().getName() + '@' + Integer.toHexString(System.identityHashCode(listener));
+        }
+
+        /**
+         * Adds an event, applying the overflow policy if the queue is full.
+         * @param event the event, not null.
+         * @return true, if the queue must be scheduled for draining.
+         */
+        synchronized boolean offer(ConfigEvent<?> event) {
+            if (events.size() >= capacity) {
+                OverflowPolicy policy = policies.getOrDefault(listener, defaultPolicy);
+                if (policy == OverflowPolicy.BLOCK && DRAINING.get() != this) {
+                    while (events.size() >= capacity) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            rejected.incrementAndGet();
+                            return false;
+                        }
+                    }
+                } else if (policy == OverflowPolicy.COALESCE && coalesce(event)) {
+                    coalesced.incrementAndGet();
+                    return false;
+                } else {
+                    events.poll();
+                    rejected.incrementAndGet();
+                }
+            }
+            events.add(event);
+            ConfigMetrics.queueDepth(name, events.size());
+            if (scheduled) {
+                return false;
+            }
+            scheduled = true;
+            return true;
+        }
+
+        private boolean coalesce(ConfigEvent<?> event) {
+            ConfigEvent<?> last = events.peekLast();
+            if (!(event instanceof ConfigurationChange) || !(last instanceof ConfigurationChange)) {
+                return false;
+            }
+            events.pollLast();
+            events.add(ConfigurationChangeBuilder.merge((ConfigurationChange) last, (ConfigurationChange) event));
+            return true;
+        }
+
+        synchronized int size() {
+            return events.size();
+        }
+
+        /**
+         * Submits the queue for draining. If the executor rejects the task, the queued events are dropped, so
+         * publishers blocked on the full queue are released and later events schedule the queue again.
+         */
+        void schedule() {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                LOG.log(Level.WARNING, "Failed to schedule event delivery to listener " + listener
+                        + ", dropping queued events.", e);
+                synchronized (this) {
+                    rejected.addAndGet(events.size());
+                    events.clear();
+                    scheduled = false;
+                    ConfigMetrics.queueDepth(name, 0);
+                    notifyAll();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            DRAINING.set(this);
+            boolean drained = false;
+            try {
+                for (int i = 0; i < BATCH_SIZE; i++) {
+                    ConfigEvent<?> event;
+                    synchronized (this) {
+                        event = events.poll();
+                        if (event == null) {
+                            scheduled = false;
+                            drained = true;
+                            return;
+                        }
+                        ConfigMetrics.queueDepth(name, events.size());
+                        notifyAll();
+                    }
+                    long start = ConfigMetrics.start();
+                    try {
+                        listener.onConfigEvent(event);
+                        ConfigMetrics.dispatched(listener.getClass().getName(), start);
+                    } catch (Throwable t) {
+                        LOG.log(Level.WARNING, "Listener " + listener + " failed to handle event " + event, t);
+                    }
+                }
+            } finally {
+                DRAINING.remove();
+                if (!drained) {
+                    // give other listeners a chance, continue later; also taken when draining failed
+                    schedule();
+                }
+            }
+        }
+    }
+}
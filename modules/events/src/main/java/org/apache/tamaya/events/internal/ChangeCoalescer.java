@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.events.internal;
+
+import org.apache.tamaya.events.ConfigurationChange;
+import org.apache.tamaya.events.ConfigurationChangeBuilder;
+
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Merges bursts of {@link ConfigurationChange} events into a single change. A merged change is published when no
+ * further change has arrived within the quiet period, but at the latest after the maximal latency since the first
+ * change of the burst. For each key the oldest previous value and the newest value are kept.
+ */
+final class ChangeCoalescer {
+
+    private static final Logger LOG = Logger.getLogger(ChangeCoalescer.class.getName());
+
+    private static final ScheduledExecutorService SCHEDULER = createScheduler();
+
+    private final long quietPeriod;
+
+    private final long maxLatency;
+
+    private final Consumer<ConfigurationChange> sink;
+
+    private ConfigurationChange pending;
+
+    private int pendingCount;
+
+    private long firstArrival;
+
+    private ScheduledFuture<?> flushTask;
+
+    /**
+     * Creates a new coalescer.
+     * @param quietPeriod the quiet period in ms.
+     * @param maxLatency the maximal time in ms a change is held back.
+     * @param sink the consumer the merged changes are published to, not null.
+     */
+    ChangeCoalescer(long quietPeriod, long maxLatency, Consumer<ConfigurationChange> sink) {
+        this.quietPeriod = quietPeriod;
+        this.maxLatency = Math.max(quietPeriod, maxLatency);
+        this.sink = Objects.requireNonNull(sink);
+    }
+
+    private static ScheduledExecutorService createScheduler() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "tamaya-events-coalescer");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    /**
+     * Adds a change to the current burst, hereby (re)scheduling its publication.
+     * @param change the change, not null.
+     */
+    synchronized void add(ConfigurationChange change) {
+        long now = System.currentTimeMillis();
+        if (pending == null) {
+            pending = change;
+            firstArrival = now;
+        } else {
+            pending = ConfigurationChangeBuilder.merge(pending, change);
+        }
+        pendingCount++;
+        if (flushTask != null) {
+            flushTask.cancel(false);
+        }
+        long delay = Math.max(0L, Math.min(quietPeriod, firstArrival + maxLatency - now));
+        flushTask = SCHEDULER.schedule(this::flush, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Publishes the pending merged change, if any.
+     */
+    void flush() {
+        ConfigurationChange change;
+        synchronized (this) {
+            change = pending;
+            pending = null;
+            pendingCount = 0;
+            if (flushTask != null) {
+                flushTask.cancel(false);
+                flushTask = null;
+            }
+        }
+        if (change != null && !change.isEmpty()) {
+            try {
+                sink.accept(change);
+            } catch (Exception e) {
+                LOG.log(Level.WARNING, "Failed to publish coalesced configuration change.", e);
+            }
+        }
+    }
+
+    /**
+     * Get the number of changes merged into the pending change.
+     * @return the number of pending changes.
+     */
+    synchronized int getPendingCount() {
+        return pendingCount;
+    }
+}
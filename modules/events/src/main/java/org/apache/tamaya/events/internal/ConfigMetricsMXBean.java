@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.events.internal;
+
+import java.util.Map;
+
+/**
+ * JMX interface of the configuration metrics, registered as {@code org.apache.tamaya:type=ConfigMetrics}. All
+ * latencies are in nanoseconds.
+ */
+public interface ConfigMetricsMXBean {
+
+    /**
+     * Get the latencies of {@code PropertySource.get} calls.
+     * @return the latencies keyed by property source name.
+     */
+    Map<String, LatencyStatistics> getSourceAccessLatencies();
+
+    /**
+     * Get the latencies of property filters.
+     * @return the latencies keyed by filter class.
+     */
+    Map<String, LatencyStatistics> getFilterLatencies();
+
+    /**
+     * Get the latencies of property converters.
+     * @return the latencies keyed by converter class.
+     */
+    Map<String, LatencyStatistics> getConversionLatencies();
+
+    /**
+     * Get the latencies of event deliveries.
+     * @return the latencies keyed by listener class.
+     */
+    Map<String, LatencyStatistics> getDispatchLatencies();
+
+    /**
+     * Get the durations of reloads of remote property sources.
+     * @return the latencies keyed by property source name.
+     */
+    Map<String, LatencyStatistics> getRefreshLatencies();
+
+    /**
+     * Get the number of failed reloads of remote property sources.
+     * @return the number of failures keyed by property source name.
+     */
+    Map<String, Long> getRefreshFailures();
+
+    /**
+     * Get the durations of configuration change checks.
+     * @return the latencies.
+     */
+    LatencyStatistics getObserverCheckLatency();
+
+    /**
+     * Get the depths of the asynchronous event queues last recorded.
+     * @return the queue depths keyed by listener.
+     */
+    Map<String, Integer> getEventQueueDepths();
+
+    /**
+     * Get the maximal depths of the asynchronous event queues recorded.
+     * @return the maximal queue depths keyed by listener.
+     */
+    Map<String, Integer> getMaxEventQueueDepths();
+
+    /**
+     * Clears all metrics recorded.
+     */
+    void reset();
+}
@@ -21,14 +21,45 @@ package org.apache.tamaya.events.internal;
 import org.apache.tamaya.Configuration;
 import org.apache.tamaya.ConfigurationSnapshot;
 import org.apache.tamaya.events.ConfigEventManager;
+import org.apache.tamaya.events.ConfigMetrics;
 import org.apache.tamaya.events.ConfigurationChange;
 import org.apache.tamaya.events.ConfigurationChangeBuilder;
+import org.apache.tamaya.events.PropertySourceChangeBuilder;
+import org.apache.tamaya.functions.Refreshable;
+import org.apache.tamaya.spi.ChangeSupport;
+import org.apache.tamaya.spi.PropertySource;
+import org.apache.tamaya.spi.PropertyValue;
 
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Timer task that regularly checks the configuration for changes.
+ * Task that regularly checks the configuration for changes. All observers share a single daemon scheduler
+ * thread. A check is scheduled only after the previous one has completed, so checks never overlap. The interval
+ * adapts to the observed change rate:
+ * <ul>
+ *     <li>after {@code tamaya.events.backoff-after} checks without changes the interval is doubled, up to
+ *     {@code tamaya.events.max-check-period} ms,</li>
+ *     <li>after a change has been detected the interval is reset to the configured check period,</li>
+ *     <li>each delay is randomized by {@code tamaya.events.check-jitter} (a fraction of the interval), so several
+ *     VMs do not poll remote backends in lockstep.</li>
+ * </ul>
+ * Additionally the files backing property sources (identified by a {@code file:} URL or an absolute path as
+ * source name or {@code source} metadata) are watched using a {@link java.nio.file.WatchService}. A modification
+ * triggers an immediate check of only the affected property sources, which are reloaded first if they implement
+ * {@link Refreshable}. The check publishes a
+ * {@link org.apache.tamaya.events.PropertySourceChange} and the resulting {@link ConfigurationChange}. Bursts of
+ * writes are coalesced within {@code tamaya.events.file-watch.quiet-period} ms.
  */
 public class DefaultConfigChangeObserver {
 
@@ -36,14 +67,61 @@ public class DefaultConfigChangeObserver {
 
     private static final Logger LOG = Logger.getLogger(DefaultConfigChangeObserver.class.getName());
 
-    private Timer timer = new Timer("DefaultConfigChangeObserver", true);
+    private static final ScheduledExecutorService SCHEDULER = createScheduler();
 
-    private long checkPeriod = 2000L;
+    private volatile long checkPeriod = 2000L;
+
+    private final long maxCheckPeriod = EventsConfig.getMaxCheckPeriod();
+
+    private final int backoffAfter = EventsConfig.getBackoffAfter();
+
+    private final double jitter = EventsConfig.getCheckJitter();
+
+    private volatile long currentInterval = checkPeriod;
+
+    private volatile long lastCheckDuration;
+
+    private volatile long skippedTicks;
+
+    private int unchangedChecks;
+
+    /**
+     * Incremented on each rescheduling, so outdated tasks do not schedule themselves again.
+     */
+    private int scheduleEpoch;
+
+    private ScheduledFuture<?> scheduled;
+
+    private final Object scheduleLock = new Object();
 
     private volatile ConfigurationSnapshot lastConfig;
 
+    /**
+     * The effective values as known by the last check, null before the first check.
+     */
+    private Map<String, String> lastValues;
+
+    /**
+     * The property source states as known by the last check, keyed by source name.
+     */
+    private Map<String, SourceState> sourceStates = new HashMap<>();
+
+    private final int fullScanInterval = EventsConfig.getFullScanInterval();
+
+    private int checksSinceFullScan;
+
     private volatile boolean running;
 
+    private final FileWatcher fileWatcher = EventsConfig.isFileWatchEnabled()
+            ? new FileWatcher(EventsConfig.getFileWatchQuietPeriod(), EventsConfig.getFileWatchMaxLatency(),
+            SCHEDULER, this::fileModified)
+            : null;
+
+    /**
+     * Set, when the watched files must be updated from the property source states.
+     */
+    private boolean watchedFilesOutdated = true;
+
     private ClassLoader classLoader;
 
     /**
@@ -53,32 +131,286 @@ public class DefaultConfigChangeObserver {
     public DefaultConfigChangeObserver(ClassLoader classLoader) {
         this.classLoader = Objects.requireNonNull(classLoader);
         LOG.info("Registering config change observer, rechecking config changes every " + checkPeriod + " ms.");
-        timer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                if (running) {
-                    checkConfigurationUpdate();
-                }
+        reschedule(START_DELAY);
+    }
+
+    private static ScheduledExecutorService createScheduler() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "DefaultConfigChangeObserver");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    /**
+     * Cancels the current schedule and schedules the next check with the given delay.
+     * @param delay the delay in ms.
+     */
+    private void reschedule(long delay) {
+        synchronized (scheduleLock) {
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+            unchangedChecks = 0;
+            currentInterval = checkPeriod;
+            final int epoch = ++scheduleEpoch;
+            scheduled = SCHEDULER.schedule(() -> runScheduled(epoch), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void runScheduled(int epoch) {
+        long start = System.currentTimeMillis();
+        boolean changed = false;
+        try {
+            if (running) {
+                changed = checkConfigurationUpdate();
             }
-        }, START_DELAY, checkPeriod);
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "Failed to check configuration for changes.", e);
+        }
+        long duration = System.currentTimeMillis() - start;
+        synchronized (scheduleLock) {
+            if (epoch != scheduleEpoch) {
+                return;
+            }
+            if (running) {
+                lastCheckDuration = duration;
+                adaptInterval(changed, duration);
+            }
+            scheduled = SCHEDULER.schedule(() -> runScheduled(epoch), jittered(currentInterval),
+                    TimeUnit.MILLISECONDS);
+        }
     }
 
-    public void checkConfigurationUpdate() {
+    /**
+     * Adapts the interval after a check, must be called holding the schedule lock.
+     * @param changed true, if the check has detected changes.
+     * @param duration the duration of the check in ms.
+     */
+    void adaptInterval(boolean changed, long duration) {
+        if (duration > currentInterval) {
+            skippedTicks += duration / currentInterval;
+        }
+        if (changed) {
+            unchangedChecks = 0;
+            currentInterval = checkPeriod;
+        } else if (backoffAfter > 0 && ++unchangedChecks >= backoffAfter) {
+            unchangedChecks = 0;
+            currentInterval = Math.max(checkPeriod, Math.min(maxCheckPeriod, currentInterval * 2));
+        }
+    }
+
+    /**
+     * Randomizes the given interval by the configured jitter.
+     * @param interval the interval in ms.
+     * @return the delay in ms, at least 1.
+     */
+    long jittered(long interval) {
+        if (jitter <= 0) {
+            return interval;
+        }
+        long range = (long) (interval * jitter);
+        if (range <= 0) {
+            return interval;
+        }
+        return Math.max(1L, interval + ThreadLocalRandom.current().nextLong(-range, range + 1));
+    }
+
+    /**
+     * Checks the configuration for changes and publishes them as {@link ConfigurationChange}. The check is
+     * incremental: only the keys of property sources, whose version has changed or which cannot report a version,
+     * are compared. Added or removed property sources contribute all their keys. Every
+     * {@code tamaya.events.full-scan-interval} checks the complete configuration is compared.
+     * @return true, if changes have been detected and published.
+     */
+    public synchronized boolean checkConfigurationUpdate() {
+        long start = ConfigMetrics.start();
+        try {
+            return checkConfiguration();
+        } finally {
+            ConfigMetrics.observerChecked(start);
+        }
+    }
+
+    private boolean checkConfiguration() {
         LOG.finest("Checking configuration for changes...");
-        ConfigurationSnapshot frozenConfig = Configuration.current(classLoader).getSnapshot();
-        ConfigurationChange changes;
+        Configuration config = Configuration.current(classLoader);
+        if (lastValues == null || (fullScanInterval > 0 && ++checksSinceFullScan >= fullScanInterval)) {
+            return fullScan(config);
+        }
+        if (checkPropertySources(config)) {
+            setLastConfig(config.getSnapshot(lastValues.keySet()));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks the property sources for changes and compares the effective values of the keys possibly changed.
+     * @param config the current configuration, not null.
+     * @return true, if changes have been detected and published.
+     */
+    private boolean checkPropertySources(Configuration config) {
+        Set<String> candidates = new HashSet<>();
+        Map<String, SourceState> states = new HashMap<>();
+        for (PropertySource ps : config.getContext().getPropertySources()) {
+            SourceState state = sourceStates.remove(ps.getName());
+            if (state == null || state.source != ps) {
+                if (state != null) {
+                    candidates.addAll(state.values.keySet());
+                }
+                state = new SourceState(ps);
+                watchedFilesOutdated = true;
+                candidates.addAll(state.values.keySet());
+            } else {
+                state.update(candidates);
+            }
+            states.put(ps.getName(), state);
+        }
+        for (SourceState removed : sourceStates.values()) {
+            candidates.addAll(removed.values.keySet());
+            watchedFilesOutdated = true;
+        }
+        this.sourceStates = states;
+        updateWatchedFiles();
+        return publishCandidates(config, candidates);
+    }
+
+    /**
+     * Compares the effective values of the given keys with the last known values and publishes the changes.
+     * @param config the current configuration, not null.
+     * @param candidates the keys possibly changed, not null.
+     * @return true, if changes have been detected and published.
+     */
+    private boolean publishCandidates(Configuration config, Set<String> candidates) {
+        if (candidates.isEmpty()) {
+            return false;
+        }
+        ConfigurationChangeBuilder builder = ConfigurationChangeBuilder.of(config);
+        for (String key : candidates) {
+            String previous = lastValues.get(key);
+            String current = config.get(key);
+            if (!Objects.equals(previous, current)) {
+                builder.addChange(key, previous, current);
+                if (current == null) {
+                    lastValues.remove(key);
+                } else {
+                    lastValues.put(key, current);
+                }
+            }
+        }
+        return publish(builder);
+    }
+
+    /**
+     * Compares the complete configuration and reinitializes the property source states. The configuration is
+     * evaluated once, the snapshot taken also serves as the last configuration state.
+     * @param config the current configuration, not null.
+     * @return true, if changes have been detected and published.
+     */
+    private boolean fullScan(Configuration config) {
+        checksSinceFullScan = 0;
+        Map<String, SourceState> states = new HashMap<>();
+        for (PropertySource ps : config.getContext().getPropertySources()) {
+            states.put(ps.getName(), new SourceState(ps));
+        }
+        this.sourceStates = states;
+        watchedFilesOutdated = true;
+        updateWatchedFiles();
+        ConfigurationSnapshot snapshot = config.getSnapshot();
+        Map<String, String> values = new HashMap<>(snapshot.getProperties());
+        Map<String, String> previousValues = lastValues;
+        this.lastValues = values;
+        setLastConfig(snapshot);
+        if (previousValues == null) {
+            return false;
+        }
+        ConfigurationChangeBuilder builder = ConfigurationChangeBuilder.of(config);
+        for (Map.Entry<String, String> en : previousValues.entrySet()) {
+            String current = values.get(en.getKey());
+            if (!Objects.equals(en.getValue(), current)) {
+                builder.addChange(en.getKey(), en.getValue(), current);
+            }
+        }
+        for (Map.Entry<String, String> en : values.entrySet()) {
+            if (!previousValues.containsKey(en.getKey())) {
+                builder.addChange(en.getKey(), null, en.getValue());
+            }
+        }
+        return publish(builder);
+    }
 
-        if (getLastConfig() != null) {
-            changes = ConfigurationChangeBuilder.of(getLastConfig()).addChanges(frozenConfig)
-                                                .build();
-            if(!changes.isEmpty()) {
-                LOG.info("Identified configuration changes, publishing changes:\n" + changes);
-                ConfigEventManager.getInstance(classLoader).fireEvent(changes);
+    /**
+     * Called, when a watched file has been modified. Only the property sources backed by the file are reloaded
+     * and checked.
+     * @param file the file, not null.
+     */
+    private synchronized void fileModified(Path file) {
+        if (!running || lastValues == null) {
+            return;
+        }
+        LOG.finest(() -> "Checking property sources of modified file: " + file);
+        Set<String> candidates = new HashSet<>();
+        for (SourceState state : sourceStates.values()) {
+            if (!file.equals(state.file)) {
+                continue;
+            }
+            Map<String, String> previousValues = state.values;
+            Set<String> changedKeys = new HashSet<>();
+            state.reload(changedKeys);
+            if (changedKeys.isEmpty()) {
+                continue;
+            }
+            PropertySourceChangeBuilder builder = PropertySourceChangeBuilder.of(state.source);
+            for (String key : changedKeys) {
+                builder.addChange(key, previousValues.get(key), state.values.get(key));
+            }
+            ConfigEventManager.getInstance(classLoader).fireEvent(builder.build());
+            candidates.addAll(changedKeys);
+        }
+        if (!candidates.isEmpty()) {
+            Configuration config = Configuration.current(classLoader);
+            if (publishCandidates(config, candidates)) {
+                setLastConfig(config.getSnapshot(lastValues.keySet()));
             }
         }
-        setLastConfig(frozenConfig);
     }
 
+    /**
+     * Updates the files watched, if property sources have been added or removed since the last update.
+     */
+    private void updateWatchedFiles() {
+        if (fileWatcher == null || !watchedFilesOutdated) {
+            return;
+        }
+        watchedFilesOutdated = false;
+        Set<Path> files = new HashSet<>();
+        for (SourceState state : sourceStates.values()) {
+            if (state.file != null) {
+                files.add(state.file);
+            }
+        }
+        fileWatcher.watch(files);
+    }
+
+    private boolean publish(ConfigurationChangeBuilder builder) {
+        if (builder.isEmpty()) {
+            return false;
+        }
+        ConfigurationChange changes = builder.build();
+        LOG.info("Identified configuration changes, publishing changes:\n" + changes);
+        ConfigEventManager.getInstance(classLoader).fireEvent(changes);
+        return true;
+    }
+
+    /**
+     * Get the configuration state, as known by the last check. The snapshot is taken at check time, when the
+     * check has published changes or has compared the complete configuration. It does not reflect changes made
+     * after the check.
+     * @return the last configuration state, or null, if no check has been performed yet.
+     */
     protected ConfigurationSnapshot getLastConfig() {
         return lastConfig;
     }
@@ -91,31 +423,173 @@ public class DefaultConfigChangeObserver {
         return checkPeriod;
     }
 
+    /**
+     * Get the interval currently used between two checks, as adapted to the observed change rate.
+     * @return the current interval in ms, without jitter.
+     */
+    public long getCurrentInterval() {
+        return currentInterval;
+    }
+
+    /**
+     * Get the duration of the last scheduled check.
+     * @return the duration in ms.
+     */
+    public long getLastCheckDuration() {
+        return lastCheckDuration;
+    }
+
+    /**
+     * Get the number of ticks skipped, because checks took longer than the interval.
+     * @return the number of skipped ticks.
+     */
+    public long getSkippedTicks() {
+        return skippedTicks;
+    }
+
     public boolean isMonitoring(){
         return running;
     }
 
     public void enableMonitoring(boolean enable){
         this.running = enable;
+        if (!enable && fileWatcher != null) {
+            synchronized (this) {
+                fileWatcher.close();
+                watchedFilesOutdated = true;
+            }
+        }
+    }
+
+    /**
+     * The state of a single property source as known by the last check.
+     */
+    static final class SourceState {
+        final PropertySource source;
+        /** The file backing the property source, or null. */
+        final Path file;
+        String version;
+        Map<String, String> values;
+
+        SourceState(PropertySource source) {
+            this.source = source;
+            this.version = versionOf(source);
+            Map<String, PropertyValue> properties = source.getProperties();
+            this.values = valuesOf(properties);
+            this.file = fileOf(source, properties);
+        }
+
+        /**
+         * Rereads the property source, if its version has changed or it cannot report versions, and adds all
+         * keys with changed values to the given set.
+         * @param changedKeys the changed keys, not null.
+         */
+        void update(Set<String> changedKeys) {
+            if (source.getChangeSupport() == ChangeSupport.IMMUTABLE) {
+                return;
+            }
+            String currentVersion = versionOf(source);
+            if (currentVersion != null && currentVersion.equals(version)) {
+                return;
+            }
+            compare(changedKeys);
+        }
+
+        /**
+         * Lets the property source reread its backing resource, if it implements {@link Refreshable}, and adds all
+         * keys with changed values to the given set, regardless of the version or change support reported.
+         * @param changedKeys the changed keys, not null.
+         */
+        void reload(Set<String> changedKeys) {
+            if (source instanceof Refreshable) {
+                ((Refreshable) source).refresh();
+            }
+            compare(changedKeys);
+        }
+
+        private void compare(Set<String> changedKeys) {
+            Map<String, String> current = valuesOf(source.getProperties());
+            for (Map.Entry<String, String> en : values.entrySet()) {
+                if (!Objects.equals(en.getValue(), current.get(en.getKey()))) {
+                    changedKeys.add(en.getKey());
+                }
+            }
+            for (String key : current.keySet()) {
+                if (!values.containsKey(key)) {
+                    changedKeys.add(key);
+                }
+            }
+            this.version = versionOf(source);
+            this.values = current;
+        }
+
+        private static String versionOf(PropertySource source) {
+            String version = source.getVersion();
+            if (version == null || version.isEmpty() || "N/A".equals(version)) {
+                return null;
+            }
+            return version;
+        }
+
+        private static Map<String, String> valuesOf(Map<String, PropertyValue> properties) {
+            Map<String, String> values = new HashMap<>();
+            for (Map.Entry<String, PropertyValue> en : properties.entrySet()) {
+                values.put(en.getKey(), en.getValue() == null ? null : en.getValue().getValue());
+            }
+            return values;
+        }
+
+        /**
+         * Evaluates the local file backing a property source from its name or the {@code source} metadata of its
+         * values.
+         * @param source the property source, not null.
+         * @param properties the properties of the source, not null.
+         * @return the absolute file path, or null.
+         */
+        private static Path fileOf(PropertySource source, Map<String, PropertyValue> properties) {
+            Path file = toFile(source.getName());
+            if (file == null) {
+                for (PropertyValue value : properties.values()) {
+                    if (value != null) {
+                        file = toFile(value.getMeta("source"));
+                        break;
+                    }
+                }
+            }
+            return file;
+        }
+
+        private static Path toFile(String location) {
+            if (location == null || location.isEmpty()) {
+                return null;
+            }
+            try {
+                Path path;
+                if (location.startsWith("file:")) {
+                    path = Paths.get(new URI(location));
+                } else {
+                    path = Paths.get(location);
+                    if (!path.isAbsolute()) {
+                        return null;
+                    }
+                }
+                path = path.toAbsolutePath().normalize();
+                return Files.isRegularFile(path) ? path : null;
+            } catch (Exception e) {
+                // not a local file
+                return null;
+            }
+        }
     }
 
     /**
-     * Sets the new check period, cancels the currently running timer and schedules a new task with the new checkperiod
-     * and a startup delay of 500ms.
+     * Sets the new check period and reschedules the next check with a delay of 500ms. The adaptive interval is
+     * reset to the new period.
      * @param checkPeriod the period in ms, for checking on changes.
      */
     public void setCheckPeriod(long checkPeriod) {
-        LOG.finest("Resetting check period to " + checkPeriod + " ms, reregistering timer.");
+        LOG.finest("Resetting check period to " + checkPeriod + " ms, rescheduling checks.");
         this.checkPeriod = checkPeriod;
-        timer.cancel();
-        timer = new Timer("DefaultConfigChangeObserver", true);
-        timer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                if(running) {
-                    checkConfigurationUpdate();
-                }
-            }
-        }, 500L, checkPeriod);
+        reschedule(500L);
     }
 }
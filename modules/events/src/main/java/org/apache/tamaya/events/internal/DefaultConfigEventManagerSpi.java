@@ -20,15 +20,18 @@ package org.apache.tamaya.events.internal;
 
 import org.apache.tamaya.events.ConfigEvent;
 import org.apache.tamaya.events.ConfigEventListener;
+import org.apache.tamaya.events.ConfigMetrics;
+import org.apache.tamaya.events.ConfigurationChange;
+import org.apache.tamaya.events.ConfigurationChangeBuilder;
 import org.apache.tamaya.events.spi.ConfigEventManagerSpi;
 import org.apache.tamaya.spi.ClassloaderAware;
 import org.apache.tamaya.spi.ServiceContextManager;
 import org.osgi.service.component.annotations.Component;
 
+import java.beans.PropertyChangeEvent;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -42,9 +45,20 @@ public class DefaultConfigEventManagerSpi implements ConfigEventManagerSpi, Clas
 
     private static final Logger LOG = Logger.getLogger(DefaultConfigEventManagerSpi.class.getName());
 
-    private final Map<Class,List<ConfigEventListener>> listeners = new ConcurrentHashMap<>();
+    private final Map<Class,CopyOnWriteArrayList<ConfigEventListener>> listeners = new ConcurrentHashMap<>();
 
-    private final ExecutorService publisher = Executors.newCachedThreadPool();
+    private final AsyncEventDispatcher publisher = new AsyncEventDispatcher(EventsConfig.getAsyncPoolSize(),
+            EventsConfig.getAsyncQueueCapacity(), EventsConfig.getAsyncOverflowPolicy());
+
+    private volatile KeySubscriptionIndex keySubscriptions = KeySubscriptionIndex.EMPTY;
+
+    private final Map<ConfigEventListener, Map<Class, Boolean>> coalescing = new ConcurrentHashMap<>();
+
+    private final boolean coalesceByDefault = EventsConfig.isCoalescingByDefault();
+
+    private final ChangeCoalescer syncCoalescer = createCoalescer(false);
+
+    private final ChangeCoalescer asyncCoalescer = createCoalescer(true);
 
     private ClassLoader classLoader;
 
@@ -69,6 +83,20 @@ public class DefaultConfigEventManagerSpi implements ConfigEventManagerSpi, Clas
         }
     }
 
+    /**
+     * Creates the coalescing stage for configuration changes, if enabled.
+     * @param async if true, merged changes are published asynchronously.
+     * @return the coalescer, or null, if coalescing is disabled.
+     */
+    private ChangeCoalescer createCoalescer(boolean async) {
+        long quietPeriod = EventsConfig.getCoalesceQuietPeriod();
+        if(quietPeriod<=0){
+            return null;
+        }
+        return new ChangeCoalescer(quietPeriod, EventsConfig.getCoalesceMaxLatency(),
+                change -> deliver(change, async, Boolean.TRUE));
+    }
+
     @Override
     public void addListener(ConfigEventListener l){
         addListener(l, ConfigEvent.class);
@@ -76,12 +104,7 @@ public class DefaultConfigEventManagerSpi implements ConfigEventManagerSpi, Clas
 
     @Override
     public <T extends ConfigEvent> void addListener(ConfigEventListener l, Class<T> eventType){
-        final List<ConfigEventListener> ls = listeners.computeIfAbsent(eventType, k -> Collections.synchronizedList(new ArrayList<>()));
-        synchronized (ls){
-            if(!ls.contains(l)){
-                ls.add(l);
-            }
-        }
+        listeners.computeIfAbsent(eventType, k -> new CopyOnWriteArrayList<>()).addIfAbsent(l);
     }
 
     @Override
@@ -93,20 +116,67 @@ public class DefaultConfigEventManagerSpi implements ConfigEventManagerSpi, Clas
     public <T extends ConfigEvent> void removeListener(ConfigEventListener l, Class<T> eventType) {
         final List<ConfigEventListener> targets = this.listeners.get(eventType);
         if(targets!=null) {
-            // forward to explicit listeners
-            synchronized (targets) {
-                targets.remove(l);
+            targets.remove(l);
+        }
+        releaseIfUnused(l);
+    }
+
+    /**
+     * Releases the resources held for a listener, if it is not registered anymore.
+     * @param l the listener, not null.
+     */
+    private void releaseIfUnused(ConfigEventListener l) {
+        for(List<ConfigEventListener> ls:this.listeners.values()){
+            if(ls.contains(l)){
+                return;
             }
         }
+        if(this.keySubscriptions.getListeners().contains(l)){
+            return;
+        }
+        publisher.release(l);
+        coalescing.remove(l);
+    }
+
+    /**
+     * Sets the policy applied, when the asynchronous event queue of the given listener is full.
+     * @param l the listener, not null.
+     * @param policy the policy, or null, to use the default policy configured by
+     *               {@code tamaya.events.async.overflow-policy}.
+     */
+    public void setOverflowPolicy(ConfigEventListener l, OverflowPolicy policy){
+        publisher.setOverflowPolicy(l, policy);
+    }
+
+    /**
+     * Get the number of events currently queued for asynchronous delivery.
+     * @return the queue depth.
+     */
+    public int getAsyncQueueDepth(){
+        return publisher.getQueueDepth();
+    }
+
+    /**
+     * Get the number of asynchronous events dropped, because a listener's queue was full.
+     * @return the number of rejected events.
+     */
+    public long getAsyncRejectedCount(){
+        return publisher.getRejectedCount();
+    }
+
+    /**
+     * Get the number of asynchronous events merged into already queued events, because a listener's queue was full.
+     * @return the number of coalesced events.
+     */
+    public long getAsyncCoalescedCount(){
+        return publisher.getCoalescedCount();
     }
 
     @Override
     public Collection<? extends ConfigEventListener> getListeners(Class<? extends ConfigEvent> eventType) {
         final List<ConfigEventListener> targets = this.listeners.get(eventType);
         if(targets!=null){
-            synchronized(targets){
-                return new ArrayList<>(targets);
-            }
+            return new ArrayList<>(targets);
         }
         return Collections.emptyList();
     }
@@ -117,51 +187,149 @@ public class DefaultConfigEventManagerSpi implements ConfigEventManagerSpi, Clas
         for(List<ConfigEventListener> l:this.listeners.values()){
             targets.addAll(l);
         }
+        targets.addAll(this.keySubscriptions.getListeners());
         return targets;
     }
 
     @Override
     public void fireEvent(ConfigEvent<?> event) {
-        List<ConfigEventListener> targets = this.listeners.get(event.getClass());
-        if(targets!=null) {
-            // forward to explicit listeners
-            synchronized (targets) {
-                for (ConfigEventListener l : targets) {
-                    l.onConfigEvent(event);
-                }
-            }
+        if(syncCoalescer!=null && event instanceof ConfigurationChange){
+            deliver(event, false, Boolean.FALSE);
+            syncCoalescer.add((ConfigurationChange)event);
+            return;
         }
+        deliver(event, false, null);
+    }
+
+    @Override
+    public void fireEventAsynch(ConfigEvent<?> event) {
+        if(asyncCoalescer!=null && event instanceof ConfigurationChange){
+            deliver(event, true, Boolean.FALSE);
+            asyncCoalescer.add((ConfigurationChange)event);
+            return;
+        }
+        deliver(event, true, null);
+    }
+
+    /**
+     * Delivers the event to the listeners registered for its type and the global listeners.
+     * @param event the event, not null.
+     * @param async if true, the event is delivered asynchronously.
+     * @param coalescing if not null, only listeners with the given coalescing setting are informed.
+     */
+    private void deliver(ConfigEvent<?> event, boolean async, Boolean coalescing) {
+        // forward to explicit listeners
+        deliver(this.listeners.get(event.getClass()), event, async, coalescing);
         // forward to global listeners
-        targets = this.listeners.get(ConfigEvent.class);
-        if(targets!=null) {
-            synchronized (targets) {
-                for (ConfigEventListener l : targets) {
-                    l.onConfigEvent(event);
-                }
+        deliver(this.listeners.get(ConfigEvent.class), event, async, coalescing);
+        // forward to key pattern subscribers
+        KeySubscriptionIndex index = this.keySubscriptions;
+        if(!index.isEmpty() && event instanceof ConfigurationChange){
+            deliverSlices(index, (ConfigurationChange)event, async, coalescing);
+        }
+    }
+
+    /**
+     * Delivers to each listener subscribed by key pattern the part of the change matching its patterns.
+     * @param index the subscription index, not null.
+     * @param change the change, not null.
+     * @param async if true, the event is delivered asynchronously.
+     * @param coalescing if not null, only listeners with the given coalescing setting are informed.
+     */
+    private void deliverSlices(KeySubscriptionIndex index, ConfigurationChange change, boolean async,
+                               Boolean coalescing) {
+        Map<String, PropertyChangeEvent> events = new HashMap<>();
+        for(PropertyChangeEvent ev:change.getChanges()){
+            events.put(ev.getPropertyName(), ev);
+        }
+        for(Map.Entry<ConfigEventListener, List<String>> en:index.match(events.keySet()).entrySet()){
+            ConfigEventListener l = en.getKey();
+            if(coalescing!=null && coalescing != isCoalescing(l, ConfigurationChange.class)){
+                continue;
+            }
+            ConfigurationChangeBuilder slice = ConfigurationChangeBuilder.of(change.getResource())
+                    .setVersion(change.getVersion())
+                    .setTimestamp(change.getTimestamp());
+            for(String key:en.getValue()){
+                PropertyChangeEvent ev = events.get(key);
+                slice.addChange(key, (String)ev.getOldValue(), (String)ev.getNewValue());
+            }
+            if(async){
+                publisher.dispatch(l, slice.build());
+            }else{
+                long start = ConfigMetrics.start();
+                l.onConfigEvent(slice.build());
+                ConfigMetrics.dispatched(l.getClass().getName(), start);
             }
         }
     }
 
     @Override
-    public void fireEventAsynch(ConfigEvent<?> event) {
-        List<ConfigEventListener> targets = this.listeners.get(event.getClass());
-        if(targets!=null) {
-            // forward to explicit listeners
-            synchronized (targets) {
-                for (ConfigEventListener l : targets) {
-                    publisher.execute(new PublishConfigChangeTask(l, event));
-                }
+    public void addListener(ConfigEventListener l, String keyPattern) {
+        synchronized (this.listeners) {
+            this.keySubscriptions = this.keySubscriptions.with(l, keyPattern);
+        }
+    }
+
+    @Override
+    public void removeListener(ConfigEventListener l, String keyPattern) {
+        synchronized (this.listeners) {
+            this.keySubscriptions = this.keySubscriptions.without(l, keyPattern);
+        }
+        releaseIfUnused(l);
+    }
+
+    private void deliver(List<ConfigEventListener> targets, ConfigEvent<?> event, boolean async,
+                         Boolean coalescing) {
+        if(targets==null) {
+            return;
+        }
+        for (ConfigEventListener l : targets) {
+            if(coalescing!=null && coalescing != isCoalescing(l, event.getClass())){
+                continue;
+            }
+            if(async){
+                publisher.dispatch(l, event);
+            }else{
+                long start = ConfigMetrics.start();
+                l.onConfigEvent(event);
+                ConfigMetrics.dispatched(l.getClass().getName(), start);
             }
         }
-        // forward to global listeners
-        targets = this.listeners.get(ConfigEvent.class);
-        if(targets!=null) {
-            synchronized (targets) {
-                for (ConfigEventListener l : targets) {
-                    publisher.execute(new PublishConfigChangeTask(l, event));
-                }
+    }
+
+    @Override
+    public <T extends ConfigEvent> void setCoalescing(ConfigEventListener l, Class<T> eventType, boolean coalesce) {
+        coalescing.computeIfAbsent(l, k -> new ConcurrentHashMap<>()).put(eventType, coalesce);
+    }
+
+    /**
+     * Checks if the listener receives coalesced events of the given type.
+     * @param l the listener, not null.
+     * @param eventType the event type, not null.
+     * @return true, if the listener receives coalesced events.
+     */
+    private boolean isCoalescing(ConfigEventListener l, Class eventType) {
+        Map<Class, Boolean> settings = coalescing.get(l);
+        if(settings!=null){
+            Boolean value = settings.get(eventType);
+            if(value!=null){
+                return value;
             }
         }
+        return coalesceByDefault;
+    }
+
+    /**
+     * Publishes all changes currently held back by the coalescing stage immediately.
+     */
+    public void flushCoalescedChanges() {
+        if(syncCoalescer!=null){
+            syncCoalescer.flush();
+        }
+        if(asyncCoalescer!=null){
+            asyncCoalescer.flush();
+        }
     }
 
     @Override
@@ -196,22 +364,4 @@ public class DefaultConfigEventManagerSpi implements ConfigEventManagerSpi, Clas
     }
 
 
-    /**
-     * Tasks to inform observers on detected configuration changes.
-     */
-    private static final class PublishConfigChangeTask implements Runnable {
-
-        private final ConfigEventListener l;
-        private final ConfigEvent<?> changes;
-
-        public PublishConfigChangeTask(ConfigEventListener l, ConfigEvent<?> changes) {
-            this.l = Objects.requireNonNull(l);
-            this.changes = Objects.requireNonNull(changes);
-        }
-
-        @Override
-        public void run() {
-            l.onConfigEvent(changes);
-        }
-    }
 }
@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.events.internal;
+
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Singleton that reads the events settings. Since the event infrastructure observes the configuration itself,
+ * the settings are read from system or environment properties only.
+ */
+final class EventsConfig {
+
+    private static final Logger LOG = Logger.getLogger(EventsConfig.class.getName());
+    private static final String TAMAYA_EVENTS_FULL_SCAN_INTERVAL = "tamaya.events.full-scan-interval";
+    private static final String TAMAYA_EVENTS_MAX_CHECK_PERIOD = "tamaya.events.max-check-period";
+    private static final String TAMAYA_EVENTS_BACKOFF_AFTER = "tamaya.events.backoff-after";
+    private static final String TAMAYA_EVENTS_CHECK_JITTER = "tamaya.events.check-jitter";
+    private static final String TAMAYA_EVENTS_ASYNC_POOL_SIZE = "tamaya.events.async.pool-size";
+    private static final String TAMAYA_EVENTS_ASYNC_QUEUE_CAPACITY = "tamaya.events.async.queue-capacity";
+    private static final String TAMAYA_EVENTS_ASYNC_OVERFLOW_POLICY = "tamaya.events.async.overflow-policy";
+    private static final String TAMAYA_EVENTS_COALESCE_QUIET_PERIOD = "tamaya.events.coalesce.quiet-period";
+    private static final String TAMAYA_EVENTS_COALESCE_MAX_LATENCY = "tamaya.events.coalesce.max-latency";
+    private static final String TAMAYA_EVENTS_COALESCE_DEFAULT = "tamaya.events.coalesce.default";
+    private static final String TAMAYA_EVENTS_FILE_WATCH_ENABLED = "tamaya.events.file-watch.enabled";
+    private static final String TAMAYA_EVENTS_FILE_WATCH_QUIET_PERIOD = "tamaya.events.file-watch.quiet-period";
+    private static final String TAMAYA_EVENTS_FILE_WATCH_MAX_LATENCY = "tamaya.events.file-watch.max-latency";
+
+    private EventsConfig() {
+    }
+
+    /**
+     * Get the number of incremental checks after which the change observer compares the complete configuration
+     * from system/environment property {@code tamaya.events.full-scan-interval} (default 30). Full scans also
+     * detect changes of values derived from other keys, e.g. by {@code ${conf:...}} expressions. Setting it to
+     * {@code 0} disables periodic full scans, {@code 1} compares the complete configuration on every check.
+     *
+     * @return the number of checks between two full scans.
+     */
+    static int getFullScanInterval() {
+        return getInt(TAMAYA_EVENTS_FULL_SCAN_INTERVAL, 30);
+    }
+
+    /**
+     * Get the maximal interval in ms the change observer backs off to, if no changes are detected, from
+     * system/environment property {@code tamaya.events.max-check-period} (default 30000).
+     *
+     * @return the maximal check period in ms.
+     */
+    static long getMaxCheckPeriod() {
+        return getLong(TAMAYA_EVENTS_MAX_CHECK_PERIOD, 30000L);
+    }
+
+    /**
+     * Get the number of checks without changes, after which the change observer doubles its interval, from
+     * system/environment property {@code tamaya.events.backoff-after} (default 5). Setting it to {@code 0}
+     * disables the back off.
+     *
+     * @return the number of unchanged checks.
+     */
+    static int getBackoffAfter() {
+        return getInt(TAMAYA_EVENTS_BACKOFF_AFTER, 5);
+    }
+
+    /**
+     * Get the fraction of the interval, by which the delay between two checks is randomized, from
+     * system/environment property {@code tamaya.events.check-jitter} (default 0.1).
+     *
+     * @return the jitter fraction, between 0 and 1.
+     */
+    static double getCheckJitter() {
+        String val = getValue(TAMAYA_EVENTS_CHECK_JITTER);
+        if (val != null) {
+            try {
+                return Math.max(0.0, Math.min(1.0, Double.parseDouble(val.trim())));
+            } catch (NumberFormatException e) {
+                LOG.log(Level.WARNING, "Invalid value for " + TAMAYA_EVENTS_CHECK_JITTER + ": " + val
+                        + ", using 0.1", e);
+            }
+        }
+        return 0.1;
+    }
+
+    /**
+     * Get the number of threads delivering asynchronous events from system/environment property
+     * {@code tamaya.events.async.pool-size} (default 2).
+     *
+     * @return the pool size, at least 1.
+     */
+    static int getAsyncPoolSize() {
+        return Math.max(1, getInt(TAMAYA_EVENTS_ASYNC_POOL_SIZE, 2));
+    }
+
+    /**
+     * Get the maximal number of asynchronous events queued per listener from system/environment property
+     * {@code tamaya.events.async.queue-capacity} (default 1000).
+     *
+     * @return the queue capacity.
+     */
+    static int getAsyncQueueCapacity() {
+        return getInt(TAMAYA_EVENTS_ASYNC_QUEUE_CAPACITY, 1000);
+    }
+
+    /**
+     * Get the policy applied when a listener's asynchronous event queue is full from system/environment property
+     * {@code tamaya.events.async.overflow-policy} (default {@code BLOCK}).
+     *
+     * @return the overflow policy, never null.
+     */
+    static OverflowPolicy getAsyncOverflowPolicy() {
+        String val = getValue(TAMAYA_EVENTS_ASYNC_OVERFLOW_POLICY);
+        if (val != null) {
+            try {
+                return OverflowPolicy.valueOf(val.trim().toUpperCase(Locale.ENGLISH));
+            } catch (IllegalArgumentException e) {
+                LOG.log(Level.WARNING, "Invalid value for " + TAMAYA_EVENTS_ASYNC_OVERFLOW_POLICY + ": " + val
+                        + ", using BLOCK", e);
+            }
+        }
+        return OverflowPolicy.BLOCK;
+    }
+
+    /**
+     * Get the quiet period in ms, within which subsequent configuration changes are merged, from
+     * system/environment property {@code tamaya.events.coalesce.quiet-period} (default 0, meaning changes are not
+     * coalesced).
+     *
+     * @return the quiet period in ms.
+     */
+    static long getCoalesceQuietPeriod() {
+        return getLong(TAMAYA_EVENTS_COALESCE_QUIET_PERIOD, 0L);
+    }
+
+    /**
+     * Get the maximal time in ms a configuration change is held back for coalescing from system/environment
+     * property {@code tamaya.events.coalesce.max-latency} (default 2000).
+     *
+     * @return the maximal latency in ms.
+     */
+    static long getCoalesceMaxLatency() {
+        return getLong(TAMAYA_EVENTS_COALESCE_MAX_LATENCY, 2000L);
+    }
+
+    /**
+     * Checks if listeners without explicit setting receive coalesced configuration changes from
+     * system/environment property {@code tamaya.events.coalesce.default} (default true).
+     *
+     * @return true, if listeners receive coalesced changes by default.
+     */
+    static boolean isCoalescingByDefault() {
+        String val = getValue(TAMAYA_EVENTS_COALESCE_DEFAULT);
+        return val == null || Boolean.parseBoolean(val.trim());
+    }
+
+    /**
+     * Checks if files backing property sources are watched for modifications from system/environment property
+     * {@code tamaya.events.file-watch.enabled} (default true).
+     *
+     * @return true, if files are watched.
+     */
+    static boolean isFileWatchEnabled() {
+        String val = getValue(TAMAYA_EVENTS_FILE_WATCH_ENABLED);
+        return val == null || Boolean.parseBoolean(val.trim());
+    }
+
+    /**
+     * Get the quiet period in ms, within which subsequent modifications of a watched file are merged into a single
+     * reload, from system/environment property {@code tamaya.events.file-watch.quiet-period} (default 50).
+     *
+     * @return the quiet period in ms.
+     */
+    static long getFileWatchQuietPeriod() {
+        return getLong(TAMAYA_EVENTS_FILE_WATCH_QUIET_PERIOD, 50L);
+    }
+
+    /**
+     * Get the maximal time in ms a reload of a continuously modified file is deferred from system/environment
+     * property {@code tamaya.events.file-watch.max-latency} (default 1000).
+     *
+     * @return the maximal latency in ms.
+     */
+    static long getFileWatchMaxLatency() {
+        return getLong(TAMAYA_EVENTS_FILE_WATCH_MAX_LATENCY, 1000L);
+    }
+
+    private static String getValue(String key) {
+        String val = System.getProperty(key);
+        if (val == null) {
+            val = System.getenv(key);
+        }
+        return val;
+    }
+
+    private static long getLong(String key, long defaultValue) {
+        String val = getValue(key);
+        if (val != null) {
+            try {
+                return Long.parseLong(val.trim());
+            } catch (NumberFormatException e) {
+                LOG.log(Level.WARNING, "Invalid value for " + key + ": " + val + ", using " + defaultValue, e);
+            }
+        }
+        return defaultValue;
+    }
+
+    private static int getInt(String key, int defaultValue) {
+        return (int) getLong(key, defaultValue);
+    }
+
+}
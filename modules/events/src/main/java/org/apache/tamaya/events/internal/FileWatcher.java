@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.events.internal;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Watches a set of files using a {@link WatchService} on their parent directories, so modifications are reported
+ * without polling (e.g. by inotify on Linux). Editors and configuration management tools typically write a file
+ * several times or replace it by renaming a temporary file, therefore the events of a file are coalesced: the
+ * listener is called once no further event has arrived within the quiet period, but at the latest after the
+ * maximal latency since the first event.
+ */
+final class FileWatcher {
+
+    private static final Logger LOG = Logger.getLogger(FileWatcher.class.getName());
+
+    private final long quietPeriod;
+
+    private final long maxLatency;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final Consumer<Path> listener;
+
+    private final Map<Path, WatchKey> directories = new HashMap<>();
+
+    private final Map<Path, Pending> pending = new HashMap<>();
+
+    private Set<Path> files = new HashSet<>();
+
+    private WatchService watchService;
+
+    /**
+     * Creates a new watcher. The watching thread is started, when the first file is watched.
+     * @param quietPeriod the quiet period in ms.
+     * @param maxLatency the maximal time in ms a notification is deferred.
+     * @param scheduler the scheduler used for the coalesced notifications, not null.
+     * @param listener the listener called with the modified file, not null.
+     */
+    FileWatcher(long quietPeriod, long maxLatency, ScheduledExecutorService scheduler, Consumer<Path> listener) {
+        this.quietPeriod = Math.max(0L, quietPeriod);
+        this.maxLatency = Math.max(this.quietPeriod, maxLatency);
+        this.scheduler = Objects.requireNonNull(scheduler);
+        this.listener = Objects.requireNonNull(listener);
+    }
+
+    /**
+     * Sets the files to be watched. Directories not containing any of the files are no longer watched.
+     * @param newFiles the absolute, normalized file paths, not null.
+     */
+    synchronized void watch(Collection<Path> newFiles) {
+        Set<Path> dirs = new HashSet<>();
+        for (Path file : newFiles) {
+            if (file.getParent() != null) {
+                dirs.add(file.getParent());
+            }
+        }
+        Iterator<Map.Entry<Path, WatchKey>> it = directories.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Path, WatchKey> en = it.next();
+            if (!dirs.contains(en.getKey())) {
+                en.getValue().cancel();
+                it.remove();
+            }
+        }
+        for (Path dir : dirs) {
+            if (!directories.containsKey(dir)) {
+                try {
+                    directories.put(dir, dir.register(watchService(), StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE));
+                } catch (IOException | RuntimeException e) {
+                    LOG.log(Level.FINE, "Cannot watch directory, changes are detected by polling: " + dir, e);
+                }
+            }
+        }
+        this.files = new HashSet<>(newFiles);
+    }
+
+    /**
+     * Get the directories currently watched.
+     * @return the number of directories.
+     */
+    synchronized int getWatchedDirectoryCount() {
+        return directories.size();
+    }
+
+    /**
+     * Stops watching and closes the underlying watch service.
+     */
+    synchronized void close() {
+        directories.clear();
+        files = new HashSet<>();
+        for (Pending p : pending.values()) {
+            p.task.cancel(false);
+        }
+        pending.clear();
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                LOG.log(Level.FINEST, "Failed to close watch service.", e);
+            }
+            watchService = null;
+        }
+    }
+
+    private WatchService watchService() throws IOException {
+        if (watchService == null) {
+            final WatchService service = FileSystems.getDefault().newWatchService();
+            Thread t = new Thread(() -> run(service), "tamaya-events-file-watcher");
+            t.setDaemon(true);
+            t.start();
+            watchService = service;
+        }
+        return watchService;
+    }
+
+    private void run(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                Path dir = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        modifiedAll(dir);
+                    } else {
+                        modified(dir.resolve((Path) event.context()));
+                    }
+                }
+                key.reset();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    private synchronized void modifiedAll(Path dir) {
+        for (Path file : files) {
+            if (dir.equals(file.getParent())) {
+                modified(file);
+            }
+        }
+    }
+
+    /**
+     * Records an event for the given file and (re)schedules the notification.
+     * @param file the file, not null.
+     */
+    private synchronized void modified(Path file) {
+        if (!files.contains(file)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Pending p = pending.get(file);
+        if (p == null) {
+            p = new Pending(now);
+            pending.put(file, p);
+        } else {
+            p.task.cancel(false);
+        }
+        long delay = Math.max(0L, Math.min(quietPeriod, p.firstEvent + maxLatency - now));
+        p.task = scheduler.schedule(() -> notifyModified(file), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void notifyModified(Path file) {
+        synchronized (this) {
+            if (pending.remove(file) == null) {
+                return;
+            }
+        }
+        try {
+            listener.accept(file);
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "Failed to process modification of file: " + file, e);
+        }
+    }
+
+    /**
+     * The coalescing state of a modified file.
+     */
+    private static final class Pending {
+        final long firstEvent;
+        ScheduledFuture<?> task;
+
+        Pending(long firstEvent) {
+            this.firstEvent = firstEvent;
+        }
+    }
+}
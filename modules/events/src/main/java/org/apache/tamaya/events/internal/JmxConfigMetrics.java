@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.events.internal;
+
+import org.apache.tamaya.events.spi.ConfigMetricsSpi;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Default {@link ConfigMetricsSpi}, which records the timings in {@link LatencyHistogram}s and exposes them as
+ * JMX MBean {@code org.apache.tamaya:type=ConfigMetrics}. Recording does not allocate once a histogram exists
+ * for a name.
+ */
+public final class JmxConfigMetrics implements ConfigMetricsSpi, ConfigMetricsMXBean {
+
+    private static final Logger LOG = Logger.getLogger(JmxConfigMetrics.class.getName());
+
+    /** The name the MBean is registered with. */
+    public static final String OBJECT_NAME = "org.apache.tamaya:type=ConfigMetrics";
+
+    private final Map<String, LatencyHistogram> sources = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> filters = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> converters = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> listeners = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> refreshes = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> refreshFailures = new ConcurrentHashMap<>();
+    private final LatencyHistogram observerChecks = new LatencyHistogram();
+    private final Map<String, QueueDepth> queueDepths = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the metrics and registers them with the platform MBean server.
+     */
+    public JmxConfigMetrics() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (Exception e) {
+            LOG.log(Level.INFO, "Failed to register configuration metrics MBean: " + OBJECT_NAME, e);
+        }
+    }
+
+    private static LatencyHistogram histogram(Map<String, LatencyHistogram> histograms, String name) {
+        LatencyHistogram histogram = histograms.get(name);
+        if (histogram == null) {
+            histogram = histograms.computeIfAbsent(name, k -> new LatencyHistogram());
+        }
+        return histogram;
+    }
+
+    private static Map<String, LatencyStatistics> toStatistics(Map<String, LatencyHistogram> histograms) {
+        Map<String, LatencyStatistics> result = new TreeMap<>();
+        for (Map.Entry<String, LatencyHistogram> en : histograms.entrySet()) {
+            result.put(en.getKey(), en.getValue().toStatistics());
+        }
+        return result;
+    }
+
+    @Override
+    public void recordSourceAccess(String sourceName, long nanos) {
+        histogram(sources, sourceName).record(nanos);
+    }
+
+    @Override
+    public void recordFilter(String filterName, long nanos) {
+        histogram(filters, filterName).record(nanos);
+    }
+
+    @Override
+    public void recordConversion(String converterName, long nanos) {
+        histogram(converters, converterName).record(nanos);
+    }
+
+    @Override
+    public void recordObserverCheck(long nanos) {
+        observerChecks.record(nanos);
+    }
+
+    @Override
+    public void recordDispatch(String listenerName, long nanos) {
+        histogram(listeners, listenerName).record(nanos);
+    }
+
+    @Override
+    public void recordQueueDepth(String listenerName, int depth) {
+        QueueDepth queueDepth = queueDepths.get(listenerName);
+        if (queueDepth == null) {
+            queueDepth = queueDepths.computeIfAbsent(listenerName, k -> new QueueDepth());
+        }
+        queueDepth.record(depth);
+    }
+
+    @Override
+    public void removeQueueDepth(String listenerName) {
+        queueDepths.remove(listenerName);
+    }
+
+    @Override
+    public void recordRefresh(String sourceName, long nanos, boolean success) {
+        histogram(refreshes, sourceName).record(nanos);
+        if (!success) {
+            AtomicLong failures = refreshFailures.get(sourceName);
+            if (failures == null) {
+                failures = refreshFailures.computeIfAbsent(sourceName, k -> new AtomicLong());
+            }
+            failures.incrementAndGet();
+        }
+    }
+
+    @Override
+    public Map<String, LatencyStatistics> getSourceAccessLatencies() {
+        return toStatistics(sources);
+    }
+
+    @Override
+    public Map<String, LatencyStatistics> getFilterLatencies() {
+        return toStatistics(filters);
+    }
+
+    @Override
+    public Map<String, LatencyStatistics> getConversionLatencies() {
+        return toStatistics(converters);
+    }
+
+    @Override
+    public Map<String, LatencyStatistics> getDispatchLatencies() {
+        return toStatistics(listeners);
+    }
+
+    @Override
+    public Map<String, LatencyStatistics> getRefreshLatencies() {
+        return toStatistics(refreshes);
+    }
+
+    @Override
+    public Map<String, Long> getRefreshFailures() {
+        Map<String, Long> result = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> en : refreshFailures.entrySet()) {
+            result.put(en.getKey(), en.getValue().get());
+        }
+        return result;
+    }
+
+    @Override
+    public LatencyStatistics getObserverCheckLatency() {
+        return observerChecks.toStatistics();
+    }
+
+    @Override
+    public Map<String, Integer> getEventQueueDepths() {
+        Map<String, Integer> result = new TreeMap<>();
+        for (Map.Entry<String, QueueDepth> en : queueDepths.entrySet()) {
+            result.put(en.getKey(), en.getValue().current.get());
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Integer> getMaxEventQueueDepths() {
+        Map<String, Integer> result = new TreeMap<>();
+        for (Map.Entry<String, QueueDepth> en : queueDepths.entrySet()) {
+            result.put(en.getKey(), en.getValue().max.get());
+        }
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        sources.clear();
+        filters.clear();
+        converters.clear();
+        listeners.clear();
+        refreshes.clear();
+        refreshFailures.clear();
+        observerChecks.reset();
+        queueDepths.clear();
+    }
+
+    /**
+     * The current and maximal depth of the event queue of a listener.
+     */
+    private static final class QueueDepth {
+        final AtomicInteger current = new AtomicInteger();
+        final AtomicInteger max = new AtomicInteger();
+
+        void record(int depth) {
+            current.set(depth);
+            int recorded = max.get();
+            while (depth > recorded && !max.compareAndSet(recorded, depth)) {
+                recorded = max.get();
+            }
+        }
+    }
+}
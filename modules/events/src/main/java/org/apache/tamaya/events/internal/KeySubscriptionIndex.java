@@ -0,0 +1,249 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.events.internal;
+
+import org.apache.tamaya.events.ConfigEventListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable index of key pattern subscriptions, organized as a prefix trie over the literal prefix of each pattern.
+ * Patterns are either plain keys, or globs using {@code *} (any sequence of characters) and {@code ?} (any single
+ * character), e.g. {@code db.*} or {@code server.*.port}. Looking up a key walks the trie once along the key's
+ * characters, so the cost is independent of the number of subscriptions not matching the key.
+ */
+public final class KeySubscriptionIndex {
+
+    /** The empty index. */
+    static final KeySubscriptionIndex EMPTY = new KeySubscriptionIndex(Collections.<Subscription>emptyList());
+
+    private final List<Subscription> subscriptions;
+
+    private final Node root = new Node();
+
+    private KeySubscriptionIndex(List<Subscription> subscriptions) {
+        this.subscriptions = subscriptions;
+        for (Subscription sub : subscriptions) {
+            Node node = root;
+            for (int i = 0; i < sub.prefix.length(); i++) {
+                node = node.children.computeIfAbsent(sub.prefix.charAt(i), c -> new Node());
+            }
+            if (sub.glob == null) {
+                node.exact.add(sub);
+            } else if (sub.prefixOnly) {
+                node.anySuffix.add(sub);
+            } else {
+                node.globs.add(sub);
+            }
+        }
+    }
+
+    /**
+     * Creates a new index with the given subscription added.
+     * @param listener the listener, not null.
+     * @param pattern the key pattern, not null.
+     * @return the new index.
+     */
+    KeySubscriptionIndex with(ConfigEventListener listener, String pattern) {
+        Subscription sub = new Subscription(listener, pattern);
+        if (subscriptions.contains(sub)) {
+            return this;
+        }
+        List<Subscription> subs = new ArrayList<>(subscriptions);
+        subs.add(sub);
+        return new KeySubscriptionIndex(subs);
+    }
+
+    /**
+     * Creates a new index with the given subscriptions removed.
+     * @param listener the listener, not null.
+     * @param pattern the key pattern, or null, to remove all subscriptions of the listener.
+     * @return the new index.
+     */
+    KeySubscriptionIndex without(ConfigEventListener listener, String pattern) {
+        List<Subscription> subs = new ArrayList<>(subscriptions.size());
+        for (Subscription sub : subscriptions) {
+            if (!sub.listener.equals(listener) || (pattern != null && !sub.pattern.equals(pattern))) {
+                subs.add(sub);
+            }
+        }
+        if (subs.size() == subscriptions.size()) {
+            return this;
+        }
+        return subs.isEmpty() ? EMPTY : new KeySubscriptionIndex(subs);
+    }
+
+    /**
+     * Checks if there are any subscriptions.
+     * @return true, if no subscriptions are registered.
+     */
+    boolean isEmpty() {
+        return subscriptions.isEmpty();
+    }
+
+    /**
+     * Get all listeners subscribed.
+     * @return the listeners, never null.
+     */
+    List<ConfigEventListener> getListeners() {
+        List<ConfigEventListener> listeners = new ArrayList<>();
+        for (Subscription sub : subscriptions) {
+            if (!listeners.contains(sub.listener)) {
+                listeners.add(sub.listener);
+            }
+        }
+        return listeners;
+    }
+
+    /**
+     * Evaluates the listeners interested in the given keys.
+     * @param keys the changed keys, not null.
+     * @return the keys each interested listener is subscribed to, in registration order, never null.
+     */
+    Map<ConfigEventListener, List<String>> match(Iterable<String> keys) {
+        Map<ConfigEventListener, List<String>> result = new LinkedHashMap<>();
+        List<Subscription> matches = new ArrayList<>();
+        for (String key : keys) {
+            collect(key, matches);
+            for (Subscription sub : matches) {
+                List<String> listenerKeys = result.computeIfAbsent(sub.listener, l -> new ArrayList<>());
+                // several patterns of a listener may match the same key
+                if (listenerKeys.isEmpty() || !listenerKeys.get(listenerKeys.size() - 1).equals(key)) {
+                    listenerKeys.add(key);
+                }
+            }
+            matches.clear();
+        }
+        return result;
+    }
+
+    private void collect(String key, List<Subscription> matches) {
+        Node node = root;
+        int i = 0;
+        while (node != null) {
+            matches.addAll(node.anySuffix);
+            for (Subscription sub : node.globs) {
+                if (sub.glob.matcher(key).matches()) {
+                    matches.add(sub);
+                }
+            }
+            if (i == key.length()) {
+                matches.addAll(node.exact);
+                return;
+            }
+            node = node.children.get(key.charAt(i++));
+        }
+    }
+
+    private static final class Node {
+        final Map<Character, Node> children = new HashMap<>();
+        final List<Subscription> exact = new ArrayList<>(1);
+        final List<Subscription> anySuffix = new ArrayList<>(1);
+        final List<Subscription> globs = new ArrayList<>(1);
+    }
+
+    /**
+     * Compiles a key pattern to a regular expression. {@code *} matches any sequence of characters, {@code ?} any
+     * single character, all other characters match literally. This is also used by the key subscriptions of
+     * {@link org.apache.tamaya.events.spi.ConfigEventManagerSpi}, so both match keys the same way.
+     * @param glob the key pattern, not null.
+     * @return the compiled pattern, never null.
+     */
+    public static Pattern toRegex(String glob) {
+        StringBuilder b = new StringBuilder();
+        int literalStart = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                if (i > literalStart) {
+                    b.append(Pattern.quote(glob.substring(literalStart, i)));
+                }
+                b.append(c == '*' ? ".*" : ".");
+                literalStart = i + 1;
+            }
+        }
+        if (literalStart < glob.length()) {
+            b.append(Pattern.quote(glob.substring(literalStart)));
+        }
+        return Pattern.compile(b.toString(), Pattern.DOTALL);
+    }
+
+    /**
+     * A single subscription of a listener to a key pattern.
+     */
+    private static final class Subscription {
+        final ConfigEventListener listener;
+        final String pattern;
+        /** The literal part of the pattern before the first wildcard. */
+        final String prefix;
+        /** The compiled glob, or null, if the pattern does not contain wildcards. */
+        final Pattern glob;
+        /** True, if the pattern is a literal prefix followed by a single trailing {@code *}. */
+        final boolean prefixOnly;
+
+        Subscription(ConfigEventListener listener, String pattern) {
+            this.listener = Objects.requireNonNull(listener);
+            this.pattern = Objects.requireNonNull(pattern);
+            int wildcard = firstWildcard(pattern);
+            if (wildcard < 0) {
+                this.prefix = pattern;
+                this.glob = null;
+                this.prefixOnly = false;
+            } else {
+                this.prefix = pattern.substring(0, wildcard);
+                this.glob = toRegex(pattern);
+                this.prefixOnly = wildcard == pattern.length() - 1 && pattern.charAt(wildcard) == '*';
+            }
+        }
+
+        private static int firstWildcard(String pattern) {
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c == '*' || c == '?') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Subscription)) {
+                return false;
+            }
+            Subscription that = (Subscription) o;
+            return listener.equals(that.listener) && pattern.equals(that.pattern);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(listener, pattern);
+        }
+    }
+}
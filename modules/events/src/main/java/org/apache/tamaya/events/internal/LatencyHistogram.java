@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.events.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock and allocation free latency histogram with logarithmic buckets: values below 16 have their own bucket,
+ * larger values are split into 8 linear sub buckets per power of two, so percentiles are reported with a relative
+ * error below 12.5%.
+ */
+final class LatencyHistogram {
+
+    private static final int LINEAR_LIMIT = 16;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = LINEAR_LIMIT + (63 - 4) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a value.
+     * @param value the value, negative values are recorded as 0.
+     */
+    void record(long value) {
+        long v = Math.max(0L, value);
+        counts.incrementAndGet(indexOf(v));
+        count.incrementAndGet();
+        sum.addAndGet(v);
+        long current = max.get();
+        while (v > current && !max.compareAndSet(current, v)) {
+            current = max.get();
+        }
+    }
+
+    static int indexOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exp - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (exp - 4) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Get the highest value falling into the given bucket.
+     * @param index the bucket index.
+     * @return the upper bound of the bucket.
+     */
+    static long upperBoundOf(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int exp = (index - LINEAR_LIMIT) / SUB_BUCKETS + 4;
+        int sub = (index - LINEAR_LIMIT) % SUB_BUCKETS;
+        long lower = (long) (SUB_BUCKETS + sub) << (exp - SUB_BUCKET_BITS);
+        return lower + (1L << (exp - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * Get the number of values recorded.
+     * @return the count.
+     */
+    long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Evaluates the value at the given percentile.
+     * @param percentile the percentile, between 0 and 100.
+     * @return the upper bound of the bucket containing the percentile, never larger than the maximum recorded.
+     */
+    long getPercentile(double percentile) {
+        long total = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0L) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Creates the statistics of the values recorded.
+     * @return the statistics, never null.
+     */
+    LatencyStatistics toStatistics() {
+        long n = count.get();
+        return new LatencyStatistics(n, n == 0 ? 0L : sum.get() / n, max.get(), getPercentile(50),
+                getPercentile(90), getPercentile(99), getPercentile(99.9));
+    }
+
+    /**
+     * Clears all values recorded.
+     */
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0L);
+        }
+        count.set(0L);
+        sum.set(0L);
+        max.set(0L);
+    }
+}
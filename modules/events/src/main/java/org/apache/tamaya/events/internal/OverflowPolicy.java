@@ -0,0 +1,34 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.events.internal;
+
+/**
+ * Policy applied, when the asynchronous event queue of a listener is full.
+ */
+public enum OverflowPolicy {
+    /** The publisher waits until the listener has consumed an event. */
+    BLOCK,
+    /** The oldest queued event is dropped. */
+    DROP_OLDEST,
+    /**
+     * Configuration changes are merged into the last queued event, if it is a configuration change as well.
+     * Otherwise falls back to {@link #DROP_OLDEST}.
+     */
+    COALESCE
+}
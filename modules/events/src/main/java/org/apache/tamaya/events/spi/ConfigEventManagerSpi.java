@@ -21,7 +21,9 @@ package org.apache.tamaya.events.spi;
 import org.apache.tamaya.events.ConfigEvent;
 import org.apache.tamaya.events.ConfigEventListener;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 /**
  * SPI interface to implement the {@link org.apache.tamaya.events.ConfigEventManager} singleton.
@@ -50,6 +52,51 @@ public interface ConfigEventManagerSpi {
      */
     <T extends ConfigEvent> void addListener(ConfigEventListener l, Class<T> eventType);
 
+    /**
+     * Adds a listener for observing {@link org.apache.tamaya.events.ConfigurationChange} events affecting keys
+     * matching the given pattern. The listener receives only the part of a change matching its patterns. Patterns
+     * are plain keys or globs using {@code *} and {@code ?}, e.g. {@code db.*}. By default the listener is
+     * registered wrapped into a listener filtering the keys of each change, implementations should override this
+     * method with an indexed lookup.
+     *
+     * @param l the listener, not null.
+     * @param keyPattern the key pattern, not null.
+     */
+    default void addListener(ConfigEventListener l, String keyPattern) {
+        addListener(new KeyPatternListener(l, keyPattern));
+    }
+
+    /**
+     * Removes a key pattern subscription.
+     *
+     * @param l the listener, not null.
+     * @param keyPattern the key pattern, or null, to remove all key subscriptions of the listener.
+     */
+    default void removeListener(ConfigEventListener l, String keyPattern) {
+        List<ConfigEventListener> wrappers = new ArrayList<>();
+        for (ConfigEventListener listener : getListeners()) {
+            if (listener instanceof KeyPatternListener && ((KeyPatternListener) listener).wraps(l, keyPattern)) {
+                wrappers.add(listener);
+            }
+        }
+        for (ConfigEventListener wrapper : wrappers) {
+            removeListener(wrapper);
+        }
+    }
+
+    /**
+     * Defines if a listener receives configuration changes of the given type coalesced, i.e. merged over a short
+     * quiet period, or immediately. Implementations not supporting coalescing ignore this setting.
+     *
+     * @param <T> the type of the events listened to.
+     * @param l the listener, not null.
+     * @param eventType the event type, not null.
+     * @param coalesce true, to receive coalesced events.
+     */
+    default <T extends ConfigEvent> void setCoalescing(ConfigEventListener l, Class<T> eventType, boolean coalesce) {
+        // not supported by default
+    }
+
     /**
      * Removes a listener for observing events.
      *
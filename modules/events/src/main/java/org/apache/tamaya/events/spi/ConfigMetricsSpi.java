@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.events.spi;
+
+/**
+ * SPI for recording timings of configuration access, filtering, conversion and event dispatch. Implementations
+ * are called on hot paths, they must be thread-safe and should not allocate. Instrumentation is only active if
+ * enabled by {@code tamaya.metrics.enabled}, see {@link org.apache.tamaya.events.ConfigMetrics}. If no
+ * implementation is registered, the timings are exposed by a JMX MBean named
+ * {@code org.apache.tamaya:type=ConfigMetrics}.
+ */
+public interface ConfigMetricsSpi {
+
+    /**
+     * Records the duration of a {@code PropertySource.get} call.
+     * @param sourceName the name of the property source, not null.
+     * @param nanos the duration in nanoseconds.
+     */
+    void recordSourceAccess(String sourceName, long nanos);
+
+    /**
+     * Records the duration of a {@code PropertyFilter.filterProperty} call.
+     * @param filterName the name of the filter, not null.
+     * @param nanos the duration in nanoseconds.
+     */
+    void recordFilter(String filterName, long nanos);
+
+    /**
+     * Records the duration of a {@code PropertyConverter.convert} call.
+     * @param converterName the name of the converter, not null.
+     * @param nanos the duration in nanoseconds.
+     */
+    void recordConversion(String converterName, long nanos);
+
+    /**
+     * Records the duration of a configuration change check.
+     * @param nanos the duration in nanoseconds.
+     */
+    void recordObserverCheck(long nanos);
+
+    /**
+     * Records the delivery of an event to a listener.
+     * @param listenerName the name of the listener, not null.
+     * @param nanos the duration in nanoseconds.
+     */
+    void recordDispatch(String listenerName, long nanos);
+
+    /**
+     * Records the current depth of the asynchronous event queue of a listener.
+     * @param listenerName the name of the listener, not null.
+     * @param depth the number of queued events.
+     */
+    void recordQueueDepth(String listenerName, int depth);
+
+    /**
+     * Forgets the queue depth of a listener, whose queue has been released.
+     * @param listenerName the name of the listener, not null.
+     */
+    default void removeQueueDepth(String listenerName) {
+        // nothing recorded by default
+    }
+
+    /**
+     * Records the reload of the data of a remote property source.
+     * @param sourceName the name of the property source, not null.
+     * @param nanos the duration in nanoseconds.
+     * @param success true, if the data could be reloaded.
+     */
+    default void recordRefresh(String sourceName, long nanos, boolean success) {
+        // not recorded by default
+    }
+}
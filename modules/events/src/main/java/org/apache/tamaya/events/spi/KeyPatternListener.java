@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.events.spi;
+
+import org.apache.tamaya.events.ConfigEvent;
+import org.apache.tamaya.events.ConfigEventListener;
+import org.apache.tamaya.events.ConfigurationChange;
+import org.apache.tamaya.events.ConfigurationChangeBuilder;
+import org.apache.tamaya.events.internal.KeySubscriptionIndex;
+
+import java.beans.PropertyChangeEvent;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * Listener wrapper used by the default key subscription methods of {@link ConfigEventManagerSpi}. It passes the part
+ * of a {@link ConfigurationChange} affecting keys matching its pattern to the wrapped listener, all other events are
+ * ignored.
+ */
+final class KeyPatternListener implements ConfigEventListener {
+
+    private final ConfigEventListener delegate;
+    private final String keyPattern;
+    private final Pattern regex;
+
+    /**
+     * Creates a new instance.
+     * @param delegate the listener wrapped, not null.
+     * @param keyPattern the key pattern, a plain key or a glob using {@code *} and {@code ?}, not null.
+     */
+    KeyPatternListener(ConfigEventListener delegate, String keyPattern) {
+        this.delegate = Objects.requireNonNull(delegate);
+        this.keyPattern = Objects.requireNonNull(keyPattern);
+        this.regex = KeySubscriptionIndex.toRegex(keyPattern);
+    }
+
+    /**
+     * Checks if this instance wraps the given listener and pattern.
+     * @param listener the listener, not null.
+     * @param pattern the key pattern, or null, to match any pattern.
+     * @return true, if this instance matches.
+     */
+    boolean wraps(ConfigEventListener listener, String pattern) {
+        return delegate.equals(listener) && (pattern == null || keyPattern.equals(pattern));
+    }
+
+    @Override
+    public void onConfigEvent(ConfigEvent<?> event) {
+        if (!(event instanceof ConfigurationChange)) {
+            return;
+        }
+        ConfigurationChange change = (ConfigurationChange) event;
+        ConfigurationChangeBuilder slice = null;
+        for (PropertyChangeEvent ev : change.getChanges()) {
+            if (regex.matcher(ev.getPropertyName()).matches()) {
+                if (slice == null) {
+                    slice = ConfigurationChangeBuilder.of(change.getResource())
+                            .setVersion(change.getVersion())
+                            .setTimestamp(change.getTimestamp());
+                }
+                slice.addChange(ev.getPropertyName(), (String) ev.getOldValue(), (String) ev.getNewValue());
+            }
+        }
+        if (slice != null) {
+            delegate.onConfigEvent(slice.build());
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof KeyPatternListener)) {
+            return false;
+        }
+        KeyPatternListener that = (KeyPatternListener) o;
+        return delegate.equals(that.delegate) && keyPattern.equals(that.keyPattern);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(delegate, keyPattern);
+    }
+
+    @Override
+    public String toString() {
+        return "KeyPatternListener{" +
+                "delegate=" + delegate +
+                ", keyPattern='" + keyPattern + '\'' +
+                '}';
+    }
+}
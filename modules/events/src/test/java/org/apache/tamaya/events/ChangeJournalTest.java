@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.events;
+
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+/**
+ * Tests for {@link ChangeJournal}.
+ */
+public class ChangeJournalTest {
+
+    private static final FrozenConfiguration BASE = FrozenConfiguration.of(PersistentMap.<String, String>empty());
+
+    private static ConfigurationChange change(String key, String oldValue, String newValue) {
+        return ConfigurationChangeBuilder.of(BASE).addChange(key, oldValue, newValue).build();
+    }
+
+    @Test
+    public void testReplayAfterReopen() throws Exception {
+        Path dir = Files.createTempDirectory("tamaya-journal");
+        try (ChangeJournal journal = ChangeJournal.open(dir)) {
+            journal.append(change("a", null, "1"));
+            journal.append(change("b", null, "2"));
+            journal.append(change("a", "1", null));
+            assertThat(journal.replay().getProperties()).containsOnly(entry("b", "2"));
+        }
+        assertThat(ChangeJournal.replay(dir).getProperties()).containsOnly(entry("b", "2"));
+        try (ChangeJournal journal = ChangeJournal.open(dir)) {
+            assertThat(journal.replay().get("b")).isEqualTo("2");
+            journal.append(change("c", null, "3"));
+        }
+        assertThat(ChangeJournal.replay(dir).getProperties()).containsOnly(entry("b", "2"), entry("c", "3"));
+    }
+
+    @Test
+    public void testSegmentsAreRolledAndCompacted() throws Exception {
+        Path dir = Files.createTempDirectory("tamaya-journal");
+        Map<String, String> expected = new HashMap<>();
+        try (ChangeJournal journal = ChangeJournal.open(dir, 2048, 6000, 10, 0)) {
+            for (int i = 0; i < 500; i++) {
+                String key = "key" + (i % 40);
+                journal.append(change(key, expected.get(key), "value" + i));
+                expected.put(key, "value" + i);
+            }
+            assertThat(journal.getSegments().size()).isBetween(1, 2);
+        }
+        assertThat(ChangeJournal.replay(dir).getProperties()).isEqualTo(expected);
+    }
+
+    @Test
+    public void testEmptyDirectory() throws Exception {
+        Path dir = Files.createTempDirectory("tamaya-journal");
+        assertThat(ChangeJournal.replay(dir).getProperties()).isEmpty();
+    }
+
+}
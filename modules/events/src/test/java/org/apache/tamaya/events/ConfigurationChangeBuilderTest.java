@@ -19,6 +19,7 @@
 package org.apache.tamaya.events;
 
 import org.apache.tamaya.Configuration;
+import org.apache.tamaya.ConfigurationSnapshot;
 import org.junit.Test;
 import org.mockito.Mockito;
 
@@ -128,4 +129,39 @@ public class ConfigurationChangeBuilderTest {
         assertThat(change.getPropertyName()).isEqualTo("a");
     }
 
+    @Test
+    public void addChangeWithPreviousValueUsesTheGivenValues() {
+        Configuration config = Mockito.mock(Configuration.class, new MethodNotMockedAnswer());
+
+        ConfigurationChangeBuilder builder = ConfigurationChangeBuilder.of(config)
+                .addChange("a", "1", "2")
+                .addChange("b", null, "3");
+
+        assertThat(builder.delta).hasSize(2);
+        assertThat(builder.delta.get("a").getOldValue()).isEqualTo("1");
+        assertThat(builder.delta.get("a").getNewValue()).isEqualTo("2");
+        assertThat(builder.delta.get("b").getOldValue()).isNull();
+    }
+
+    @Test
+    public void mergeKeepsOldestPreviousAndNewestValue() {
+        ConfigurationSnapshot snapshot = Mockito.mock(ConfigurationSnapshot.class);
+        doReturn(snapshot).when(snapshot).getSnapshot();
+
+        ConfigurationChange first = ConfigurationChangeBuilder.of(snapshot)
+                .addChange("a", "1", "2")
+                .addChange("b", "x", "y").build();
+        ConfigurationChange second = ConfigurationChangeBuilder.of(snapshot)
+                .addChange("a", "2", "3")
+                .addChange("b", "y", "x")
+                .addChange("c", null, "4").build();
+
+        ConfigurationChange merged = ConfigurationChangeBuilder.merge(first, second);
+
+        assertThat(merged.getChanges()).hasSize(2);
+        assertThat(merged.isUpdated("a")).isTrue();
+        assertThat(merged.isAdded("c")).isTrue();
+        assertThat(merged.isKeyAffected("b")).isFalse();
+        assertThat(merged.getVersion()).isEqualTo(second.getVersion());
+    }
 }
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.events;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link PersistentMap}.
+ */
+public class PersistentMapTest {
+
+    @Test
+    public void testPlusMinus() {
+        PersistentMap<String, String> map = PersistentMap.<String, String>empty().plus("a", "1").plus("b", "2");
+        assertThat(map).hasSize(2).containsEntry("a", "1").containsEntry("b", "2");
+        assertThat(map.plus("a", "1")).isSameAs(map);
+        assertThat(map.minus("c")).isSameAs(map);
+        PersistentMap<String, String> removed = map.minus("a");
+        assertThat(removed).hasSize(1).doesNotContainKey("a");
+        assertThat(map).containsKey("a");
+    }
+
+    @Test
+    public void testManyEntries() {
+        Map<String, String> expected = new HashMap<>();
+        PersistentMap<String, String> map = PersistentMap.empty();
+        for (int i = 0; i < 5000; i++) {
+            expected.put("key" + i, "value" + i);
+            map = map.plus("key" + i, "value" + i);
+        }
+        for (int i = 0; i < 5000; i += 3) {
+            expected.remove("key" + i);
+            map = map.minus("key" + i);
+        }
+        assertThat(map).isEqualTo(expected);
+    }
+
+    @Test
+    public void testUpdateSharesUnchangedMap() {
+        Map<String, String> values = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            values.put("key" + i, "value" + i);
+        }
+        PersistentMap<String, String> map = PersistentMap.of(values);
+        assertThat(map.update(values)).isSameAs(map);
+        values.put("key5", "changed");
+        values.remove("key7");
+        values.put("new", "value");
+        PersistentMap<String, String> updated = map.update(values);
+        assertThat(updated).isEqualTo(values);
+        assertThat(map.get("key5")).isEqualTo("value5");
+    }
+
+    @Test
+    public void testDiff() {
+        Map<String, String> values = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            values.put("key" + i, "value" + i);
+        }
+        PersistentMap<String, String> map = PersistentMap.of(values);
+        PersistentMap<String, String> updated = map.plus("key5", "changed").minus("key7").plus("new", "value");
+        Map<String, String[]> diffs = new TreeMap<>();
+        map.diff(updated, (key, oldValue, newValue) -> diffs.put(key, new String[]{oldValue, newValue}));
+        assertThat(diffs).containsOnlyKeys("key5", "key7", "new");
+        assertThat(diffs.get("key5")).containsExactly("value5", "changed");
+        assertThat(diffs.get("key7")).containsExactly("value7", null);
+        assertThat(diffs.get("new")).containsExactly(null, "value");
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        PersistentMap<String, String> map = PersistentMap.<String, String>empty().plus("a", "1").plus("b", "2");
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(map);
+        }
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()))) {
+            assertThat(ois.readObject()).isEqualTo(map);
+        }
+    }
+
+}
@@ -196,6 +196,28 @@ public class PropertySourceChangeTest {
         assertThat(change.isEmpty()).isFalse();
     }
 
+    @Test
+    public void testAddChangesOfValueMaps() throws Exception {
+        Map<String, String> oldValues = new HashMap<>();
+        oldValues.put("updated", "1");
+        oldValues.put("removed", "2");
+        oldValues.put("unchanged", "3");
+        oldValues.put("added", null);
+        Map<String, String> newValues = new HashMap<>();
+        newValues.put("updated", "10");
+        newValues.put("unchanged", "3");
+        newValues.put("added", "4");
+        newValues.put("new", "5");
+        PropertySourceChange change = PropertySourceChangeBuilder.of(MY_PS)
+                .addChanges(oldValues, newValues).build();
+        assertThat(change.getChanges()).hasSize(4);
+        assertThat(change.isUpdated("updated")).isTrue();
+        assertThat(change.isRemoved("removed")).isTrue();
+        assertThat(change.isAdded("added")).isTrue();
+        assertThat(change.isAdded("new")).isTrue();
+        assertThat(change.isKeyAffected("unchanged")).isFalse();
+    }
+
     @Test
     public void testToString() throws Exception {
         PropertySourceChange change = PropertySourceChangeBuilder.of(MY_PS).build();
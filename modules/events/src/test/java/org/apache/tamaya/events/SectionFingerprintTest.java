@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.events;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link SectionFingerprint}.
+ */
+public class SectionFingerprintTest {
+
+    private static Map<String, String> createValues() {
+        Map<String, String> values = new HashMap<>();
+        values.put("a.b.c", "1");
+        values.put("a.b.d", "2");
+        values.put("a.e", "3");
+        values.put("f", "4");
+        return values;
+    }
+
+    @Test
+    public void testSameValuesSameVersion() {
+        assertThat(SectionFingerprint.of(createValues()).getVersionId())
+                .isEqualTo(SectionFingerprint.of(createValues()).getVersionId());
+        assertThat(SectionFingerprint.of(new HashMap<>()).getHash()).isEqualTo(SectionFingerprint.EMPTY.getHash());
+    }
+
+    @Test
+    public void testIncrementalUpdate() {
+        Map<String, String> values = createValues();
+        SectionFingerprint fingerprint = SectionFingerprint.of(values);
+        assertThat(fingerprint.with("a.b.c", "1")).isSameAs(fingerprint);
+        SectionFingerprint updated = fingerprint.with("a.b.c", "changed").with("f", null).with("x.y", "5");
+        values.put("a.b.c", "changed");
+        values.remove("f");
+        values.put("x.y", "5");
+        assertThat(updated.getHash()).isEqualTo(SectionFingerprint.of(values).getHash());
+        assertThat(updated.size()).isEqualTo(4);
+        assertThat(updated.getVersionId()).isNotEqualTo(fingerprint.getVersionId());
+    }
+
+    @Test
+    public void testDiff() {
+        SectionFingerprint fingerprint = SectionFingerprint.of(createValues());
+        SectionFingerprint updated = fingerprint.with("a.b.c", "changed").with("a.e", null).with("x.y", "5");
+        Map<String, String[]> diffs = new TreeMap<>();
+        fingerprint.diff(updated, (key, oldValue, newValue) -> diffs.put(key, new String[]{oldValue, newValue}));
+        assertThat(diffs).containsOnlyKeys("a.b.c", "a.e", "x.y");
+        assertThat(diffs.get("a.b.c")).containsExactly("1", "changed");
+        assertThat(diffs.get("a.e")).containsExactly("3", null);
+        assertThat(diffs.get("x.y")).containsExactly(null, "5");
+        diffs.clear();
+        fingerprint.diff(SectionFingerprint.of(createValues()), (key, oldValue, newValue) ->
+                diffs.put(key, new String[]{oldValue, newValue}));
+        assertThat(diffs).isEmpty();
+    }
+
+    @Test
+    public void testUpdateInLargeSection() {
+        Map<String, String> values = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            values.put("section.key" + i, String.valueOf(i));
+        }
+        SectionFingerprint fingerprint = SectionFingerprint.of(values);
+        SectionFingerprint updated = fingerprint.with("section.key500", "changed").with("section.key999", null);
+        values.put("section.key500", "changed");
+        values.remove("section.key999");
+        assertThat(updated.getHash()).isEqualTo(SectionFingerprint.of(values).getHash());
+        assertThat(updated.size()).isEqualTo(999);
+        Map<String, String[]> diffs = new TreeMap<>();
+        fingerprint.diff(updated, (key, oldValue, newValue) -> diffs.put(key, new String[]{oldValue, newValue}));
+        assertThat(diffs).containsOnlyKeys("section.key500", "section.key999");
+        assertThat(diffs.get("section.key500")).containsExactly("500", "changed");
+        assertThat(diffs.get("section.key999")).containsExactly("999", null);
+    }
+
+}
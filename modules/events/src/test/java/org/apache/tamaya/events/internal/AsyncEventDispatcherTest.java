@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.events.internal;
+
+import org.apache.tamaya.events.ConfigEvent;
+import org.apache.tamaya.events.ConfigEventListener;
+import org.apache.tamaya.events.SimpleEvent;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link AsyncEventDispatcher}.
+ */
+public class AsyncEventDispatcherTest {
+
+    @Test(timeout = 10000)
+    public void testEventsAreDeliveredInOrder() throws Exception {
+        AsyncEventDispatcher dispatcher = new AsyncEventDispatcher(4, 1000, OverflowPolicy.BLOCK);
+        final List<Object> received = new CopyOnWriteArrayList<>();
+        final CountDownLatch done = new CountDownLatch(500);
+        ConfigEventListener listener = new ConfigEventListener() {
+            @Override
+            public void onConfigEvent(ConfigEvent<?> event) {
+                received.add(event.getResource());
+                done.countDown();
+            }
+        };
+        for (int i = 0; i < 500; i++) {
+            dispatcher.dispatch(listener, new SimpleEvent("Event" + i));
+        }
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        for (int i = 0; i < 500; i++) {
+            assertThat(received.get(i)).isEqualTo("Event" + i);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testDropOldestWhenQueueIsFull() throws Exception {
+        AsyncEventDispatcher dispatcher = new AsyncEventDispatcher(1, 2, OverflowPolicy.DROP_OLDEST);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Object> received = new CopyOnWriteArrayList<>();
+        ConfigEventListener listener = new ConfigEventListener() {
+            @Override
+            public void onConfigEvent(ConfigEvent<?> event) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                received.add(event.getResource());
+            }
+        };
+        dispatcher.dispatch(listener, new SimpleEvent("Event0"));
+        assertThat(blocked.await(5, TimeUnit.SECONDS)).isTrue();
+        dispatcher.dispatch(listener, new SimpleEvent("Event1"));
+        dispatcher.dispatch(listener, new SimpleEvent("Event2"));
+        dispatcher.dispatch(listener, new SimpleEvent("Event3"));
+        assertThat(dispatcher.getQueueDepth()).isEqualTo(2);
+        assertThat(dispatcher.getRejectedCount()).isEqualTo(1);
+        release.countDown();
+        while (received.size() < 3) {
+            Thread.sleep(10);
+        }
+        assertThat(received).containsExactly("Event0", "Event2", "Event3");
+    }
+
+    @Test(timeout = 10000)
+    public void testListenerErrorDoesNotStopDelivery() throws Exception {
+        AsyncEventDispatcher dispatcher = new AsyncEventDispatcher(1, 2, OverflowPolicy.BLOCK);
+        final List<Object> received = new CopyOnWriteArrayList<>();
+        final CountDownLatch done = new CountDownLatch(10);
+        ConfigEventListener listener = new ConfigEventListener() {
+            @Override
+            public void onConfigEvent(ConfigEvent<?> event) {
+                received.add(event.getResource());
+                done.countDown();
+                if ("Event0".equals(event.getResource())) {
+                    throw new AssertionError("failed");
+                }
+            }
+        };
+        for (int i = 0; i < 10; i++) {
+            dispatcher.dispatch(listener, new SimpleEvent("Event" + i));
+        }
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(received.get(9)).isEqualTo("Event9");
+        assertThat(dispatcher.getRejectedCount()).isEqualTo(0L);
+    }
+
+}
@@ -19,9 +19,25 @@
 package org.apache.tamaya.events.internal;
 
 import org.apache.tamaya.ConfigurationSnapshot;
+import org.apache.tamaya.functions.Refreshable;
+import org.apache.tamaya.spi.ChangeSupport;
+import org.apache.tamaya.spi.PropertyValue;
 import org.apache.tamaya.spi.ServiceContextManager;
+import org.apache.tamaya.spisupport.propertysource.BasePropertySource;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 public class DefaultConfigChangeObserverTest {
@@ -67,7 +83,7 @@ public class DefaultConfigChangeObserverTest {
     }
 
     @Test
-    public void lastConfigIsUpdatedByASubSequentCheckForChangesInTheConfigration() {
+    public void lastConfigIsKeptByASubSequentCheckWithoutChangesInTheConfigration() {
         DefaultConfigChangeObserver observer = new DefaultConfigChangeObserver(
                 ServiceContextManager.getDefaultClassLoader()
         );
@@ -75,10 +91,160 @@ public class DefaultConfigChangeObserverTest {
         observer.checkConfigurationUpdate();
 
         ConfigurationSnapshot config1 = observer.getLastConfig();
-        observer.checkConfigurationUpdate();
+        assertThat(observer.checkConfigurationUpdate()).isFalse();
         ConfigurationSnapshot config2 = observer.getLastConfig();
 
-        assertThat(config1).describedAs("After the firt check last configuration must be setCurrent.")
-                                            .isNotEqualTo(config2);
+        assertThat(config2).describedAs("A check without changes must not take a new snapshot.")
+                                            .isSameAs(config1);
+    }
+
+    @Test
+    public void lastConfigIsTheSnapshotTakenByTheLastCheck() {
+        DefaultConfigChangeObserver observer = new DefaultConfigChangeObserver(
+                ServiceContextManager.getDefaultClassLoader()
+        );
+
+        observer.checkConfigurationUpdate();
+
+        ConfigurationSnapshot config = observer.getLastConfig();
+        assertThat(observer.getLastConfig()).describedAs("Without a check the last configuration must not change.")
+                                            .isSameAs(config);
+    }
+
+    @Test
+    public void intervalBacksOffWithoutChangesAndResetsOnChange() {
+        System.setProperty("tamaya.events.backoff-after", "2");
+        System.setProperty("tamaya.events.max-check-period", "8000");
+        try {
+            DefaultConfigChangeObserver observer = new DefaultConfigChangeObserver(
+                    ServiceContextManager.getDefaultClassLoader());
+            assertThat(observer.getCurrentInterval()).isEqualTo(2000L);
+            observer.adaptInterval(false, 0L);
+            assertThat(observer.getCurrentInterval()).isEqualTo(2000L);
+            observer.adaptInterval(false, 0L);
+            assertThat(observer.getCurrentInterval()).isEqualTo(4000L);
+            observer.adaptInterval(false, 0L);
+            observer.adaptInterval(false, 0L);
+            assertThat(observer.getCurrentInterval()).isEqualTo(8000L);
+            observer.adaptInterval(false, 0L);
+            observer.adaptInterval(false, 0L);
+            assertThat(observer.getCurrentInterval()).isEqualTo(8000L);
+            observer.adaptInterval(true, 0L);
+            assertThat(observer.getCurrentInterval()).isEqualTo(2000L);
+            observer.adaptInterval(false, 0L);
+            observer.adaptInterval(false, 0L);
+            observer.setCheckPeriod(1000L);
+            assertThat(observer.getCurrentInterval()).isEqualTo(1000L);
+        } finally {
+            System.clearProperty("tamaya.events.backoff-after");
+            System.clearProperty("tamaya.events.max-check-period");
+        }
+    }
+
+    @Test
+    public void backoffCanBeDisabled() {
+        System.setProperty("tamaya.events.backoff-after", "0");
+        try {
+            DefaultConfigChangeObserver observer = new DefaultConfigChangeObserver(
+                    ServiceContextManager.getDefaultClassLoader());
+            for (int i = 0; i < 20; i++) {
+                observer.adaptInterval(false, 0L);
+            }
+            assertThat(observer.getCurrentInterval()).isEqualTo(2000L);
+        } finally {
+            System.clearProperty("tamaya.events.backoff-after");
+        }
+    }
+
+    @Test
+    public void slowChecksAreCountedAsSkippedTicks() {
+        DefaultConfigChangeObserver observer = new DefaultConfigChangeObserver(
+                ServiceContextManager.getDefaultClassLoader());
+        observer.adaptInterval(true, 4500L);
+        assertThat(observer.getSkippedTicks()).isEqualTo(2L);
+        observer.adaptInterval(true, 100L);
+        assertThat(observer.getSkippedTicks()).isEqualTo(2L);
+    }
+
+    @Test
+    public void delaysAreJitteredWithinTheConfiguredFraction() {
+        System.setProperty("tamaya.events.check-jitter", "0.1");
+        try {
+            DefaultConfigChangeObserver observer = new DefaultConfigChangeObserver(
+                    ServiceContextManager.getDefaultClassLoader());
+            Set<Long> delays = new HashSet<>();
+            for (int i = 0; i < 200; i++) {
+                long delay = observer.jittered(2000L);
+                assertThat(delay).isBetween(1800L, 2200L);
+                delays.add(delay);
+            }
+            assertThat(delays.size()).isGreaterThan(1);
+            System.setProperty("tamaya.events.check-jitter", "0");
+            assertThat(new DefaultConfigChangeObserver(ServiceContextManager.getDefaultClassLoader())
+                    .jittered(2000L)).isEqualTo(2000L);
+        } finally {
+            System.clearProperty("tamaya.events.check-jitter");
+        }
+    }
+
+    @Test
+    public void fileModificationReloadsRefreshablePropertySource() throws Exception {
+        Path file = Files.createTempFile("tamaya-observer", ".properties").toAbsolutePath().normalize();
+        try {
+            Files.write(file, "a=1\nb=2\n".getBytes(StandardCharsets.UTF_8));
+            FilePropertySource source = new FilePropertySource(file);
+            DefaultConfigChangeObserver.SourceState state = new DefaultConfigChangeObserver.SourceState(source);
+            assertThat(state.file).isEqualTo(file);
+
+            Files.write(file, "a=3\nc=4\n".getBytes(StandardCharsets.UTF_8));
+            Set<String> changedKeys = new HashSet<>();
+            state.update(changedKeys);
+            assertThat(changedKeys).describedAs("An immutable source is not reread on regular checks.").isEmpty();
+
+            state.reload(changedKeys);
+            assertThat(changedKeys).containsOnly("a", "b", "c");
+            assertThat(state.values).containsEntry("a", "3").containsEntry("c", "4").doesNotContainKey("b");
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Immutable property source reading a properties file, which is reread on {@link #refresh()} only.
+     */
+    private static final class FilePropertySource extends BasePropertySource implements Refreshable {
+        private final Path file;
+        private volatile Map<String, PropertyValue> values;
+
+        FilePropertySource(Path file) {
+            super(file.toString());
+            this.file = file;
+            refresh();
+        }
+
+        @Override
+        public ChangeSupport getChangeSupport() {
+            return ChangeSupport.IMMUTABLE;
+        }
+
+        @Override
+        public void refresh() {
+            Properties props = new Properties();
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                props.load(reader);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            Map<String, PropertyValue> result = new HashMap<>();
+            for (String key : props.stringPropertyNames()) {
+                result.put(key, PropertyValue.createValue(key, props.getProperty(key)).setMeta("source", getName()));
+            }
+            this.values = result;
+        }
+
+        @Override
+        public Map<String, PropertyValue> getProperties() {
+            return values;
+        }
     }
-}
\ No newline at end of file
+}
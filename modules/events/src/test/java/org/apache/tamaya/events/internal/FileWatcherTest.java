@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.events.internal;
+
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link FileWatcher}.
+ */
+public class FileWatcherTest {
+
+    @Test(timeout = 30000)
+    public void testBurstOfWritesIsCoalesced() throws Exception {
+        Path dir = Files.createTempDirectory("tamaya-watch");
+        Path file = dir.resolve("test.properties").toAbsolutePath().normalize();
+        Files.write(file, "a=0".getBytes());
+        List<Path> modified = new CopyOnWriteArrayList<>();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        FileWatcher watcher = new FileWatcher(200L, 5000L, scheduler, modified::add);
+        try {
+            watcher.watch(Collections.singleton(file));
+            assertThat(watcher.getWatchedDirectoryCount()).isEqualTo(1);
+            for (int i = 1; i < 5; i++) {
+                Files.write(file, ("a=" + i).getBytes());
+            }
+            Path tmp = dir.resolve("test.properties.tmp");
+            Files.write(tmp, "a=5".getBytes());
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            while (modified.isEmpty()) {
+                Thread.sleep(10L);
+            }
+            Thread.sleep(500L);
+            assertThat(modified).containsExactly(file);
+        } finally {
+            watcher.close();
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testUnwatchedDirectoriesAreReleased() throws Exception {
+        Path file = Files.createTempFile("tamaya-watch", ".properties").toAbsolutePath().normalize();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        FileWatcher watcher = new FileWatcher(50L, 1000L, scheduler, f -> { });
+        try {
+            watcher.watch(Collections.singleton(file));
+            assertThat(watcher.getWatchedDirectoryCount()).isEqualTo(1);
+            watcher.watch(Collections.emptySet());
+            assertThat(watcher.getWatchedDirectoryCount()).isEqualTo(0);
+        } finally {
+            watcher.close();
+            scheduler.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.events.internal;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link JmxConfigMetrics}.
+ */
+public class JmxConfigMetricsTest {
+
+    private final JmxConfigMetrics metrics = new JmxConfigMetrics();
+
+    @Test
+    public void testQueueDepthIsRecordedPerListener() {
+        metrics.recordQueueDepth("a", 3);
+        metrics.recordQueueDepth("b", 1);
+        metrics.recordQueueDepth("a", 1);
+        assertThat(metrics.getEventQueueDepths()).containsEntry("a", 1).containsEntry("b", 1);
+        assertThat(metrics.getMaxEventQueueDepths()).containsEntry("a", 3).containsEntry("b", 1);
+    }
+
+    @Test
+    public void testQueueDepthIsRemovedOnRelease() {
+        metrics.recordQueueDepth("a", 3);
+        metrics.recordQueueDepth("b", 1);
+        metrics.removeQueueDepth("a");
+        assertThat(metrics.getEventQueueDepths()).containsOnlyKeys("b");
+        assertThat(metrics.getMaxEventQueueDepths()).containsOnlyKeys("b");
+        metrics.reset();
+        assertThat(metrics.getEventQueueDepths()).isEmpty();
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.events.internal;
+
+import org.apache.tamaya.events.ConfigEvent;
+import org.apache.tamaya.events.ConfigEventListener;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link KeySubscriptionIndex}.
+ */
+public class KeySubscriptionIndexTest {
+
+    private final ConfigEventListener l1 = new TestListener();
+    private final ConfigEventListener l2 = new TestListener();
+
+    @Test
+    public void testPrefixAndExactPatterns() {
+        KeySubscriptionIndex index = KeySubscriptionIndex.EMPTY.with(l1, "db.*").with(l1, "db.url").with(l2, "a");
+        Map<ConfigEventListener, List<String>> result = index.match(Arrays.asList("db.url", "db.user", "a", "ab"));
+        assertThat(result.get(l1)).containsExactly("db.url", "db.user");
+        assertThat(result.get(l2)).containsExactly("a");
+    }
+
+    @Test
+    public void testGlobPatterns() {
+        KeySubscriptionIndex index = KeySubscriptionIndex.EMPTY.with(l1, "server.*.port").with(l2, "n?de");
+        Map<ConfigEventListener, List<String>> result = index.match(
+                Arrays.asList("server.a.port", "server.port", "node", "nodes"));
+        assertThat(result.get(l1)).containsExactly("server.a.port");
+        assertThat(result.get(l2)).containsExactly("node");
+    }
+
+    @Test
+    public void testWithout() {
+        KeySubscriptionIndex index = KeySubscriptionIndex.EMPTY.with(l1, "a.*").with(l1, "b.*");
+        assertThat(index.without(l1, "a.*").match(Arrays.asList("a.x", "b.x")).get(l1)).containsExactly("b.x");
+        assertThat(index.without(l1, null).isEmpty()).isTrue();
+    }
+
+    private static final class TestListener implements ConfigEventListener {
+        @Override
+        public void onConfigEvent(ConfigEvent<?> event) {
+        }
+    }
+}
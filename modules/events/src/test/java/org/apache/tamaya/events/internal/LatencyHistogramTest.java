@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.events.internal;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsCoverValues() {
+        for (long value : new long[]{0L, 1L, 15L, 16L, 17L, 1000L, 123456789L, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.indexOf(value);
+            assertThat(LatencyHistogram.upperBoundOf(index)).isGreaterThanOrEqualTo(value);
+            if (index > 0) {
+                assertThat(LatencyHistogram.upperBoundOf(index - 1)).isLessThan(value);
+            }
+        }
+    }
+
+    @Test
+    public void testStatistics() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        LatencyStatistics stats = histogram.toStatistics();
+        assertThat(stats.getCount()).isEqualTo(1000L);
+        assertThat(stats.getMean()).isEqualTo(500500L);
+        assertThat(stats.getMax()).isEqualTo(1000000L);
+        assertThat(stats.getP50()).isBetween(500000L, 500000L * 9 / 8);
+        assertThat(stats.getP99()).isBetween(990000L, 1000000L);
+        histogram.reset();
+        assertThat(histogram.getCount()).isEqualTo(0L);
+        assertThat(histogram.getPercentile(50)).isEqualTo(0L);
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.events.spi;
+
+import org.apache.tamaya.Configuration;
+import org.apache.tamaya.events.ConfigEvent;
+import org.apache.tamaya.events.ConfigEventListener;
+import org.apache.tamaya.events.ConfigurationChange;
+import org.apache.tamaya.events.ConfigurationChangeBuilder;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the default key subscription methods of {@link ConfigEventManagerSpi}.
+ */
+public class ConfigEventManagerSpiTest {
+
+    @Test
+    public void testKeyPatternListenerReceivesMatchingKeysOnly() {
+        ListSpi spi = new ListSpi();
+        List<ConfigurationChange> received = new ArrayList<>();
+        ConfigEventListener l = event -> received.add((ConfigurationChange) event);
+        spi.addListener(l, "db.*");
+
+        spi.fire(ConfigurationChangeBuilder.of(Configuration.current())
+                .addChange("db.url", "old", "new").addChange("server.port", "80", "8080").build());
+        spi.fire(ConfigurationChangeBuilder.of(Configuration.current())
+                .addChange("server.port", "8080", "8081").build());
+
+        assertThat(received).hasSize(1);
+        assertThat(received.get(0).getChanges()).hasSize(1);
+        assertThat(received.get(0).isUpdated("db.url")).isTrue();
+        assertThat(received.get(0).isKeyAffected("server.port")).isFalse();
+    }
+
+    @Test
+    public void testRemoveKeyPatternListener() {
+        ListSpi spi = new ListSpi();
+        ConfigEventListener l = event -> {};
+        spi.addListener(l, "db.*");
+        spi.addListener(l, "server.port");
+        assertThat(spi.getListeners()).hasSize(2);
+
+        spi.removeListener(l, "db.*");
+        assertThat(spi.getListeners()).hasSize(1);
+
+        spi.removeListener(l, (String) null);
+        assertThat(spi.getListeners()).isEmpty();
+    }
+
+    /**
+     * Minimal SPI implementation relying on the default key subscription methods.
+     */
+    private static final class ListSpi implements ConfigEventManagerSpi {
+        private final List<ConfigEventListener> listeners = new ArrayList<>();
+
+        void fire(ConfigEvent<?> event) {
+            for (ConfigEventListener l : new ArrayList<>(listeners)) {
+                l.onConfigEvent(event);
+            }
+        }
+
+        @Override
+        public <T> void addListener(ConfigEventListener l) {
+            if (!listeners.contains(l)) {
+                listeners.add(l);
+            }
+        }
+
+        @Override
+        public <T extends ConfigEvent> void addListener(ConfigEventListener l, Class<T> eventType) {
+            addListener(l);
+        }
+
+        @Override
+        public void removeListener(ConfigEventListener l) {
+            listeners.remove(l);
+        }
+
+        @Override
+        public <T extends ConfigEvent> void removeListener(ConfigEventListener l, Class<T> eventType) {
+            removeListener(l);
+        }
+
+        @Override
+        public Collection<? extends ConfigEventListener> getListeners() {
+            return new ArrayList<>(listeners);
+        }
+
+        @Override
+        public Collection<? extends ConfigEventListener> getListeners(Class<? extends ConfigEvent> eventType) {
+            return getListeners();
+        }
+
+        @Override
+        public void fireEvent(ConfigEvent<?> event) {
+            fire(event);
+        }
+
+        @Override
+        public void fireEventAsynch(ConfigEvent<?> event) {
+            fire(event);
+        }
+
+        @Override
+        public void enableChangeMonitor(boolean enable) {
+        }
+
+        @Override
+        public boolean isChangeMonitorActive() {
+            return false;
+        }
+
+        @Override
+        public long getChangeMonitoringPeriod() {
+            return 0;
+        }
+
+        @Override
+        public void setChangeMonitoringPeriod(long millis) {
+        }
+    }
+}
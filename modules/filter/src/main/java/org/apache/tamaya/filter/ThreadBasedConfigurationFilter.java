@@ -18,6 +18,8 @@
  */
 package org.apache.tamaya.filter;
 
+import org.apache.tamaya.events.ConfigMetrics;
+import org.apache.tamaya.filter.internal.MetricsSupport;
 import org.apache.tamaya.spi.PropertyFilter;
 import org.apache.tamaya.spi.PropertyValue;
 import org.osgi.service.component.annotations.Component;
@@ -112,6 +114,18 @@ public final class ThreadBasedConfigurationFilter implements PropertyFilter{
 
     @Override
     public PropertyValue filterProperty(PropertyValue valueToBeFiltered, FilterContext context) {
+        if(!MetricsSupport.AVAILABLE){
+            return filter(valueToBeFiltered, context);
+        }
+        long start = ConfigMetrics.start();
+        try{
+            return filter(valueToBeFiltered, context);
+        }finally{
+            ConfigMetrics.filtered(ThreadBasedConfigurationFilter.class.getName(), start);
+        }
+    }
+
+    private PropertyValue filter(PropertyValue valueToBeFiltered, FilterContext context) {
         if(context.isSinglePropertyScoped()){
             for(PropertyFilter pred: THREADED_VALUE_FILTERS.get().getFilters()){
                 valueToBeFiltered = pred.filterProperty(valueToBeFiltered, context);
@@ -18,6 +18,7 @@
  */
 package org.apache.tamaya.filter.internal;
 
+import org.apache.tamaya.events.ConfigMetrics;
 import org.apache.tamaya.filter.ThreadBasedConfigurationFilter;
 import org.apache.tamaya.spi.PropertyFilter;
 import org.apache.tamaya.spi.PropertyValue;
@@ -27,8 +28,21 @@ import org.apache.tamaya.spi.FilterContext;
  * Default property filter that hides metadta entries starting with an '_', similar ti {@code etcd}.
  */
 public final class DefaultMetadataFilter implements PropertyFilter{
+
     @Override
     public PropertyValue filterProperty(PropertyValue valueToBeFiltered, FilterContext context) {
+        if(!MetricsSupport.AVAILABLE){
+            return filter(valueToBeFiltered, context);
+        }
+        long start = ConfigMetrics.start();
+        try{
+            return filter(valueToBeFiltered, context);
+        }finally{
+            ConfigMetrics.filtered(DefaultMetadataFilter.class.getName(), start);
+        }
+    }
+
+    private PropertyValue filter(PropertyValue valueToBeFiltered, FilterContext context) {
         if(context.isSinglePropertyScoped()){
             // When accessing keys explicitly, do not hide anything.
             return valueToBeFiltered;
@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.filter.internal;
+
+/**
+ * Detects the optional {@code tamaya-events} module, providing the {@link org.apache.tamaya.events.ConfigMetrics}
+ * the filters of this module record their calls with.
+ */
+public final class MetricsSupport {
+
+    /**
+     * Flag if the optional {@code tamaya-events} module, providing the metrics, is on the classpath.
+     */
+    public static final boolean AVAILABLE = checkForMetrics();
+
+    private MetricsSupport(){}
+
+    private static boolean checkForMetrics() {
+        try {
+            Class.forName("org.apache.tamaya.events.ConfigMetrics", false,
+                    MetricsSupport.class.getClassLoader());
+            return true;
+        } catch (Exception | LinkageError e) {
+            return false;
+        }
+    }
+}
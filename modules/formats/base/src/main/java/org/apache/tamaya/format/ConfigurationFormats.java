@@ -28,6 +28,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -242,7 +243,7 @@ public final class ConfigurationFormats {
      * @throws IOException if the URL's stream can not be opened.
      */
     public PropertySource createPropertySource(URL url, ConfigurationFormat... formats)throws IOException{
-        return createPropertySource(url.toString(), url.openStream(), formats);
+        return createPropertySource(url, Arrays.asList(formats));
     }
 
     /**
@@ -252,12 +253,29 @@ public final class ConfigurationFormats {
      * @param url    the URL to read, not null.
      * @param formats     the formats to try. If not formats are passed explicitly, all known formats
      *                    are tried.
-     * @return a corresponding property source, or null.
+     * @return a corresponding property source, or null. The property source rereads the URL on
+     *         {@link MappedConfigurationDataPropertySource#refresh()}.
      * @throws ConfigException if the resource cannot be read.
      * @throws IOException if the URL's stream can not be opened.
      */
-    public PropertySource createPropertySource(URL url, Collection<ConfigurationFormat> formats)throws IOException{
-        return createPropertySource(url.toString(), url.openStream(), formats);
+    public PropertySource createPropertySource(final URL url, final Collection<ConfigurationFormat> formats)throws IOException{
+        final ConfigurationData data = readConfigurationData(url, formats);
+        if(data==null){
+            throw new ConfigException("No matching format found for "+url+", tried: "+ formats);
+        }
+        // the data just read is used for the initial load, later loads reread the URL
+        final AtomicReference<ConfigurationData> initialData = new AtomicReference<>(data);
+        return new MappedConfigurationDataPropertySource(data.getResource(), 0, () -> {
+            ConfigurationData initial = initialData.getAndSet(null);
+            if(initial!=null){
+                return initial;
+            }
+            try {
+                return readConfigurationData(url, formats);
+            } catch (IOException e) {
+                throw new ConfigException("Failed to read from "+url, e);
+            }
+        });
     }
 
     /**
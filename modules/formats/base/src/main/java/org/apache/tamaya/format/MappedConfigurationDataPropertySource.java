@@ -18,6 +18,7 @@
  */
 package org.apache.tamaya.format;
 
+import org.apache.tamaya.functions.Refreshable;
 import org.apache.tamaya.functions.Supplier;
 import org.apache.tamaya.spi.PropertyValue;
 import org.apache.tamaya.spisupport.propertysource.BasePropertySource;
@@ -31,11 +32,12 @@ import java.util.logging.Logger;
 /**
  * Mapped PropertySource that uses the flattened config data read from an URL by a
  * {@link org.apache.tamaya.format.ConfigurationFormat}. Use of a {@link Supplier}
- * allows deferring the load until a resource is available.
+ * allows deferring the load until a resource is available. {@link #refresh()} asks the supplier
+ * again, so a supplier rereading its resource allows reloading the data.
  */
-public class MappedConfigurationDataPropertySource extends BasePropertySource {
+public class MappedConfigurationDataPropertySource extends BasePropertySource implements Refreshable {
     private static final Logger LOG = Logger.getLogger(MappedConfigurationDataPropertySource.class.getName());
-    private Map<String, PropertyValue> properties = new HashMap<>();
+    private volatile Map<String, PropertyValue> properties = new HashMap<>();
     private final Supplier<ConfigurationData> dataSupplier;
 
     /*
@@ -94,12 +96,11 @@ public class MappedConfigurationDataPropertySource extends BasePropertySource {
         meta.put("source", data.getResource());
         meta.put("timestamp",String.valueOf(System.currentTimeMillis()));
         try{
-            this.properties.putAll(populateData(data, meta));
+            Map<String, PropertyValue> loaded = new HashMap<>(this.properties);
+            loaded.putAll(populateData(data, meta));
+            this.properties = loaded;
         }catch(Exception e){
             LOG.log(Level.INFO, "Failed to load property source: " + getName(), e);
-            if(this.properties==null) {
-                this.properties = new HashMap<>();
-            }
             this.properties.put("[error]propertysource."+getName()+".exception",
                     PropertyValue.createValue("[meta]propertysource."+getName()+".exception",
                             e.getLocalizedMessage()).setMeta("source",
@@ -142,6 +143,32 @@ public class MappedConfigurationDataPropertySource extends BasePropertySource {
         }
     }
 
+    /**
+     * Replaces the values with the data currently returned by the supplier. The values are kept, if the
+     * supplier fails or returns no data.
+     */
+    @Override
+    public void refresh(){
+        ConfigurationData data;
+        try{
+            data = dataSupplier.get();
+        }catch(Exception e){
+            LOG.log(Level.WARNING, "Failed to reload property source: " + getName(), e);
+            return;
+        }
+        if(data==null){
+            return;
+        }
+        Map<String, String> meta = new HashMap<>();
+        meta.put("source", data.getResource());
+        meta.put("timestamp",String.valueOf(System.currentTimeMillis()));
+        try{
+            this.properties = populateData(data, meta);
+        }catch(Exception e){
+            LOG.log(Level.WARNING, "Failed to reload property source: " + getName(), e);
+        }
+    }
+
     @Override
     public PropertyValue get(String key) {
        return properties.get(key);
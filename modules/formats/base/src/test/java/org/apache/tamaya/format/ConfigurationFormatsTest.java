@@ -19,6 +19,9 @@
 package org.apache.tamaya.format;
 
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -48,6 +51,23 @@ public class ConfigurationFormatsTest {
 
     }
 
+    @org.junit.Test
+    public void testCreatePropertySource_URL_RefreshRereadsURL() throws Exception {
+        Path file = Files.createTempFile("tamaya", ".properties");
+        try {
+            Files.write(file, "a=1\nb=2\n".getBytes(StandardCharsets.UTF_8));
+            MappedConfigurationDataPropertySource ps = (MappedConfigurationDataPropertySource)
+                    ConfigurationFormats.getInstance().createPropertySource(file.toUri().toURL());
+            assertThat(ps.get("a").getValue()).isEqualTo("1");
+            Files.write(file, "a=3\n".getBytes(StandardCharsets.UTF_8));
+            ps.refresh();
+            assertThat(ps.get("a").getValue()).isEqualTo("3");
+            assertThat(ps.get("b")).isNull();
+        } finally {
+            Files.delete(file);
+        }
+    }
+
     @org.junit.Test
     public void testReadConfigurationData_URL() throws Exception {
         ConfigurationData data = ConfigurationFormats.getInstance().readConfigurationData(
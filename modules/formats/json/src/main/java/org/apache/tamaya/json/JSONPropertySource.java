@@ -19,6 +19,7 @@
 package org.apache.tamaya.json;
 
 import org.apache.tamaya.ConfigException;
+import org.apache.tamaya.functions.Refreshable;
 import org.apache.tamaya.spi.PropertySource;
 import org.apache.tamaya.spi.PropertyValue;
 
@@ -40,16 +41,16 @@ import javax.json.JsonStructure;
 import static java.lang.String.format;
 
 /**
- * Property source based on a JSON file.
+ * Property source based on a JSON file. The file is reread on {@link #refresh()}.
  */
-public class JSONPropertySource implements PropertySource {
+public class JSONPropertySource implements PropertySource, Refreshable {
     /** Constant for enabling comments in Johnzon. */
     public static final String JOHNZON_SUPPORTS_COMMENTS_PROP = "org.apache.johnzon.supports-comments";
 
     /** The underlying resource. */
     private final URL urlResource;
     /** The values read. */
-    private final Map<String, PropertyValue> values;
+    private volatile Map<String, PropertyValue> values;
     /** The evaluated ordinal. */
     private int ordinal;
     /** The JSON reader factory used. */
@@ -100,6 +101,16 @@ public class JSONPropertySource implements PropertySource {
         return ordinal;
     }
 
+    @Override
+    public void refresh() {
+        try {
+            this.values = readConfig(urlResource);
+        } catch (IOException e) {
+            Logger.getLogger(getClass().getName()).log(Level.WARNING,
+                    "Failed to reload JSON property source: " + getName(), e);
+        }
+    }
+
     @Override
     public String getName() {
         return urlResource.toExternalForm();
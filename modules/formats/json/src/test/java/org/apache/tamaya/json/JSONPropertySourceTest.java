@@ -19,6 +19,9 @@
 package org.apache.tamaya.json;
 
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import org.apache.tamaya.spi.PropertySource;
 import org.junit.Test;
@@ -46,6 +49,25 @@ public class JSONPropertySourceTest extends CommonJSONTestCaseCollection {
         new JSONPropertySource(configURL);
     }
 
+    @Test
+    public void testRefreshRereadsFile() throws Exception {
+        Path file = Files.createTempFile("tamaya", ".json");
+        try {
+            Files.write(file, "{\"a\": \"1\"}".getBytes(StandardCharsets.UTF_8));
+            JSONPropertySource source = new JSONPropertySource(file.toUri().toURL());
+            assertThat(source.get("a").getValue()).isEqualTo("1");
+            Files.write(file, "{\"a\": \"2\", \"b\": \"3\"}".getBytes(StandardCharsets.UTF_8));
+            source.refresh();
+            assertThat(source.get("a").getValue()).isEqualTo("2");
+            assertThat(source.get("b").getValue()).isEqualTo("3");
+            Files.write(file, "{broken".getBytes(StandardCharsets.UTF_8));
+            source.refresh();
+            assertThat(source.get("a").getValue()).isEqualTo("2");
+        } finally {
+            Files.delete(file);
+        }
+    }
+
     @Override
     PropertySource getPropertiesFrom(URL source) throws Exception {
         return new JSONPropertySource(source);
@@ -19,10 +19,12 @@
 package org.apache.tamaya.yaml;
 
 import org.apache.tamaya.format.ConfigurationData;
+import org.apache.tamaya.functions.Refreshable;
 import org.apache.tamaya.spi.PropertySource;
 import org.apache.tamaya.spi.PropertyValue;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.util.Collections;
 import java.util.HashMap;
@@ -34,13 +36,13 @@ import java.util.logging.Logger;
 
 
 /**
- * Property source based on a JSON file.
+ * Property source based on a YAML file. The file is reread on {@link #refresh()}.
  */
-public class YAMLPropertySource implements PropertySource {
+public class YAMLPropertySource implements PropertySource, Refreshable {
     /** The underlying resource. */
     private final URL urlResource;
     /** The values read. */
-    private final Map<String, PropertyValue> values;
+    private volatile Map<String, PropertyValue> values;
     /** The evaluated ordinal. */
     private int ordinal;
     /** The format implementation used for parsing. */
@@ -64,14 +66,31 @@ public class YAMLPropertySource implements PropertySource {
     public YAMLPropertySource(URL resource, int defaultOrdinal) throws IOException {
         urlResource = Objects.requireNonNull(resource);
         this.ordinal = defaultOrdinal; // may be overriden by read...
-        ConfigurationData data = format.readConfiguration(urlResource.toString(), resource.openStream());
-        this.values = new HashMap<>();
-        for(Map.Entry<String,String> en:data.getData().get(0).toMap().entrySet()){
-            this.values.put(en.getKey(), PropertyValue.createValue(en.getKey(), en.getValue()).setMeta("source",
-                    getName()));
+        this.values = readConfig();
+        if (this.values.containsKey(TAMAYA_ORDINAL)) {
+            this.ordinal = Integer.parseInt(this.values.get(TAMAYA_ORDINAL).getValue());
         }
-        if (data.getData().get(0).toMap().containsKey(TAMAYA_ORDINAL)) {
-            this.ordinal = Integer.parseInt(data.getData().get(0).toMap().get(TAMAYA_ORDINAL));
+    }
+
+    private Map<String, PropertyValue> readConfig() throws IOException {
+        try (InputStream is = urlResource.openStream()) {
+            ConfigurationData data = format.readConfiguration(urlResource.toString(), is);
+            Map<String, PropertyValue> result = new HashMap<>();
+            for(Map.Entry<String,String> en:data.getData().get(0).toMap().entrySet()){
+                result.put(en.getKey(), PropertyValue.createValue(en.getKey(), en.getValue()).setMeta("source",
+                        getName()));
+            }
+            return result;
+        }
+    }
+
+    @Override
+    public void refresh() {
+        try {
+            this.values = readConfig();
+        } catch (IOException | RuntimeException e) {
+            Logger.getLogger(getClass().getName()).log(Level.WARNING,
+                    "Failed to reload YAML property source: " + getName(), e);
         }
     }
 
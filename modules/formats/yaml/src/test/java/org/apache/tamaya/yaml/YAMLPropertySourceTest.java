@@ -21,6 +21,9 @@ package org.apache.tamaya.yaml;
 import org.junit.Test;
 
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -45,4 +48,20 @@ public class YAMLPropertySourceTest {
         YAMLPropertySource source = new YAMLPropertySource(configURL, 4);
         assertThat(source.getOrdinal()).isEqualTo(4);
     }
+
+    @Test
+    public void testRefreshRereadsFile() throws Exception {
+        Path file = Files.createTempFile("tamaya", ".yaml");
+        try {
+            Files.write(file, "a: 1\n".getBytes(StandardCharsets.UTF_8));
+            YAMLPropertySource source = new YAMLPropertySource(file.toUri().toURL());
+            assertThat(source.get("a").getValue()).isEqualTo("1");
+            Files.write(file, "a: 2\nb: 3\n".getBytes(StandardCharsets.UTF_8));
+            source.refresh();
+            assertThat(source.get("a").getValue()).isEqualTo("2");
+            assertThat(source.get("b").getValue()).isEqualTo("3");
+        } finally {
+            Files.delete(file);
+        }
+    }
 }
@@ -0,0 +1,411 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.functions;
+
+import org.apache.tamaya.spi.PropertyValue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the data of a remote property source fresh without blocking its readers (stale-while-revalidate). The
+ * data itself is held by the property source, this class only triggers the refresh action and tracks its outcome:
+ * <ul>
+ *     <li>{@link #access()} never blocks once data has been loaded. If the data is about to expire (by default
+ *     after 80% of the refresh period), a single refresh is started in the background, concurrent accesses do not
+ *     start further refreshes. Readers keep seeing the current data until the refresh has completed.</li>
+ *     <li>Only until the first load attempt has completed, {@link #access()} blocks, optionally bounded by
+ *     {@link #setInitialWait(long)}.</li>
+ *     <li>Failed refreshes keep the current data and are retried with an increasing delay, the age of the data and
+ *     the failures are available for monitoring.</li>
+ * </ul>
+ * Refreshes run on a shared pool of daemon threads, unless an executor is passed explicitly. This class is
+ * thread-safe.
+ */
+public final class BackgroundRefresher {
+
+    private static final Logger LOG = Logger.getLogger(BackgroundRefresher.class.getName());
+
+    /** The maximal delay in ms, before a failed refresh is retried. */
+    private static final long MAX_RETRY_DELAY = 30000L;
+
+    private final String name;
+    private final Callable<?> action;
+    private final Executor executor;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong refreshCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    private final Object lock = new Object();
+
+    private volatile long refreshPeriod;
+    private volatile int refreshAhead = 20;
+    private volatile long initialWait;
+    private volatile long loadedAt;
+    private volatile long nextRefresh;
+    private volatile int consecutiveFailures;
+    private volatile Exception lastFailure;
+    private volatile long lastFailureAt;
+    private volatile long lastDuration;
+    /** Flag, if a load has been attempted at all, guarded by {@code lock}. */
+    private boolean attempted;
+
+    /**
+     * Creates a new instance, running the refreshes on a shared pool of daemon threads.
+     * @param name the name of the data refreshed, used for logging, not null.
+     * @param refreshPeriod the time in ms the data is valid after a successful refresh.
+     * @param action the action reloading the data, throwing an exception if it fails, not null.
+     */
+    public BackgroundRefresher(String name, long refreshPeriod, Callable<?> action){
+        this(name, refreshPeriod, action, null);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param name the name of the data refreshed, used for logging, not null.
+     * @param refreshPeriod the time in ms the data is valid after a successful refresh.
+     * @param action the action reloading the data, throwing an exception if it fails, not null.
+     * @param executor the executor running the background refreshes, or null for the shared daemon pool.
+     */
+    public BackgroundRefresher(String name, long refreshPeriod, Callable<?> action, Executor executor){
+        this.name = Objects.requireNonNull(name);
+        this.action = Objects.requireNonNull(action);
+        this.executor = executor;
+        this.refreshPeriod = refreshPeriod;
+    }
+
+    /**
+     * Signals a read of the data. Starts a background refresh if the data is due for refresh and waits for the
+     * first load attempt, if no data has been loaded yet.
+     */
+    public void access(){
+        if(isDue()){
+            start(true);
+        }
+        if(loadedAt==0L){
+            awaitFirstAttempt();
+        }
+    }
+
+    /**
+     * Starts a background refresh, unless one is already running.
+     * @return true, if a refresh has been started.
+     */
+    public boolean trigger(){
+        return start(false);
+    }
+
+    private boolean isDue(){
+        return System.currentTimeMillis() >= nextRefresh;
+    }
+
+    private boolean start(boolean onlyIfDue){
+        if(!running.compareAndSet(false, true)){
+            return false;
+        }
+        if(onlyIfDue && !isDue()){
+            // another refresh has completed since the caller checked
+            running.set(false);
+            return false;
+        }
+        try{
+            getExecutor().execute(() -> {
+                try{
+                    load();
+                } finally {
+                    running.set(false);
+                }
+            });
+            return true;
+        } catch(RejectedExecutionException e){
+            running.set(false);
+            LOG.log(Level.WARNING, "Failed to schedule refresh of " + name, e);
+            return false;
+        }
+    }
+
+    /**
+     * Runs the refresh action in the calling thread.
+     * @return true, if the refresh was successful.
+     */
+    public boolean refreshNow(){
+        return load();
+    }
+
+    /**
+     * Checks if a background refresh is currently running.
+     * @return true, if a refresh is running.
+     */
+    public boolean isRefreshing(){
+        return running.get();
+    }
+
+    private boolean load(){
+        long start = System.nanoTime();
+        try{
+            action.call();
+            long now = System.currentTimeMillis();
+            long period = refreshPeriod;
+            this.loadedAt = now;
+            this.consecutiveFailures = 0;
+            this.nextRefresh = now + period - period * refreshAhead / 100;
+            refreshCount.incrementAndGet();
+            return true;
+        } catch(Exception e){
+            int failures = ++this.consecutiveFailures;
+            failureCount.incrementAndGet();
+            this.lastFailure = e;
+            this.lastFailureAt = System.currentTimeMillis();
+            this.nextRefresh = lastFailureAt + Math.min(Math.max(refreshPeriod, 0L),
+                    Math.min(MAX_RETRY_DELAY, 500L << Math.min(failures, 6)));
+            LOG.log(failures==1?Level.WARNING:Level.FINE,
+                    "Refresh of " + name + " failed (" + failures + " times in a row).", e);
+            return false;
+        } finally {
+            this.lastDuration = System.nanoTime() - start;
+            synchronized (lock){
+                attempted = true;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void awaitFirstAttempt(){
+        long wait = initialWait;
+        long deadline = wait>0?System.currentTimeMillis() + wait:Long.MAX_VALUE;
+        synchronized (lock){
+            while(!attempted){
+                long remaining = deadline - System.currentTimeMillis();
+                if(remaining<=0){
+                    LOG.fine(() -> "Initial load of " + name + " not completed within " + wait + " ms.");
+                    return;
+                }
+                try{
+                    lock.wait(remaining);
+                } catch(InterruptedException e){
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private Executor getExecutor(){
+        return executor!=null?executor:SharedExecutor.INSTANCE;
+    }
+
+    /**
+     * Get the time in ms the data is valid after a successful refresh.
+     * @return the refresh period in ms.
+     */
+    public long getRefreshPeriod(){
+        return refreshPeriod;
+    }
+
+    /**
+     * Set the time in ms the data is valid after a successful refresh. Applies from the next refresh on.
+     * @param millis the refresh period in ms.
+     */
+    public void setRefreshPeriod(long millis){
+        this.refreshPeriod = millis;
+    }
+
+    /**
+     * Get the percentage of the refresh period before expiry, at which {@link #access()} starts a refresh.
+     * @return the percentage, 0 to 100, by default 20.
+     */
+    public int getRefreshAhead(){
+        return refreshAhead;
+    }
+
+    /**
+     * Set the percentage of the refresh period before expiry, at which {@link #access()} starts a refresh. Applies
+     * from the next refresh on.
+     * @param percent the percentage, 0 to 100.
+     */
+    public void setRefreshAhead(int percent){
+        if(percent<0 || percent>100){
+            throw new IllegalArgumentException("Refresh ahead must be between 0 and 100: " + percent);
+        }
+        this.refreshAhead = percent;
+    }
+
+    /**
+     * Get the maximal time {@link #access()} waits for the first load attempt.
+     * @return the time in ms, 0 waits until the attempt has completed.
+     */
+    public long getInitialWait(){
+        return initialWait;
+    }
+
+    /**
+     * Set the maximal time {@link #access()} waits for the first load attempt. If it is exceeded, readers see no
+     * data until the load has completed.
+     * @param millis the time in ms, 0 waits until the attempt has completed.
+     */
+    public void setInitialWait(long millis){
+        this.initialWait = Math.max(0L, millis);
+    }
+
+    /**
+     * Get the time of the last successful refresh.
+     * @return the time in ms since the epoch, or 0 if no data has been loaded yet.
+     */
+    public long getLoadedAt(){
+        return loadedAt;
+    }
+
+    /**
+     * Get the time until the data loaded last is valid.
+     * @return the time in ms since the epoch, or 0 if no data has been loaded yet.
+     */
+    public long getValidUntil(){
+        long loaded = loadedAt;
+        return loaded==0L?0L:loaded + refreshPeriod;
+    }
+
+    /**
+     * Get the age of the data, i.e. the time since the last successful refresh.
+     * @return the age in ms, or -1 if no data has been loaded yet.
+     */
+    public long getStaleness(){
+        long loaded = loadedAt;
+        return loaded==0L?-1L:System.currentTimeMillis() - loaded;
+    }
+
+    /**
+     * Get the exception of the last failed refresh.
+     * @return the exception, or null if no refresh has failed yet.
+     */
+    public Exception getLastFailure(){
+        return lastFailure;
+    }
+
+    /**
+     * Get the time of the last failed refresh.
+     * @return the time in ms since the epoch, or 0 if no refresh has failed yet.
+     */
+    public long getLastFailureAt(){
+        return lastFailureAt;
+    }
+
+    /**
+     * Get the number of refreshes failed since the last successful one.
+     * @return the number of consecutive failures.
+     */
+    public int getConsecutiveFailures(){
+        return consecutiveFailures;
+    }
+
+    /**
+     * Get the number of successful refreshes.
+     * @return the number of successful refreshes.
+     */
+    public long getRefreshCount(){
+        return refreshCount.get();
+    }
+
+    /**
+     * Get the number of failed refreshes.
+     * @return the number of failed refreshes.
+     */
+    public long getFailureCount(){
+        return failureCount.get();
+    }
+
+    /**
+     * Get the duration of the last refresh, successful or not.
+     * @return the duration in nanoseconds.
+     */
+    public long getLastRefreshDuration(){
+        return lastDuration;
+    }
+
+    /**
+     * Adds the {@code staleness} (age of the data in ms) and {@code refreshFailures} (failed refreshes since the
+     * data was loaded) meta entries, if the last refresh has failed, so the value may be outdated.
+     * @param value the value, or null.
+     * @return the value given, or a copy with the refresh state added.
+     */
+    public PropertyValue decorate(PropertyValue value){
+        int failures = consecutiveFailures;
+        if(value==null || failures==0){
+            return value;
+        }
+        return PropertyValue.createValue(value.getKey(), value.getValue())
+                .setMeta(value.getMeta())
+                .setMeta("staleness", String.valueOf(getStaleness()))
+                .setMeta("refreshFailures", String.valueOf(failures));
+    }
+
+    /**
+     * Adds the refresh state to all values, if the last refresh has failed.
+     * @param values the values, not null.
+     * @return the values given, or a copy with the refresh state added.
+     * @see #decorate(PropertyValue)
+     */
+    public Map<String, PropertyValue> decorate(Map<String, PropertyValue> values){
+        if(consecutiveFailures==0){
+            return values;
+        }
+        Map<String, PropertyValue> result = new HashMap<>();
+        for(Map.Entry<String, PropertyValue> en:values.entrySet()){
+            result.put(en.getKey(), decorate(en.getValue()));
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "BackgroundRefresher{" +
+                "name='" + name + '\'' +
+                ", refreshPeriod=" + refreshPeriod +
+                ", staleness=" + getStaleness() +
+                ", refreshCount=" + refreshCount +
+                ", failureCount=" + failureCount +
+                ", lastFailure=" + lastFailure +
+                '}';
+    }
+
+    /**
+     * Holder of the shared pool, created on first use.
+     */
+    private static final class SharedExecutor {
+
+        private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+        static final ExecutorService INSTANCE = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "tamaya-refresh-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        private SharedExecutor(){}
+    }
+}
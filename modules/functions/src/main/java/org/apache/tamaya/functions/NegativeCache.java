@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.functions;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers keys a remote property source has recently not found, so repeated lookups of non-existing keys are
+ * answered without accessing the backend. Entries expire after a time to live and the number of entries is bounded.
+ * When the cache is full, the expired entries and, if necessary, a tenth of the entries are evicted at once, so
+ * the scan is needed only once per many misses.
+ * <p>A miss is only recorded if the cache has not been invalidated since the lookup started, so a key added
+ * concurrently is not hidden by a lookup that started before:</p>
+ * <pre>
+ *     long stamp = cache.getStamp();
+ *     PropertyValue val = readRemote(key);
+ *     if(val==null){
+ *         cache.markMissing(key, stamp);
+ *     }
+ * </pre>
+ * This class is thread-safe.
+ */
+public final class NegativeCache {
+
+    private final Map<String, Long> entries = new ConcurrentHashMap<>();
+    private final AtomicLong stamp = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+
+    private volatile long timeToLive;
+    private volatile int maxSize;
+
+    /**
+     * Creates a new instance.
+     * @param timeToLive the time in ms a miss is remembered, 0 disables the cache.
+     * @param maxSize the maximal number of misses remembered.
+     */
+    public NegativeCache(long timeToLive, int maxSize){
+        setTimeToLive(timeToLive);
+        setMaxSize(maxSize);
+    }
+
+    /**
+     * Checks if the given key has recently not been found.
+     * @param key the key, not null.
+     * @return true, if the key is known to be missing.
+     */
+    public boolean isMissing(String key){
+        Long expiry = entries.get(key);
+        if(expiry==null){
+            return false;
+        }
+        if(expiry < System.currentTimeMillis()){
+            entries.remove(key, expiry);
+            return false;
+        }
+        hits.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Get the stamp to be passed to {@link #markMissing(String, long)}, before a lookup is started.
+     * @return the current stamp.
+     */
+    public long getStamp(){
+        return stamp.get();
+    }
+
+    /**
+     * Remembers the given key as missing, unless the cache has been invalidated since the stamp was taken.
+     * @param key the key not found, not null.
+     * @param stamp the stamp taken before the lookup.
+     */
+    public void markMissing(String key, long stamp){
+        Objects.requireNonNull(key);
+        long ttl = timeToLive;
+        if(ttl<=0 || this.stamp.get()!=stamp){
+            return;
+        }
+        if(entries.size() >= maxSize){
+            evict();
+        }
+        entries.put(key, System.currentTimeMillis() + ttl);
+        if(this.stamp.get()!=stamp){
+            // invalidated concurrently
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * Forgets the given key, e.g. because it has been added.
+     * @param key the key, not null.
+     */
+    public void invalidate(String key){
+        stamp.incrementAndGet();
+        entries.remove(key);
+    }
+
+    /**
+     * Forgets all keys, e.g. because the data has been reloaded.
+     */
+    public void invalidateAll(){
+        stamp.incrementAndGet();
+        entries.clear();
+    }
+
+    /**
+     * Removes the expired entries and, if the cache is still full, arbitrary entries until a tenth of the capacity
+     * is free.
+     */
+    private synchronized void evict(){
+        int max = maxSize;
+        if(entries.size() < max){
+            // evicted concurrently
+            return;
+        }
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(expiry -> expiry < now);
+        int target = max - Math.max(1, max / 10);
+        Iterator<String> it = entries.keySet().iterator();
+        while(entries.size() > target && it.hasNext()){
+            it.next();
+            it.remove();
+        }
+    }
+
+    /**
+     * Get the number of misses currently remembered, including expired ones not evicted yet.
+     * @return the number of entries.
+     */
+    public int size(){
+        return entries.size();
+    }
+
+    /**
+     * Get the number of lookups answered by this cache.
+     * @return the number of hits.
+     */
+    public long getHitCount(){
+        return hits.get();
+    }
+
+    /**
+     * Get the time a miss is remembered.
+     * @return the time in ms, 0 if the cache is disabled.
+     */
+    public long getTimeToLive(){
+        return timeToLive;
+    }
+
+    /**
+     * Set the time a miss is remembered. Applies to misses recorded from now on.
+     * @param millis the time in ms, 0 disables the cache.
+     */
+    public void setTimeToLive(long millis){
+        this.timeToLive = Math.max(0L, millis);
+        if(millis<=0){
+            invalidateAll();
+        }
+    }
+
+    /**
+     * Get the maximal number of misses remembered.
+     * @return the maximal number of entries.
+     */
+    public int getMaxSize(){
+        return maxSize;
+    }
+
+    /**
+     * Set the maximal number of misses remembered.
+     * @param maxSize the maximal number of entries, at least 1.
+     */
+    public void setMaxSize(int maxSize){
+        if(maxSize<1){
+            throw new IllegalArgumentException("Max size must be at least 1: " + maxSize);
+        }
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public String toString() {
+        return "NegativeCache{" +
+                "timeToLive=" + timeToLive +
+                ", maxSize=" + maxSize +
+                ", size=" + entries.size() +
+                ", hits=" + hits +
+                '}';
+    }
+}
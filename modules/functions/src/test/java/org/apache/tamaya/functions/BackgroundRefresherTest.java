@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.functions;
+
+import org.apache.tamaya.spi.PropertyValue;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link BackgroundRefresher}.
+ */
+public class BackgroundRefresherTest {
+
+    @Test
+    public void testFirstAccessWaitsForLoad() {
+        AtomicInteger loads = new AtomicInteger();
+        BackgroundRefresher refresher = new BackgroundRefresher("test", 60000L, () -> {
+            Thread.sleep(100L);
+            return loads.incrementAndGet();
+        });
+        refresher.access();
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(refresher.getLoadedAt()).isGreaterThan(0L);
+        assertThat(refresher.getStaleness()).isGreaterThanOrEqualTo(0L);
+        refresher.access();
+        assertThat(refresher.getRefreshCount()).isEqualTo(1L);
+    }
+
+    @Test
+    public void testInitialWaitIsBounded() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        BackgroundRefresher refresher = new BackgroundRefresher("test", 60000L,
+                () -> release.await(5, TimeUnit.SECONDS));
+        refresher.setInitialWait(100L);
+        long start = System.currentTimeMillis();
+        refresher.access();
+        assertThat(System.currentTimeMillis() - start).isLessThan(2000L);
+        assertThat(refresher.getLoadedAt()).isEqualTo(0L);
+        assertThat(refresher.getStaleness()).isEqualTo(-1L);
+        assertThat(refresher.isRefreshing()).isTrue();
+        release.countDown();
+    }
+
+    @Test
+    public void testOnlyOneRefreshRunsAtATime() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        BackgroundRefresher refresher = new BackgroundRefresher("test", 0L, () -> {
+            release.await(5, TimeUnit.SECONDS);
+            return loads.incrementAndGet();
+        });
+        refresher.setInitialWait(10L);
+        for (int i = 0; i < 20; i++) {
+            refresher.access();
+        }
+        release.countDown();
+        long until = System.currentTimeMillis() + 5000L;
+        while (refresher.getRefreshCount() == 0L && System.currentTimeMillis() < until) {
+            Thread.sleep(10L);
+        }
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testFailuresAreTrackedAndRetriedLater() {
+        AtomicInteger calls = new AtomicInteger();
+        BackgroundRefresher refresher = new BackgroundRefresher("test", 60000L, () -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("unavailable");
+        });
+        assertThat(refresher.refreshNow()).isFalse();
+        refresher.access();
+        refresher.access();
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(refresher.getFailureCount()).isEqualTo(1L);
+        assertThat(refresher.getConsecutiveFailures()).isEqualTo(1);
+        assertThat(refresher.getLastFailure().getMessage()).isEqualTo("unavailable");
+        assertThat(refresher.getLastFailureAt()).isGreaterThan(0L);
+        assertThat(refresher.getValidUntil()).isEqualTo(0L);
+    }
+
+    @Test
+    public void testRefreshStateIsAddedWhileRefreshesFail() {
+        AtomicInteger calls = new AtomicInteger();
+        BackgroundRefresher refresher = new BackgroundRefresher("test", 60000L, () -> {
+            if (calls.incrementAndGet() > 1) {
+                throw new IllegalStateException("unavailable");
+            }
+            return null;
+        });
+        PropertyValue value = PropertyValue.createValue("a", "1");
+        Map<String, PropertyValue> values = Collections.singletonMap("a", value);
+        assertThat(refresher.refreshNow()).isTrue();
+        assertThat(refresher.decorate(value)).isSameAs(value);
+        assertThat(refresher.decorate(values)).isSameAs(values);
+        assertThat(refresher.refreshNow()).isFalse();
+        assertThat(refresher.decorate((PropertyValue) null)).isNull();
+        assertThat(refresher.decorate(value).getValue()).isEqualTo("1");
+        assertThat(refresher.decorate(value).getMeta("refreshFailures")).isEqualTo("1");
+        assertThat(refresher.decorate(values).get("a").getMeta("staleness")).isNotNull();
+        assertThat(value.getMeta("refreshFailures")).isNull();
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.functions;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link NegativeCache}.
+ */
+public class NegativeCacheTest {
+
+    @Test
+    public void testMissesAreRememberedUntilExpiry() throws Exception {
+        NegativeCache cache = new NegativeCache(100L, 10);
+        assertThat(cache.isMissing("a")).isFalse();
+        cache.markMissing("a", cache.getStamp());
+        assertThat(cache.isMissing("a")).isTrue();
+        assertThat(cache.getHitCount()).isEqualTo(1L);
+        Thread.sleep(150L);
+        assertThat(cache.isMissing("a")).isFalse();
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testInvalidationDiscardsPendingMisses() {
+        NegativeCache cache = new NegativeCache(60000L, 10);
+        cache.markMissing("a", cache.getStamp());
+        long stamp = cache.getStamp();
+        cache.invalidate("a");
+        assertThat(cache.isMissing("a")).isFalse();
+        cache.markMissing("b", stamp);
+        assertThat(cache.isMissing("b")).isFalse();
+        cache.markMissing("b", cache.getStamp());
+        cache.invalidateAll();
+        assertThat(cache.isMissing("b")).isFalse();
+    }
+
+    @Test
+    public void testSizeIsBounded() {
+        NegativeCache cache = new NegativeCache(60000L, 3);
+        for (int i = 0; i < 10; i++) {
+            cache.markMissing("key" + i, cache.getStamp());
+        }
+        assertThat(cache.size()).isEqualTo(3);
+        assertThat(cache.isMissing("key9")).isTrue();
+    }
+
+    @Test
+    public void testFullCacheIsEvictedInBatches() {
+        NegativeCache cache = new NegativeCache(60000L, 100);
+        for (int i = 0; i < 100; i++) {
+            cache.markMissing("key" + i, cache.getStamp());
+        }
+        assertThat(cache.size()).isEqualTo(100);
+        cache.markMissing("key100", cache.getStamp());
+        assertThat(cache.size()).isEqualTo(91);
+        for (int i = 101; i < 110; i++) {
+            cache.markMissing("key" + i, cache.getStamp());
+        }
+        assertThat(cache.size()).isEqualTo(100);
+        assertThat(cache.isMissing("key109")).isTrue();
+    }
+
+    @Test
+    public void testZeroTimeToLiveDisablesCache() {
+        NegativeCache cache = new NegativeCache(0L, 10);
+        cache.markMissing("a", cache.getStamp());
+        assertThat(cache.isMissing("a")).isFalse();
+        assertThat(cache.size()).isEqualTo(0);
+    }
+}
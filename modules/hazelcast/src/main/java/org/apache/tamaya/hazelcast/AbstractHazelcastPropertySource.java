@@ -22,6 +22,9 @@ import com.hazelcast.core.Hazelcast;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.IList;
 import com.hazelcast.core.IMap;
+import org.apache.tamaya.ConfigException;
+import org.apache.tamaya.events.ConfigMetrics;
+import org.apache.tamaya.functions.BackgroundRefresher;
 import org.apache.tamaya.mutableconfig.ConfigChangeRequest;
 import org.apache.tamaya.mutableconfig.spi.MutablePropertySource;
 import org.apache.tamaya.spi.PropertyValue;
@@ -32,7 +35,6 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -53,21 +55,31 @@ import java.util.logging.Logger;
  *
  * By default a new hazelcast instance is created, but it is also possible to reuse an existing
  * instance of pass a Hazelcast configuration instance.
+ *
+ * By default the map is reloaded after the cache timeout, blocking the access triggering the reload. In asynchronous
+ * refresh mode the current data is always returned immediately and reloaded in the background shortly before the
+ * cache timeout, see {@link BackgroundRefresher}.
+ * While refreshes fail, the values returned carry the {@code staleness} and {@code refreshFailures} meta
+ * entries.
  */
 public abstract class AbstractHazelcastPropertySource extends BasePropertySource
 implements MutablePropertySource{
     /** The logger. */
     private static final Logger LOG = Logger.getLogger(AbstractHazelcastPropertySource.class.getName());
+    /** Flag, if {@code tamaya-events} is available for recording metrics. */
+    private static final boolean METRICS_AVAILABLE = checkForMetrics();
     /** The Hazelcast config map used. */
-    private Map<String, PropertyValue> configMap = new HashMap<>();
+    private volatile Map<String, PropertyValue> configMap = new HashMap<>();
     /** The hazelcast map reference ID used, by default {@code tamaya.configuration}. */
     private String mapReference = "tamaya.configuration";
     /** Flag if this property source is read-only. */
     private boolean readOnly = false;
 
-    private AtomicLong timeoutDuration = new AtomicLong(TimeUnit.MILLISECONDS.convert(5, TimeUnit.MINUTES));
-
-    private AtomicLong timeout = new AtomicLong();
+    /** Triggers the reloads and tracks the cache timeout. */
+    private final BackgroundRefresher refresher = new BackgroundRefresher(getName(),
+            TimeUnit.MILLISECONDS.convert(5, TimeUnit.MINUTES), this::reload);
+    /** Flag if the map is reloaded in the background. */
+    private volatile boolean refreshAsync;
 
     /**
      * Creates a new instance, hereby using {@code "Hazelcast"} as property source name and
@@ -86,12 +98,23 @@ implements MutablePropertySource{
         super(name);
     }
 
+    private static boolean checkForMetrics() {
+        try{
+            Class.forName("org.apache.tamaya.events.ConfigMetrics", false,
+                    AbstractHazelcastPropertySource.class.getClassLoader());
+            return true;
+        } catch(Exception | LinkageError e){
+            LOG.fine("tamaya-events not installed, will not record hazelcast metrics.");
+            return false;
+        }
+    }
+
     /**
      * Get the current timeout, when a reload will be triggered on access.
      * @return the current timeout, or 0 if no data has been loaded at all.
      */
     public long getValidUntil(){
-        return timeout.get();
+        return refresher.getValidUntil();
     }
 
     /**
@@ -99,7 +122,7 @@ implements MutablePropertySource{
      * @return the timeout duration after which data will be reloaded.
      */
     public long getCachePeriod(){
-        return timeoutDuration.get();
+        return refresher.getRefreshPeriod();
     }
 
     /**
@@ -107,10 +130,68 @@ implements MutablePropertySource{
      * @param millis the millis
      */
     public void setCacheTimeout(long millis){
-        this.timeoutDuration.set(millis);
+        this.refresher.setRefreshPeriod(millis);
         this.refresh();
     }
 
+    /**
+     * Checks if the map is reloaded in the background, so accesses never wait for a reload, except for the
+     * first load.
+     * @return true, if asynchronous refresh mode is enabled.
+     */
+    public boolean isRefreshAsync(){
+        return refreshAsync;
+    }
+
+    /**
+     * Enables or disables asynchronous refresh mode. In asynchronous refresh mode the current data is returned
+     * immediately and reloaded in the background shortly before the cache timeout.
+     * @param refreshAsync true, to enable asynchronous refresh mode.
+     */
+    public void setRefreshAsync(boolean refreshAsync){
+        this.refreshAsync = refreshAsync;
+    }
+
+    /**
+     * Get the maximal time an access waits for the first load in asynchronous refresh mode.
+     * @return the time in ms, 0 waits until the load has completed.
+     */
+    public long getInitialWait(){
+        return refresher.getInitialWait();
+    }
+
+    /**
+     * Set the maximal time an access waits for the first load in asynchronous refresh mode.
+     * @param millis the time in ms, 0 waits until the load has completed.
+     */
+    public void setInitialWait(long millis){
+        this.refresher.setInitialWait(millis);
+    }
+
+    /**
+     * Get the age of the data, i.e. the time since the map has been loaded the last time.
+     * @return the age in ms, or -1 if no data has been loaded yet.
+     */
+    public long getStaleness(){
+        return refresher.getStaleness();
+    }
+
+    /**
+     * Get the exception of the last failed reload.
+     * @return the exception, or null if no reload has failed yet.
+     */
+    public Exception getLastRefreshFailure(){
+        return refresher.getLastFailure();
+    }
+
+    /**
+     * Get the number of failed reloads.
+     * @return the number of failed reloads.
+     */
+    public long getRefreshFailureCount(){
+        return refresher.getFailureCount();
+    }
+
 
     /**
      * Setting the read-only flag for this instance.
@@ -157,28 +238,58 @@ implements MutablePropertySource{
     @Override
     public PropertyValue get(String key) {
         checkRefresh();
-        return this.configMap.get(key);
+        return refresher.decorate(this.configMap.get(key));
     }
 
     @Override
     public Map<String, PropertyValue> getProperties() {
         checkRefresh();
-        return this.configMap;
+        return refresher.decorate(this.configMap);
     }
 
     /**
      * Checks for a cache timeout and optionally reloads the data.
      */
     public void checkRefresh(){
-        if(this.timeout.get() < System.currentTimeMillis()){
-            refresh();
+        if(refreshAsync){
+            refresher.access();
+        } else if(refresher.getValidUntil() < System.currentTimeMillis()){
+            refresher.refreshNow();
         }
     }
 
     /**
-     * Reloads the configuration map from Hazelcast completely.
+     * Reloads the configuration map from Hazelcast completely. In asynchronous refresh mode the reload is started
+     * in the background, else it runs in the calling thread.
+     * @throws RuntimeException the exception thrown by Hazelcast, if the reload in the calling thread fails.
      */
     public void refresh() {
+        if(refreshAsync){
+            refresher.trigger();
+        }else if(!refresher.refreshNow()){
+            Exception e = refresher.getLastFailure();
+            if(e instanceof RuntimeException){
+                throw (RuntimeException)e;
+            }
+            throw new ConfigException("Failed to reload Hazelcast map: " + mapReference, e);
+        }
+    }
+
+    private Object reload() {
+        long start = METRICS_AVAILABLE?ConfigMetrics.start():0L;
+        boolean loaded = false;
+        try{
+            loadMap();
+            loaded = true;
+            return null;
+        } finally {
+            if(METRICS_AVAILABLE){
+                ConfigMetrics.refreshed(getName(), start, loaded);
+            }
+        }
+    }
+
+    private void loadMap() {
         IMap<String,String> config = getHazelcastInstance().getMap(mapReference);
         Map<String, PropertyValue> configMap = new HashMap<>();
         config.forEach((key, value) -> configMap.put(key,
@@ -188,7 +299,6 @@ implements MutablePropertySource{
                         .setMeta("instance", getHazelcastInstance().getName())
                         .setMeta("mapReference", mapReference)
                         .immutable()));
-        this.timeout.set(System.currentTimeMillis() + timeoutDuration.get());
         this.configMap = Collections.unmodifiableMap(configMap);
     }
 
@@ -230,7 +340,10 @@ implements MutablePropertySource{
                 "\n  hazelcastInstance=" + getHazelcastInstance() +
                 "\n  name='" + getName() + '\'' +
                 "\n  mapReference='" + mapReference + '\'' +
-                "\n  readOnly=" + readOnly + '\'';
+                "\n  readOnly=" + readOnly +
+                "\n  refreshAsync=" + refreshAsync +
+                "\n  staleness=" + refresher.getStaleness() +
+                "\n  refreshFailures=" + refresher.getFailureCount();
     }
 
 }
@@ -28,16 +28,19 @@ import java.util.logging.Logger;
 import javax.naming.Context;
 import javax.naming.InitialContext;
 import javax.naming.NameClassPair;
+import javax.naming.NameNotFoundException;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
 
+import org.apache.tamaya.functions.NegativeCache;
 import org.apache.tamaya.spi.PropertySource;
 import org.apache.tamaya.spi.PropertyValue;
 import org.apache.tamaya.spisupport.propertysource.BasePropertySource;
 import org.osgi.service.component.annotations.Component;
 
 /**
- * Propertysource that accesses JNDI as source for configuration entries.
+ * Propertysource that accesses JNDI as source for configuration entries. Names not bound are remembered for a while,
+ * see {@link #setNegativeCacheTtl(long)}, so repeated lookups of missing keys do not access JNDI again.
  */
 @Component
 public class JNDIPropertySource extends BasePropertySource {
@@ -53,6 +56,8 @@ public class JNDIPropertySource extends BasePropertySource {
     private Context context;
     /** The scanable property, default is {@code false}. */
     private boolean scannable = false;
+    /** The names recently not found. */
+    private final NegativeCache negativeCache = new NegativeCache(60000L, 10000);
 
     /**
      * Creates a new instance.
@@ -120,12 +125,43 @@ public class JNDIPropertySource extends BasePropertySource {
         this.scannable = val;
     }
 
+    /**
+     * Get the time a name not bound is remembered, before it is looked up again.
+     * @return the time in ms, 0 if misses are not cached.
+     */
+    public long getNegativeCacheTtl(){
+        return negativeCache.getTimeToLive();
+    }
+
+    /**
+     * Set the time a name not bound is remembered, before it is looked up again (default is 60000).
+     * @param millis the time in ms, 0 disables caching of misses.
+     */
+    public void setNegativeCacheTtl(long millis){
+        this.negativeCache.setTimeToLive(millis);
+    }
+
+    /**
+     * Forgets all names remembered as not bound, e.g. after new entries have been bound.
+     */
+    public void invalidateNegativeCache(){
+        this.negativeCache.invalidateAll();
+    }
+
     @Override
     public PropertyValue get(String key) {
+        key = key.replace('.', '/');
+        if(negativeCache.isMissing(key)){
+            return null;
+        }
+        long stamp = negativeCache.getStamp();
         try {
-            key = key.replace('.', '/');
             Object o = context.lookup(key);
             return PropertyValue.createValue(key, o.toString()).setMeta("source", getName());
+        } catch (NameNotFoundException e) {
+            LOG.log(Level.FINER, "Key not bound in JNDI: " + key, e);
+            negativeCache.markMissing(key, stamp);
+            return null;
         } catch (NamingException e) {
             LOG.log(Level.FINER, "Failed to lookup key in JNDI: " + key, e);
             return null;
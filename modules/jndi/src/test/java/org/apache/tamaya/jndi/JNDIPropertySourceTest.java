@@ -22,10 +22,15 @@ import org.junit.Test;
 
 import javax.naming.Context;
 import javax.naming.InitialContext;
+import javax.naming.NameNotFoundException;
 import javax.naming.NamingException;
 import java.io.File;
+import java.lang.reflect.Proxy;
 import java.net.MalformedURLException;
 import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -42,6 +47,27 @@ public class JNDIPropertySourceTest{
         return (Context)ctx.lookup(new File("./src/test/jndi-dir").getAbsolutePath());
     }
 
+    /**
+     * Creates a context looking up the given bindings only, counting the lookups.
+     */
+    private Context createCountingContext(Map<String, Object> bindings, AtomicInteger lookups) {
+        return (Context) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Context.class},
+                (proxy, method, args) -> {
+                    if (!"lookup".equals(method.getName()) || !(args[0] instanceof String)) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    lookups.incrementAndGet();
+                    if ("broken".equals(args[0])) {
+                        throw new NamingException("broken");
+                    }
+                    Object value = bindings.get(args[0]);
+                    if (value == null) {
+                        throw new NameNotFoundException((String) args[0]);
+                    }
+                    return value;
+                });
+    }
+
     @Test
     public void testCreateWithContext() throws NamingException, MalformedURLException {
         new JNDIPropertySource("jndi-test", createFSContext());
@@ -58,4 +84,40 @@ public class JNDIPropertySourceTest{
             .containsKeys("a.test1", "b.test2", "c.test3", "c.test4", "c.c1.test5");
     }
 
+    @Test
+    public void testMissingKeysAreCached() {
+        Map<String, Object> bindings = new ConcurrentHashMap<>();
+        AtomicInteger lookups = new AtomicInteger();
+        JNDIPropertySource ps = new JNDIPropertySource("jndi-test", createCountingContext(bindings, lookups));
+        assertThat(ps.get("a.b")).isNull();
+        assertThat(ps.get("a.b")).isNull();
+        assertThat(lookups.get()).isEqualTo(1);
+        bindings.put("a/b", "value");
+        assertThat(ps.get("a.b")).isNull();
+        ps.invalidateNegativeCache();
+        assertThat(ps.get("a.b").getValue()).isEqualTo("value");
+        assertThat(lookups.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testLookupFailuresAreNotCached() {
+        AtomicInteger lookups = new AtomicInteger();
+        JNDIPropertySource ps = new JNDIPropertySource("jndi-test",
+                createCountingContext(new ConcurrentHashMap<>(), lookups));
+        assertThat(ps.get("broken")).isNull();
+        assertThat(ps.get("broken")).isNull();
+        assertThat(lookups.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testZeroTtlDisablesNegativeCache() {
+        AtomicInteger lookups = new AtomicInteger();
+        JNDIPropertySource ps = new JNDIPropertySource("jndi-test",
+                createCountingContext(new ConcurrentHashMap<>(), lookups));
+        ps.setNegativeCacheTtl(0L);
+        assertThat(ps.getNegativeCacheTtl()).isEqualTo(0L);
+        assertThat(ps.get("a")).isNull();
+        assertThat(ps.get("a")).isNull();
+        assertThat(lookups.get()).isEqualTo(2);
+    }
 }
@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.resolver.internal;
+
+import org.apache.tamaya.spi.PropertyValue;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Resolves all expressions of a complete property map up front. This is used when a map-scoped
+ * {@link org.apache.tamaya.spi.FilterContext} is filtered, e.g. on {@code Configuration.getProperties()}:
+ * <ul>
+ *     <li>all distinct expressions of all values are extracted and grouped by their resolver,</li>
+ *     <li>expressions of resolvers that may be slow (files, URLs, custom resolvers) are resolved in parallel,</li>
+ *     <li>{@code conf:} references to keys contained in the map are resolved from the map in dependency order,
+ *     hereby detecting reference cycles. Keys within a cycle are left to the regular (sequential) evaluation.
+ *     The map only contains the values before filtering, so this is only done if no other filter applies. Else
+ *     the references are left to the sequential evaluation, which reads the filtered value.</li>
+ * </ul>
+ * The result is a map of pre-resolved expressions, which is passed to the evaluator when the single values are
+ * filtered.
+ */
+final class BulkResolution {
+
+    private static final Logger LOG = Logger.getLogger(BulkResolution.class.getName());
+
+    private static volatile ForkJoinPool pool;
+
+    private final WeakReference<Map<String, PropertyValue>> entries;
+
+    private final Map<String, DefaultExpressionEvaluator.Resolution> preResolved = new ConcurrentHashMap<>();
+
+    private final DefaultExpressionEvaluator evaluator;
+
+    private final Map<String, ExpressionTemplate> templates = new HashMap<>();
+
+    private final Map<String, Integer> visitState = new HashMap<>();
+
+    private final Map<String, String> resolvedValues = new HashMap<>();
+
+    private final boolean resolveReferences;
+
+    /**
+     * Resolves all expressions of the given map.
+     * @param entries the entries to be filtered, not null.
+     * @param evaluator the evaluator, not null.
+     * @param resolveReferences true, if {@code conf:} references to keys of the map can be resolved from the map,
+     *                          because no other filter changes the values.
+     */
+    BulkResolution(Map<String, PropertyValue> entries, DefaultExpressionEvaluator evaluator,
+                   boolean resolveReferences) {
+        this.entries = new WeakReference<>(entries);
+        this.evaluator = evaluator;
+        this.resolveReferences = resolveReferences;
+        for (Map.Entry<String, PropertyValue> en : entries.entrySet()) {
+            String raw = en.getValue() == null ? null : en.getValue().getValue();
+            templates.put(en.getKey(), raw == null ? ExpressionTemplate.CONSTANT : ExpressionTemplate.of(raw));
+        }
+        resolveIndependentExpressions();
+        if (resolveReferences) {
+            for (String key : templates.keySet()) {
+                resolveKey(key, entries);
+            }
+        }
+    }
+
+    /**
+     * Checks if this resolution was created for the given map instance.
+     * @param entries the map, not null.
+     * @return true, if the pre-resolved expressions belong to the given map.
+     */
+    boolean isFor(Map<String, PropertyValue> entries) {
+        return this.entries.get() == entries;
+    }
+
+    /**
+     * Checks if the map this resolution was created for has been garbage collected.
+     * @return true, if the map is no longer referenced.
+     */
+    boolean isCollected() {
+        return this.entries.get() == null;
+    }
+
+    /**
+     * Get the pre-resolved expressions.
+     * @return the pre-resolved expressions, keyed by the unresolved expression.
+     */
+    Map<String, DefaultExpressionEvaluator.Resolution> getPreResolved() {
+        return preResolved;
+    }
+
+    private static ForkJoinPool pool() {
+        if (pool == null) {
+            synchronized (BulkResolution.class) {
+                if (pool == null) {
+                    pool = new ForkJoinPool(ResolverConfig.getBulkParallelism());
+                }
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * Resolves all expressions not referencing other keys of the map. Expressions targeting system or environment
+     * properties are resolved inline, all others in parallel.
+     */
+    private void resolveIndependentExpressions() {
+        Set<String> parallel = new LinkedHashSet<>();
+        for (ExpressionTemplate template : templates.values()) {
+            for (ExpressionTemplate.Segment segment : template.getSegments()) {
+                if (!segment.expression || preResolved.containsKey(segment.text)) {
+                    continue;
+                }
+                ResolverTable.Entry resolver = evaluator.findResolver(segment.text);
+                if (resolver == null
+                        || resolver.resolver instanceof SystemPropertyResolver
+                        || resolver.resolver instanceof EnvironmentPropertyResolver) {
+                    preResolved.put(segment.text, evaluator.resolve(segment.text, true));
+                } else if (resolver.resolver instanceof ConfigResolver
+                        && templates.containsKey(segment.text.substring(resolver.prefix.length()))) {
+                    // resolved in dependency order, or by the sequential evaluation, if other filters apply
+                } else {
+                    parallel.add(segment.text);
+                }
+            }
+        }
+        if (parallel.size() == 1) {
+            String expression = parallel.iterator().next();
+            preResolved.put(expression, evaluator.resolve(expression, true));
+        } else if (!parallel.isEmpty()) {
+            List<Callable<Void>> tasks = new ArrayList<>(parallel.size());
+            for (final String expression : parallel) {
+                tasks.add(() -> {
+                    preResolved.put(expression, evaluator.resolve(expression, true));
+                    return null;
+                });
+            }
+            for (Future<Void> future : pool().invokeAll(tasks)) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException e) {
+                    LOG.log(Level.WARNING, "Failed to resolve expression in parallel, "
+                            + "will be resolved sequentially.", e.getCause());
+                }
+            }
+        }
+    }
+
+    /**
+     * Resolves the given key, hereby resolving first all keys it references.
+     * @param key the key, not null.
+     * @param entries the entries, not null.
+     * @return the resolved value, or null, if the key is part of a reference cycle.
+     */
+    private String resolveKey(String key, Map<String, PropertyValue> entries) {
+        Integer state = visitState.get(key);
+        if (state != null) {
+            if (state == 1) {
+                LOG.warning("Cyclic configuration reference detected for key: " + key);
+                return null;
+            }
+            return resolvedValues.get(key);
+        }
+        visitState.put(key, 1);
+        ExpressionTemplate template = templates.get(key);
+        boolean resolvable = true;
+        for (ExpressionTemplate.Segment segment : template.getSegments()) {
+            if (!segment.expression || preResolved.containsKey(segment.text)) {
+                continue;
+            }
+            ResolverTable.Entry resolver = evaluator.findResolver(segment.text);
+            if (resolver == null || !(resolver.resolver instanceof ConfigResolver)) {
+                // parallel resolution failed, leave it to the sequential evaluation
+                resolvable = false;
+                continue;
+            }
+            String refKey = segment.text.substring(resolver.prefix.length());
+            String refValue = resolveKey(refKey, entries);
+            if (refValue == null) {
+                resolvable = false;
+            } else {
+                preResolved.put(segment.text, new DefaultExpressionEvaluator.Resolution(refValue,
+                        resolver.resolver.getClass().getName()));
+            }
+        }
+        String value = null;
+        PropertyValue raw = entries.get(key);
+        if (resolvable && raw != null && raw.getValue() != null) {
+            value = template.isConstant() ? raw.getValue() : template.evaluate(
+                    expression -> preResolved.get(expression).value);
+        }
+        visitState.put(key, 2);
+        if (value != null) {
+            resolvedValues.put(key, value);
+        }
+        return value;
+    }
+
+}
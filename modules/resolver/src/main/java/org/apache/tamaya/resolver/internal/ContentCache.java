@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.resolver.internal;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache for resource contents as loaded by the {@link FileResolver} and {@link URLResolver}. The
+ * cache is bounded by the (approximate) memory used by the cached contents. Each entry carries the validators
+ * needed to revalidate it (modification time, size and ETag), so the resolvers can check cheaply, if the
+ * content is still current.
+ */
+final class ContentCache {
+
+    private final long maxBytes;
+
+    private final long maxAge;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long currentBytes;
+
+    /**
+     * Creates a new cache.
+     * @param maxBytes the maximal memory used by cached contents, 0 disables the cache.
+     * @param maxAge the time in ms an entry is considered current without revalidation.
+     */
+    ContentCache(long maxBytes, long maxAge) {
+        this.maxBytes = maxBytes;
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Checks if this cache is enabled.
+     * @return true, if contents are cached.
+     */
+    boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * Looks up the entry for the given key.
+     * @param key the key, not null.
+     * @return the entry, or null.
+     */
+    synchronized Entry get(String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Checks if the entry can be used without revalidation.
+     * @param entry the entry, not null.
+     * @return true, if the entry has been validated within the configured max age.
+     */
+    boolean isFresh(Entry entry) {
+        return maxAge > 0 && System.currentTimeMillis() - entry.validatedAt < maxAge;
+    }
+
+    /**
+     * Adds or replaces an entry, hereby evicting the least recently used entries until the size limit is met.
+     * Contents larger than the limit are not cached at all.
+     * @param key the key, not null.
+     * @param entry the entry, not null.
+     */
+    synchronized void put(String key, Entry entry) {
+        Entry old = entries.remove(key);
+        if (old != null) {
+            currentBytes -= old.weight();
+        }
+        if (entry.weight() > maxBytes) {
+            return;
+        }
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (currentBytes + entry.weight() > maxBytes && it.hasNext()) {
+            currentBytes -= it.next().getValue().weight();
+            it.remove();
+        }
+        entries.put(key, entry);
+        currentBytes += entry.weight();
+    }
+
+    /**
+     * Removes an entry.
+     * @param key the key, not null.
+     */
+    synchronized void remove(String key) {
+        Entry old = entries.remove(key);
+        if (old != null) {
+            currentBytes -= old.weight();
+        }
+    }
+
+    /**
+     * Clears the cache.
+     */
+    synchronized void clear() {
+        entries.clear();
+        currentBytes = 0;
+    }
+
+    /**
+     * Get the approximate memory used by the cached contents.
+     * @return the memory used in bytes.
+     */
+    synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    /**
+     * A cached content together with its validators.
+     */
+    static final class Entry {
+        /** The content. */
+        final String content;
+        /** The last modification timestamp of the source, or 0 if unknown. */
+        final long lastModified;
+        /** The size of the source in bytes, or -1 if unknown. */
+        final long size;
+        /** The ETag of the source, or null. */
+        final String etag;
+        /** The time the entry was last validated against its source. */
+        volatile long validatedAt = System.currentTimeMillis();
+
+        Entry(String content, long lastModified, long size, String etag) {
+            this.content = content;
+            this.lastModified = lastModified;
+            this.size = size;
+            this.etag = etag;
+        }
+
+        /**
+         * Marks the entry as validated now.
+         * @return this instance.
+         */
+        Entry validated() {
+            this.validatedAt = System.currentTimeMillis();
+            return this;
+        }
+
+        long weight() {
+            return 2L * content.length();
+        }
+    }
+}
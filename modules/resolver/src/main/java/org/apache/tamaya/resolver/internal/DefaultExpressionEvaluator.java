@@ -20,7 +20,9 @@ package org.apache.tamaya.resolver.internal;
 
 import org.apache.tamaya.resolver.spi.ExpressionEvaluator;
 import org.apache.tamaya.resolver.spi.ExpressionResolver;
+import org.apache.tamaya.spi.ClassloaderAware;
 import org.apache.tamaya.spi.PropertyValue;
+import org.apache.tamaya.spi.ServiceContext;
 import org.apache.tamaya.spi.ServiceContextManager;
 
 import javax.annotation.Priority;
@@ -34,10 +36,30 @@ import java.util.logging.Logger;
  * has the advantage that different resolvers can be active in parallel.
  */
 @Priority(10000)
-public class DefaultExpressionEvaluator implements ExpressionEvaluator {
+public class DefaultExpressionEvaluator implements ExpressionEvaluator, ClassloaderAware {
 
     private static final Logger LOG = Logger.getLogger(DefaultExpressionEvaluator.class.getName());
 
+    private ClassLoader classLoader = ServiceContextManager.getDefaultClassLoader();
+
+    /**
+     * The sorted and indexed resolvers, rebuilt when the service context changes.
+     */
+    private volatile ResolverTable resolverTable;
+
+    /**
+     * Flag if the resolvers used are recorded in the {@code resolvers} metadata of the values evaluated.
+     */
+    private final boolean provenanceEnabled = ResolverConfig.isProvenanceEnabled();
+
+    /**
+     * Evaluators used without provenance and pre-resolved expressions, created once to avoid allocations per value.
+     */
+    private final ExpressionTemplate.SegmentEvaluator maskingEvaluator =
+            expression -> resolve(expression, true, null);
+
+    private final ExpressionTemplate.SegmentEvaluator nonMaskingEvaluator =
+            expression -> resolve(expression, false, null);
 
     /**
      * Comparator used (not needed with Java8).
@@ -72,159 +94,211 @@ public class DefaultExpressionEvaluator implements ExpressionEvaluator {
 
     @Override
     public PropertyValue evaluateExpression(PropertyValue propertyValue, boolean maskUnresolved) {
+        return evaluateExpression(propertyValue, maskUnresolved, null);
+    }
+
+    /**
+     * Evaluates the given value, hereby using the given pre-resolved expressions where available.
+     *
+     * @param propertyValue the property value to be evaluated, maybe null.
+     * @param maskUnresolved if true, not found expression parts will be replaced by surrounding with [].
+     * @param preResolved the expressions already resolved, keyed by the unresolved expression, or null.
+     * @return the resolved value, or null.
+     * @see #evaluateExpression(PropertyValue, boolean)
+     */
+    PropertyValue evaluateExpression(PropertyValue propertyValue, boolean maskUnresolved,
+                                     Map<String, Resolution> preResolved) {
         if(propertyValue==null || propertyValue.getValue()==null){
             return null;
         }
-        String value = propertyValue.getValue();
-        StringTokenizer tokenizer = new StringTokenizer(value, "${}", true);
-        StringBuilder resolvedValue = new StringBuilder();
-        StringBuilder current = new StringBuilder();
-        while (tokenizer.hasMoreTokens()) {
-            String token = tokenizer.nextToken();
-            switch (token) {
-                case "$":
-                    String nextToken = tokenizer.hasMoreTokens()?tokenizer.nextToken():"";
-                    if (!"{".equals(nextToken)) {
-                        current.append(token);
-                        current.append(nextToken);
-                        break;
-                    }
-                    if(value.indexOf('}')<=0){
-                        current.append(token);
-                        current.append(nextToken);
-                        break;
-                    }
-                    String subExpression = parseSubExpression(tokenizer, value);
-                    String res = evaluateInternal(propertyValue, subExpression, maskUnresolved);
-                    if(res!=null) {
-                        current.append(res);
-                    }
-                    break;
-                default:
-                    current.append(token);
-            }
+        ExpressionTemplate template = ExpressionTemplate.of(propertyValue.getValue());
+        if(template.isConstant()){
+            return propertyValue;
         }
-        if (current.length() > 0) {
-            resolvedValue.append(current);
+        if(!provenanceEnabled){
+            if(preResolved==null){
+                return propertyValue.setValue(template.evaluate(maskUnresolved?maskingEvaluator:nonMaskingEvaluator));
+            }
+            return propertyValue.setValue(template.evaluate(
+                    expression -> evaluateInternal(expression, maskUnresolved, preResolved, null)));
         }
-        return propertyValue.setValue(resolvedValue.toString());
+        Provenance provenance = new Provenance();
+        String value = template.evaluate(
+                expression -> evaluateInternal(expression, maskUnresolved, preResolved, provenance));
+        provenance.applyTo(propertyValue);
+        return propertyValue.setValue(value);
     }
 
     @Override
     public Collection<ExpressionResolver> getResolvers() {
-        List<ExpressionResolver> resolvers = new ArrayList<>();
-        resolvers.addAll(ServiceContextManager.getServiceContext().getServices(ExpressionResolver.class));
-        resolvers.sort(RESOLVER_COMPARATOR);
-        return resolvers;
+        return resolverTable().getResolvers();
+    }
+
+    @Override
+    public void init(ClassLoader classLoader) {
+        this.classLoader = Objects.requireNonNull(classLoader);
+        this.resolverTable = null;
+    }
+
+    @Override
+    public ClassLoader getClassLoader() {
+        return classLoader;
     }
 
     /**
-     * Parses subexpression from tokenizer, hereby counting all open and closed brackets, but ignoring any
-     * getMeta characters.
-     * @param tokenizer the current tokenizer instance
-     * @param valueToBeFiltered subexpression to be filtered for
-     * @return the parsed sub expression
+     * Evaluates the configuration keys the given template depends on. Only expressions resolved by the
+     * {@link ConfigResolver}, {@link SystemPropertyResolver}, {@link EnvironmentPropertyResolver} or the default
+     * system/environment lookup have such dependencies, expressions targeting any other resolvers (e.g. files or
+     * URLs) may change without any configuration change.
+     *
+     * @param template the template, not null.
+     * @return the keys the template depends on, or null, if the resolved value must not be cached.
      */
-    private String parseSubExpression(StringTokenizer tokenizer, String valueToBeFiltered) {
-        StringBuilder expression = new StringBuilder();
-        boolean escaped = false;
-        while(tokenizer.hasMoreTokens()) {
-            String token = tokenizer.nextToken();
-            switch (token) {
-                case "\\":
-                    if(!escaped) {
-                        escaped = true;
-
-                    } else {
-                        expression.append(token);
-                        escaped = false;
-                    }
-                    break;
-                case "{":
-                    if(!escaped) {
-                        LOG.warning("Ignoring not escaped '{' in : " + valueToBeFiltered);
-                    }
-                    expression.append(token);
-                    escaped = false;
-                    break;
-                case "$":
-                    if(!escaped) {
-                        LOG.warning("Ignoring not escaped '$' in : " + valueToBeFiltered);
-                    }
-                    expression.append(token);
-                    escaped = false;
-                    break;
-                case "}":
-                    if(escaped) {
-                        expression.append(token);
-                        escaped = false;
-                    } else{
-                        return expression.toString();
-                    }
-                    break;
-                default:
-                    expression.append(token);
-                    escaped = false;
-                    break;
+    Set<String> getDependencies(ExpressionTemplate template) {
+        Set<String> keys = new HashSet<>();
+        ResolverTable table = resolverTable();
+        for(ExpressionTemplate.Segment segment:template.getSegments()){
+            if(!segment.expression){
+                continue;
+            }
+            ResolverTable.Entry entry = table.findResolver(segment.text);
+            if(entry==null){
+                keys.add(segment.text);
+            }else if(entry.resolver instanceof ConfigResolver
+                    || entry.resolver instanceof SystemPropertyResolver
+                    || entry.resolver instanceof EnvironmentPropertyResolver){
+                keys.add(segment.text.substring(entry.prefix.length()));
+            }else{
+                return null;
             }
         }
-        LOG.warning("Invalid expression syntax in: " + valueToBeFiltered + ", expression does not close!");
-            return valueToBeFiltered;
+        return keys;
+    }
+
+    /**
+     * Evaluates the resolver responsible for the given expression.
+     * @param expression the unresolved expression, not null.
+     * @return the matching resolver entry, or null.
+     */
+    ResolverTable.Entry findResolver(String expression) {
+        return resolverTable().findResolver(expression);
+    }
+
+    /**
+     * Access the resolver table, hereby (re)building it if not yet done or the service context has changed.
+     * @return the current resolver table, never null.
+     */
+    private ResolverTable resolverTable() {
+        ServiceContext serviceContext = ServiceContextManager.getServiceContext(classLoader);
+        ResolverTable table = this.resolverTable;
+        if(table==null || !table.isValidFor(serviceContext)){
+            LOG.finest("Building expression resolver table for " + serviceContext);
+            table = new ResolverTable(serviceContext, RESOLVER_COMPARATOR);
+            this.resolverTable = table;
+        }
+        return table;
     }
 
     /**
      * Evaluates the expression parsed, hereby checking for prefixes and trying otherwise all available resolvers,
      * based on priority.
      *
-     * @param propertyValue the current value, not null.
      * @param unresolvedExpression the parsed, but unresolved expression
      * @param maskUnresolved if true, not found expression parts will be replaced by surrounding with [].
      *                     Setting to false will replace the createValue with an empty String.
+     * @param preResolved the expressions already resolved, or null.
+     * @param provenance the provenance record the resolver used is added to, or null.
      * @return the resolved expression, or null.
      */
-    private String evaluateInternal(PropertyValue propertyValue, String unresolvedExpression, boolean maskUnresolved) {
-        String value = null;
-        // 1 check for explicit prefix
-        String resolverRefs = propertyValue.getMeta("resolvers");
-        if(resolverRefs==null){
-            resolverRefs = "";
+    private String evaluateInternal(String unresolvedExpression, boolean maskUnresolved,
+                                    Map<String, Resolution> preResolved, Provenance provenance) {
+        Resolution resolution = preResolved==null?null:preResolved.get(unresolvedExpression);
+        if(resolution==null){
+            return resolve(unresolvedExpression, maskUnresolved, provenance);
+        }
+        if(provenance!=null && resolution.resolverRef!=null){
+            provenance.add(resolution.resolverRef);
+        }
+        return resolution.value;
+    }
+
+    /**
+     * Resolves a single expression for storing it as pre-resolved expression. The resolver reference is only
+     * recorded, if provenance is enabled. This method does not have any side effects and can be called concurrently.
+     *
+     * @param unresolvedExpression the parsed, but unresolved expression
+     * @param maskUnresolved if true, not found expression parts will be replaced by surrounding with [].
+     * @return the resolution, never null.
+     */
+    Resolution resolve(String unresolvedExpression, boolean maskUnresolved) {
+        if(!provenanceEnabled){
+            return new Resolution(resolve(unresolvedExpression, maskUnresolved, null), null);
         }
-        Collection<ExpressionResolver> resolvers = getResolvers();
-        for(ExpressionResolver resolver:resolvers){
-            if(unresolvedExpression.startsWith(resolver.getResolverPrefix())){
-                value = resolver.evaluate(unresolvedExpression.substring(resolver.getResolverPrefix().length()));
-                if(value!=null){
-                    resolverRefs += resolver.getClass().getName() + ", ";
-                    propertyValue.setMeta("resolvers", resolverRefs);
+        Provenance provenance = new Provenance();
+        String value = resolve(unresolvedExpression, maskUnresolved, provenance);
+        return new Resolution(value, provenance.size()==0?null:provenance.get(0));
+    }
+
+    /**
+     * Resolves a single expression, hereby checking for prefixes and trying otherwise the system and environment
+     * properties. This method does not have any side effects besides recording the resolver used and can be
+     * called concurrently.
+     *
+     * @param unresolvedExpression the parsed, but unresolved expression
+     * @param maskUnresolved if true, not found expression parts will be replaced by surrounding with [].
+     * @param provenance the provenance record the resolver used is added to, or null.
+     * @return the resolved expression, or null.
+     */
+    private String resolve(String unresolvedExpression, boolean maskUnresolved, Provenance provenance) {
+        // 1 check for explicit prefix
+        ResolverTable.Entry resolver = resolverTable().findResolver(unresolvedExpression);
+        if(resolver!=null){
+            String value = resolver.evaluate(unresolvedExpression);
+            if(value!=null){
+                if(provenance!=null){
+                    provenance.add(resolver.resolver.getClass().getName());
                 }
-                break;
+                return value;
             }
         }
         // Lookup system and environment props as defaults...
-        if(value==null){
-            value = System.getProperty(unresolvedExpression);
-            if(value!=null){
-                resolverRefs += "system-property, ";
-                propertyValue.setMeta("resolvers", resolverRefs);
+        String value = PropertySnapshots.getSystemProperty(unresolvedExpression);
+        if(value!=null){
+            if(provenance!=null){
+                provenance.add("system-property");
             }
+            return value;
         }
-        if(value==null){
-            value = System.getenv(unresolvedExpression);
-            if(value!=null){
-                resolverRefs += "environment-property, ";
-                propertyValue.setMeta("resolvers", resolverRefs);
+        value = PropertySnapshots.getEnvironmentProperty(unresolvedExpression);
+        if(value!=null){
+            if(provenance!=null){
+                provenance.add("environment-property");
             }
+            return value;
         }
-        if(value==null){
-            LOG.log(Level.WARNING, "Unresolvable expression encountered " + unresolvedExpression);
-            if(maskUnresolved){
-                value = "?{" + unresolvedExpression + '}';
-                resolverRefs += "<unresolved>, ";
-                propertyValue.setMeta("resolvers", resolverRefs);
+        LOG.log(Level.WARNING, "Unresolvable expression encountered " + unresolvedExpression);
+        if(maskUnresolved){
+            if(provenance!=null){
+                provenance.add("<unresolved>");
             }
+            return "?{" + unresolvedExpression + '}';
         }
-        return value;
+        return null;
     }
 
+    /**
+     * The result of resolving a single expression.
+     */
+    static final class Resolution {
+        /** The resolved value, or null. */
+        final String value;
+        /** The reference to the resolver used, or null. */
+        final String resolverRef;
+
+        Resolution(String value, String resolverRef) {
+            this.value = value;
+            this.resolverRef = resolverRef;
+        }
+    }
 
 }
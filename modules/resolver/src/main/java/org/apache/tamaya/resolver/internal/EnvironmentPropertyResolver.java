@@ -36,7 +36,7 @@ public final class EnvironmentPropertyResolver implements ExpressionResolver{
 
     @Override
     public String evaluate(String expression){
-        return System.getenv(expression);
+        return PropertySnapshots.getEnvironmentProperty(expression);
     }
 
 }
@@ -19,6 +19,8 @@
 package org.apache.tamaya.resolver.internal;
 
 import org.apache.tamaya.ConfigException;
+import org.apache.tamaya.Configuration;
+import org.apache.tamaya.events.ConfigMetrics;
 import org.apache.tamaya.resolver.spi.ExpressionEvaluator;
 import org.apache.tamaya.spi.ClassloaderAware;
 import org.apache.tamaya.spi.FilterContext;
@@ -27,7 +29,11 @@ import org.apache.tamaya.spi.PropertyValue;
 import org.apache.tamaya.spi.ServiceContextManager;
 
 import javax.annotation.Priority;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.logging.Logger;
 
 /**
@@ -40,8 +46,37 @@ public class ExpressionResolutionFilter implements PropertyFilter, ClassloaderAw
 
     private static final Logger LOG = Logger.getLogger(ExpressionResolutionFilter.class.getName());
 
+    /**
+     * Flag if the optional {@code tamaya-events} module, providing the metrics, is on the classpath.
+     */
+    private static final boolean METRICS_AVAILABLE = checkForMetrics();
+
     private ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
 
+    /**
+     * The optional cache of resolved values, null if caching is disabled.
+     */
+    private final ResolvedValueCache valueCache = ResolverConfig.isValueCacheEnabled()?
+            new ResolvedValueCache(ResolverConfig.getValueCacheSize()):null;
+
+    /**
+     * Flag if map-scoped filtering resolves all expressions of the map up front.
+     */
+    private final boolean bulkResolution = ResolverConfig.isBulkResolutionEnabled();
+
+    /**
+     * The maximal number of bulk resolutions kept for maps filtered concurrently.
+     */
+    private static final int MAX_BULK_RESOLUTIONS = 4;
+
+    /**
+     * The bulk resolutions of the maps filtered recently, most recent first. The resolutions only reference their
+     * maps weakly, the number kept is bounded by {@link #MAX_BULK_RESOLUTIONS}.
+     */
+    private volatile BulkResolution[] recentBulks = new BulkResolution[0];
+
+    private final Object bulkLock = new Object();
+
     @Override
     public void init(ClassLoader classLoader) {
         this.classLoader = Objects.requireNonNull(classLoader);
@@ -53,6 +88,16 @@ public class ExpressionResolutionFilter implements PropertyFilter, ClassloaderAw
         return classLoader;
     }
 
+    private static boolean checkForMetrics() {
+        try {
+            Class.forName("org.apache.tamaya.events.ConfigMetrics", false,
+                    ExpressionResolutionFilter.class.getClassLoader());
+            return true;
+        } catch (Exception | LinkageError e) {
+            return false;
+        }
+    }
+
     private final ExpressionEvaluator evaluator(){
         ExpressionEvaluator evaluator = ServiceContextManager.getServiceContext(classLoader).getService(ExpressionEvaluator.class);
         if(evaluator==null){
@@ -100,12 +145,132 @@ public class ExpressionResolutionFilter implements PropertyFilter, ClassloaderAw
      */
     @Override
     public PropertyValue filterProperty(PropertyValue valueToBeFiltered, FilterContext context){
+        if(!METRICS_AVAILABLE){
+            return resolve(valueToBeFiltered, context);
+        }
+        long start = ConfigMetrics.start();
+        try{
+            return resolve(valueToBeFiltered, context);
+        }finally{
+            ConfigMetrics.filtered(ExpressionResolutionFilter.class.getName(), start);
+        }
+    }
+
+    private PropertyValue resolve(PropertyValue valueToBeFiltered, FilterContext context){
         LOG.finest("Resolving " + valueToBeFiltered);
-        PropertyValue newVal = evaluator().evaluateExpression(valueToBeFiltered, true);
+        ExpressionEvaluator evaluator = evaluator();
+        if(bulkResolution && !context.isSinglePropertyScoped() && evaluator instanceof DefaultExpressionEvaluator){
+            return filterBulk(valueToBeFiltered, context, (DefaultExpressionEvaluator)evaluator);
+        }
+        if(valueCache!=null && evaluator instanceof DefaultExpressionEvaluator){
+            return filterCached(valueToBeFiltered, (DefaultExpressionEvaluator)evaluator);
+        }
+        PropertyValue newVal = evaluator.evaluateExpression(valueToBeFiltered, true);
         if(newVal!=null){
             return newVal;
         }
         return null;
     }
 
+    /**
+     * Resolves the value using the expressions resolved up front for the whole map filtered.
+     *
+     * @param valueToBeFiltered the value, not null.
+     * @param context the filter context, not null.
+     * @param evaluator the evaluator, not null.
+     * @return the resolved value.
+     */
+    private PropertyValue filterBulk(PropertyValue valueToBeFiltered, FilterContext context,
+                                     DefaultExpressionEvaluator evaluator){
+        BulkResolution bulk = bulkResolution(context.getConfigEntries(), evaluator);
+        return evaluator.evaluateExpression(valueToBeFiltered, true, bulk.getPreResolved());
+    }
+
+    /**
+     * Get the bulk resolution of the given map, resolving the map, if it is not among the maps filtered recently.
+     * The filter is called once per entry without a notification, when the map is done, so the resolutions are not
+     * scoped to a thread, but shared and replaced by the resolutions of the maps filtered later.
+     *
+     * @param entries the map filtered, not null.
+     * @param evaluator the evaluator, not null.
+     * @return the bulk resolution, never null.
+     */
+    private BulkResolution bulkResolution(Map<String, PropertyValue> entries, DefaultExpressionEvaluator evaluator){
+        for(BulkResolution bulk:recentBulks){
+            if(bulk.isFor(entries)){
+                return bulk;
+            }
+        }
+        BulkResolution bulk = new BulkResolution(entries, evaluator, isOnlyFilter());
+        synchronized (bulkLock){
+            List<BulkResolution> bulks = new ArrayList<>(MAX_BULK_RESOLUTIONS);
+            bulks.add(bulk);
+            for(BulkResolution recent:recentBulks){
+                if(bulks.size()<MAX_BULK_RESOLUTIONS && !recent.isCollected()){
+                    bulks.add(recent);
+                }
+            }
+            recentBulks = bulks.toArray(new BulkResolution[bulks.size()]);
+        }
+        return bulk;
+    }
+
+    /**
+     * Checks if this filter is the only filter of the configuration. Only then the values of a map filtered equal
+     * the values read by {@code Configuration.get}, so {@code conf:} references can be resolved from the map.
+     *
+     * @return true, if no other filter is registered.
+     */
+    private boolean isOnlyFilter(){
+        for(PropertyFilter filter:Configuration.current(classLoader).getContext().getPropertyFilters()){
+            if(!(filter instanceof ExpressionResolutionFilter)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Resolves the value using the resolved value cache. Values depending on resolvers, whose results may change
+     * without a configuration change, are not cached.
+     *
+     * @param valueToBeFiltered the value, not null.
+     * @param evaluator the evaluator, not null.
+     * @return the resolved value.
+     */
+    private PropertyValue filterCached(PropertyValue valueToBeFiltered, DefaultExpressionEvaluator evaluator){
+        String rawValue = valueToBeFiltered==null?null:valueToBeFiltered.getValue();
+        if(rawValue==null){
+            return evaluator.evaluateExpression(valueToBeFiltered, true);
+        }
+        ExpressionTemplate template = ExpressionTemplate.of(rawValue);
+        if(template.isConstant()){
+            return valueToBeFiltered;
+        }
+        ResolvedValueCache.Entry entry = valueCache.get(rawValue);
+        if(entry!=null){
+            if(entry.resolvers!=null){
+                valueToBeFiltered.setMeta(Provenance.META_KEY, entry.resolvers);
+            }
+            return valueToBeFiltered.setValue(entry.value);
+        }
+        Set<String> dependencies = evaluator.getDependencies(template);
+        if(dependencies==null){
+            return evaluator.evaluateExpression(valueToBeFiltered, true);
+        }
+        long generation = valueCache.getGeneration();
+        PropertyValue newVal;
+        valueCache.beginResolution(dependencies);
+        try{
+            newVal = evaluator.evaluateExpression(valueToBeFiltered, true);
+        }finally{
+            dependencies = valueCache.endResolution();
+        }
+        if(newVal!=null && newVal.getValue()!=null){
+            valueCache.put(rawValue, new ResolvedValueCache.Entry(newVal.getValue(), newVal.getMeta(Provenance.META_KEY),
+                    dependencies), generation);
+        }
+        return newVal;
+    }
+
 }
@@ -0,0 +1,277 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.resolver.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Immutable, pre-parsed form of a raw configuration value. A template consists of an ordered list of
+ * {@link Segment}s, each being either literal text or an unresolved expression (the part between
+ * <code>${</code> and <code>}</code>). Parsing is done once per distinct raw value, the resulting templates are
+ * kept in a bounded cache, so evaluating the same raw value again does not tokenize it again.
+ */
+final class ExpressionTemplate {
+
+    private static final Logger LOG = Logger.getLogger(ExpressionTemplate.class.getName());
+
+    /**
+     * Template used for all values that do not contain any expression.
+     */
+    static final ExpressionTemplate CONSTANT = new ExpressionTemplate(Collections.<Segment>emptyList());
+
+    /**
+     * The compiled templates, keyed by raw value.
+     */
+    private static final Map<String, ExpressionTemplate> CACHE = new ConcurrentHashMap<>();
+
+    private static final int MAX_CACHE_SIZE = ResolverConfig.getTemplateCacheSize();
+
+    private final Segment[] segments;
+
+    private final int literalLength;
+
+    private ExpressionTemplate(List<Segment> segments) {
+        this.segments = segments.toArray(new Segment[segments.size()]);
+        int length = 0;
+        for (Segment segment : this.segments) {
+            if (!segment.expression) {
+                length += segment.text.length();
+            }
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * Access the compiled template for the given raw value. Values not containing any {@code '$'} are not
+     * parsed nor cached at all.
+     *
+     * @param value the raw value, not null.
+     * @return the template, never null. If the value does not contain any expression, {@link #CONSTANT}
+     * is returned.
+     */
+    static ExpressionTemplate of(String value) {
+        if (value.indexOf('$') < 0) {
+            return CONSTANT;
+        }
+        ExpressionTemplate template = CACHE.get(value);
+        if (template == null) {
+            template = compile(value);
+            if (MAX_CACHE_SIZE > 0) {
+                if (CACHE.size() >= MAX_CACHE_SIZE) {
+                    LOG.finest("Expression template cache is full, clearing it.");
+                    CACHE.clear();
+                }
+                CACHE.put(value, template);
+            }
+        }
+        return template;
+    }
+
+    /**
+     * Clears all cached templates.
+     */
+    static void clearCache() {
+        CACHE.clear();
+    }
+
+    /**
+     * Parses the given raw value. This method keeps exactly the syntax rules as applied by the former
+     * tokenizer based evaluation.
+     *
+     * @param value the raw value, not null.
+     * @return the new template, never null.
+     */
+    static ExpressionTemplate compile(String value) {
+        List<Segment> segments = new ArrayList<>();
+        StringTokenizer tokenizer = new StringTokenizer(value, "${}", true);
+        StringBuilder current = new StringBuilder();
+        while (tokenizer.hasMoreTokens()) {
+            String token = tokenizer.nextToken();
+            switch (token) {
+                case "$":
+                    String nextToken = tokenizer.hasMoreTokens()?tokenizer.nextToken():"";
+                    if (!"{".equals(nextToken)) {
+                        current.append(token);
+                        current.append(nextToken);
+                        break;
+                    }
+                    if(value.indexOf('}')<=0){
+                        current.append(token);
+                        current.append(nextToken);
+                        break;
+                    }
+                    if(current.length()>0){
+                        segments.add(new Segment(current.toString(), false));
+                        current.setLength(0);
+                    }
+                    segments.add(new Segment(parseSubExpression(tokenizer, value), true));
+                    break;
+                default:
+                    current.append(token);
+            }
+        }
+        if(current.length()>0){
+            segments.add(new Segment(current.toString(), false));
+        }
+        for(Segment segment:segments){
+            if(segment.expression){
+                return new ExpressionTemplate(segments);
+            }
+        }
+        return CONSTANT;
+    }
+
+    /**
+     * Parses subexpression from tokenizer, hereby counting all open and closed brackets, but ignoring any
+     * getMeta characters.
+     * @param tokenizer the current tokenizer instance
+     * @param valueToBeFiltered subexpression to be filtered for
+     * @return the parsed sub expression
+     */
+    private static String parseSubExpression(StringTokenizer tokenizer, String valueToBeFiltered) {
+        StringBuilder expression = new StringBuilder();
+        boolean escaped = false;
+        while(tokenizer.hasMoreTokens()) {
+            String token = tokenizer.nextToken();
+            switch (token) {
+                case "\\":
+                    if(!escaped) {
+                        escaped = true;
+
+                    } else {
+                        expression.append(token);
+                        escaped = false;
+                    }
+                    break;
+                case "{":
+                    if(!escaped) {
+                        LOG.warning("Ignoring not escaped '{' in : " + valueToBeFiltered);
+                    }
+                    expression.append(token);
+                    escaped = false;
+                    break;
+                case "$":
+                    if(!escaped) {
+                        LOG.warning("Ignoring not escaped '$' in : " + valueToBeFiltered);
+                    }
+                    expression.append(token);
+                    escaped = false;
+                    break;
+                case "}":
+                    if(escaped) {
+                        expression.append(token);
+                        escaped = false;
+                    } else{
+                        return expression.toString();
+                    }
+                    break;
+                default:
+                    expression.append(token);
+                    escaped = false;
+                    break;
+            }
+        }
+        LOG.warning("Invalid expression syntax in: " + valueToBeFiltered + ", expression does not close!");
+        return valueToBeFiltered;
+    }
+
+    /**
+     * Checks if this template contains any expressions.
+     * @return true, if the template evaluates always to the raw value.
+     */
+    boolean isConstant() {
+        return segments.length == 0;
+    }
+
+    /**
+     * Access the segments of this template.
+     * @return the segments, never null.
+     */
+    Segment[] getSegments() {
+        return segments.clone();
+    }
+
+    /**
+     * Evaluates this template, hereby passing each expression segment to the given evaluation function.
+     * @param function the function resolving expressions, not null. Returning null for an expression
+     *                 omits it from the result.
+     * @return the evaluated value, never null.
+     */
+    String evaluate(SegmentEvaluator function) {
+        StringBuilder result = new StringBuilder(literalLength + 16 * segments.length);
+        for (Segment segment : segments) {
+            if (segment.expression) {
+                String res = function.evaluate(segment.text);
+                if (res != null) {
+                    result.append(res);
+                }
+            } else {
+                result.append(segment.text);
+            }
+        }
+        return result.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder("ExpressionTemplate[");
+        for (Segment segment : segments) {
+            b.append(segment);
+        }
+        return b.append(']').toString();
+    }
+
+    /**
+     * Function evaluating a single unresolved expression.
+     */
+    interface SegmentEvaluator {
+        /**
+         * Evaluates the expression.
+         * @param expression the unresolved expression, not null.
+         * @return the resolved value, or null.
+         */
+        String evaluate(String expression);
+    }
+
+    /**
+     * A single part of a template.
+     */
+    static final class Segment {
+        /** The literal text, or the unresolved expression. */
+        final String text;
+        /** Flag if this segment is an expression. */
+        final boolean expression;
+
+        Segment(String text, boolean expression) {
+            this.text = text;
+            this.expression = expression;
+        }
+
+        @Override
+        public String toString() {
+            return expression ? "${" + text + '}' : text;
+        }
+    }
+}
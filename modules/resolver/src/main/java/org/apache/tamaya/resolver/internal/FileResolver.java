@@ -21,10 +21,16 @@ package org.apache.tamaya.resolver.internal;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Collection;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -40,6 +46,10 @@ import org.apache.tamaya.spi.ServiceContextManager;
  *
  * <p>If the {@code Resources} module is available this module is used for resolving the expression. It can be
  * explicitly addressed by prefixing {@code file:}, e.g. {@code ${file:c:/temp/mytext.txt}}.</p>
+ *
+ * <p>File contents are cached and revalidated on access using the file's modification time and size, see
+ * {@code tamaya.resolver.content-cache.size} and {@code tamaya.resolver.content-cache.max-age}. Files larger than
+ * {@code tamaya.resolver.mmap-threshold} are read using a memory mapped buffer.</p>
  */
 @Priority(400)
 public final class FileResolver implements ExpressionResolver {
@@ -54,6 +64,17 @@ public final class FileResolver implements ExpressionResolver {
      */
     private static final boolean IS_RESOURCE_MODULE_AVAILABLE = checkResourceModule();
 
+    /**
+     * The file size from which on files are memory mapped.
+     */
+    private static final long MMAP_THRESHOLD = ResolverConfig.getMmapThreshold();
+
+    /**
+     * The cached file contents.
+     */
+    private final ContentCache contentCache = new ContentCache(ResolverConfig.getContentCacheSize(),
+            ResolverConfig.getContentCacheMaxAge());
+
     /**
      * Checks if the Tamaya ResourceLoader can be loaded from the classpath.
      *
@@ -81,14 +102,58 @@ public final class FileResolver implements ExpressionResolver {
         }
         
         try {
-            byte[] encoded = Files.readAllBytes(Paths.get(url.toURI()));
-            return new String(encoded, UTF_8);
+            return readContent(Paths.get(url.toURI()));
         } catch (Exception e) {
             LOG.log(Level.FINEST, "Could not resolve URL: " + expression, e);
             return null;
         }
     }
 
+    /**
+     * Reads the file content, hereby using the content cache. Cached contents are revalidated using the file's
+     * modification time and size.
+     *
+     * @param path the file path, not null.
+     * @return the file's content.
+     * @throws IOException if the file cannot be read.
+     */
+    private String readContent(Path path) throws IOException {
+        if (!contentCache.isEnabled()) {
+            return read(path, Files.size(path));
+        }
+        String key = path.toString();
+        ContentCache.Entry entry = contentCache.get(key);
+        if (entry != null && contentCache.isFresh(entry)) {
+            return entry.content;
+        }
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        if (entry != null && entry.lastModified == lastModified && entry.size == attributes.size()) {
+            return entry.validated().content;
+        }
+        String content = read(path, attributes.size());
+        contentCache.put(key, new ContentCache.Entry(content, lastModified, attributes.size(), null));
+        return content;
+    }
+
+    /**
+     * Reads the file content, using a memory mapped buffer for large files.
+     *
+     * @param path the file path, not null.
+     * @param size the file size.
+     * @return the file's content.
+     * @throws IOException if the file cannot be read.
+     */
+    private String read(Path path, long size) throws IOException {
+        if (size < MMAP_THRESHOLD) {
+            return new String(Files.readAllBytes(path), UTF_8);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return UTF_8.decode(buffer).toString();
+        }
+    }
+
     private URL getUrl(String expression) {
         if (IS_RESOURCE_MODULE_AVAILABLE) {
             ResourceResolver resolver = ServiceContextManager.getServiceContext().getService(ResourceResolver.class);
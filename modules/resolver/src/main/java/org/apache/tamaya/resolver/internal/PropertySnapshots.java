@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.resolver.internal;
+
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Lookup of system and environment properties. If enabled by {@code tamaya.resolver.snapshot.enabled}, lookups
+ * are served from immutable snapshots instead of calling {@link System#getProperty(String)}, which synchronizes
+ * on the system {@link Properties}. The environment is copied once, since it cannot change within a running VM.
+ * The system property snapshot is refreshed, when
+ * <ul>
+ *     <li>the system properties instance has been replaced,</li>
+ *     <li>the modification count (or, if not accessible, the size) of the system properties has changed,</li>
+ *     <li>or the snapshot is older than {@code tamaya.resolver.snapshot.max-age} ms. This is needed, since
+ *     replacing the value of an existing property changes neither the size nor the modification count.</li>
+ * </ul>
+ */
+final class PropertySnapshots {
+
+    private static final Logger LOG = Logger.getLogger(PropertySnapshots.class.getName());
+
+    private static final boolean ENABLED = ResolverConfig.isSnapshotEnabled();
+
+    private static final long MAX_AGE = ResolverConfig.getSnapshotMaxAge();
+
+    /** The {@code Hashtable.modCount} field, null if not accessible or not maintained (Java 9+). */
+    private static final Field MOD_COUNT = modCountField();
+
+    private static volatile Map<String, String> envSnapshot;
+
+    private static volatile SystemSnapshot sysSnapshot;
+
+    private PropertySnapshots() {
+    }
+
+    /**
+     * Checks if lookups are served from snapshots.
+     * @return true, if snapshots are enabled.
+     */
+    static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Get a system property.
+     * @param key the key, not null.
+     * @return the value, or null.
+     */
+    static String getSystemProperty(String key) {
+        if (!ENABLED) {
+            return System.getProperty(key);
+        }
+        return systemSnapshot().get(key);
+    }
+
+    /**
+     * Get an environment property.
+     * @param key the key, not null.
+     * @return the value, or null.
+     */
+    static String getEnvironmentProperty(String key) {
+        if (!ENABLED) {
+            return System.getenv(key);
+        }
+        Map<String, String> env = envSnapshot;
+        if (env == null) {
+            env = Collections.unmodifiableMap(new HashMap<>(System.getenv()));
+            envSnapshot = env;
+        }
+        return env.get(key);
+    }
+
+    private static SystemSnapshot systemSnapshot() {
+        Properties props = System.getProperties();
+        long version = version(props);
+        SystemSnapshot snapshot = sysSnapshot;
+        if (snapshot != null && snapshot.isCurrent(props, version)) {
+            return snapshot;
+        }
+        synchronized (PropertySnapshots.class) {
+            snapshot = sysSnapshot;
+            if (snapshot == null || !snapshot.isCurrent(props, version)) {
+                snapshot = new SystemSnapshot(props, version, MAX_AGE);
+                sysSnapshot = snapshot;
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Get the version of the given properties, which changes when properties are added or removed.
+     * @param props the properties, not null.
+     * @return the modification count, or the size, if the modification count is not available.
+     */
+    static long version(Properties props) {
+        if (MOD_COUNT != null) {
+            try {
+                return MOD_COUNT.getInt(props);
+            } catch (IllegalAccessException e) {
+                // fall through
+            }
+        }
+        return props.size();
+    }
+
+    private static Field modCountField() {
+        try {
+            // Since Java 9 Properties delegates to an internal map and does not maintain the modification count.
+            Properties.class.getDeclaredField("map");
+            return null;
+        } catch (NoSuchFieldException e) {
+            // Java 8, use the modification count
+        }
+        try {
+            Field field = Hashtable.class.getDeclaredField("modCount");
+            field.setAccessible(true);
+            return field;
+        } catch (Exception e) {
+            LOG.log(Level.FINEST, "Cannot access modification count of system properties, using size.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Immutable copy of the system properties.
+     */
+    static final class SystemSnapshot {
+        private final Properties source;
+        private final long version;
+        private final long maxAge;
+        private final long createdAt = System.currentTimeMillis();
+        private final Map<String, String> values = new HashMap<>();
+
+        /**
+         * Creates a new snapshot.
+         * @param source the properties to be copied, not null.
+         * @param version the version of the properties, see {@link #version(Properties)}.
+         * @param maxAge the time in ms the snapshot is valid, or a negative value for no expiry.
+         */
+        SystemSnapshot(Properties source, long version, long maxAge) {
+            this.source = source;
+            this.version = version;
+            this.maxAge = maxAge;
+            for (String key : source.stringPropertyNames()) {
+                values.put(key, source.getProperty(key));
+            }
+        }
+
+        String get(String key) {
+            return values.get(key);
+        }
+
+        boolean isCurrent(Properties props, long currentVersion) {
+            return source == props && version == currentVersion
+                    && (maxAge < 0 || System.currentTimeMillis() - createdAt < maxAge);
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.resolver.internal;
+
+import org.apache.tamaya.spi.PropertyValue;
+
+import java.util.Arrays;
+
+/**
+ * Records the resolvers used for evaluating the expressions of a single value. The resolver references
+ * are collected in a compact array and written to the {@code resolvers} metadata entry of the value only once,
+ * after all expressions have been evaluated.
+ */
+final class Provenance {
+
+    /** The metadata key the resolver references are written to. */
+    static final String META_KEY = "resolvers";
+
+    private String[] refs = new String[4];
+
+    private int size;
+
+    /**
+     * Adds a resolver reference.
+     * @param resolverRef the reference, not null.
+     */
+    void add(String resolverRef) {
+        if (size == refs.length) {
+            refs = Arrays.copyOf(refs, size * 2);
+        }
+        refs[size++] = resolverRef;
+    }
+
+    /**
+     * Get the number of references recorded.
+     * @return the number of references.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Get a reference recorded.
+     * @param index the index, less than {@link #size()}.
+     * @return the reference, never null.
+     */
+    String get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        return refs[index];
+    }
+
+    /**
+     * Writes the recorded references to the value's metadata, appending them to any references already present.
+     * Nothing is written, if no references were recorded.
+     * @param value the value, not null.
+     */
+    void applyTo(PropertyValue value) {
+        if (size == 0) {
+            return;
+        }
+        String existing = value.getMeta(META_KEY);
+        StringBuilder b = new StringBuilder(existing == null ? "" : existing);
+        for (int i = 0; i < size; i++) {
+            b.append(refs[i]).append(", ");
+        }
+        value.setMeta(META_KEY, b.toString());
+    }
+
+}
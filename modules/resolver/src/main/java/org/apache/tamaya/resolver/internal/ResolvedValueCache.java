@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.resolver.internal;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Cache of resolved values, keyed by the raw value. Each entry records the configuration keys it depends on,
+ * including the keys its referenced values depend on themselves, so a chain of {@code conf:} references is
+ * invalidated completely when any key along the chain changes.
+ * <p>
+ * Dependencies of nested resolutions are collected on a per thread stack: resolving {@code ${conf:b}} while
+ * resolving {@code a} evaluates {@code b} through the filter chain, and {@code b}'s dependencies are added to the
+ * dependencies of {@code a}.
+ */
+final class ResolvedValueCache {
+
+    private static final Logger LOG = Logger.getLogger(ResolvedValueCache.class.getName());
+
+    /**
+     * All caches created, used for broadcasting invalidations.
+     */
+    private static final Set<ResolvedValueCache> INSTANCES = Collections.newSetFromMap(
+            new WeakHashMap<ResolvedValueCache, Boolean>());
+
+    private static final ThreadLocal<Deque<Set<String>>> COLLECTORS = new ThreadLocal<Deque<Set<String>>>() {
+        @Override
+        protected Deque<Set<String>> initialValue() {
+            return new ArrayDeque<>();
+        }
+    };
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final Map<String, Set<String>> dependents = new ConcurrentHashMap<>();
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private final int maxSize;
+
+    /**
+     * Creates a new cache.
+     * @param maxSize the maximal number of entries.
+     */
+    ResolvedValueCache(int maxSize) {
+        this.maxSize = maxSize;
+        synchronized (INSTANCES) {
+            INSTANCES.add(this);
+        }
+    }
+
+    /**
+     * Invalidates all entries depending on any of the given keys in all caches.
+     * @param keys the changed keys, not null.
+     */
+    static void invalidateAll(Collection<String> keys) {
+        List<ResolvedValueCache> caches;
+        synchronized (INSTANCES) {
+            caches = new ArrayList<>(INSTANCES);
+        }
+        for (ResolvedValueCache cache : caches) {
+            cache.invalidate(keys);
+        }
+    }
+
+    /**
+     * Get the current generation of this cache. The generation is incremented on each invalidation.
+     * @return the generation.
+     */
+    long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Looks up a cached value. On a hit the dependencies of the entry are added to the dependencies of any
+     * resolution currently running on this thread.
+     * @param rawValue the raw value, not null.
+     * @return the entry found, or null.
+     */
+    Entry get(String rawValue) {
+        Entry entry = entries.get(rawValue);
+        if (entry != null) {
+            Set<String> collector = COLLECTORS.get().peek();
+            if (collector != null) {
+                collector.addAll(entry.dependencies);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Starts collecting dependencies of a resolution on the current thread.
+     * @param dependencies the direct dependencies of the value being resolved, not null.
+     */
+    void beginResolution(Set<String> dependencies) {
+        COLLECTORS.get().push(new HashSet<>(dependencies));
+    }
+
+    /**
+     * Ends the current resolution, hereby adding all collected dependencies to the enclosing resolution, if any.
+     * @return all dependencies collected, never null.
+     */
+    Set<String> endResolution() {
+        Deque<Set<String>> stack = COLLECTORS.get();
+        Set<String> collected = stack.pop();
+        Set<String> parent = stack.peek();
+        if (parent != null) {
+            parent.addAll(collected);
+        }
+        return collected;
+    }
+
+    /**
+     * Adds a resolved value, if no invalidation happened since the resolution has been started.
+     * @param rawValue the raw value, not null.
+     * @param entry the resolved entry, not null.
+     * @param startGeneration the generation read before resolving.
+     */
+    void put(String rawValue, Entry entry, long startGeneration) {
+        if (maxSize <= 0) {
+            return;
+        }
+        synchronized (this) {
+            if (generation.get() != startGeneration) {
+                return;
+            }
+            if (entries.size() >= maxSize) {
+                LOG.finest("Resolved value cache is full, clearing it.");
+                clear();
+            }
+            entries.put(rawValue, entry);
+            for (String key : entry.dependencies) {
+                dependents.computeIfAbsent(key, k -> ConcurrentHashMap.<String>newKeySet()).add(rawValue);
+            }
+        }
+    }
+
+    /**
+     * Invalidates all entries depending on any of the given keys.
+     * @param keys the changed keys, not null.
+     */
+    synchronized void invalidate(Collection<String> keys) {
+        generation.incrementAndGet();
+        for (String key : keys) {
+            Set<String> rawValues = dependents.remove(key);
+            if (rawValues != null) {
+                for (String rawValue : rawValues) {
+                    entries.remove(rawValue);
+                }
+            }
+        }
+    }
+
+    /**
+     * Clears this cache.
+     */
+    synchronized void clear() {
+        generation.incrementAndGet();
+        entries.clear();
+        dependents.clear();
+    }
+
+    /**
+     * Get the number of cached entries.
+     * @return the number of entries.
+     */
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * A resolved value.
+     */
+    static final class Entry {
+        /** The resolved value. */
+        final String value;
+        /** The resolvers meta entry, or null. */
+        final String resolvers;
+        /** The configuration keys this value depends on. */
+        final Set<String> dependencies;
+
+        Entry(String value, String resolvers, Set<String> dependencies) {
+            this.value = value;
+            this.resolvers = resolvers;
+            this.dependencies = Collections.unmodifiableSet(new HashSet<>(dependencies));
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.resolver.internal;
+
+import org.apache.tamaya.events.ConfigEvent;
+import org.apache.tamaya.events.ConfigEventListener;
+import org.apache.tamaya.events.ConfigurationChange;
+import org.apache.tamaya.events.PropertySourceChange;
+
+import java.beans.PropertyChangeEvent;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Listener that invalidates cached resolved values, when a {@link ConfigurationChange} or
+ * {@link PropertySourceChange} touches any of the keys they depend on. This listener is only active, if the
+ * {@code tamaya-events} module is on the classpath.
+ */
+public final class ResolvedValueCacheInvalidator implements ConfigEventListener {
+
+    @Override
+    public void onConfigEvent(ConfigEvent<?> event) {
+        Collection<PropertyChangeEvent> changes;
+        if (event instanceof ConfigurationChange) {
+            changes = ((ConfigurationChange) event).getChanges();
+        } else if (event instanceof PropertySourceChange) {
+            changes = ((PropertySourceChange) event).getChanges();
+        } else {
+            return;
+        }
+        if (changes.isEmpty()) {
+            return;
+        }
+        List<String> keys = new ArrayList<>(changes.size());
+        for (PropertyChangeEvent change : changes) {
+            keys.add(change.getPropertyName());
+        }
+        ResolvedValueCache.invalidateAll(keys);
+    }
+}
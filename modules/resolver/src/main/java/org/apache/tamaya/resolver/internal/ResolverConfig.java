@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.resolver.internal;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Singleton that reads the resolver settings. Since the resolver is part of the configuration filter chain,
+ * the settings can only be read from system or environment properties.
+ */
+final class ResolverConfig {
+
+    private static final Logger LOG = Logger.getLogger(ResolverConfig.class.getName());
+    private static final String TAMAYA_RESOLVER_TEMPLATE_CACHE_SIZE = "tamaya.resolver.template-cache.size";
+    private static final String TAMAYA_RESOLVER_VALUE_CACHE_ENABLED = "tamaya.resolver.value-cache.enabled";
+    private static final String TAMAYA_RESOLVER_VALUE_CACHE_SIZE = "tamaya.resolver.value-cache.size";
+    private static final String TAMAYA_RESOLVER_CONTENT_CACHE_SIZE = "tamaya.resolver.content-cache.size";
+    private static final String TAMAYA_RESOLVER_CONTENT_CACHE_MAX_AGE = "tamaya.resolver.content-cache.max-age";
+    private static final String TAMAYA_RESOLVER_MMAP_THRESHOLD = "tamaya.resolver.mmap-threshold";
+    private static final String TAMAYA_RESOLVER_BULK_ENABLED = "tamaya.resolver.bulk.enabled";
+    private static final String TAMAYA_RESOLVER_BULK_PARALLELISM = "tamaya.resolver.bulk.parallelism";
+    private static final String TAMAYA_RESOLVER_SNAPSHOT_ENABLED = "tamaya.resolver.snapshot.enabled";
+    private static final String TAMAYA_RESOLVER_SNAPSHOT_MAX_AGE = "tamaya.resolver.snapshot.max-age";
+    private static final String TAMAYA_RESOLVER_PROVENANCE_ENABLED = "tamaya.resolver.provenance.enabled";
+
+    private ResolverConfig() {
+    }
+
+    /**
+     * Get the maximal number of compiled expression templates cached from system/environment property
+     * {@code tamaya.resolver.template-cache.size} (default 1024). Setting it to {@code 0} disables caching.
+     *
+     * @return the maximal cache size.
+     */
+    static int getTemplateCacheSize() {
+        return getInt(TAMAYA_RESOLVER_TEMPLATE_CACHE_SIZE, 1024);
+    }
+
+    /**
+     * Checks if resolved values should be cached from system/environment property
+     * {@code tamaya.resolver.value-cache.enabled} (default false).
+     *
+     * @return true, if resolved values are cached.
+     */
+    static boolean isValueCacheEnabled() {
+        return getBoolean(TAMAYA_RESOLVER_VALUE_CACHE_ENABLED, false);
+    }
+
+    /**
+     * Get the maximal number of resolved values cached from system/environment property
+     * {@code tamaya.resolver.value-cache.size} (default 4096).
+     *
+     * @return the maximal cache size.
+     */
+    static int getValueCacheSize() {
+        return getInt(TAMAYA_RESOLVER_VALUE_CACHE_SIZE, 4096);
+    }
+
+    /**
+     * Get the maximal memory in bytes used for caching file and URL contents from system/environment property
+     * {@code tamaya.resolver.content-cache.size} (default 4 MB). Setting it to {@code 0} disables caching.
+     *
+     * @return the maximal cache size in bytes.
+     */
+    static long getContentCacheSize() {
+        return getLong(TAMAYA_RESOLVER_CONTENT_CACHE_SIZE, 4L * 1024 * 1024);
+    }
+
+    /**
+     * Get the time in ms cached file and URL contents are used without checking their source from
+     * system/environment property {@code tamaya.resolver.content-cache.max-age} (default 0, meaning the source
+     * is checked on every access).
+     *
+     * @return the max age in ms.
+     */
+    static long getContentCacheMaxAge() {
+        return getLong(TAMAYA_RESOLVER_CONTENT_CACHE_MAX_AGE, 0L);
+    }
+
+    /**
+     * Get the file size in bytes from which on files are read using a memory mapped buffer from system/environment
+     * property {@code tamaya.resolver.mmap-threshold} (default 1 MB).
+     *
+     * @return the threshold in bytes.
+     */
+    static long getMmapThreshold() {
+        return getLong(TAMAYA_RESOLVER_MMAP_THRESHOLD, 1024L * 1024);
+    }
+
+    /**
+     * Checks if map-scoped filtering resolves all expressions of the map up front from system/environment
+     * property {@code tamaya.resolver.bulk.enabled} (default false).
+     *
+     * @return true, if bulk resolution is enabled.
+     */
+    static boolean isBulkResolutionEnabled() {
+        return getBoolean(TAMAYA_RESOLVER_BULK_ENABLED, false);
+    }
+
+    /**
+     * Get the number of threads used for resolving expressions in parallel from system/environment property
+     * {@code tamaya.resolver.bulk.parallelism} (default number of available processors).
+     *
+     * @return the parallelism, at least 1.
+     */
+    static int getBulkParallelism() {
+        return Math.max(1, getInt(TAMAYA_RESOLVER_BULK_PARALLELISM, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Checks if system and environment properties are looked up from immutable snapshots from system/environment
+     * property {@code tamaya.resolver.snapshot.enabled} (default false).
+     *
+     * @return true, if snapshots are used.
+     */
+    static boolean isSnapshotEnabled() {
+        return getBoolean(TAMAYA_RESOLVER_SNAPSHOT_ENABLED, false);
+    }
+
+    /**
+     * Get the time in ms after which the system property snapshot is refreshed, even if no change was detected,
+     * from system/environment property {@code tamaya.resolver.snapshot.max-age} (default 1000). A negative
+     * value refreshes only on detected changes.
+     *
+     * @return the max age in ms.
+     */
+    static long getSnapshotMaxAge() {
+        return getLong(TAMAYA_RESOLVER_SNAPSHOT_MAX_AGE, 1000L);
+    }
+
+    /**
+     * Checks if the resolvers used are recorded in the {@code resolvers} metadata of the evaluated values from
+     * system/environment property {@code tamaya.resolver.provenance.enabled} (default true).
+     *
+     * @return true, if provenance is recorded.
+     */
+    static boolean isProvenanceEnabled() {
+        return getBoolean(TAMAYA_RESOLVER_PROVENANCE_ENABLED, true);
+    }
+
+    private static String getValue(String key) {
+        String val = System.getProperty(key);
+        if (val == null) {
+            val = System.getenv(key);
+        }
+        return val;
+    }
+
+    private static boolean getBoolean(String key, boolean defaultValue) {
+        String val = getValue(key);
+        if (val != null) {
+            return Boolean.parseBoolean(val.trim());
+        }
+        return defaultValue;
+    }
+
+    private static long getLong(String key, long defaultValue) {
+        String val = getValue(key);
+        if (val != null) {
+            try {
+                return Long.parseLong(val.trim());
+            } catch (NumberFormatException e) {
+                LOG.log(Level.WARNING, "Invalid value for " + key + ": " + val + ", using " + defaultValue, e);
+            }
+        }
+        return defaultValue;
+    }
+
+    private static int getInt(String key, int defaultValue) {
+        String val = getValue(key);
+        if (val != null) {
+            try {
+                return Integer.parseInt(val.trim());
+            } catch (NumberFormatException e) {
+                LOG.log(Level.WARNING, "Invalid value for " + key + ": " + val + ", using " + defaultValue, e);
+            }
+        }
+        return defaultValue;
+    }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.resolver.internal;
+
+import org.apache.tamaya.resolver.spi.ExpressionResolver;
+import org.apache.tamaya.spi.ServiceContext;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Immutable lookup table of the {@link ExpressionResolver} instances registered within a
+ * {@link ServiceContext}. The resolvers are sorted once and indexed by their prefix, so dispatching an expression
+ * to its resolver does not require sorting nor scanning all resolvers.
+ * <p>
+ * Prefixes ending with their first {@code ':'} (the common {@code xxx:} form) are kept in a hash index; any other
+ * prefixes are checked sequentially. If several resolvers match an expression the first one in sort order wins,
+ * which is the same rule as applied when scanning the sorted resolver list.
+ */
+final class ResolverTable {
+
+    private final ServiceContext serviceContext;
+
+    private final List<ExpressionResolver> resolvers;
+
+    private final Map<String, Entry> colonIndex = new HashMap<>();
+
+    private final Entry[] otherPrefixes;
+
+    /**
+     * Creates a new table.
+     * @param serviceContext the service context the resolvers were loaded from, not null.
+     * @param comparator the comparator defining the resolver order, not null.
+     */
+    ResolverTable(ServiceContext serviceContext, Comparator<ExpressionResolver> comparator) {
+        this.serviceContext = Objects.requireNonNull(serviceContext);
+        List<ExpressionResolver> sorted = new ArrayList<>(serviceContext.getServices(ExpressionResolver.class));
+        sorted.sort(comparator);
+        this.resolvers = Collections.unmodifiableList(sorted);
+        List<Entry> others = new ArrayList<>();
+        for (int i = 0; i < sorted.size(); i++) {
+            ExpressionResolver resolver = sorted.get(i);
+            String prefix = resolver.getResolverPrefix();
+            Entry entry = new Entry(resolver, prefix, i);
+            if (!prefix.isEmpty() && prefix.indexOf(':') == prefix.length() - 1) {
+                colonIndex.putIfAbsent(prefix, entry);
+            } else {
+                others.add(entry);
+            }
+        }
+        this.otherPrefixes = others.toArray(new Entry[others.size()]);
+    }
+
+    /**
+     * Checks if this table was built from the given service context.
+     * @param serviceContext the current service context.
+     * @return true, if the table is still valid for the given context.
+     */
+    boolean isValidFor(ServiceContext serviceContext) {
+        return this.serviceContext == serviceContext;
+    }
+
+    /**
+     * Get the resolvers, sorted.
+     * @return the resolvers, never null.
+     */
+    Collection<ExpressionResolver> getResolvers() {
+        return resolvers;
+    }
+
+    /**
+     * Evaluates the resolver responsible for the given expression.
+     * @param expression the unresolved expression, not null.
+     * @return the matching entry, or null, if no resolver prefix matches the expression.
+     */
+    Entry findResolver(String expression) {
+        Entry found = null;
+        int colon = expression.indexOf(':');
+        if (colon >= 0) {
+            found = colonIndex.get(expression.substring(0, colon + 1));
+        }
+        for (Entry entry : otherPrefixes) {
+            if (found != null && found.rank < entry.rank) {
+                break;
+            }
+            if (expression.startsWith(entry.prefix)) {
+                return entry;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * A resolver together with its prefix and position in the sorted resolver list.
+     */
+    static final class Entry {
+        final ExpressionResolver resolver;
+        final String prefix;
+        final int rank;
+
+        Entry(ExpressionResolver resolver, String prefix, int rank) {
+            this.resolver = resolver;
+            this.prefix = prefix;
+            this.rank = rank;
+        }
+
+        /**
+         * Evaluates the given expression, hereby removing the resolver prefix.
+         * @param expression the unresolved expression including the prefix, not null.
+         * @return the resolved value, or null.
+         */
+        String evaluate(String expression) {
+            return resolver.evaluate(expression.substring(prefix.length()));
+        }
+    }
+}
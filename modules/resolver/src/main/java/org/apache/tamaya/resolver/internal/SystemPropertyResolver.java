@@ -36,7 +36,7 @@ public final class SystemPropertyResolver implements ExpressionResolver{
 
     @Override
     public String evaluate(String expression){
-        return System.getProperty(expression);
+        return PropertySnapshots.getSystemProperty(expression);
     }
 
 }
@@ -22,8 +22,12 @@ import org.apache.tamaya.resolver.spi.ExpressionResolver;
 
 import javax.annotation.Priority;
 import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
 import java.net.URL;
+import java.net.URLConnection;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -32,12 +36,20 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 /**
  * Property resolver implementation that interprets the resolver expression as an URL to be resolved.
  * It can be explicitly addressed by prefixing {@code url:}, e.g. {@code ${url:http//www.oracle.com}}.
+ * Contents providing a {@code Last-Modified} or {@code ETag} header are cached and revalidated using a conditional
+ * request, see {@code tamaya.resolver.content-cache.size} and {@code tamaya.resolver.content-cache.max-age}.
  */
 @Priority(500)
 public final class URLResolver implements ExpressionResolver {
 
     private final Logger LOG = Logger.getLogger(URLResolver.class.getName());
 
+    /**
+     * The cached URL contents.
+     */
+    private final ContentCache contentCache = new ContentCache(ResolverConfig.getContentCacheSize(),
+            ResolverConfig.getContentCacheMaxAge());
+
     @Override
     public String getResolverPrefix() {
         return "url:";
@@ -47,19 +59,57 @@ public final class URLResolver implements ExpressionResolver {
     public String evaluate(String expression) {
         try {
             URL url = new URL(expression);
-            try (InputStreamReader inputStreamReader = new InputStreamReader(url.openStream(), UTF_8);
-                 BufferedReader bufferedReader = new BufferedReader(inputStreamReader)) {
-                StringBuilder builder = new StringBuilder();
-                String inputLine;
-                while ((inputLine = bufferedReader.readLine()) != null) {
-                    builder.append(inputLine).append("\n");
+            if (!contentCache.isEnabled()) {
+                return read(url.openStream());
+            }
+            ContentCache.Entry entry = contentCache.get(expression);
+            if (entry != null && contentCache.isFresh(entry)) {
+                return entry.content;
+            }
+            URLConnection connection = url.openConnection();
+            if (entry != null && !(connection instanceof HttpURLConnection)) {
+                if (entry.lastModified > 0 && entry.lastModified == connection.getLastModified()) {
+                    // getLastModified() may have opened the underlying stream already
+                    connection.getInputStream().close();
+                    return entry.validated().content;
+                }
+            } else if (entry != null) {
+                if (entry.etag != null) {
+                    connection.setRequestProperty("If-None-Match", entry.etag);
+                }
+                if (entry.lastModified > 0) {
+                    connection.setIfModifiedSince(entry.lastModified);
+                }
+                if (((HttpURLConnection) connection).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    ((HttpURLConnection) connection).disconnect();
+                    return entry.validated().content;
                 }
-                return builder.toString();
             }
+            String content = read(connection.getInputStream());
+            long lastModified = connection.getLastModified();
+            String etag = connection.getHeaderField("ETag");
+            if (lastModified > 0 || etag != null) {
+                contentCache.put(expression, new ContentCache.Entry(content, lastModified, -1, etag));
+            } else {
+                contentCache.remove(expression);
+            }
+            return content;
         } catch (Exception e) {
             LOG.log(Level.FINEST, "Could not resolve URL: " + expression, e);
             return null;
         }
     }
 
+    private String read(InputStream inputStream) throws IOException {
+        try (InputStreamReader inputStreamReader = new InputStreamReader(inputStream, UTF_8);
+             BufferedReader bufferedReader = new BufferedReader(inputStreamReader)) {
+            StringBuilder builder = new StringBuilder();
+            String inputLine;
+            while ((inputLine = bufferedReader.readLine()) != null) {
+                builder.append(inputLine).append("\n");
+            }
+            return builder.toString();
+        }
+    }
+
 }
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.resolver.internal;
+
+import org.apache.tamaya.spi.PropertyValue;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link BulkResolution}.
+ */
+public class BulkResolutionTest {
+
+    private final DefaultExpressionEvaluator evaluator = new DefaultExpressionEvaluator();
+
+    @After
+    public void tearDown() {
+        System.clearProperty("bulk.test");
+    }
+
+    @Test
+    public void testReferencesResolvedInDependencyOrder() {
+        Map<String, PropertyValue> entries = new HashMap<>();
+        entries.put("a", PropertyValue.createValue("a", "${conf:b}-a"));
+        entries.put("b", PropertyValue.createValue("b", "${conf:c}-b"));
+        entries.put("c", PropertyValue.createValue("c", "c"));
+        BulkResolution bulk = new BulkResolution(entries, evaluator, true);
+        assertThat(bulk.isFor(entries)).isTrue();
+        assertThat(bulk.getPreResolved().get("conf:b").value).isEqualTo("c-b");
+        assertThat(bulk.getPreResolved().get("conf:c").value).isEqualTo("c");
+        PropertyValue value = evaluator.evaluateExpression(entries.get("a"), true, bulk.getPreResolved());
+        assertThat(value.getValue()).isEqualTo("c-b-a");
+    }
+
+    @Test
+    public void testReferencesNotPreResolvedIfOtherFiltersApply() {
+        System.setProperty("bulk.test", "sys");
+        Map<String, PropertyValue> entries = new HashMap<>();
+        entries.put("a", PropertyValue.createValue("a", "${conf:b}-${sys:bulk.test}"));
+        entries.put("b", PropertyValue.createValue("b", "b"));
+        BulkResolution bulk = new BulkResolution(entries, evaluator, false);
+        assertThat(bulk.getPreResolved()).doesNotContainKeys("conf:b");
+        assertThat(bulk.getPreResolved().get("sys:bulk.test").value).isEqualTo("sys");
+    }
+
+    @Test
+    public void testCyclesAreNotPreResolved() {
+        Map<String, PropertyValue> entries = new HashMap<>();
+        entries.put("a", PropertyValue.createValue("a", "${conf:b}"));
+        entries.put("b", PropertyValue.createValue("b", "${conf:a}"));
+        BulkResolution bulk = new BulkResolution(entries, evaluator, true);
+        assertThat(bulk.getPreResolved()).doesNotContainKeys("conf:a", "conf:b");
+    }
+
+    @Test
+    public void testSystemPropertiesArePreResolved() {
+        System.setProperty("bulk.test", "sys");
+        Map<String, PropertyValue> entries = new HashMap<>();
+        entries.put("a", PropertyValue.createValue("a", "${sys:bulk.test}"));
+        BulkResolution bulk = new BulkResolution(entries, evaluator, true);
+        assertThat(bulk.isFor(new HashMap<>(entries))).isFalse();
+        assertThat(bulk.getPreResolved().get("sys:bulk.test").value).isEqualTo("sys");
+    }
+
+}
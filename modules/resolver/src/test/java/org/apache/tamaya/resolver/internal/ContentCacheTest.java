@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.resolver.internal;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link ContentCache}.
+ */
+public class ContentCacheTest {
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        ContentCache cache = new ContentCache(40, 0);
+        cache.put("a", new ContentCache.Entry("0123456789", 1L, 10, null));
+        cache.put("b", new ContentCache.Entry("0123456789", 1L, 10, null));
+        assertThat(cache.get("a")).isNotNull();
+        cache.put("c", new ContentCache.Entry("0123456789", 1L, 10, null));
+        assertThat(cache.get("a")).isNotNull();
+        assertThat(cache.get("b")).isNull();
+        assertThat(cache.get("c")).isNotNull();
+        assertThat(cache.getCurrentBytes()).isEqualTo(40);
+    }
+
+    @Test
+    public void testTooLargeContentIsNotCached() {
+        ContentCache cache = new ContentCache(10, 0);
+        cache.put("a", new ContentCache.Entry("0123456789", 1L, 10, null));
+        assertThat(cache.get("a")).isNull();
+        assertThat(cache.getCurrentBytes()).isEqualTo(0);
+    }
+
+    @Test
+    public void testMaxAge() {
+        ContentCache.Entry entry = new ContentCache.Entry("content", 1L, 7, "etag");
+        assertThat(new ContentCache(100, 0).isFresh(entry)).isFalse();
+        assertThat(new ContentCache(100, 60000).isFresh(entry)).isTrue();
+    }
+
+    @Test
+    public void testDisabled() {
+        assertThat(new ContentCache(0, 0).isEnabled()).isFalse();
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.resolver.internal;
+
+import org.apache.tamaya.spi.PropertyValue;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the provenance recording of {@link DefaultExpressionEvaluator}.
+ */
+public class DefaultExpressionEvaluatorTest {
+
+    @After
+    public void tearDown() {
+        System.clearProperty("tamaya.resolver.provenance.enabled");
+        System.clearProperty("provenance.test");
+    }
+
+    @Test
+    public void testProvenanceRecordedIfEnabled() {
+        System.setProperty("tamaya.resolver.provenance.enabled", "true");
+        System.setProperty("provenance.test", "value");
+        DefaultExpressionEvaluator evaluator = new DefaultExpressionEvaluator();
+        PropertyValue value = evaluator.evaluateExpression(
+                PropertyValue.createValue("a", "${provenance.test}-${provenance.missing}"), true);
+        assertThat(value.getValue()).isEqualTo("value-?{provenance.missing}");
+        assertThat(value.getMeta(Provenance.META_KEY)).isEqualTo("system-property, <unresolved>, ");
+        assertThat(evaluator.resolve("provenance.test", true).resolverRef).isEqualTo("system-property");
+    }
+
+    @Test
+    public void testNoProvenanceIfDisabled() {
+        System.setProperty("tamaya.resolver.provenance.enabled", "false");
+        System.setProperty("provenance.test", "value");
+        DefaultExpressionEvaluator evaluator = new DefaultExpressionEvaluator();
+        PropertyValue value = evaluator.evaluateExpression(
+                PropertyValue.createValue("a", "${provenance.test}-${provenance.missing}"), true);
+        assertThat(value.getValue()).isEqualTo("value-?{provenance.missing}");
+        assertThat(value.getMeta(Provenance.META_KEY)).isNull();
+        DefaultExpressionEvaluator.Resolution resolution = evaluator.resolve("provenance.test", true);
+        assertThat(resolution.value).isEqualTo("value");
+        assertThat(resolution.resolverRef).isNull();
+    }
+
+}
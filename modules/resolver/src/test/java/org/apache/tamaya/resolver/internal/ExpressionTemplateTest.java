@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.resolver.internal;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link ExpressionTemplate}.
+ */
+public class ExpressionTemplateTest {
+
+    @Test
+    public void testConstantValues() {
+        assertThat(ExpressionTemplate.of("no expression")).isSameAs(ExpressionTemplate.CONSTANT);
+        assertThat(ExpressionTemplate.of("V$java.version").isConstant()).isTrue();
+        assertThat(ExpressionTemplate.of("V${java.version").isConstant()).isTrue();
+    }
+
+    @Test
+    public void testSegments() {
+        ExpressionTemplate template = ExpressionTemplate.compile("foo ${sys:a} bar ${b}");
+        ExpressionTemplate.Segment[] segments = template.getSegments();
+        assertThat(segments).hasSize(4);
+        assertThat(segments[0].expression).isFalse();
+        assertThat(segments[0].text).isEqualTo("foo ");
+        assertThat(segments[1].expression).isTrue();
+        assertThat(segments[1].text).isEqualTo("sys:a");
+        assertThat(segments[2].text).isEqualTo(" bar ");
+        assertThat(segments[3].expression).isTrue();
+        assertThat(segments[3].text).isEqualTo("b");
+    }
+
+    @Test
+    public void testEvaluate() {
+        ExpressionTemplate template = ExpressionTemplate.compile("${a}-${b}-${unknown}.");
+        assertThat(template.evaluate(expression -> "unknown".equals(expression) ? null : expression.toUpperCase()))
+                .isEqualTo("A-B-.");
+    }
+
+    @Test
+    public void testTemplatesAreCached() {
+        ExpressionTemplate.clearCache();
+        ExpressionTemplate template = ExpressionTemplate.of("cached ${expression}");
+        assertThat(ExpressionTemplate.of("cached ${expression}")).isSameAs(template);
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.resolver.internal;
+
+import org.junit.Test;
+
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the staleness detection of the system property snapshots of {@link PropertySnapshots}.
+ */
+public class PropertySnapshotsTest {
+
+    @Test
+    public void testSnapshotCopiesProperties() {
+        Properties props = new Properties();
+        props.setProperty("a", "1");
+        PropertySnapshots.SystemSnapshot snapshot = new PropertySnapshots.SystemSnapshot(props,
+                PropertySnapshots.version(props), -1L);
+        props.setProperty("a", "2");
+        assertThat(snapshot.get("a")).isEqualTo("1");
+        assertThat(snapshot.get("b")).isNull();
+    }
+
+    @Test
+    public void testAddedOrRemovedPropertiesAreDetected() {
+        Properties props = new Properties();
+        props.setProperty("a", "1");
+        PropertySnapshots.SystemSnapshot snapshot = new PropertySnapshots.SystemSnapshot(props,
+                PropertySnapshots.version(props), -1L);
+        assertThat(snapshot.isCurrent(props, PropertySnapshots.version(props))).isTrue();
+        props.setProperty("b", "2");
+        assertThat(snapshot.isCurrent(props, PropertySnapshots.version(props))).isFalse();
+        props.remove("b");
+        props.remove("a");
+        assertThat(snapshot.isCurrent(props, PropertySnapshots.version(props))).isFalse();
+    }
+
+    @Test
+    public void testReplacedPropertiesInstanceIsDetected() {
+        Properties props = new Properties();
+        Properties other = new Properties();
+        PropertySnapshots.SystemSnapshot snapshot = new PropertySnapshots.SystemSnapshot(props,
+                PropertySnapshots.version(props), -1L);
+        assertThat(snapshot.isCurrent(other, PropertySnapshots.version(other))).isFalse();
+    }
+
+    @Test
+    public void testSnapshotExpiresAfterMaxAge() throws Exception {
+        Properties props = new Properties();
+        props.setProperty("a", "1");
+        PropertySnapshots.SystemSnapshot snapshot = new PropertySnapshots.SystemSnapshot(props,
+                PropertySnapshots.version(props), 50L);
+        assertThat(snapshot.isCurrent(props, PropertySnapshots.version(props))).isTrue();
+        Thread.sleep(100L);
+        // a replaced value changes neither size nor (since Java 9) the modification count
+        assertThat(snapshot.isCurrent(props, PropertySnapshots.version(props))).isFalse();
+    }
+
+    @Test
+    public void testLookupsAreServedFromCurrentSnapshot() {
+        System.setProperty("snapshot.test", "1");
+        try {
+            assertThat(PropertySnapshots.getSystemProperty("snapshot.test")).isEqualTo("1");
+            System.setProperty("snapshot.test2", "2");
+            assertThat(PropertySnapshots.getSystemProperty("snapshot.test2")).isEqualTo("2");
+            System.clearProperty("snapshot.test");
+            assertThat(PropertySnapshots.getSystemProperty("snapshot.test")).isNull();
+        } finally {
+            System.clearProperty("snapshot.test");
+            System.clearProperty("snapshot.test2");
+        }
+    }
+}
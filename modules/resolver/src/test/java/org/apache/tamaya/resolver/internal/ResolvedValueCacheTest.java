@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.resolver.internal;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link ResolvedValueCache}.
+ */
+public class ResolvedValueCacheTest {
+
+    @Test
+    public void testInvalidateByDependency() {
+        ResolvedValueCache cache = new ResolvedValueCache(100);
+        cache.put("${conf:a}", new ResolvedValueCache.Entry("A", null, Collections.singleton("a")),
+                cache.getGeneration());
+        cache.put("${conf:b}", new ResolvedValueCache.Entry("B", null, Collections.singleton("b")),
+                cache.getGeneration());
+        assertThat(cache.get("${conf:a}").value).isEqualTo("A");
+        cache.invalidate(Collections.singleton("a"));
+        assertThat(cache.get("${conf:a}")).isNull();
+        assertThat(cache.get("${conf:b}").value).isEqualTo("B");
+    }
+
+    @Test
+    public void testNestedDependenciesAreCollected() {
+        ResolvedValueCache cache = new ResolvedValueCache(100);
+        cache.put("${conf:c}", new ResolvedValueCache.Entry("C", null, Collections.singleton("c")),
+                cache.getGeneration());
+        cache.beginResolution(Collections.singleton("b"));
+        cache.beginResolution(Collections.singleton("c"));
+        cache.endResolution();
+        cache.get("${conf:c}");
+        Set<String> dependencies = cache.endResolution();
+        assertThat(dependencies).containsExactlyInAnyOrder("b", "c");
+    }
+
+    @Test
+    public void testStaleResultIsNotCached() {
+        ResolvedValueCache cache = new ResolvedValueCache(100);
+        long generation = cache.getGeneration();
+        cache.invalidate(Arrays.asList("a"));
+        cache.put("${conf:a}", new ResolvedValueCache.Entry("A", null, new HashSet<>(Arrays.asList("a"))),
+                generation);
+        assertThat(cache.get("${conf:a}")).isNull();
+    }
+
+    @Test
+    public void testBounded() {
+        ResolvedValueCache cache = new ResolvedValueCache(2);
+        for (int i = 0; i < 5; i++) {
+            cache.put("${conf:" + i + "}", new ResolvedValueCache.Entry("v", null, Collections.singleton("" + i)),
+                    cache.getGeneration());
+        }
+        assertThat(cache.size()).isLessThanOrEqualTo(2);
+    }
+
+}
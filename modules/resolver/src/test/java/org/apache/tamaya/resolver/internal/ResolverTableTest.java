@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.tamaya.resolver.internal;
+
+import org.apache.tamaya.resolver.spi.ExpressionResolver;
+import org.apache.tamaya.spi.ServiceContext;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the prefix index of {@link ResolverTable}.
+ */
+public class ResolverTableTest {
+
+    private static ServiceContext serviceContext(ExpressionResolver... resolvers) {
+        List<ExpressionResolver> services = Arrays.asList(resolvers);
+        return (ServiceContext) Proxy.newProxyInstance(ResolverTableTest.class.getClassLoader(),
+                new Class<?>[]{ServiceContext.class}, (proxy, method, args) -> {
+                    if ("getServices".equals(method.getName()) && args[0] == ExpressionResolver.class) {
+                        return services;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    /**
+     * Creates a table keeping the resolvers in the order given.
+     */
+    private static ResolverTable table(ExpressionResolver... resolvers) {
+        List<ExpressionResolver> order = Arrays.asList(resolvers);
+        return new ResolverTable(serviceContext(resolvers),
+                (r1, r2) -> Integer.compare(order.indexOf(r1), order.indexOf(r2)));
+    }
+
+    @Test
+    public void testColonPrefixesAreIndexed() {
+        Resolver env = new Resolver("env:");
+        Resolver sys = new Resolver("sys:");
+        ResolverTable table = table(env, sys);
+        assertThat(table.findResolver("sys:a").resolver).isSameAs(sys);
+        assertThat(table.findResolver("env:a").resolver).isSameAs(env);
+        assertThat(table.findResolver("sys:a").evaluate("sys:a")).isEqualTo("sys:(a)");
+        assertThat(table.findResolver("other:a")).isNull();
+        assertThat(table.findResolver("a")).isNull();
+        assertThat(table.getResolvers()).containsExactly(env, sys);
+    }
+
+    @Test
+    public void testOtherPrefixesAreFallback() {
+        Resolver sys = new Resolver("sys:");
+        Resolver twoColons = new Resolver("a:b:");
+        Resolver dollar = new Resolver("$");
+        Resolver any = new Resolver("");
+        ResolverTable table = table(sys, twoColons, dollar, any);
+        assertThat(table.findResolver("sys:a").resolver).isSameAs(sys);
+        assertThat(table.findResolver("a:b:c").resolver).isSameAs(twoColons);
+        assertThat(table.findResolver("a:c").resolver).isSameAs(any);
+        assertThat(table.findResolver("$a").resolver).isSameAs(dollar);
+        assertThat(table.findResolver("other:a").resolver).isSameAs(any);
+        assertThat(table.findResolver("other:a").evaluate("other:a")).isEqualTo("(other:a)");
+    }
+
+    @Test
+    public void testFirstMatchInSortOrderWins() {
+        Resolver any = new Resolver("");
+        Resolver sys = new Resolver("sys:");
+        Resolver sys2 = new Resolver("sys:");
+        Resolver env = new Resolver("env:");
+        ResolverTable table = table(sys, any, sys2, env);
+        assertThat(table.findResolver("sys:a").resolver).isSameAs(sys);
+        assertThat(table.findResolver("env:a").resolver).isSameAs(any);
+        assertThat(table.findResolver("a").resolver).isSameAs(any);
+    }
+
+    @Test
+    public void testIsValidForItsServiceContextOnly() {
+        ServiceContext context = serviceContext(new Resolver("sys:"));
+        ResolverTable table = new ResolverTable(context, (r1, r2) -> 0);
+        assertThat(table.isValidFor(context)).isTrue();
+        assertThat(table.isValidFor(serviceContext(new Resolver("sys:")))).isFalse();
+    }
+
+    private static final class Resolver implements ExpressionResolver {
+        private final String prefix;
+
+        Resolver(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public String getResolverPrefix() {
+            return prefix;
+        }
+
+        @Override
+        public String evaluate(String expression) {
+            return prefix + "(" + expression + ")";
+        }
+    }
+}